@@ -20,7 +20,7 @@ import com.datastax.driver.core.ResultSet
 import com.datastax.spark.connector.CassandraRowMetadata
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
 import com.stratio.crossdata.connector.cassandra.CassandraAttributeRole.{CassandraAttributeRole, ClusteringKey, Function, Indexed, NonIndexed, PartitionKey, Unknown}
-import com.stratio.crossdata.connector.{SQLLikeQueryProcessorUtils, SQLLikeUDFQueryProcessorUtils}
+import com.stratio.crossdata.connector.{NativeScan, SQLLikeQueryProcessorUtils, SQLLikeUDFQueryProcessorUtils}
 import org.apache.spark.sql.cassandra.{CassandraSQLRow, CassandraXDSourceRelation}
 import org.apache.spark.sql.catalyst.expressions.aggregate.Count
 import org.apache.spark.sql.catalyst.expressions.{Alias, Attribute, Expression, Literal, NamedExpression}
@@ -80,7 +80,13 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
 
   import CassandraQueryProcessor._
 
-  def execute(): Option[Array[Row]] = {
+  def execute(): Option[Array[Row]] = executeIterator().map(_.toArray)
+
+  /**
+   * Executes the native query returning an iterator which pages the Cassandra result set as it gets consumed.
+   * The session opened for the query is released once the iterator is exhausted or closed.
+   */
+  def executeIterator(): Option[NativeScan.RowIterator] = {
     def annotateRepeatedNames(names: Seq[String]): Seq[String] = {
       val indexedNames = names zipWithIndex
       val name2pos = indexedNames.groupBy(_._1).values.flatMap(_.zipWithIndex.map(x => x._1._2 -> x._2)).toMap
@@ -98,7 +104,7 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
     try {
       validatedNativePlan.map { cassandraPlan =>
         if (cassandraPlan.limit.exists(_ == 0)) {
-          Array.empty[Row]
+          NativeScan.ResultIterator[Row](Iterator.empty)
         } else {
           val projectsString: Seq[String] = cassandraPlan.basePlan match {
             case SimpleLogicalPlan(projects, _, _, _) =>
@@ -116,10 +122,18 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
             cassandraPlan.limit.getOrElse(CassandraQueryProcessor.DefaultLimit),
             cassandraPlan.udfsMap map { case (k, v) => k.toString -> v }
           )
-          val resultSet = cassandraRelation.connector.withSessionDo { session =>
+          val session = cassandraRelation.connector.openSession()
+          val resultSet = try {
             session.execute(cqlQuery)
+          } catch {
+            case exc: Exception =>
+              session.close()
+              throw exc
           }
-          sparkResultFromCassandra(annotateRepeatedNames(cassandraPlan.projects.map(_.name)).toArray, resultSet)
+          NativeScan.ResultIterator(
+            sparkResultFromCassandra(annotateRepeatedNames(cassandraPlan.projects.map(_.name)).toArray, resultSet),
+            () => session.close()
+          )
         }
 
       }
@@ -130,6 +144,26 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
   }
 
 
+  /**
+   * Estimates the cost of the native query. Queries filtering by the whole partition key only read the requested
+   * partitions whereas the rest of filtered queries, executed with ALLOW FILTERING, may scan the whole table.
+   */
+  def estimateCost(): Option[NativeScan.CostEstimate] = validatedNativePlan map { cassandraPlan =>
+    val tableRows = cassandraRelation.estimatedRowCount
+    val rowsReturned = math.min(cassandraPlan.limit.getOrElse(DefaultLimit).toLong, tableRows)
+
+    val partitionColsInFilter = cassandraPlan.filters collect {
+      case sources.EqualTo(attribute, _) => attribute
+      case sources.In(attribute, _) => attribute
+    }
+    val filtersByPartitionKey = cassandraRelation.tableDef.partitionKey.forall { column =>
+      partitionColsInFilter.contains(column.columnName)
+    }
+
+    val fullScan = cassandraPlan.filters.nonEmpty && !filtersByPartitionKey
+    NativeScan.CostEstimate(if (fullScan) tableRows else rowsReturned, rowsReturned, fullScan)
+  }
+
   def validatedNativePlan: Option[CassandraPlan] = {
     lazy val limit: Option[Int] = logicalPlan.collectFirst { case Limit(Literal(num: Int, _), _) => num }
 
@@ -230,10 +264,11 @@ class CassandraQueryProcessor(cassandraRelation: CassandraXDSourceRelation, logi
       case _ => NonIndexed
     }
 
-  private[this] def sparkResultFromCassandra(requiredColumns: Array[ColumnName], resultSet: ResultSet): Array[Row] = {
+  private[this] def sparkResultFromCassandra(requiredColumns: Array[ColumnName], resultSet: ResultSet): Iterator[Row] = {
     import scala.collection.JavaConversions._
     val cassandraRowMetadata = CassandraRowMetadata.fromColumnNames(requiredColumns)
-    resultSet.all().map(CassandraSQLRow.fromJavaDriverRow(_, cassandraRowMetadata)).toArray
+    // The driver fetches the following pages of the result set as the iterator advances
+    resultSet.iterator().map(CassandraSQLRow.fromJavaDriverRow(_, cassandraRowMetadata))
   }
 
 }
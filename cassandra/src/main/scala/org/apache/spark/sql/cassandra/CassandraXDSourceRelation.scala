@@ -67,15 +67,18 @@ class CassandraXDSourceRelation(tableRef: TableRef,
 
   // NativeScan implementation ~~
 
-  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = {
+  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] =
+    buildIteratorScan(optimizedLogicalPlan).map(_.toArray)
+
+  override def buildIteratorScan(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.RowIterator] = {
     logDebug(s"Processing ${optimizedLogicalPlan.toString()}")
     val queryExecutor = CassandraQueryProcessor(this, optimizedLogicalPlan)
 
     val toCatalyst = CatalystTypeConverters.createToCatalystConverter(optimizedLogicalPlan.schema)
     val toScala = CatalystTypeConverters.createToScalaConverter(optimizedLogicalPlan.schema)
 
-    queryExecutor.execute() map { rows =>
-      rows map { row =>
+    queryExecutor.executeIterator() map { rows =>
+      rows mapResults { row =>
         val iRow = toCatalyst(row)
         toScala(iRow).asInstanceOf[GenericRowWithSchema]
       }
@@ -83,6 +86,15 @@ class CassandraXDSourceRelation(tableRef: TableRef,
 
   }
 
+  override def estimateNativeCost(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.CostEstimate] =
+    try {
+      CassandraQueryProcessor(this, optimizedLogicalPlan).estimateCost()
+    } catch {
+      case exc: Exception =>
+        logWarning(s"Cannot estimate the cost of the native query $optimizedLogicalPlan: ${exc.getMessage}")
+        None
+    }
+
   override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = logicalStep match {
     case ln: LeafNode => true // TODO leafNode == LogicalRelation(xdSourceRelation)
     case un: UnaryNode => un match {
@@ -129,6 +141,8 @@ class CassandraXDSourceRelation(tableRef: TableRef,
     tableSizeInBytes.getOrElse(sqlContext.conf.defaultSizeInBytes)
   }
 
+  def estimatedRowCount: Long = sizeInBytes / math.max(schema.defaultSize, 1)
+
   implicit val cassandraConnector = connector
   implicit val readconf = readConf
 
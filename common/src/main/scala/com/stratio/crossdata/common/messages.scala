@@ -21,10 +21,20 @@ import akka.cluster.ClusterEvent.CurrentClusterState
 import com.stratio.crossdata.common.result.SQLResult
 import com.stratio.crossdata.common.security.Session
 import com.typesafe.config.Config
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.StructType
 
 import scala.collection._
 import scala.concurrent.duration.FiniteDuration
 
+/**
+  * Hint sent along with a query so that the server runs its Spark jobs in the scheduler pool matching its priority.
+  */
+object QueryPriority extends Enumeration {
+  type QueryPriority = Value
+  val Interactive, Batch = Value
+}
+
 // Driver -> Server messages
 trait Command {
   private[crossdata] val requestId = UUID.randomUUID()
@@ -33,9 +43,22 @@ trait Command {
 case class SQLCommand private(sql: String,
                                                  queryId: UUID = UUID.randomUUID(),
                                                  flattenResults: Boolean = false,
-                                                 timeout: Option[FiniteDuration] = None
+                                                 timeout: Option[FiniteDuration] = None,
+                                                 priority: Option[QueryPriority.QueryPriority] = None,
+                                                 fetchSize: Option[Int] = None
                                                 ) extends Command {
 
+  def this(query: String,
+           retrieveColNames: Boolean,
+           timeoutDuration: FiniteDuration,
+           queryPriority: QueryPriority.QueryPriority
+          ) = this(sql = query, flattenResults = retrieveColNames, timeout = Option(timeoutDuration), priority = Option(queryPriority))
+
+  def this(query: String,
+           retrieveColNames: Boolean,
+           queryPriority: QueryPriority.QueryPriority
+          ) = this(sql = query, flattenResults = retrieveColNames, priority = Option(queryPriority))
+
   def this(query: String,
            retrieveColNames: Boolean,
            timeoutDuration: FiniteDuration
@@ -99,6 +122,17 @@ private[crossdata] case class GetJobStatus() extends ControlCommand
 
 private[crossdata] case class CancelQueryExecution(queryId: UUID) extends ControlCommand
 
+/**
+  * Commands over the server-side cursor holding the result of a query sent with a fetch size.
+  */
+private[crossdata] trait CursorCommand extends ControlCommand {
+  def queryId: UUID
+}
+
+private[crossdata] case class FetchRows(queryId: UUID, maxRows: Int) extends CursorCommand
+
+private[crossdata] case class CloseCursor(queryId: UUID) extends CursorCommand
+
 /*
   Note that this message implies that the server trust the client in regard to the relation between the session id
    and the user. This assumption will be taken for granted until the model of session management changes from
@@ -106,6 +140,11 @@ private[crossdata] case class CancelQueryExecution(queryId: UUID) extends Contro
  */
 private[crossdata] case class CommandEnvelope(cmd: Command, session: Session)
 
+/**
+  * Commands sent together by a driver, servers handle them as if they had been sent one by one.
+  */
+private[crossdata] case class CommandEnvelopeBatch(envelopes: Seq[CommandEnvelope])
+
 // Server -> Driver messages
 private[crossdata] trait ServerReply {
   def requestId: UUID
@@ -115,6 +154,17 @@ private[crossdata] case class QueryCancelledReply(requestId: UUID, cancellationR
 
 private[crossdata] case class SQLReply(requestId: UUID, sqlResult: SQLResult) extends ServerReply
 
+/**
+  * Page of the rows of a server-side cursor. It replies to the query opening the cursor as well as to
+  * each [[FetchRows]] command. The cursor is closed by the server after sending its last page.
+  */
+private[crossdata] case class RowsPageReply(
+                                             requestId: UUID,
+                                             rows: Array[Row],
+                                             schema: StructType,
+                                             lastPage: Boolean,
+                                             warnings: Seq[String] = Seq.empty) extends ServerReply
+
 /**
   * This class encapsulates the information about the state of the Crossdata cluster.
   *
@@ -131,3 +181,12 @@ private[crossdata] case class OpenSessionReply(requestId: UUID, isOpen: Boolean)
 
 private[crossdata] case class AddHdfsFileReply(requestId: UUID, hdfsRoute: String) extends ServerReply
 
+
+/**
+  * Notice pushed by servers to the drivers of the open sessions when a command changes the catalog.
+  *
+  * @param tables Tables (`table` or `database.table`) whose metadata has been modified or removed, new tables aren't
+  *               listed since they don't invalidate any metadata known by the drivers but their lists of tables.
+  * @param allTables Whether every table may have been changed.
+  */
+private[crossdata] case class CatalogChangedEvent(tables: Seq[String], allTables: Boolean = false)
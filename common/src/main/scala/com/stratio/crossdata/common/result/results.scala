@@ -17,8 +17,9 @@ package com.stratio.crossdata.common.result
 
 import akka.NotUsed
 import akka.actor.ActorSystem
-import akka.stream.ActorMaterializer
-import akka.stream.scaladsl.Source
+import akka.stream.{ActorMaterializer, Materializer}
+import akka.stream.scaladsl.{Sink, Source}
+import com.typesafe.config.ConfigFactory
 import org.apache.commons.lang3.StringUtils
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.types.StructType
@@ -32,6 +33,15 @@ trait Result {
   def hasError: Boolean
 }
 
+object SQLResult {
+
+  /**
+    * HTTP header carrying each of the [[SQLResult.warnings]] of a streamed result.
+    */
+  val WarningHttpHeader = "Crossdata-Warning"
+
+}
+
 sealed trait SQLResult extends Result {
 
   // TODO: Avoid to expose methods that some of their implementation throw an exception
@@ -39,6 +49,8 @@ sealed trait SQLResult extends Result {
 
   def schema: StructType
 
+  def warnings: Seq[String] = Seq.empty
+
   /**
    * NOTE: This method is based on the method org.apache.spark.sql.DataFrame#showString from Apache Spark.
    *       For more information, go to http://spark.apache.org.
@@ -91,7 +103,14 @@ sealed trait SQLResult extends Result {
   }
 }
 
-case class SuccessfulSQLResult(resultSet: Array[Row], schema: StructType) extends SQLResult {
+/**
+  * @param warnings notices about how the server delivered the result, e.g: the LIMIT it added to bound its size.
+  */
+case class SuccessfulSQLResult(
+                                resultSet: Array[Row],
+                                schema: StructType,
+                                override val warnings: Seq[String] = Seq.empty
+                              ) extends SQLResult {
   val hasError = false
 }
 
@@ -105,24 +124,42 @@ case class ErrorSQLResult(message: String, cause: Option[Throwable] = None) exte
 }
 
 
+object StreamedSQLResult {
+
+  // Runs the rows of the results which haven't been given the materializer of the driver that produced them.
+  private lazy val sharedMaterializer: Materializer = {
+    val system = ActorSystem("StreamedSQLResult", ConfigFactory.parseString("akka.daemonic = on"))
+    ActorMaterializer()(system)
+  }
+
+}
+
 trait StreamedSQLResult extends SQLResult {
   val rowsSource: Source[Row, NotUsed]
   val javaRowsSource: akka.stream.javadsl.Source[Row, NotUsed] = rowsSource.asJava
 
-  override def resultSet: Array[Row] = {
-    implicit val aSystem: ActorSystem = ActorSystem()
-    implicit  val aMater: ActorMaterializer = ActorMaterializer()
+  /**
+    * Materializer running [[rowsSource]] when all the rows are collected at once.
+    */
+  def materializer: Materializer = StreamedSQLResult.sharedMaterializer
 
-    val sqlResult = rowsSource.runFold(List.empty[Row]) {
-      case (acc: List[Row], row: Row) => row :: acc
-      case _ => Nil
-    }
-    Await.result(sqlResult, Duration.Inf).reverse.toArray
-  }
+  override def resultSet: Array[Row] =
+    Await.result(rowsSource.runWith(Sink.seq)(materializer), Duration.Inf).toArray
 }
 
-case class StreamedSuccessfulSQLResult(rowsSource: Source[Row, NotUsed], schema: StructType) extends StreamedSQLResult {
+/**
+  * @param rowsMaterializer materializer of the driver which produced the result, used by [[resultSet]] instead of
+  *                         the one shared by the results created elsewhere.
+  */
+case class StreamedSuccessfulSQLResult(
+                                        rowsSource: Source[Row, NotUsed],
+                                        schema: StructType,
+                                        override val warnings: Seq[String] = Seq.empty,
+                                        rowsMaterializer: Option[Materializer] = None
+                                      ) extends StreamedSQLResult {
   val hasError: Boolean = false
+
+  override def materializer: Materializer = rowsMaterializer getOrElse super.materializer
 }
 
 case class StreamedErrorSQLResult(message: String, cause: Option[Throwable] = None) extends StreamedSQLResult {
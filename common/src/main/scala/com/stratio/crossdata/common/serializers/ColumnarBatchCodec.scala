@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+import java.nio.{ByteBuffer, ByteOrder}
+import java.sql.{Date, Timestamp}
+
+import akka.util.{ByteString, ByteStringBuilder}
+import com.fasterxml.jackson.core.JsonFactory
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.catalyst.util.DateTimeUtils
+import org.apache.spark.sql.types._
+
+/**
+  * Binary columnar encoding of streamed results, negotiated through the `Accept` header of the HTTP query endpoint.
+  *
+  * The response is a sequence of length-prefixed frames: the schema (as JSON) followed by record batches. A batch
+  * holds, for each column, a null bitmap followed by the non null values: fixed-width values are packed, variable
+  * width ones (strings, binaries and decimals) are written as a block of lengths followed by a block of bytes.
+  * Complex values (arrays, maps, structs and UDTs) are variable width too, each one written as the JSON array of a
+  * single value row by [[CompiledRowSerializer]]: they decode as in the JSON documents and no Java serialization,
+  * whose deserialization of data read from the network could instantiate arbitrary classes, is involved. Atomic values of another type than
+  * their column are converted to it when possible (e.g. numbers) and rejected with an IllegalArgumentException otherwise.
+  */
+object ColumnarBatchCodec {
+
+  val MediaType = "application/vnd.crossdata.columnar"
+
+  val DefaultBatchSize = 4096
+
+  // Frames are prefixed by the length of their content
+  val FrameLengthFieldSize = 4
+  val MaxFrameLength: Int = 1 << 30
+
+  private val SchemaFrame: Byte = 0
+  private val BatchFrame: Byte = 1
+
+  private implicit val byteOrder = ByteOrder.BIG_ENDIAN
+
+  private val jsonFactory = new JsonFactory()
+
+  def encodeSchema(schema: StructType): ByteString =
+    frame(SchemaFrame) { builder =>
+      builder.putBytes(schema.json.getBytes(StandardCharsets.UTF_8))
+    }
+
+  /**
+    * @param frame a frame, including its length prefix.
+    * @return the schema, if `frame` is a schema frame.
+    */
+  def decodeSchema(frame: ByteString): Option[StructType] = {
+    val in = content(frame)
+    if (in.get == SchemaFrame) {
+      val json = new Array[Byte](in.remaining)
+      in.get(json)
+      Some(DataType.fromJson(new String(json, StandardCharsets.UTF_8)).asInstanceOf[StructType])
+    } else None
+  }
+
+  private def frame(frameType: Byte)(writeContent: ByteStringBuilder => Unit): ByteString = {
+    val contentBuilder = ByteString.newBuilder
+    contentBuilder.putByte(frameType)
+    writeContent(contentBuilder)
+    val frameContent = contentBuilder.result()
+    ByteString.newBuilder.putInt(frameContent.length).append(frameContent).result()
+  }
+
+  private def content(frame: ByteString): ByteBuffer =
+    frame.drop(FrameLengthFieldSize).asByteBuffer.order(byteOrder)
+
+}
+
+class ColumnarBatchCodec(schema: StructType) {
+
+  import ColumnarBatchCodec._
+
+  private val fieldTypes: Array[DataType] = schema.fields.map(_.dataType)
+
+  // Complex values are written with the serializer of a single column row of their type
+  private val complexValueSerializers: Map[DataType, CompiledRowSerializer] = fieldTypes.collect {
+    case dataType@(_: ArrayType | _: MapType | _: StructType | _: UserDefinedType[_]) =>
+      dataType -> new CompiledRowSerializer(StructType(StructField("value", dataType) :: Nil))
+  }.toMap
+
+  def encode(rows: Seq[Row]): ByteString = frame(BatchFrame) { builder =>
+    val rowCount = rows.length
+    builder.putInt(rowCount)
+    for (col <- fieldTypes.indices) {
+      val nullBits = new Array[Byte]((rowCount + 7) / 8)
+      for ((row, i) <- rows.view.zipWithIndex if row.isNullAt(col))
+        nullBits(i / 8) = (nullBits(i / 8) | (1 << (i % 8))).toByte
+      builder.putBytes(nullBits)
+      writeColumn(fieldTypes(col), rows.filterNot(_.isNullAt(col)).map(_.get(col)), builder)
+    }
+  }
+
+  /**
+    * @param frame a batch frame, including its length prefix.
+    */
+  def decode(frame: ByteString): Seq[Row] = decodeContent(content(frame))
+
+  /**
+    * Decodes the batch frame starting at the current position of `in`, which is left right after the frame.
+    */
+  private[serializers] def decode(in: ByteBuffer): Seq[Row] = {
+    in.getInt // Frame length
+    decodeContent(in)
+  }
+
+  private def decodeContent(in: ByteBuffer): Seq[Row] = {
+    require(in.get == BatchFrame, "Record batch expected")
+    val rowCount = in.getInt
+
+    val columns = fieldTypes map { dataType =>
+      val nullBits = new Array[Byte]((rowCount + 7) / 8)
+      in.get(nullBits)
+      val isNull = (i: Int) => (nullBits(i / 8) & (1 << (i % 8))) != 0
+      val values = readColumn(dataType, (0 until rowCount).count(!isNull(_)), in).iterator
+      Array.tabulate[Any](rowCount)(i => if (isNull(i)) null else values.next())
+    }
+
+    Array.tabulate[Row](rowCount) { i =>
+      new GenericRowWithSchema(columns.map(_(i)), schema)
+    }
+  }
+
+  private def writeColumn(dataType: DataType, values: Seq[Any], out: ByteStringBuilder): Unit = dataType match {
+    case IntegerType => values foreach (value => out.putInt(number(dataType, value).intValue))
+    case LongType => values foreach (value => out.putLong(number(dataType, value).longValue))
+    case DoubleType => values foreach (value => out.putDouble(number(dataType, value).doubleValue))
+    case FloatType => values foreach (value => out.putFloat(number(dataType, value).floatValue))
+    case ShortType => values foreach (value => out.putShort(number(dataType, value).shortValue))
+    case ByteType => values foreach (value => out.putByte(number(dataType, value).byteValue))
+    case BooleanType => values foreach {
+      case b: Boolean => out.putByte(if (b) 1 else 0)
+      case other => mismatch(dataType, other)
+    }
+    case DateType => values foreach {
+      case date: java.util.Date => out.putLong(date.getTime)
+      case days: Int => out.putLong(DateTimeUtils.toJavaDate(days).getTime) // Catalyst's internal representation
+      case other => mismatch(dataType, other)
+    }
+    case TimestampType => values foreach { value =>
+      val ts = value match {
+        case ts: Timestamp => ts
+        case date: java.util.Date => new Timestamp(date.getTime)
+        case micros: Long => DateTimeUtils.toJavaTimestamp(micros) // Catalyst's internal representation
+        case other => mismatch(dataType, other)
+      }
+      out.putLong(ts.getTime)
+      out.putInt(ts.getNanos)
+    }
+    case StringType => writeVariableWidth(values.map(_.toString.getBytes(StandardCharsets.UTF_8)), out)
+    case BinaryType => writeVariableWidth(values.map {
+      case bytes: Array[Byte] => bytes
+      case other => mismatch(dataType, other)
+    }, out)
+    case _: DecimalType => writeVariableWidth(values.map(decimalString(_).getBytes(StandardCharsets.UTF_8)), out)
+    case _ => writeVariableWidth(values.map(complexValueToJson(dataType, _)), out)
+  }
+
+  /**
+    * Numeric values of a different type than their column (e.g. a Long in an integer column) are converted to it.
+    */
+  private def number(dataType: DataType, value: Any): Number = value match {
+    case number: Number => number
+    case other => mismatch(dataType, other)
+  }
+
+  private def mismatch(dataType: DataType, value: Any): Nothing = throw new IllegalArgumentException(
+    s"Value $value of type ${value.getClass.getName} cannot be encoded as ${dataType.simpleString}"
+  )
+
+  private def readColumn(dataType: DataType, count: Int, in: ByteBuffer): Seq[Any] = dataType match {
+    case IntegerType => Array.fill(count)(in.getInt)
+    case LongType => Array.fill(count)(in.getLong)
+    case DoubleType => Array.fill(count)(in.getDouble)
+    case FloatType => Array.fill(count)(in.getFloat)
+    case ShortType => Array.fill(count)(in.getShort)
+    case ByteType => Array.fill(count)(in.get)
+    case BooleanType => Array.fill(count)(in.get != 0)
+    case DateType => Array.fill(count)(new Date(in.getLong))
+    case TimestampType => Array.fill(count) {
+      val ts = new Timestamp(in.getLong)
+      ts.setNanos(in.getInt)
+      ts
+    }
+    case StringType => readVariableWidth(count, in).map(new String(_, StandardCharsets.UTF_8))
+    case BinaryType => readVariableWidth(count, in)
+    case _: DecimalType =>
+      readVariableWidth(count, in).map(bytes => new java.math.BigDecimal(new String(bytes, StandardCharsets.UTF_8)))
+    case _ => readVariableWidth(count, in).map(complexValueFromJson(dataType, _))
+  }
+
+  private def writeVariableWidth(values: Seq[Array[Byte]], out: ByteStringBuilder): Unit = {
+    values foreach (bytes => out.putInt(bytes.length))
+    values foreach (bytes => out.putBytes(bytes))
+  }
+
+  private def readVariableWidth(count: Int, in: ByteBuffer): Seq[Array[Byte]] = {
+    val lengths = Array.fill(count)(in.getInt)
+    lengths map { length =>
+      val bytes = new Array[Byte](length)
+      in.get(bytes)
+      bytes
+    }
+  }
+
+  private def decimalString(value: Any): String = value match {
+    case decimal: java.math.BigDecimal => decimal.toPlainString
+    case decimal: BigDecimal => decimal.bigDecimal.toPlainString
+    case decimal: Decimal => decimal.toJavaBigDecimal.toPlainString
+    case other => other.toString
+  }
+
+  private def complexValueSerializer(dataType: DataType): CompiledRowSerializer =
+    complexValueSerializers.getOrElse(dataType, throw new UnsupportedOperationException(s"Unsupported data type: $dataType"))
+
+  private def complexValueToJson(dataType: DataType, value: Any): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    val generator = jsonFactory.createGenerator(bytes)
+    try complexValueSerializer(dataType).serialize(Row(value), generator) finally generator.close()
+    bytes.toByteArray
+  }
+
+  private def complexValueFromJson(dataType: DataType, json: Array[Byte]): Any = {
+    val parser = jsonFactory.createParser(json)
+    try {
+      parser.nextToken()
+      complexValueSerializer(dataType).deserialize(parser).get(0)
+    } finally parser.close()
+  }
+
+}
@@ -17,6 +17,7 @@ package com.stratio.crossdata.common.serializers
 
 import com.stratio.crossdata.common._
 import org.json4s._
+import org.json4s.ext.EnumNameSerializer
 import CommandSerializerHelper._
 
 import scala.reflect.ClassTag
@@ -34,7 +35,7 @@ private [serializers] object CommandSerializerHelper {
       CommandWithName(None)
   }
 
-  implicit val _ = DefaultFormats + UUIDSerializer + FiniteDurationSerializer
+  implicit val _ = DefaultFormats + UUIDSerializer + FiniteDurationSerializer + new EnumNameSerializer(QueryPriority)
 
   val commandExtractor = Map[String, JValue => Command](
     "SQLCommand" -> { jSQLCommand => (jSQLCommand \ "details").extract[SQLCommand] },
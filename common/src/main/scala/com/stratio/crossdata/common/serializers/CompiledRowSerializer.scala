@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.io.ByteArrayOutputStream
+import java.sql.{Date, Timestamp}
+
+import com.fasterxml.jackson.core.{JsonFactory, JsonGenerator, JsonParser, JsonToken}
+import com.stratio.crossdata.common.serializers.StreamedSuccessfulSQLResultSerializerHelper.RowLabel
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.{GenericRow, GenericRowWithSchema}
+import org.apache.spark.sql.catalyst.util.{DateTimeUtils, ArrayBasedMapData => ArrayBasedMapDataNotDeprecated, ArrayData => ArrayDataNotDeprecated, MapData => MapDataNotDeprecated}
+import org.apache.spark.sql.types._
+
+import scala.collection.mutable
+
+/**
+  * Row serializer producing and consuming the same JSON documents as [[RowSerializer]] but compiling the schema, once,
+  * into an array of per-column encoders and decoders which write and read through a Jackson streaming generator and
+  * parser. Neither per cell type matching nor intermediate JSON trees are involved in (de)serializing a row.
+  *
+  * Instances are immutable and can be shared by concurrent streams.
+  */
+class CompiledRowSerializer(val schema: StructType) {
+
+  import CompiledRowSerializer._
+
+  private val rowEncoder = structEncoder(schema)
+  private val rowDecoder = structDecoder(schema)
+
+  // The schema of the serialized rows is constant, thus its JSON is rendered just once
+  private val schemaJson = s"""{"structType":${schema.json}}"""
+
+  /**
+    * Writes `row` as `{"values": [...]}`, followed by the schema when the row carries one.
+    */
+  def serialize(row: Row, generator: JsonGenerator): Unit = {
+    generator.writeStartObject()
+    generator.writeFieldName(ValuesLabel)
+    rowEncoder.writeValues(generator, row)
+    if (row.schema != null) {
+      generator.writeFieldName(SchemaLabel)
+      generator.writeRawValue(schemaJson)
+    }
+    generator.writeEndObject()
+  }
+
+  /**
+    * Reads the row whose object starts at the current token of `parser`, leaving the parser at its end. The row gets
+    * this serializer's schema if the serialized one carried a schema, which is skipped instead of parsed.
+    */
+  def deserialize(parser: JsonParser): Row = {
+    var values: Array[Any] = null
+    var includeSchema = false
+    expect(parser, JsonToken.START_OBJECT)
+    while (parser.nextToken() != JsonToken.END_OBJECT) {
+      val field = parser.getCurrentName
+      parser.nextToken()
+      field match {
+        case ValuesLabel => values = rowDecoder.readValues(parser)
+        case SchemaLabel =>
+          includeSchema = true
+          parser.skipChildren()
+        case _ => parser.skipChildren()
+      }
+    }
+    if (values == null) throw new IllegalStateException(s"Row without '$ValuesLabel': ${parser.getCurrentLocation}")
+    if (includeSchema) new GenericRowWithSchema(values, schema) else new GenericRow(values)
+  }
+
+  /**
+    * @return the `StreamedRow` JSON document of `row`, as streamed by the HTTP query endpoint.
+    */
+  def serializeStreamedRow(row: Row): Array[Byte] = {
+    val out = new ByteArrayOutputStream()
+    val generator = jsonFactory.createGenerator(out)
+    try {
+      generator.writeStartObject()
+      generator.writeFieldName(RowLabel)
+      serialize(row, generator)
+      generator.writeEndObject()
+    } finally generator.close()
+    out.toByteArray
+  }
+
+  /**
+    * Inverse of [[serializeStreamedRow]].
+    */
+  def deserializeStreamedRow(document: Array[Byte]): Row = {
+    val parser = jsonFactory.createParser(document)
+    try {
+      parser.nextToken()
+      readStreamedRow(parser)
+    } finally parser.close()
+  }
+
+  /**
+    * Reads a sequence of whitespace separated `StreamedRow` documents with a single parser.
+    */
+  def deserializeStreamedRows(documents: Array[Byte]): Seq[Row] = {
+    val parser = jsonFactory.createParser(documents)
+    try {
+      val rows = mutable.ArrayBuffer.empty[Row]
+      while (parser.nextToken() != null) rows += readStreamedRow(parser)
+      rows
+    } finally parser.close()
+  }
+
+  // Reads the document starting at the current token, leaving the parser at its end
+  private def readStreamedRow(parser: JsonParser): Row = {
+    expect(parser, JsonToken.START_OBJECT)
+    parser.nextToken()
+    if (parser.getCurrentName != RowLabel)
+      throw new IllegalStateException(s"Not a streamed row document: ${parser.getCurrentLocation}")
+    parser.nextToken()
+    val row = deserialize(parser)
+    parser.nextToken()
+    expect(parser, JsonToken.END_OBJECT)
+    row
+  }
+
+}
+
+object CompiledRowSerializer {
+
+  private val ValuesLabel = "values"
+  private val SchemaLabel = "schema"
+  private val MapLabel = "map"
+  private val KeysLabel = "keys"
+
+  private val jsonFactory = new JsonFactory()
+
+  private type Encoder = (JsonGenerator, Any) => Unit
+  private type Decoder = JsonParser => Any
+
+  private class StructEncoder(fieldEncoders: Array[Encoder]) {
+    def writeValues(generator: JsonGenerator, row: Row): Unit = {
+      generator.writeStartArray()
+      var i = 0
+      while (i < fieldEncoders.length) {
+        fieldEncoders(i)(generator, row.get(i))
+        i += 1
+      }
+      generator.writeEndArray()
+    }
+  }
+
+  private class StructDecoder(fieldDecoders: Array[Decoder]) {
+    def readValues(parser: JsonParser): Array[Any] = {
+      expect(parser, JsonToken.START_ARRAY)
+      val values = new Array[Any](fieldDecoders.length)
+      var i = 0
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        values(i) = fieldDecoders(i)(parser)
+        i += 1
+      }
+      values
+    }
+  }
+
+  private def structEncoder(schema: StructType): StructEncoder =
+    new StructEncoder(schema.fields.map(field => encoder(field.dataType)))
+
+  private def structDecoder(schema: StructType): StructDecoder =
+    new StructDecoder(schema.fields.map(field => decoder(field.dataType)))
+
+  private def expect(parser: JsonParser, token: JsonToken): Unit =
+    if (parser.getCurrentToken != token)
+      throw new IllegalStateException(s"Expected $token but found ${parser.getCurrentToken} at ${parser.getCurrentLocation}")
+
+  private def encoder(dataType: DataType): Encoder = {
+    val notNullEncoder = valueEncoder(dataType)
+    (generator, value) => if (value == null) generator.writeNull() else notNullEncoder(generator, value)
+  }
+
+  // Encodings brought in from `RowSerializer`, which took them from Spark's DataFrame JSON serializer
+  private def valueEncoder(dataType: DataType): Encoder = dataType match {
+    case NullType => (generator, _) => generator.writeNull()
+    case StringType => (generator, value) => generator.writeString(value.asInstanceOf[String])
+    case TimestampType => (generator, value) => generator.writeString(timestamp(value).toString)
+    case DateType => (generator, value) => generator.writeString(date(value).toString)
+    case IntegerType => (generator, value) => generator.writeNumber(value.asInstanceOf[Int])
+    case ShortType => (generator, value) => generator.writeNumber(value.asInstanceOf[Short].toInt)
+    case ByteType => (generator, value) => generator.writeNumber(value.asInstanceOf[Byte].toInt)
+    case LongType => (generator, value) => generator.writeNumber(value.asInstanceOf[Long])
+    case FloatType => (generator, value) => generator.writeNumber(value.asInstanceOf[Float].toDouble)
+    case DoubleType => (generator, value) => generator.writeNumber(value.asInstanceOf[Double])
+    case _: DecimalType => (generator, value) => generator.writeNumber(decimal(value).bigDecimal)
+    case BinaryType => (generator, value) => generator.writeString(new String(value.asInstanceOf[Array[Byte]]))
+    case BooleanType => (generator, value) => generator.writeBoolean(value.asInstanceOf[Boolean])
+    case udt: UserDefinedType[_] => valueEncoder(udt.sqlType)
+    case ArrayType(elementType, _) =>
+      val elementEncoder = encoder(elementType)
+      (generator, value) => writeArray(generator, elements(value), elementEncoder)
+    /* Maps are serialized as sub-objects holding the array of keys and the array of values */
+    case MapType(keyType, valueType, _) =>
+      val keyEncoder = encoder(keyType)
+      val mapValueEncoder = encoder(valueType)
+      (generator, value) =>
+        val (keys, values) = entries(value)
+        generator.writeStartObject()
+        generator.writeFieldName(MapLabel)
+        generator.writeStartObject()
+        generator.writeFieldName(KeysLabel)
+        writeArray(generator, keys, keyEncoder)
+        generator.writeFieldName(ValuesLabel)
+        writeArray(generator, values, mapValueEncoder)
+        generator.writeEndObject()
+        generator.writeEndObject()
+    case st: StructType =>
+      val nestedEncoder = structEncoder(st)
+      (generator, value) =>
+        generator.writeStartObject()
+        generator.writeFieldName(ValuesLabel)
+        nestedEncoder.writeValues(generator, value.asInstanceOf[Row])
+        generator.writeEndObject()
+    case other => throw new UnsupportedOperationException(s"Unsupported data type: $other")
+  }
+
+  private def decoder(dataType: DataType): Decoder = {
+    val notNullDecoder = valueDecoder(dataType)
+    parser => if (parser.getCurrentToken == JsonToken.VALUE_NULL) null else notNullDecoder(parser)
+  }
+
+  private def valueDecoder(dataType: DataType): Decoder = dataType match {
+    case NullType => _ => null
+    case StringType => _.getText
+    case TimestampType => parser => Timestamp.valueOf(parser.getText)
+    case DateType => parser => Date.valueOf(parser.getText)
+    case IntegerType => _.getIntValue
+    case ShortType => _.getShortValue
+    case ByteType => _.getByteValue
+    case LongType => _.getLongValue
+    case FloatType => _.getFloatValue
+    case DoubleType => _.getDoubleValue
+    case _: DecimalType => parser => Decimal(BigDecimal(parser.getDecimalValue))
+    case BinaryType => _.getText.getBytes
+    case BooleanType => _.getBooleanValue
+    case udt: UserDefinedType[_] => valueDecoder(udt.sqlType)
+    case ArrayType(elementType, _) =>
+      val elementDecoder = decoder(elementType)
+      parser => mutable.WrappedArray make readArray(parser, elementDecoder)
+    case MapType(keyType, valueType, _) =>
+      val keyDecoder = decoder(keyType)
+      val mapValueDecoder = decoder(valueType)
+      parser =>
+        var keys = Array.empty[Any]
+        var values = Array.empty[Any]
+        readObject(parser) { _ =>
+          readObject(parser) {
+            case KeysLabel => keys = readArray(parser, keyDecoder)
+            case ValuesLabel => values = readArray(parser, mapValueDecoder)
+            case _ => parser.skipChildren()
+          }
+        }
+        ArrayBasedMapDataNotDeprecated(keys, values)
+    case st: StructType =>
+      val nestedDecoder = structDecoder(st)
+      parser =>
+        var values = Array.empty[Any]
+        readObject(parser) {
+          case ValuesLabel => values = nestedDecoder.readValues(parser)
+          case _ => parser.skipChildren()
+        }
+        new GenericRowWithSchema(values, st)
+    case other => throw new UnsupportedOperationException(s"Unsupported data type: $other")
+  }
+
+  private def writeArray(generator: JsonGenerator, values: Seq[Any], elementEncoder: Encoder): Unit = {
+    generator.writeStartArray()
+    values foreach (elementEncoder(generator, _))
+    generator.writeEndArray()
+  }
+
+  private def readArray(parser: JsonParser, elementDecoder: Decoder): Array[Any] = {
+    expect(parser, JsonToken.START_ARRAY)
+    val values = mutable.ArrayBuilder.make[Any]
+    while (parser.nextToken() != JsonToken.END_ARRAY) values += elementDecoder(parser)
+    values.result()
+  }
+
+  /**
+    * Calls `readField` with the name of each field of the object starting at the current token, once the parser has
+    * been moved to the field value. `readField` must leave the parser at the end of that value.
+    */
+  private def readObject(parser: JsonParser)(readField: String => Unit): Unit = {
+    expect(parser, JsonToken.START_OBJECT)
+    while (parser.nextToken() != JsonToken.END_OBJECT) {
+      val field = parser.getCurrentName
+      parser.nextToken()
+      readField(field)
+    }
+  }
+
+  // Values are accepted both in their external and in their Catalyst internal representations
+
+  private def timestamp(value: Any): Timestamp = value match {
+    case ts: Timestamp => ts
+    case micros: Long => DateTimeUtils.toJavaTimestamp(micros)
+  }
+
+  private def date(value: Any): Date = value match {
+    case d: Date => d
+    case days: Int => DateTimeUtils.toJavaDate(days)
+  }
+
+  private def decimal(value: Any): BigDecimal = value match {
+    case d: Decimal => d.toBigDecimal
+    case d: java.math.BigDecimal => BigDecimal(d)
+    case d: BigDecimal => d
+    case d: Double => BigDecimal(d)
+    case f: Float => BigDecimal(f)
+  }
+
+  private def elements(value: Any): Seq[Any] = value match {
+    case array: ArrayDataNotDeprecated => array.array
+    case seq: Seq[_] => seq
+    case array: Array[_] => array
+  }
+
+  private def entries(value: Any): (Seq[Any], Seq[Any]) = value match {
+    case map: MapDataNotDeprecated => (map.keyArray().array, map.valueArray().array)
+    case map: collection.Map[_, _] => map.toSeq.unzip
+  }
+
+}
@@ -28,6 +28,7 @@ object SQLResultSerializerHelper {
     val ERRORMSG = "error"
     val SCHEMA   = "schema"
     val ROWS     = "rows"
+    val WARNINGS = "warnings"
   }
 }
 
@@ -37,7 +38,7 @@ object SQLResultSerializer extends CustomSerializer[SQLResult]( format => (
   {
     case JObject(JField(SUCCESS, JBool(false))::JField(ERRORMSG, JString(message))::_) =>
       ErrorSQLResult(message)
-    case JObject(JField(SUCCESS, JBool(true))::JField(SCHEMA, json_schema)::JField(ROWS, JArray(json_rows)) ::_) =>
+    case JObject(JField(SUCCESS, JBool(true))::JField(SCHEMA, json_schema)::JField(ROWS, JArray(json_rows)) ::json_rest) =>
 
       val schema = {
         implicit val formats = DefaultFormats + StructTypeSerializer
@@ -47,14 +48,16 @@ object SQLResultSerializer extends CustomSerializer[SQLResult]( format => (
       implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
 
       val rows = json_rows.map(_.extract[Row]).toArray
-      SuccessfulSQLResult(rows, schema)
+      val warnings = json_rest collectFirst { case JField(WARNINGS, json_warnings) => json_warnings.extract[Seq[String]] }
+      SuccessfulSQLResult(rows, schema, warnings getOrElse Seq.empty)
   },
   {
     case ErrorSQLResult(message, _) =>
       (SUCCESS -> false) ~ (ERRORMSG -> message)
-    case SuccessfulSQLResult(resultSet, schema) =>
+    case SuccessfulSQLResult(resultSet, schema, warnings) =>
       implicit val formats = DefaultFormats + StructTypeSerializer + RowSerializer(schema)
-      (SUCCESS -> true) ~ (SCHEMA -> Extraction.decompose(schema)) ~ (ROWS -> Extraction.decompose(resultSet))
+      val result = (SUCCESS -> true) ~ (SCHEMA -> Extraction.decompose(schema)) ~ (ROWS -> Extraction.decompose(resultSet))
+      if (warnings.isEmpty) result else result ~ (WARNINGS -> warnings.toList)
   }
   )
 )
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers.akka
+
+import java.io.NotSerializableException
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.UUID
+
+import akka.actor.ExtendedActorSystem
+import akka.serialization.{JavaSerializer, Serialization, SerializerWithStringManifest}
+import akka.util.{ByteString, ByteStringBuilder}
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.common.serializers.ColumnarBatchCodec
+import com.stratio.crossdata.common.{Command, CommandEnvelope, CommandEnvelopeBatch, RowsPageReply, SQLReply}
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types.{DataType, StructType}
+
+import scala.util.{Failure, Success, Try}
+
+object CrossdataAkkaSerializer {
+
+  val Identifier = 1917
+
+  val CommandEnvelopeManifest = "E"
+  val CommandEnvelopeBatchManifest = "B"
+  val SQLReplyManifest = "R"
+  val RowsPageReplyManifest = "P"
+  // Cursor pages whose rows cannot be serialized, sent as the SQLReply of an error result
+  val UnencodablePageManifest = "F"
+  val StructTypeManifest = "S"
+  val RowManifest = "W"
+
+  private val SuccessfulResultTag: Byte = 0
+  private val ErrorResultTag: Byte = 1
+
+}
+
+/**
+  * Akka serializer of the queries and results exchanged by drivers and servers. Rows are written with the schema-driven
+  * [[ColumnarBatchCodec]] instead of Java serialization, which makes results several times smaller and faster to
+  * (de)serialize. Commands, whose request id is assigned when they are created, and error causes keep being
+  * serialized by Java serialization.
+  */
+class CrossdataAkkaSerializer(system: ExtendedActorSystem) extends SerializerWithStringManifest {
+
+  import CrossdataAkkaSerializer._
+
+  private implicit val byteOrder = java.nio.ByteOrder.BIG_ENDIAN
+
+  private lazy val javaSerializer = new JavaSerializer(system)
+
+  /* Whether a page is sent as such or as an error depends on its rows being encodable, which is known once they are
+   * encoded. Akka asks for the manifest and for the binary of a message one after the other in the same thread, so the
+   * rows encoded by the first call are kept there for the second one, which releases them. */
+  private val encodedPageRows = new ThreadLocal[(RowsPageReply, Try[ByteString])]
+
+  override def identifier: Int = Identifier
+
+  override def manifest(o: AnyRef): String = o match {
+    case _: CommandEnvelope => CommandEnvelopeManifest
+    case _: CommandEnvelopeBatch => CommandEnvelopeBatchManifest
+    case _: SQLReply => SQLReplyManifest
+    case page: RowsPageReply => if (encodedRows(page).isSuccess) RowsPageReplyManifest else UnencodablePageManifest
+    case _: StructType => StructTypeManifest
+    case _: GenericRowWithSchema => RowManifest
+    case other => throw new IllegalArgumentException(s"Unexpected message ${other.getClass.getName}")
+  }
+
+  override def toBinary(o: AnyRef): Array[Byte] = {
+    val out = ByteString.newBuilder
+    o match {
+      case CommandEnvelope(command, Session(sessionId, clientRef)) =>
+        putBytes(javaSerializer.toBinary(command), out)
+        putUUID(sessionId, out)
+        putOption(clientRef map Serialization.serializedActorPath, out)(putString)
+
+      case CommandEnvelopeBatch(envelopes) =>
+        out.putInt(envelopes.length)
+        envelopes foreach (envelope => putBytes(toBinary(envelope), out))
+
+      case SQLReply(requestId, result) =>
+        putUUID(requestId, out)
+        putResult(requestId, result, out)
+
+      case page@RowsPageReply(requestId, _, _, lastPage, warnings) =>
+        putUUID(requestId, out)
+        encodedRows(page) match {
+          case Success(encoded) =>
+            out.putByte(SuccessfulResultTag)
+            out.append(encoded)
+            out.putByte(if (lastPage) 1 else 0)
+            putStrings(warnings, out)
+          case Failure(error) =>
+            putResult(requestId, unencodableResult(requestId, error), out)
+        }
+
+      case schema: StructType =>
+        putString(schema.json, out)
+
+      case row: GenericRowWithSchema =>
+        putRows(Seq(row), row.schema, out)
+
+      case other =>
+        throw new IllegalArgumentException(s"Unexpected message ${other.getClass.getName}")
+    }
+    out.result().toArray
+  }
+
+  override def fromBinary(bytes: Array[Byte], manifest: String): AnyRef = {
+    val in = ByteBuffer.wrap(bytes)
+    manifest match {
+      case CommandEnvelopeManifest =>
+        val command = javaSerializer.fromBinary(getBytes(in), None).asInstanceOf[Command]
+        val session = Session(getUUID(in), getOption(in)(getString) map system.provider.resolveActorRef)
+        CommandEnvelope(command, session)
+
+      case CommandEnvelopeBatchManifest =>
+        val envelopes = Seq.fill(in.getInt) {
+          fromBinary(getBytes(in), CommandEnvelopeManifest).asInstanceOf[CommandEnvelope]
+        }
+        CommandEnvelopeBatch(envelopes)
+
+      case SQLReplyManifest =>
+        SQLReply(getUUID(in), getResult(in))
+
+      case RowsPageReplyManifest =>
+        val requestId = getUUID(in)
+        in.get // Result tag
+        val (rows, schema) = getRows(in)
+        RowsPageReply(requestId, rows, schema, in.get != 0, getStrings(in))
+
+      case UnencodablePageManifest =>
+        SQLReply(getUUID(in), getResult(in))
+
+      case StructTypeManifest =>
+        getSchema(in)
+
+      case RowManifest =>
+        getRows(in)._1.head
+
+      case other =>
+        throw new NotSerializableException(s"Unexpected manifest $other")
+    }
+  }
+
+  /**
+    * Results whose rows cannot be serialized (e.g. values not matching the type of their column) are replaced by an
+    * error result so that the requester gets a reply instead of waiting for the one dropped by the transport.
+    */
+  private def putResult(requestId: UUID, result: SQLResult, out: ByteStringBuilder): Unit = result match {
+    case SuccessfulSQLResult(rows, schema, warnings) =>
+      encodedRows(rows, schema) match {
+        case Success(encoded) =>
+          out.putByte(SuccessfulResultTag)
+          out.append(encoded)
+          putStrings(warnings, out)
+        case Failure(error) =>
+          putResult(requestId, unencodableResult(requestId, error), out)
+      }
+    case ErrorSQLResult(message, cause) =>
+      out.putByte(ErrorResultTag)
+      putString(message, out)
+      putOption(cause map javaSerializer.toBinary, out)(putBytes)
+    case streamed =>
+      throw new NotSerializableException(s"${streamed.getClass.getName} can only be consumed locally")
+  }
+
+  private def getResult(in: ByteBuffer): SQLResult = in.get match {
+    case SuccessfulResultTag =>
+      val (rows, schema) = getRows(in)
+      SuccessfulSQLResult(rows, schema, getStrings(in))
+    case ErrorResultTag =>
+      val message = getString(in)
+      ErrorSQLResult(message, getOption(in)(getBytes) map (javaSerializer.fromBinary(_, None).asInstanceOf[Throwable]))
+    case tag =>
+      throw new NotSerializableException(s"Unexpected result type $tag")
+  }
+
+  private def encodedRows(rows: Seq[Row], schema: StructType): Try[ByteString] = Try {
+    val out = ByteString.newBuilder
+    putRows(rows, schema, out)
+    out.result()
+  }
+
+  private def encodedRows(page: RowsPageReply): Try[ByteString] =
+    Option(encodedPageRows.get) collect {
+      case (encodedPage, encoded) if encodedPage eq page =>
+        encodedPageRows.remove()
+        encoded
+    } getOrElse {
+      val encoded = encodedRows(page.rows, page.schema)
+      encodedPageRows.set(page -> encoded)
+      encoded
+    }
+
+  private def unencodableResult(requestId: UUID, error: Throwable): ErrorSQLResult = {
+    system.log.error(error, s"Unable to serialize the result of the request $requestId")
+    // The cause is not sent since it might hold the value which could not be serialized
+    ErrorSQLResult(s"Unable to serialize the result: ${error.getMessage}")
+  }
+
+  // Rows are preceded by their schema, which drives their encoding
+  private def putRows(rows: Seq[Row], schema: StructType, out: ByteStringBuilder): Unit = {
+    putString(schema.json, out)
+    out.append(new ColumnarBatchCodec(schema).encode(rows))
+  }
+
+  private def getRows(in: ByteBuffer): (Array[Row], StructType) = {
+    val schema = getSchema(in)
+    (new ColumnarBatchCodec(schema).decode(in).toArray, schema)
+  }
+
+  private def getSchema(in: ByteBuffer): StructType = DataType.fromJson(getString(in)).asInstanceOf[StructType]
+
+  private def putBytes(bytes: Array[Byte], out: ByteStringBuilder): Unit = {
+    out.putInt(bytes.length)
+    out.putBytes(bytes)
+  }
+
+  private def getBytes(in: ByteBuffer): Array[Byte] = {
+    val bytes = new Array[Byte](in.getInt)
+    in.get(bytes)
+    bytes
+  }
+
+  private def putString(str: String, out: ByteStringBuilder): Unit = putBytes(str.getBytes(StandardCharsets.UTF_8), out)
+
+  private def getString(in: ByteBuffer): String = new String(getBytes(in), StandardCharsets.UTF_8)
+
+  private def putStrings(strs: Seq[String], out: ByteStringBuilder): Unit = {
+    out.putInt(strs.length)
+    strs foreach (putString(_, out))
+  }
+
+  private def getStrings(in: ByteBuffer): Seq[String] = Seq.fill(in.getInt)(getString(in))
+
+  private def putUUID(uuid: UUID, out: ByteStringBuilder): Unit = {
+    out.putLong(uuid.getMostSignificantBits)
+    out.putLong(uuid.getLeastSignificantBits)
+  }
+
+  private def getUUID(in: ByteBuffer): UUID = new UUID(in.getLong, in.getLong)
+
+  private def putOption[T](value: Option[T], out: ByteStringBuilder)(put: (T, ByteStringBuilder) => Unit): Unit =
+    value match {
+      case Some(v) =>
+        out.putByte(1)
+        put(v, out)
+      case None =>
+        out.putByte(0)
+    }
+
+  private def getOption[T](in: ByteBuffer)(get: ByteBuffer => T): Option[T] =
+    if (in.get != 0) Some(get(in)) else None
+
+}
@@ -19,16 +19,19 @@ package com.stratio.crossdata.common
 
 import java.util.UUID
 
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
+import akka.stream.scaladsl.Source
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SQLResult, StreamedSuccessfulSQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.serializers.CrossdataCommonSerializer
 import com.stratio.crossdata.test.BaseXDTest
 import org.apache.spark.sql.Row
-import org.apache.spark.sql.types.StructType
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.json4s.Extraction
 import org.junit.runner.RunWith
 import org.scalatest.junit.JUnitRunner
 import org.scalatest.mock.MockitoSugar
 
 @RunWith(classOf[JUnitRunner])
-class SQLResultSpec extends BaseXDTest  with MockitoSugar{
+class SQLResultSpec extends BaseXDTest  with MockitoSugar with CrossdataCommonSerializer {
 
   "An error result" should "have an empty result" in {
     val error = ErrorSQLResult("message")
@@ -54,4 +57,25 @@ class SQLResultSpec extends BaseXDTest  with MockitoSugar{
     hasError should be (false)
   }
 
+  it should "keep its warnings when it is serialized" in {
+
+    val schema = StructType(Seq(StructField("id", IntegerType)))
+    val result = SuccessfulSQLResult(Array(Row(1)), schema, Seq("limited to 1 row"))
+
+    val deserialized = Extraction.decompose(result).extract[SQLResult]
+
+    deserialized.warnings shouldBe Seq("limited to 1 row")
+    deserialized.resultSet shouldBe Array(Row(1))
+  }
+
+  "A streamed result" should "collect all its rows into the result set" in {
+
+    val schema = StructType(Seq(StructField("id", IntegerType)))
+    val rows = (1 to 100) map (Row(_))
+    val result = StreamedSuccessfulSQLResult(Source(rows), schema)
+
+    result.resultSet shouldBe rows.toArray
+    result.resultSet shouldBe rows.toArray
+  }
+
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.sql.{Date, Timestamp}
+
+import akka.util.ByteString
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ColumnarBatchCodecSpec extends BaseXDTest {
+
+  val schema = StructType(List(
+    StructField("int", IntegerType, true),
+    StructField("long", LongType, true),
+    StructField("string", StringType, true),
+    StructField("boolean", BooleanType, true),
+    StructField("double", DoubleType, true),
+    StructField("float", FloatType, true),
+    StructField("smallint", ShortType, true),
+    StructField("tinyint", ByteType, true),
+    StructField("decimal", DecimalType(10, 2), true),
+    StructField("date", DateType, true),
+    StructField("timestamp", TimestampType, true),
+    StructField("binary", BinaryType, true),
+    StructField("arrayint", ArrayType(IntegerType, true), true)
+  ))
+
+  val timestamp = {
+    val ts = Timestamp.valueOf("2016-11-21 10:15:30")
+    ts.setNanos(123456789)
+    ts
+  }
+
+  val rows = Seq(
+    Row(1, 10L, "a", true, 1.5, 2.5f, 3.toShort, 4.toByte, new java.math.BigDecimal("12.34"),
+      Date.valueOf("2016-11-21"), timestamp, Array[Byte](1, 2, 3), Seq(1, 2)),
+    Row(null, null, null, null, null, null, null, null, null, null, null, null, null),
+    Row(2, 20L, "ñandú", false, -1.0, 0.0f, (-3).toShort, (-4).toByte, new java.math.BigDecimal("-0.01"),
+      Date.valueOf("1970-01-01"), new Timestamp(0), Array.empty[Byte], Seq.empty[Int])
+  )
+
+  "ColumnarBatchCodec" should "encode and decode the schema of the result" in {
+    val frame = ColumnarBatchCodec.encodeSchema(schema)
+    ColumnarBatchCodec.decodeSchema(frame) shouldBe Some(schema)
+    ColumnarBatchCodec.decodeSchema(new ColumnarBatchCodec(schema).encode(rows)) shouldBe None
+  }
+
+  it should "encode and decode record batches keeping nulls" in {
+    val codec = new ColumnarBatchCodec(schema)
+    val decoded = codec.decode(codec.encode(rows))
+
+    decoded should have length rows.length
+    (decoded zip rows) foreach { case (decodedRow, row) =>
+      for (i <- schema.fields.indices) (decodedRow.get(i), row.get(i)) match {
+        case (decodedBytes: Array[Byte], bytes: Array[Byte]) => decodedBytes shouldBe bytes
+        case (decodedValue, value) => decodedValue shouldBe value
+      }
+    }
+    decoded.head.schema shouldBe schema
+  }
+
+  it should "encode complex values as the JSON documents do" in {
+    val nestedSchema = StructType(StructField("name", StringType) :: StructField("age", IntegerType) :: Nil)
+    val complexSchema = StructType(List(
+      StructField("map", MapType(StringType, LongType)),
+      StructField("struct", nestedSchema),
+      StructField("arraystruct", ArrayType(nestedSchema))
+    ))
+    val codec = new ColumnarBatchCodec(complexSchema)
+
+    val Seq(decoded) = codec.decode(codec.encode(Seq(
+      Row(Map("a" -> 1L, "b" -> 2L), Row("ana", 30), Seq(Row("bob", 40), Row("eve", null)))
+    )))
+
+    val map = decoded.get(0).asInstanceOf[org.apache.spark.sql.catalyst.util.MapData]
+    map.keyArray().array shouldBe Seq("a", "b")
+    map.valueArray().array shouldBe Seq(1L, 2L)
+    decoded.getStruct(1).toSeq shouldBe Seq("ana", 30)
+    decoded.getSeq[Row](2).map(_.toSeq) shouldBe Seq(Seq("bob", 40), Seq("eve", null))
+  }
+
+  it should "prefix every frame with the length of its content" in {
+    val frame = new ColumnarBatchCodec(schema).encode(rows)
+    frame.iterator.getInt(java.nio.ByteOrder.BIG_ENDIAN) shouldBe frame.length - ColumnarBatchCodec.FrameLengthFieldSize
+  }
+
+  it should "encode empty batches" in {
+    val codec = new ColumnarBatchCodec(schema)
+    codec.decode(codec.encode(Seq.empty)) shouldBe empty
+  }
+
+  it should "convert the values of other types to the type of their column" in {
+    val mixedSchema = StructType(List(
+      StructField("int", IntegerType), StructField("double", DoubleType), StructField("date", DateType),
+      StructField("timestamp", TimestampType)
+    ))
+    val codec = new ColumnarBatchCodec(mixedSchema)
+
+    val Seq(decoded) = codec.decode(codec.encode(Seq(Row(7L, 2, 0, 0L))))
+
+    decoded.toSeq shouldBe Seq(7, 2.0, Date.valueOf("1970-01-01"), new Timestamp(0))
+  }
+
+  it should "reject the values which cannot be converted to the type of their column" in {
+    val codec = new ColumnarBatchCodec(StructType(StructField("int", IntegerType) :: Nil))
+    an [IllegalArgumentException] should be thrownBy codec.encode(Seq(Row("seven")))
+  }
+
+  it should "be more compact than the JSON documents" in {
+    val codec = new ColumnarBatchCodec(StructType(StructField("id", LongType) :: StructField("name", StringType) :: Nil))
+    val batch = (1 to 1000) map (i => Row(i.toLong, s"name$i"))
+    val json = batch.map(row => s"""{"values":[${row.getLong(0)},"${row.getString(1)}"]}""").mkString("\n")
+    codec.encode(batch).length should be < ByteString(json).length
+  }
+
+}
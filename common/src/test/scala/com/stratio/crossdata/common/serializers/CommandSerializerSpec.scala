@@ -34,6 +34,8 @@ class CommandSerializerSpec extends XDSerializationTest[Command] with CrossdataC
     TestCase("marshall & unmarshall a SQLCommand 0", SQLCommand("select * from highschool")),
     TestCase("marshall & unmarshall a SQLCommand 1", SQLCommand("select * from highschool", flattenResults = true)),
     TestCase("marshall & unmarshall a SQLCommand 2", SQLCommand("select * from highschool", timeout = Some(5 seconds))),
+    TestCase("marshall & unmarshall a SQLCommand 3", SQLCommand("select * from highschool", priority = Some(QueryPriority.Batch))),
+    TestCase("marshall & unmarshall a SQLCommand 4", SQLCommand("select * from highschool", fetchSize = Some(100))),
     TestCase("marshall & unmarshall an OpenSessionCommand", OpenSessionCommand("usr")),
     TestCase("marshall & unmarshall an CloseSessionCommand", CloseSessionCommand()),
     TestCase("marshall & unmarshall an CancelQueryExecution", CancelQueryExecution(UUID.randomUUID()))
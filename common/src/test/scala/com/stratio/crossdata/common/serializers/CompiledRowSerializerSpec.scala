@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers
+
+import java.io.StringWriter
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.stratio.crossdata.common.result.{InternalStreamedSuccessfulSQLResult, StreamedRow}
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.catalyst.util.ArrayBasedMapData
+import org.apache.spark.sql.types._
+import org.json4s.Extraction
+import org.json4s.jackson.JsonMethods.{compact, parse, render}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.mutable.WrappedArray
+
+@RunWith(classOf[JUnitRunner])
+class CompiledRowSerializerSpec extends BaseXDTest with CrossdataCommonSerializer {
+
+  val structType = StructType(StructField("field1", IntegerType) :: StructField("field2", StringType) :: Nil)
+
+  val schema = StructType(List(
+    StructField("int", IntegerType),
+    StructField("long", LongType),
+    StructField("string", StringType),
+    StructField("boolean", BooleanType),
+    StructField("double", DoubleType),
+    StructField("float", FloatType),
+    StructField("decimal", DecimalType(10, 2)),
+    StructField("date", DateType),
+    StructField("timestamp", TimestampType),
+    StructField("smallint", ShortType),
+    StructField("tinyint", ByteType),
+    StructField("binary", BinaryType),
+    StructField("null", StringType),
+    StructField("arraystring", ArrayType(StringType)),
+    StructField("maptimestampint", MapType(TimestampType, IntegerType)),
+    StructField("struct", structType),
+    StructField("arraystruct", ArrayType(structType))
+  ))
+
+  val values: Array[Any] = Array(
+    2147483647,
+    9223372036854775807L,
+    "string \"quoted\"",
+    true,
+    3.5,
+    3.0F,
+    Decimal(BigDecimal("12.34")),
+    java.sql.Date.valueOf("2015-11-30"),
+    java.sql.Timestamp.valueOf("2015-11-30 10:00:00.123"),
+    12.toShort,
+    (-3).toByte,
+    "abcde".getBytes,
+    null,
+    WrappedArray make Array("hello", null, "world"),
+    ArrayBasedMapData(Map(java.sql.Timestamp.valueOf("2015-11-30 10:00:00.0") -> 25)),
+    new GenericRowWithSchema(Array(99, "ninety-nine"), structType),
+    WrappedArray make Array(
+      new GenericRowWithSchema(Array(1, "one"), structType),
+      new GenericRowWithSchema(Array(2, null), structType)
+    )
+  )
+
+  val rowWithSchema = new GenericRowWithSchema(values, schema)
+  val rowWithNoSchema = Row.fromSeq(values)
+
+  val serializer = new CompiledRowSerializer(schema)
+
+  val jsonFactory = new JsonFactory()
+
+  def serialize(row: Row): String = {
+    val out = new StringWriter()
+    val generator = jsonFactory.createGenerator(out)
+    serializer.serialize(row, generator)
+    generator.close()
+    out.toString
+  }
+
+  def deserialize(json: String): Row = {
+    val parser = jsonFactory.createParser(json)
+    parser.nextToken()
+    serializer.deserialize(parser)
+  }
+
+  "A CompiledRowSerializer" should "marshall & unmarshall a row with schema" in {
+    val deserialized = deserialize(serialize(rowWithSchema))
+    deserialized shouldEqual rowWithSchema
+    deserialized.schema shouldBe schema
+  }
+
+  it should "marshall & unmarshall a row with no schema" in {
+    val deserialized = deserialize(serialize(rowWithNoSchema))
+    deserialized shouldEqual rowWithNoSchema
+    deserialized.schema shouldBe null
+  }
+
+  it should "produce documents which can be read by RowSerializer" in {
+    val formats = json4sJacksonFormats + RowSerializer(schema)
+    val extracted = parse(serialize(rowWithSchema), false).extract[Row](formats, implicitly[Manifest[Row]])
+    extracted shouldEqual rowWithSchema
+    extracted.schema shouldBe schema
+  }
+
+  it should "read the documents produced by RowSerializer" in {
+    val formats = json4sJacksonFormats + RowSerializer(schema)
+    val rowWithoutArrays = new GenericRowWithSchema(values.take(13), StructType(schema.take(13)))
+    val rowSerializerDocument = compact(render(Extraction.decompose(rowWithoutArrays)(formats)))
+
+    val deserialized = new CompiledRowSerializer(rowWithoutArrays.schema).deserialize {
+      val parser = jsonFactory.createParser(rowSerializerDocument)
+      parser.nextToken()
+      parser
+    }
+    deserialized shouldEqual rowWithoutArrays
+  }
+
+  it should "accept values in their Catalyst internal representation" in {
+    val internalSchema = StructType(schema.filter(field => Set("date", "timestamp", "decimal") contains field.name))
+    val internalRow = Row(Decimal(12.5), 16404, 1448877600000000L)
+
+    val deserialized = new CompiledRowSerializer(internalSchema).deserializeStreamedRow(
+      new CompiledRowSerializer(internalSchema).serializeStreamedRow(internalRow)
+    )
+
+    deserialized shouldEqual Row(Decimal(12.5), java.sql.Date.valueOf("2014-11-30"), new java.sql.Timestamp(1448877600000L))
+  }
+
+  it should "produce streamed row documents compatible with StreamedRowSerializer" in {
+    val formats = json4sJacksonFormats + new StreamedRowSerializer(schema)
+    val document = new String(serializer.serializeStreamedRow(rowWithSchema))
+
+    val extracted = parse(document, false).extract[InternalStreamedSuccessfulSQLResult](
+      formats, implicitly[Manifest[InternalStreamedSuccessfulSQLResult]]
+    )
+    extracted shouldBe StreamedRow(rowWithSchema)
+  }
+
+  it should "read sequences of streamed row documents" in {
+    val rows = Seq(rowWithSchema, rowWithNoSchema, rowWithSchema)
+    val documents = rows.map(row => new String(serializer.serializeStreamedRow(row))).mkString("\n")
+
+    serializer.deserializeStreamedRows(documents.getBytes) shouldEqual rows
+    serializer.deserializeStreamedRows(Array.empty[Byte]) shouldBe empty
+  }
+
+}
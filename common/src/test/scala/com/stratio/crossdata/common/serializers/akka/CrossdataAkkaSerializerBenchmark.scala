@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers.akka
+
+import java.sql.Timestamp
+import java.util.UUID
+
+import akka.actor.{ActorSystem, ExtendedActorSystem}
+import akka.serialization.{JavaSerializer, Serializer}
+import com.stratio.crossdata.common.SQLReply
+import com.stratio.crossdata.common.result.SuccessfulSQLResult
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types._
+
+/**
+  * Compares the size and (de)serialization time of a [[SQLReply]] under Akka's default Java serialization and
+  * under [[CrossdataAkkaSerializer]].
+  *
+  * Usage: CrossdataAkkaSerializerBenchmark [rows] [iterations]
+  */
+object CrossdataAkkaSerializerBenchmark {
+
+  val schema = StructType(Seq(
+    StructField("id", LongType),
+    StructField("name", StringType),
+    StructField("age", IntegerType),
+    StructField("score", DoubleType),
+    StructField("active", BooleanType),
+    StructField("updated", TimestampType)
+  ))
+
+  def result(rows: Int): SQLReply = {
+    val resultSet = Array.tabulate[Row](rows) { i =>
+      new GenericRowWithSchema(
+        Array(i.toLong, s"name-$i", i % 100, i * 0.5, i % 2 == 0, new Timestamp(1480000000000L + i)),
+        schema
+      )
+    }
+    SQLReply(UUID.randomUUID(), SuccessfulSQLResult(resultSet, schema))
+  }
+
+  def main(args: Array[String]): Unit = {
+    val rows = args.headOption.map(_.toInt).getOrElse(100000)
+    val iterations = args.lift(1).map(_.toInt).getOrElse(10)
+
+    val system = ActorSystem("CrossdataAkkaSerializerBenchmark").asInstanceOf[ExtendedActorSystem]
+    try {
+      val reply = result(rows)
+      println(s"SQLReply with $rows rows, $iterations iterations after warming up")
+      println(f"${"serializer"}%-12s ${"bytes"}%12s ${"serialize (ms)"}%16s ${"deserialize (ms)"}%18s")
+      Seq(
+        "java" -> new JavaSerializer(system),
+        "crossdata" -> new CrossdataAkkaSerializer(system)
+      ) foreach { case (name, serializer) =>
+        val (bytes, serializeMillis, deserializeMillis) = measure(serializer, reply, iterations)
+        println(f"$name%-12s $bytes%12d $serializeMillis%16.2f $deserializeMillis%18.2f")
+      }
+    } finally system.terminate()
+  }
+
+  private def measure(serializer: Serializer, message: AnyRef, iterations: Int): (Int, Double, Double) = {
+    val manifest = serializer match {
+      case withManifest: CrossdataAkkaSerializer => withManifest.manifest(message)
+      case _ => ""
+    }
+    def serialize(): Array[Byte] = serializer.toBinary(message)
+    def deserialize(bytes: Array[Byte]): AnyRef = serializer match {
+      case withManifest: CrossdataAkkaSerializer => withManifest.fromBinary(bytes, manifest)
+      case _ => serializer.fromBinary(bytes, None)
+    }
+
+    // Warm up
+    (1 to iterations) foreach (_ => deserialize(serialize()))
+
+    var bytes = Array.empty[Byte]
+    val serializeMillis = averageMillis(iterations)(bytes = serialize())
+    val deserializeMillis = averageMillis(iterations)(deserialize(bytes))
+    (bytes.length, serializeMillis, deserializeMillis)
+  }
+
+  private def averageMillis(iterations: Int)(f: => Any): Double = {
+    val start = System.nanoTime()
+    (1 to iterations) foreach (_ => f)
+    (System.nanoTime() - start) / iterations / 1e6
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.common.serializers.akka
+
+import java.util.UUID
+
+import akka.actor.{ActorSystem, ExtendedActorSystem}
+import akka.testkit.{TestKit, TestProbe}
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.common.{CloseCursor, CommandEnvelope, CommandEnvelopeBatch, RowsPageReply, SQLCommand, SQLReply}
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.{BeforeAndAfterAll, Inside}
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class CrossdataAkkaSerializerSpec extends BaseXDTest with BeforeAndAfterAll with Inside {
+
+  lazy val system = ActorSystem("CrossdataAkkaSerializerSpec")
+  lazy val serializer = new CrossdataAkkaSerializer(system.asInstanceOf[ExtendedActorSystem])
+
+  val schema = StructType(Seq(
+    StructField("id", LongType),
+    StructField("name", StringType),
+    StructField("score", DoubleType),
+    StructField("tags", ArrayType(StringType))
+  ))
+
+  val rows: Array[Row] = Array(
+    new GenericRowWithSchema(Array(1L, "a", 1.5, Seq("x", "y")), schema),
+    new GenericRowWithSchema(Array(2L, null, 0.0, Seq.empty[String]), schema)
+  )
+
+  override protected def afterAll(): Unit = TestKit.shutdownActorSystem(system)
+
+  def roundTrip[T <: AnyRef](message: T): T =
+    serializer.fromBinary(serializer.toBinary(message), serializer.manifest(message)).asInstanceOf[T]
+
+  "CrossdataAkkaSerializer" should "serialize successful results" in {
+    val reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(rows, schema, Seq("LIMIT 1000 added")))
+    val deserialized = roundTrip(reply)
+
+    deserialized.requestId shouldBe reply.requestId
+    deserialized.sqlResult.schema shouldBe schema
+    deserialized.sqlResult.resultSet shouldBe rows
+    deserialized.sqlResult.warnings shouldBe Seq("LIMIT 1000 added")
+  }
+
+  it should "serialize error results" in {
+    val reply = SQLReply(UUID.randomUUID(), ErrorSQLResult("Table not found", Some(new RuntimeException("cause"))))
+    inside(roundTrip(reply)) { case SQLReply(reply.requestId, ErrorSQLResult("Table not found", Some(cause))) =>
+      cause.getMessage shouldBe "cause"
+    }
+  }
+
+  it should "replace the results which cannot be serialized by an error result" in {
+    val unencodable = Array[Row](new GenericRowWithSchema(Array("one", "a", 1.5, Seq.empty[String]), schema))
+    val reply = SQLReply(UUID.randomUUID(), SuccessfulSQLResult(unencodable, schema))
+
+    inside(roundTrip(reply)) { case SQLReply(reply.requestId, ErrorSQLResult(message, None)) =>
+      message should startWith("Unable to serialize the result")
+    }
+  }
+
+  it should "replace the cursor pages which cannot be serialized by an error result" in {
+    val unencodable = Array[Row](new GenericRowWithSchema(Array("one", "a", 1.5, Seq.empty[String]), schema))
+    val page = RowsPageReply(UUID.randomUUID(), unencodable, schema, lastPage = false)
+
+    val bytes = serializer.toBinary(page)
+    val manifest = serializer.manifest(page)
+
+    manifest shouldBe CrossdataAkkaSerializer.UnencodablePageManifest
+    inside(serializer.fromBinary(bytes, manifest)) { case SQLReply(page.requestId, ErrorSQLResult(message, None)) =>
+      message should startWith("Unable to serialize the result")
+    }
+  }
+
+  it should "serialize cursor pages" in {
+    val page = RowsPageReply(UUID.randomUUID(), rows, schema, lastPage = true)
+    serializer.manifest(page) shouldBe CrossdataAkkaSerializer.RowsPageReplyManifest
+    val deserialized = roundTrip(page)
+    deserialized.requestId shouldBe page.requestId
+    deserialized.rows shouldBe rows
+    deserialized.schema shouldBe schema
+    deserialized.lastPage shouldBe true
+    deserialized.warnings shouldBe empty
+  }
+
+  it should "serialize commands keeping their request ids and client references" in {
+    val probe = TestProbe()(system)
+    val envelope = CommandEnvelope(
+      SQLCommand("select * from t", fetchSize = Some(100)),
+      Session(UUID.randomUUID(), Some(probe.ref))
+    )
+    val deserialized = roundTrip(envelope)
+
+    deserialized shouldBe envelope
+    deserialized.cmd.requestId shouldBe envelope.cmd.requestId
+  }
+
+  it should "serialize batches of commands" in {
+    val session = Session(UUID.randomUUID(), None)
+    val batch = CommandEnvelopeBatch(Seq(
+      CommandEnvelope(SQLCommand("select 1"), session),
+      CommandEnvelope(CloseCursor(UUID.randomUUID()), session)
+    ))
+    val deserialized = roundTrip(batch)
+
+    deserialized shouldBe batch
+    deserialized.envelopes.map(_.cmd.requestId) shouldBe batch.envelopes.map(_.cmd.requestId)
+  }
+
+  it should "serialize schemas and rows" in {
+    roundTrip(schema) shouldBe schema
+    roundTrip(rows.head) shouldBe rows.head
+  }
+
+}
@@ -15,6 +15,8 @@
  */
 package com.stratio.crossdata.connector
 
+import java.io.Closeable
+
 import org.apache.spark.annotation.DeveloperApi
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql.{Row, SQLContext}
@@ -36,6 +38,75 @@ trait NativeScan extends PushDownable {
   def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]]
   def buildScan(optimizedLogicalPlan: LogicalPlan, sqlText: String): Option[Array[Row]] =
       buildScan(optimizedLogicalPlan)
+
+  /**
+   * Incremental version of `buildScan`: rows are fetched from the datasource as the returned iterator
+   * is consumed so the whole result never needs to be materialized.
+   * Datasources able to page their native results should override these methods, by default
+   * the materialized result is wrapped.
+   *
+   * @return an iterator which must be closed if it is not completely consumed, None if the
+   *         datasource cannot resolve the plan natively.
+   */
+  def buildIteratorScan(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.RowIterator] =
+    buildScan(optimizedLogicalPlan) map (rows => NativeScan.ResultIterator(rows.iterator))
+  def buildIteratorScan(optimizedLogicalPlan: LogicalPlan, sqlText: String): Option[NativeScan.RowIterator] =
+    buildScan(optimizedLogicalPlan, sqlText) map (rows => NativeScan.ResultIterator(rows.iterator))
+
+  /**
+   * Estimates the cost of resolving the plan natively. The estimate is used to discard the native execution
+   * when running the query on Spark is expected to be faster.
+   *
+   * @return None if the datasource cannot estimate the cost, so the native execution is always preferred.
+   */
+  def estimateNativeCost(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.CostEstimate] = None
+}
+
+object NativeScan {
+
+  type RowIterator = ResultIterator[Row]
+
+  /**
+   * Estimated cost of a native execution.
+   *
+   * @param rowsRead number of rows the datasource has to read to resolve the plan.
+   * @param rowsReturned number of rows sent back from the datasource.
+   * @param fullScan whether the datasource has to scan the whole table, e.g. filtering by non-key columns.
+   */
+  case class CostEstimate(rowsRead: Long, rowsReturned: Long, fullScan: Boolean)
+
+  /**
+   * Iterator over the results of a native execution which releases the datasource resources (cursors,
+   * connections, sessions...) as soon as it gets exhausted or explicitly closed.
+   */
+  class ResultIterator[+T] private(underlying: Iterator[T], release: () => Unit) extends Iterator[T] with Closeable {
+
+    @volatile private var closed = false
+
+    override def hasNext: Boolean = !closed && {
+      val more = underlying.hasNext
+      if (!more) close()
+      more
+    }
+
+    override def next(): T = underlying.next()
+
+    def mapResults[U](f: T => U): ResultIterator[U] = new ResultIterator(underlying map f, () => close())
+
+    override def close(): Unit = synchronized {
+      if (!closed) {
+        closed = true
+        release()
+      }
+    }
+
+  }
+
+  object ResultIterator {
+    def apply[T](underlying: Iterator[T], release: () => Unit = () => ()): ResultIterator[T] =
+      new ResultIterator(underlying, release)
+  }
+
 }
 
 /**
@@ -32,10 +32,11 @@ import com.typesafe.config.ConfigException
 import com.typesafe.config.{Config, ConfigFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.sql.catalyst.TableIdentifier
-import org.apache.spark.sql.catalyst.analysis.{Analyzer, CleanupAliases, ComputeCurrentTime, DistinctAggregationRewriter, FunctionRegistry, HiveTypeCoercion, ResolveUpCast}
+import org.apache.spark.sql.catalyst.analysis.{Analyzer, UnresolvedRelation, CleanupAliases, ComputeCurrentTime, DistinctAggregationRewriter, FunctionRegistry, HiveTypeCoercion, ResolveUpCast}
 import org.apache.spark.sql.catalyst.optimizer.Optimizer
-import org.apache.spark.sql.catalyst.plans.logical.{LocalRelation, LogicalPlan}
+import org.apache.spark.sql.catalyst.plans.logical.{InsertIntoTable, LocalRelation, LogicalPlan}
 import org.apache.spark.sql.crossdata.catalog.XDCatalog.{CrossdataApp, IndexIdentifier}
+import org.apache.spark.sql.crossdata.catalog.interfaces.XDCatalogCommon.RichTableIdentifier
 import org.apache.spark.sql.crossdata.catalog.interfaces.{XDCatalogCommon, XDPersistentCatalog, XDStreamingCatalog, XDTemporaryCatalog}
 import org.apache.spark.sql.crossdata.catalog.temporary.HashmapCatalog
 import org.apache.spark.sql.crossdata.catalog.utils.CatalogUtils
@@ -47,11 +48,12 @@ import org.apache.spark.sql.crossdata.catalyst.parser.{CrossdataParserDialect, X
 import org.apache.spark.sql.crossdata.catalyst.planning.{ExtendedDataSourceStrategy, XDStrategies}
 import org.apache.spark.sql.crossdata.catalyst.{ExtractNativeUDFs, NativeUDF, XDFunctionRegistry}
 import org.apache.spark.sql.crossdata.config.CoreConfig
-import org.apache.spark.sql.crossdata.execution.XDQueryExecution
+import org.apache.spark.sql.crossdata.execution.{ExecutionCostModel, NativeResultCache, XDQueryExecution}
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
 import org.apache.spark.sql.crossdata.launcher.SparkJobLauncher
 import org.apache.spark.sql.crossdata.user.functions.GroupConcat
 import org.apache.spark.sql.execution.{ExtractPythonUDFs, SparkSQLParser}
-import org.apache.spark.sql.execution.datasources.{PreInsertCastAndRename, PreWriteCheck}
+import org.apache.spark.sql.execution.datasources.{CreateTableUsingAsSelect, PreInsertCastAndRename, PreWriteCheck}
 import org.apache.spark.sql.types.StructType
 import org.apache.spark.sql.{DataFrame, Row, SQLConf, SQLContext, Strategy, execution => sparkexecution}
 import org.apache.spark.util.Utils
@@ -100,10 +102,22 @@ class XDContext protected(@transient val sc: SparkContext,
       CoreConfig.DefaultCatalogIdentifier
   }.get
 
+  override protected[sql] def parseSql(sql: String): LogicalPlan =
+    XDMetricsSource.timePhase(XDMetricsSource.Phase.Parse)(super.parseSql(sql))
+
   override protected[sql] def executeSql(sql: String): org.apache.spark.sql.execution.QueryExecution = executePlan(parseSql(sql))
 
-  override protected[sql] def executePlan(plan: LogicalPlan): sparkexecution.QueryExecution =
+  override protected[sql] def executePlan(plan: LogicalPlan): sparkexecution.QueryExecution = {
+    // Writes are planned here both when they come from SQL statements and from the DataFrame API
+    plan match {
+      case InsertIntoTable(UnresolvedRelation(tableIdent, _), _, _, _, _) =>
+        nativeResultCache.invalidate(tableIdent.normalize(conf))
+      case CreateTableUsingAsSelect(tableIdent, _, _, _, _, _, _) =>
+        nativeResultCache.invalidate(tableIdent.normalize(conf))
+      case _ =>
+    }
     new XDQueryExecution(this, plan, catalogIdentifier)
+  }
 
   override protected[sql] lazy val conf: SQLConf =
     userCoreConfig.map { coreConfig =>
@@ -126,6 +140,12 @@ class XDContext protected(@transient val sc: SparkContext,
   @transient
   protected[crossdata] lazy val securityManager: Option[CrossdataSecurityManager] = None
 
+  @transient
+  protected[crossdata] lazy val nativeResultCache: NativeResultCache = NativeResultCache(conf)
+
+  @transient
+  protected[crossdata] lazy val executionCostModel: ExecutionCostModel = ExecutionCostModel(self, conf)
+
 
   @transient
   override protected[sql] lazy val analyzer: Analyzer =
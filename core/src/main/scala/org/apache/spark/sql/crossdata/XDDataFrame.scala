@@ -30,7 +30,9 @@ import org.apache.spark.sql.crossdata.ExecutionType.ExecutionType
 import org.apache.spark.sql.crossdata.ExecutionType.Native
 import org.apache.spark.sql.crossdata.ExecutionType.Spark
 import org.apache.spark.sql.crossdata.XDDataFrame.findNativeQueryExecutor
+import org.apache.spark.sql.crossdata.XDSQLConf.fromSQLConf
 import org.apache.spark.sql.crossdata.exceptions.NativeExecutionException
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
 import org.apache.spark.sql.execution.QueryExecution
 import org.apache.spark.sql.execution.datasources.LogicalRelation
 import org.apache.spark.sql.types.ArrayType
@@ -92,6 +94,19 @@ private[sql] object XDDataFrame {
     }
   }
 
+  /**
+   * Name of the connector the logical plan reads from, used to tag the lifecycle metrics: the class name of its
+   * relations, `mixed` if it involves more than one kind of relation or `local` if it doesn't read any relation.
+   */
+  def connectorOf(logicalPlan: LogicalPlan): String = {
+    val relations = logicalPlan.collect { case LogicalRelation(relation, _) => relation.getClass.getSimpleName }.distinct
+    relations match {
+      case Seq() => "local"
+      case Seq(relation) => relation
+      case _ => "mixed"
+    }
+  }
+
 }
 
 /**
@@ -124,16 +139,47 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
     if (sqlContext.cacheManager.lookupCachedData(this).nonEmpty) {
       super.collect()
     } else {
-      val nativeQueryExecutor: Option[NativeScan] = findNativeQueryExecutor(queryExecution.optimizedPlan)
+      val nativeQueryExecutor: Option[NativeScan] = chooseNativeQueryExecutor()
+      if (nativeQueryExecutor.isEmpty) {
+        logInfo(s"Spark Query: ${queryExecution.simpleString}")
+      } else {
+        logInfo(s"Native query: ${queryExecution.simpleString}")
+      }
+      nativeQueryExecutor.flatMap { nativeScan =>
+        timeExecution(XDMetricsSource.NativeExecutionTag)(executeNativeQuery(nativeScan).map(_.toArray))
+      } getOrElse timeExecution(XDMetricsSource.SparkExecutionTag)(super.collect())
+    }
+  }
+
+  /**
+   * Returns an iterator over the [[Row]]s of this [[XDDataFrame]]. When the plan can be resolved natively,
+   * rows are pulled from the datasource as the iterator gets consumed so they are never held in memory at once.
+   * Otherwise, the result is collected unless [[XDSQLConf.IncrementalLocalIteratorKey]] is enabled: then Spark computes
+   * a partition each time the previous one has been consumed so the driver only holds one of them.
+   *
+   * The returned iterator is [[java.io.Closeable]] when it wraps a native execution: it should be closed
+   * if it is not completely consumed. The execution latency recorded for an iterator only covers the time
+   * taken to open it.
+   */
+  def toLocalIterator(): Iterator[Row] = {
+    if (sqlContext.cacheManager.lookupCachedData(this).nonEmpty) {
+      sparkLocalIterator
+    } else {
+      val nativeQueryExecutor: Option[NativeScan] = chooseNativeQueryExecutor()
       if (nativeQueryExecutor.isEmpty) {
         logInfo(s"Spark Query: ${queryExecution.simpleString}")
       } else {
         logInfo(s"Native query: ${queryExecution.simpleString}")
       }
-      nativeQueryExecutor.flatMap(executeNativeQuery).getOrElse(super.collect())
+      nativeQueryExecutor.flatMap { nativeScan =>
+        timeExecution(XDMetricsSource.NativeExecutionTag)(executeNativeQuery(nativeScan))
+      } getOrElse timeExecution(XDMetricsSource.SparkExecutionTag)(sparkLocalIterator)
     }
   }
 
+  private def sparkLocalIterator: Iterator[Row] =
+    if (sqlContext.conf.incrementalLocalIterator) rdd.toLocalIterator else super.collect().iterator
+
   def flattenedCollect(): Array[Row] = {
 
     def flattenProjectedColumns(exp: Expression, prev: List[String] = Nil): (List[String], Boolean) = exp match {
@@ -261,9 +307,11 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
   @DeveloperApi
   def collect(executionType: ExecutionType): Array[Row] = executionType match {
     case Default => collect()
-    case Spark => super.collect()
+    case Spark => timeExecution(XDMetricsSource.SparkExecutionTag)(super.collect())
     case Native =>
-      val result = findNativeQueryExecutor(queryExecution.optimizedPlan).flatMap(executeNativeQuery)
+      val result = timeExecution(XDMetricsSource.NativeExecutionTag) {
+        findNativeQueryExecutor(queryExecution.optimizedPlan).flatMap(executeNativeQuery).map(_.toArray)
+      }
       result.getOrElse(throw new NativeExecutionException)
   }
 
@@ -288,23 +336,62 @@ class XDDataFrame private[sql](@transient override val sqlContext: SQLContext,
 
 
   /**
-   * Executes the logical plan.
+   * Finds the [[NativeScan]] able to execute the logical plan unless the execution cost model of the context
+   * estimates that executing it on Spark is cheaper.
+   */
+  private[this] def chooseNativeQueryExecutor(): Option[NativeScan] =
+    findNativeQueryExecutor(queryExecution.optimizedPlan) filter { nativeScan =>
+      sqlContext match {
+        case xdContext: XDContext =>
+          val choice = xdContext.executionCostModel.chooseExecution(queryExecution.optimizedPlan, nativeScan)
+          val chosenExecution = if (choice.native) "native" else "Spark"
+          logInfo(
+            s"Cost model chose $chosenExecution execution. Native cost: ${choice.nativeCost.getOrElse("unknown")}; " +
+              s"Spark cost: ${choice.sparkCost.getOrElse("unknown")}; ${choice.reason}"
+          )
+          if (choice.native) XDMetricsSource.NativeExecutionsChosen.inc() else XDMetricsSource.SparkExecutionsChosen.inc()
+          choice.native
+        case _ =>
+          true
+      }
+    }
+
+  /**
+   * Records the latency of an execution in the lifecycle metrics tagged by its execution type and connector.
+   */
+  private[this] def timeExecution[T](executionType: String)(execution: => T): T =
+    XDMetricsSource.timeExecution(
+      sqlContext.sparkContext,
+      executionType,
+      XDDataFrame.connectorOf(queryExecution.optimizedPlan),
+      queryExecution.optimizedPlan
+    )(execution)
+
+  /**
+   * Executes the logical plan. When the native result cache is enabled, the result may be served from the cache.
    *
    * @param provider [[org.apache.spark.sql.sources.BaseRelation]] mixing-in [[NativeScan]]
-   * @return an array that contains all of [[Row]]s in this [[XDDataFrame]]
+   * @return an iterator over all of [[Row]]s in this [[XDDataFrame]]
    *         or None if the provider cannot resolve the entire [[XDDataFrame]] natively.
    */
-  private[this] def executeNativeQuery(provider: NativeScan): Option[Array[Row]] = {
+  private[this] def executeNativeQuery(provider: NativeScan): Option[NativeScan.RowIterator] = {
 
     val containsSubfields = notSupportedProject(queryExecution.optimizedPlan)
     val planSupported = !containsSubfields && queryExecution.optimizedPlan.map(lp => lp).forall(provider.isSupported(_, queryExecution.optimizedPlan))
     if(planSupported) {
       // TODO handle failed executions which are currently wrapped within the option, so these jobs will appear duplicated
       // TODO the plan should notice the native execution
-      withNewExecutionId{
-        sqlText.map(provider.buildScan(queryExecution.optimizedPlan, _))
-          .getOrElse(provider.buildScan(queryExecution.optimizedPlan))
+      def nativeExecution: Option[NativeScan.RowIterator] = withNewExecutionId{
+        sqlText.map(provider.buildIteratorScan(queryExecution.optimizedPlan, _))
+          .getOrElse(provider.buildIteratorScan(queryExecution.optimizedPlan))
+
+      }
 
+      sqlContext match {
+        case xdContext: XDContext if xdContext.conf.nativeResultCacheEnabled =>
+          xdContext.nativeResultCache.getOrExecute(queryExecution.analyzed, queryExecution.optimizedPlan)(nativeExecution)
+        case _ =>
+          nativeExecution
       }
     } else
       None
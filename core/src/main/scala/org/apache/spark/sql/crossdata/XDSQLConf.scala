@@ -18,7 +18,35 @@ package org.apache.spark.sql.crossdata
 import org.apache.spark.sql.SQLConf
 
 trait XDSQLConf extends SQLConf {
+
+  import XDSQLConf._
+
   def enableCacheInvalidation(enable: Boolean): XDSQLConf
+
+  def nativeResultCacheEnabled: Boolean =
+    getConfString(NativeResultCacheEnabledKey, NativeResultCacheEnabledDefault.toString).toBoolean
+
+  def nativeResultCacheMaxEntries: Int =
+    getConfString(NativeResultCacheMaxEntriesKey, NativeResultCacheMaxEntriesDefault.toString).toInt
+
+  def nativeResultCacheMaxRowsPerEntry: Int =
+    getConfString(NativeResultCacheMaxRowsKey, NativeResultCacheMaxRowsDefault.toString).toInt
+
+  def nativeResultCacheTTLMillis: Long =
+    getConfString(NativeResultCacheTTLKey, NativeResultCacheTTLDefault.toString).toLong
+
+  def executionCostModelClass: String =
+    getConfString(ExecutionCostModelClassKey, ExecutionCostModelClassDefault)
+
+  def executionCostModelSparkJobOverhead: Long =
+    getConfString(ExecutionCostModelSparkJobOverheadKey, ExecutionCostModelSparkJobOverheadDefault.toString).toLong
+
+  def incrementalLocalIterator: Boolean =
+    getConfString(IncrementalLocalIteratorKey, IncrementalLocalIteratorDefault.toString).toBoolean
+
+  def slowQueryThresholdMillis: Long =
+    getConfString(SlowQueryThresholdKey, SlowQueryThresholdDefault.toString).toLong
+
 }
 
 
@@ -26,10 +54,35 @@ object XDSQLConf {
 
   val UserIdPropertyKey = "crossdata.security.user"
 
+  val NativeResultCacheEnabledKey = "spark.sql.crossdata.nativeResultCache.enabled"
+  val NativeResultCacheMaxEntriesKey = "spark.sql.crossdata.nativeResultCache.maxEntries"
+  val NativeResultCacheMaxRowsKey = "spark.sql.crossdata.nativeResultCache.maxRowsPerEntry"
+  val NativeResultCacheTTLKey = "spark.sql.crossdata.nativeResultCache.ttlMillis"
+
+  val NativeResultCacheEnabledDefault = false
+  val NativeResultCacheMaxEntriesDefault = 128
+  val NativeResultCacheMaxRowsDefault = 10000
+  val NativeResultCacheTTLDefault = 60000L
+
+  val ExecutionCostModelClassKey = "spark.sql.crossdata.executionCostModel.class"
+  val ExecutionCostModelSparkJobOverheadKey = "spark.sql.crossdata.executionCostModel.sparkJobOverheadRows"
+
+  val ExecutionCostModelClassDefault = "org.apache.spark.sql.crossdata.execution.DefaultExecutionCostModel"
+  val ExecutionCostModelSparkJobOverheadDefault = 100000L
+
+  // Computing a partition at a time runs a Spark job per partition sequentially, so it is only worth for large results
+  val IncrementalLocalIteratorKey = "spark.sql.crossdata.localIterator.incremental"
+
+  val IncrementalLocalIteratorDefault = false
+
+  // Queries taking longer are written to the slow query log. A negative threshold disables it
+  val SlowQueryThresholdKey = "spark.sql.crossdata.slowQueryLog.thresholdMillis"
+
+  val SlowQueryThresholdDefault = 10000L
+
   implicit def fromSQLConf(conf: SQLConf): XDSQLConf = new XDSQLConf {
 
     override def enableCacheInvalidation(enable: Boolean): XDSQLConf = this
     override protected[spark] val settings: java.util.Map[String, String] = conf.settings
   }
 }
-
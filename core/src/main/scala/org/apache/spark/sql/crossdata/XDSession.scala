@@ -21,6 +21,7 @@ import org.apache.spark.Logging
 import org.apache.spark.sql.SQLConf
 import org.apache.spark.sql.crossdata.catalog.interfaces.XDCatalogCommon
 import org.apache.spark.sql.crossdata.catalog.{CatalogChain, XDCatalog}
+import org.apache.spark.sql.crossdata.execution.NativeResultCache
 import org.apache.spark.sql.crossdata.session.{XDSessionState, XDSharedState}
 
 object XDSession {
@@ -54,6 +55,9 @@ class XDSession(
   @transient
   override protected[crossdata] lazy val securityManager: Option[CrossdataSecurityManager] = xdSharedState.securityManager
 
+  @transient
+  override protected[crossdata] lazy val nativeResultCache: NativeResultCache = xdSharedState.nativeResultCache
+
   xdSessionState.sqlConf.enableCacheInvalidation(true)
 
 }
@@ -192,6 +192,7 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
 
     temporaryCatalogs foreach (_.dropTable(normalize(tableIdentifier)))
     persistentCatalogs foreach (_.dropTable(normalize(tableIdentifier)))
+    xdContext.nativeResultCache.invalidate(normalize(tableIdentifier))
 
     // tableExists checks if the tableIdentifier is present in both views and tables maps but the above operations are
     // related only to the tables map, therefore, if the tableIdentifier corresponds to a view, the view will remain.
@@ -204,6 +205,7 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
     dropAllIndexes()
     temporaryCatalogs foreach (_.dropAllTables())
     persistentCatalogs foreach (_.dropAllTables())
+    xdContext.nativeResultCache.invalidateAll()
   }
 
   override def dropView(viewIdentifier: ViewIdentifier): Unit = {
@@ -248,8 +250,10 @@ private[crossdata] class CatalogChain private(val temporaryCatalogs: Seq[XDTempo
   override def tableMetadata(tableIdentifier: TableIdentifier): Option[CrossdataTable] =
     persistentChainedLookup(_.lookupTable(normalize(tableIdentifier)))
 
-  override def refreshTable(tableIdent: TableIdentifier): Unit =
+  override def refreshTable(tableIdent: TableIdentifier): Unit = {
     persistentCatalogs.foreach(_.refreshCache(normalize(tableIdent)))
+    xdContext.nativeResultCache.invalidate(normalize(tableIdent))
+  }
 
   /**
    * StreamingCatalog
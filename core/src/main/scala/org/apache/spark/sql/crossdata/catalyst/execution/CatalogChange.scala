@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.catalyst.execution
+
+import org.apache.spark.sql.catalyst.TableIdentifier
+import org.apache.spark.sql.catalyst.analysis.UnresolvedRelation
+import org.apache.spark.sql.catalyst.plans.logical.{LogicalPlan, InsertIntoTable => SparkInsertIntoTable}
+
+/**
+  * Change of the catalog caused by running a command: the tables whose metadata has been modified or removed, as well
+  * as the tables written to, whose cached results are stale. New tables are only reported as a change of the catalog,
+  * without listing them.
+  */
+sealed trait CatalogChange
+
+object CatalogChange {
+
+  case class TablesChanged(tables: Seq[TableIdentifier]) extends CatalogChange
+
+  case object AllTablesChanged extends CatalogChange
+
+  /**
+    * The change of the catalog made by a plan, `None` if the plan doesn't modify the catalog.
+    */
+  def of(plan: LogicalPlan): Option[CatalogChange] = plan match {
+    case _: PersistDataSourceTable | _: RegisterDataSourceTable | _: ImportTablesUsingWithOptions =>
+      Some(TablesChanged(Seq.empty))
+    case PersistSelectAsTable(tableIdent, _, _, _, _, _) => Some(TablesChanged(Seq(tableIdent)))
+    case DropTable(tableIdentifier) => Some(TablesChanged(Seq(tableIdentifier)))
+    case DropExternalTable(tableIdentifier) => Some(TablesChanged(Seq(tableIdentifier)))
+    case DropAllTables => Some(AllTablesChanged)
+    case CreateTempView(viewIdentifier, _, _) => Some(TablesChanged(Seq(viewIdentifier)))
+    case CreateView(viewIdentifier, _, _) => Some(TablesChanged(Seq(viewIdentifier)))
+    case DropView(viewIdentifier) => Some(TablesChanged(Seq(viewIdentifier)))
+    case InsertIntoTable(tableIdentifier, _, _) => Some(TablesChanged(Seq(tableIdentifier)))
+    case SparkInsertIntoTable(UnresolvedRelation(tableIdentifier, _), _, _, _, _) => Some(TablesChanged(Seq(tableIdentifier)))
+    case _ => None
+  }
+
+}
@@ -222,6 +222,7 @@ private[crossdata] case class InsertIntoTable(tableIdentifier: TableIdentifier,
             }
 
             insertableRelation.insert(dataframe, overwrite = false)
+            sqlContext.asInstanceOf[XDContext].nativeResultCache.invalidate(tableIdentifier.normalize(sqlContext.conf))
 
           case hadoopFsRelation: HadoopFsRelation =>
             sys.error("Operation not supported")
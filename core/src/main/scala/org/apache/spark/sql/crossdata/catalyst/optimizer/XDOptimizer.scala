@@ -27,6 +27,7 @@ import org.apache.spark.sql.crossdata.catalog.XDCatalog.CrossdataIndex
 import org.apache.spark.sql.crossdata.catalyst.ExtendedUnresolvedRelation
 import org.apache.spark.sql.crossdata.catalyst.execution.DDLUtils
 import org.apache.spark.sql.crossdata.catalyst.globalindex.IndexUtils
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
 import org.apache.spark.sql.crossdata.{XDContext, XDDataFrame}
 import org.apache.spark.sql.execution.datasources.LogicalRelation
 import org.apache.spark.sql.sources.BaseRelation
@@ -54,7 +55,10 @@ case class XDOptimizer(xdContext: XDContext, conf: CatalystConf) extends Optimiz
 
 case class CheckGlobalIndexInFilters(xdContext: XDContext) extends Rule[LogicalPlan] {
 
-  def apply(plan: LogicalPlan): LogicalPlan = plan transform {
+  def apply(plan: LogicalPlan): LogicalPlan =
+    XDMetricsSource.timePhase(XDMetricsSource.Phase.GlobalIndex)(applyIndexes(plan))
+
+  private def applyIndexes(plan: LogicalPlan): LogicalPlan = plan transform {
 
     case FilterWithIndexLogicalPlan(filters, projects, ExtendedUnresolvedRelation(tableIdentifier, relation)) =>
 
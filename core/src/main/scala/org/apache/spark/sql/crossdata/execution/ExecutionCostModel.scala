@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.NativeScan
+import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.XDSQLConf
+
+/**
+  * Decides whether a plan which can be resolved by a [[NativeScan]] should be executed natively or on Spark.
+  *
+  * Implementations are configured through [[XDSQLConf.ExecutionCostModelClassKey]] and must provide a constructor
+  * receiving the [[SQLContext]].
+  */
+trait ExecutionCostModel {
+
+  def chooseExecution(optimizedLogicalPlan: LogicalPlan, nativeScan: NativeScan): ExecutionChoice
+
+}
+
+/**
+  * @param native whether the plan should be executed natively
+  * @param nativeCost estimated cost of the native execution, if known
+  * @param sparkCost estimated cost of the Spark execution, if known
+  * @param reason description of the decision inputs
+  */
+case class ExecutionChoice(native: Boolean, nativeCost: Option[Double], sparkCost: Option[Double], reason: String)
+
+object ExecutionCostModel {
+
+  def apply(sqlContext: SQLContext, conf: XDSQLConf): ExecutionCostModel = {
+    val costModelClass = Class.forName(conf.executionCostModelClass)
+    costModelClass.getConstructor(classOf[SQLContext]).newInstance(sqlContext).asInstanceOf[ExecutionCostModel]
+  }
+
+}
+
+/**
+  * Both executions have to read the same rows, since Spark datasources receive the same filters, but the native
+  * execution reads them sequentially whereas Spark splits the scan across `spark.default.parallelism` tasks at the
+  * price of scheduling a job. The job overhead is expressed as a number of rows read.
+  *
+  * When the datasource doesn't provide an estimate, the native execution is chosen.
+  */
+class DefaultExecutionCostModel(sqlContext: SQLContext) extends ExecutionCostModel {
+
+  import XDSQLConf.fromSQLConf
+
+  override def chooseExecution(optimizedLogicalPlan: LogicalPlan, nativeScan: NativeScan): ExecutionChoice =
+    nativeScan.estimateNativeCost(optimizedLogicalPlan) map { estimate =>
+      val parallelism = math.max(sqlContext.sparkContext.defaultParallelism, 1)
+      val nativeCost = estimate.rowsRead.toDouble
+      val sparkCost = estimate.rowsRead.toDouble / parallelism + sqlContext.conf.executionCostModelSparkJobOverhead
+      ExecutionChoice(
+        nativeCost <= sparkCost,
+        Some(nativeCost),
+        Some(sparkCost),
+        s"$estimate with parallelism $parallelism"
+      )
+    } getOrElse {
+      ExecutionChoice(native = true, None, None, "no native cost estimate")
+    }
+
+}
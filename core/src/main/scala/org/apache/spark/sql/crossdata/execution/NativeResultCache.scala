@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.connector.NativeScan
+import com.stratio.crossdata.connector.NativeScan.ResultIterator
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical.{LogicalPlan, Subquery}
+import org.apache.spark.sql.crossdata.XDSQLConf
+import org.apache.spark.sql.crossdata.catalog.TableIdentifierNormalized
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+
+import scala.collection.mutable.ArrayBuffer
+
+object NativeResultCache {
+
+  def apply(conf: XDSQLConf): NativeResultCache =
+    new NativeResultCache(conf.nativeResultCacheMaxEntries, conf.nativeResultCacheMaxRowsPerEntry, conf.nativeResultCacheTTLMillis)
+
+  /**
+    * Identifiers of the tables a plan reads from. Relations are wrapped within a [[Subquery]] named after the
+    * normalized table identifier when they are resolved by the catalog.
+    */
+  private[execution] def referencedTables(analyzedPlan: LogicalPlan): Set[TableIdentifierNormalized] =
+    analyzedPlan.collect { case Subquery(alias, _) => tableIdentifier(alias) }.toSet
+
+  /**
+    * Inverse of [[TableIdentifierNormalized.unquotedString]].
+    */
+  private[crossdata] def tableIdentifier(unquotedName: String): TableIdentifierNormalized =
+    unquotedName.split("\\.", 2) match {
+      case Array(database, table) => TableIdentifierNormalized(table, Some(database))
+      case _ => TableIdentifierNormalized(unquotedName)
+    }
+
+  private case class Entry(plan: LogicalPlan, tables: Set[TableIdentifierNormalized], rows: Array[Row], expiresAt: Long)
+
+}
+
+/**
+  * LRU cache of native query results keyed by the optimized plan. Two plans are considered the same key when
+  * they produce the same result (see [[LogicalPlan.sameResult]]), so the lookup is linear in the number of entries.
+  *
+  * Results bigger than `maxRowsPerEntry` are not cached and entries expire after `ttlMillis`. Entries are invalidated
+  * by the full identifier of the table, database included, when the table is written, dropped or refreshed; a result
+  * fetched while an invalidation takes place is not cached.
+  *
+  * The cache is local to the node, i.e: shared by the sessions of a server but not by the servers of a cluster. The
+  * changes made through other servers only invalidate it once they are notified to this one, see
+  * [[org.apache.spark.sql.crossdata.session.XDSessionProvider.invalidateNativeResults]], and the changes made by
+  * other applications writing to the datasources directly are only seen once the entries expire.
+  */
+class NativeResultCache(
+                         val maxEntries: Int,
+                         val maxRowsPerEntry: Int,
+                         val ttlMillis: Long,
+                         clock: () => Long = () => System.currentTimeMillis()
+                       ) extends SparkLoggerComponent {
+
+  import NativeResultCache._
+
+  require(maxEntries > 0, "The native result cache must allow at least one entry")
+
+  // Head is the most recently used entry
+  private val entries = new java.util.LinkedList[Entry]()
+
+  private var generation: Long = 0L
+
+  /**
+    * Returns the cached result for the plan or executes it, caching its result when it is small enough.
+    *
+    * @param analyzedPlan plan used to find out which tables are read
+    * @param optimizedPlan cache key
+    * @param execute native execution of the plan
+    */
+  def getOrExecute(analyzedPlan: LogicalPlan, optimizedPlan: LogicalPlan)
+                  (execute: => Option[NativeScan.RowIterator]): Option[NativeScan.RowIterator] =
+    lookup(optimizedPlan) map { rows =>
+      XDMetricsSource.NativeResultCacheHits.inc()
+      ResultIterator[Row](rows.iterator)
+    } orElse {
+      XDMetricsSource.NativeResultCacheMisses.inc()
+      val executionGeneration = currentGeneration
+      execute map (cacheThrough(referencedTables(analyzedPlan), optimizedPlan, executionGeneration, _))
+    }
+
+  def invalidate(table: TableIdentifierNormalized): Unit = synchronized {
+    generation += 1
+    val it = entries.iterator()
+    while (it.hasNext) {
+      if (it.next().tables.contains(table)) it.remove()
+    }
+    logDebug(s"Native result cache invalidated for table ${table.unquotedString}")
+  }
+
+  def invalidateAll(): Unit = synchronized {
+    generation += 1
+    entries.clear()
+  }
+
+  def size: Int = synchronized(entries.size)
+
+  private def currentGeneration: Long = synchronized(generation)
+
+  private def lookup(plan: LogicalPlan): Option[Array[Row]] = synchronized {
+    val now = clock()
+    val it = entries.iterator()
+    var found: Option[Entry] = None
+    while (found.isEmpty && it.hasNext) {
+      val entry = it.next()
+      if (entry.expiresAt <= now) {
+        it.remove()
+      } else if (entry.plan.sameResult(plan)) {
+        it.remove()
+        found = Some(entry)
+      }
+    }
+    found foreach entries.addFirst
+    found map (_.rows)
+  }
+
+  private def put(entry: Entry, entryGeneration: Long): Unit = synchronized {
+    if (entryGeneration == generation) {
+      entries.addFirst(entry)
+      while (entries.size > maxEntries) {
+        entries.removeLast()
+        XDMetricsSource.NativeResultCacheEvictions.inc()
+      }
+    }
+  }
+
+  /**
+    * Buffers up to `maxRowsPerEntry` + 1 rows: when the result fits, it is cached and served from memory. Otherwise,
+    * the buffered rows are followed by the remaining rows of the native execution.
+    */
+  private def cacheThrough(
+                            tables: Set[TableIdentifierNormalized],
+                            plan: LogicalPlan,
+                            executionGeneration: Long,
+                            result: NativeScan.RowIterator
+                          ): NativeScan.RowIterator = {
+    val buffer = ArrayBuffer.empty[Row]
+    while (buffer.size <= maxRowsPerEntry && result.hasNext) buffer += result.next()
+
+    if (buffer.size <= maxRowsPerEntry) {
+      result.close()
+      val rows = buffer.toArray
+      put(Entry(plan, tables, rows, clock() + ttlMillis), executionGeneration)
+      ResultIterator[Row](rows.iterator)
+    } else {
+      ResultIterator[Row](buffer.iterator ++ result, () => result.close())
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.catalyst.expressions.IntegerLiteral
+import org.apache.spark.sql.catalyst.plans.logical._
+import org.apache.spark.sql.crossdata.XDDataFrame
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+
+/**
+  * @param bytes estimated size of the result
+  * @param rows estimated number of rows of the result, if known
+  * @param rowWidth estimated size of a row of the result
+  * @param source statistics the estimate is based on
+  */
+case class ResultSizeEstimate(bytes: BigInt, rows: Option[BigInt], rowWidth: Long, source: String)
+
+object ResultSizeEstimator {
+
+  /**
+    * Estimator considering unknown the size of the relations which report the default size of the context.
+    */
+  def apply(sqlContext: SQLContext): ResultSizeEstimator = new ResultSizeEstimator(sqlContext.conf.defaultSizeInBytes)
+
+}
+
+/**
+  * Estimates the size of the result of an optimized plan before executing it.
+  *
+  * The number of rows returned by the datasource is used when its [[com.stratio.crossdata.connector.NativeScan]]
+  * can estimate it. Otherwise, the number of rows of the relations (`BaseRelation.sizeInBytes` divided by the width of
+  * their rows) is multiplied by the width of the projected columns and bounded by the LIMIT, if any. Filters are not
+  * taken into account so it is an upper bound. The results of joins are not estimated, so they are always admitted.
+  */
+class ResultSizeEstimator(defaultSizeInBytes: Long) {
+
+  def estimate(optimizedPlan: LogicalPlan): Option[ResultSizeEstimate] = {
+    val rowWidth = width(optimizedPlan)
+    nativeEstimate(optimizedPlan, rowWidth) orElse {
+      estimatedRows(optimizedPlan) map { rows =>
+        ResultSizeEstimate(rows * rowWidth, Some(rows), rowWidth, "relation statistics")
+      }
+    }
+  }
+
+  private def nativeEstimate(optimizedPlan: LogicalPlan, rowWidth: Long): Option[ResultSizeEstimate] =
+    for {
+      nativeScan <- XDDataFrame.findNativeQueryExecutor(optimizedPlan)
+      costEstimate <- nativeScan.estimateNativeCost(optimizedPlan)
+    } yield {
+      val rows = maxRows(optimizedPlan).fold(BigInt(costEstimate.rowsReturned))(_ min costEstimate.rowsReturned)
+      ResultSizeEstimate(rows * rowWidth, Some(rows), rowWidth, "datasource cost estimate")
+    }
+
+  /**
+    * Upper bound of the number of rows, derived from the size of the relations divided by the width of their rows.
+    *
+    * @return None when it cannot be bounded: the size of some relation is unknown (i.e. it reports the default size)
+    *         or the plan contains operators which may return more rows than they read (joins, generators...).
+    */
+  private def estimatedRows(plan: LogicalPlan): Option[BigInt] = plan match {
+    case Limit(IntegerLiteral(limit), child) =>
+      Some(estimatedRows(child).fold(BigInt(limit))(_ min limit))
+
+    case LogicalRelation(relation, _) =>
+      Some(BigInt(relation.sizeInBytes)) filter (_ != defaultSizeInBytes) map (_ / width(plan))
+
+    case Aggregate(Nil, _, _) =>
+      Some(1)
+
+    case Union(left, right) =>
+      for (leftRows <- estimatedRows(left); rightRows <- estimatedRows(right)) yield leftRows + rightRows
+
+    case _: Generate | _: Expand =>
+      None
+
+    case unary: UnaryNode =>
+      estimatedRows(unary.child)
+
+    case leaf: LeafNode =>
+      Some(leaf.statistics.sizeInBytes) filter (_ != defaultSizeInBytes) map (_ / width(plan))
+
+    case _ =>
+      None
+  }
+
+  private def maxRows(plan: LogicalPlan): Option[BigInt] = plan match {
+    case Limit(IntegerLiteral(limit), child) => Some(maxRows(child).fold(BigInt(limit))(_ min limit))
+    case Aggregate(Nil, _, _) => Some(1)
+    case unary: UnaryNode => maxRows(unary.child)
+    case _ => None
+  }
+
+  private def width(plan: LogicalPlan): Long = math.max(plan.output.map(_.dataType.defaultSize.toLong).sum, 1L)
+
+}
@@ -20,6 +20,8 @@ import org.apache.log4j.Logger
 import org.apache.spark.sql.SQLContext
 import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
 import org.apache.spark.sql.crossdata.execution.auth.AuthDirectivesExtractor
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource.Phase
 import org.apache.spark.sql.crossdata.{XDContext, XDSQLConf}
 import org.apache.spark.sql.execution._
 
@@ -54,7 +56,11 @@ class XDQueryExecution(sqlContext: SQLContext, parsedPlan: LogicalPlan, catalogI
     parsedPlan
   }
 
-  override lazy val analyzed: LogicalPlan = sqlContext.analyzer.execute(authorized)
+  override lazy val analyzed: LogicalPlan =
+    XDMetricsSource.timePhase(Phase.Analysis)(sqlContext.analyzer.execute(authorized))
+
+  override lazy val optimizedPlan: LogicalPlan =
+    XDMetricsSource.timePhase(Phase.Optimization)(sqlContext.optimizer.execute(withCachedData))
 
 
   // Extracts
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.metrics
+
+import org.apache.spark.TaskKilled
+import org.apache.spark.scheduler.{SparkListener, SparkListenerTaskEnd}
+
+/**
+  * Accounts the tasks interrupted by the cancellation of their jobs and the executor time they had been running for,
+  * which is released as soon as they are killed instead of when they would have finished.
+  */
+class KilledTasksListener extends SparkListener {
+
+  override def onTaskEnd(taskEnd: SparkListenerTaskEnd): Unit = taskEnd.reason match {
+    case TaskKilled =>
+      val taskInfo = taskEnd.taskInfo
+      XDMetricsSource.TasksKilled.inc()
+      XDMetricsSource.KilledTasksRunTime.inc(math.max(taskInfo.finishTime - taskInfo.launchTime, 0L))
+    case _ =>
+  }
+
+}
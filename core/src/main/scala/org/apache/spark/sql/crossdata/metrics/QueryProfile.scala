@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.metrics
+
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+
+import scala.collection.mutable
+import scala.concurrent.duration.FiniteDuration
+import scala.util.hashing.MurmurHash3
+
+object QueryProfile {
+
+  private val current = new ThreadLocal[QueryProfile]
+
+  /**
+    * Profile of the query being run by the current thread, if any.
+    */
+  def get: Option[QueryProfile] = Option(current.get)
+
+  /**
+    * Runs `f` recording its lifecycle phases in `profile`.
+    */
+  def withProfile[T](profile: Option[QueryProfile])(f: => T): T = {
+    val previous = current.get
+    profile foreach current.set
+    try f finally current.set(previous)
+  }
+
+  /**
+    * Identifies the shape of a plan regardless of the ids of its attributes, so the plans of the same query
+    * get the same fingerprint.
+    */
+  def fingerprint(plan: LogicalPlan): String =
+    Integer.toHexString(MurmurHash3.stringHash(canonicalTree(plan)))
+
+  /**
+    * Tree string of a plan without the ids of its attributes.
+    */
+  def canonicalTree(plan: LogicalPlan): String = plan.treeString.replaceAll("#\\d+", "")
+
+}
+
+/**
+  * Timings and execution path of a single query, filled in by its lifecycle phases (see [[XDMetricsSource.timePhase]]).
+  * Phases may run on different threads, e.g: when the result is streamed.
+  */
+class QueryProfile(
+                    val queryId: UUID,
+                    val sql: String,
+                    val sessionId: UUID,
+                    val user: Option[String],
+                    val thresholdMillis: Long
+                  ) {
+
+  private val startTime = System.nanoTime()
+  private val phases = mutable.LinkedHashMap.empty[String, Long]
+  private val rows = new AtomicLong
+  private val serializedBytes = new AtomicLong
+
+  @volatile private var execution: Option[(String, String)] = None
+  @volatile private var plan: Option[String] = None
+
+  def addPhase(phase: String, nanos: Long): Unit = phases.synchronized {
+    phases += phase -> (phases.getOrElse(phase, 0L) + nanos)
+  }
+
+  def recordExecution(executionType: String, connector: String, optimizedPlan: LogicalPlan): Unit = {
+    execution = Some(executionType -> connector)
+    plan = Some(QueryProfile.fingerprint(optimizedPlan))
+  }
+
+  def addRows(n: Long): Unit = rows.addAndGet(n)
+
+  def addSerializedBytes(n: Long): Unit = serializedBytes.addAndGet(n)
+
+  def phaseTimings: Seq[(String, FiniteDuration)] = phases.synchronized {
+    phases.toList map { case (phase, nanos) => phase -> FiniteDuration(nanos, TimeUnit.NANOSECONDS) }
+  }
+
+  def executionType: Option[String] = execution.map(_._1)
+
+  def connector: Option[String] = execution.map(_._2)
+
+  def planFingerprint: Option[String] = plan
+
+  def rowCount: Long = rows.get
+
+  def serializedByteCount: Long = serializedBytes.get
+
+  def elapsed: FiniteDuration = FiniteDuration(System.nanoTime() - startTime, TimeUnit.NANOSECONDS)
+
+  def isSlow: Boolean = thresholdMillis >= 0 && elapsed.toMillis >= thresholdMillis
+
+}
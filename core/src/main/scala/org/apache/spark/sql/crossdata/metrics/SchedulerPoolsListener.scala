@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.metrics
+
+import java.util.concurrent.TimeUnit
+
+import com.codahale.metrics.{MetricRegistry, Timer}
+import org.apache.spark.SparkContext
+import org.apache.spark.metrics.source.Source
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobEnd, SparkListenerJobStart, SparkListenerTaskStart}
+
+import scala.collection.mutable
+
+object SchedulerPoolsListener {
+
+  val SchedulerPoolProperty = "spark.scheduler.pool"
+  val DefaultPool = "default"
+
+}
+
+/**
+  * Queue and run times of the Spark jobs submitted to a scheduler pool.
+  */
+class SchedulerPoolMetricsSource(val pool: String) extends Source {
+
+  override val sourceName = s"XDSchedulerPool.$pool"
+  override val metricRegistry = new MetricRegistry()
+
+  val queueTime: Timer = metricRegistry.timer(MetricRegistry.name("queueTime"))
+  val runTime: Timer = metricRegistry.timer(MetricRegistry.name("runTime"))
+
+}
+
+/**
+  * Measures, for each scheduler pool, the time its jobs wait until their first task is launched (queue time) and the
+  * time they take from then on (run time). The [[SchedulerPoolMetricsSource]] of a pool is registered in the metrics
+  * system the first time one of its jobs starts and unregistered once the pool is released, see [[releasePool]].
+  * Pools shared by several owners, e.g: the pool of a user with many sessions, are retained by each one of them and
+  * released with the last one, see [[retainPool]].
+  */
+class SchedulerPoolsListener(sparkContext: SparkContext) extends SparkListener {
+
+  import SchedulerPoolsListener._
+
+  private case class JobTimes(pool: String, submissionTime: Long, firstTaskLaunchTime: Option[Long] = None)
+
+  private val jobs = mutable.Map.empty[Int, JobTimes]
+  private val jobIdByStage = mutable.Map.empty[Int, Int]
+  private val sources = mutable.Map.empty[String, SchedulerPoolMetricsSource]
+  private val releasedPools = mutable.Set.empty[String]
+  private val poolOwners = mutable.Map.empty[String, Int]
+
+  /**
+    * Registers a new owner of a pool, so the pool isn't released until every owner has released it.
+    */
+  def retainPool(pool: String): Unit = synchronized {
+    poolOwners += pool -> (poolOwners.getOrElse(pool, 0) + 1)
+  }
+
+  /**
+    * Unregisters the source of a pool which is not expected to be used anymore, e.g: the pool of a closed session.
+    * Retained pools are only unregistered when their last owner releases them. If some job of the pool is still
+    * running, its source is unregistered when the last of them ends.
+    */
+  def releasePool(pool: String): Unit = synchronized {
+    val owners = poolOwners.getOrElse(pool, 1) - 1
+    if (owners > 0) poolOwners += pool -> owners
+    else {
+      poolOwners -= pool
+      if (jobs.values.exists(_.pool == pool)) releasedPools += pool
+      else removeSource(pool)
+    }
+  }
+
+  override def onJobStart(jobStart: SparkListenerJobStart): Unit = synchronized {
+    val pool = Option(jobStart.properties) flatMap { props =>
+      Option(props.getProperty(SchedulerPoolProperty))
+    } getOrElse DefaultPool
+
+    releasedPools -= pool
+    jobs += jobStart.jobId -> JobTimes(pool, jobStart.time)
+    jobStart.stageIds foreach (jobIdByStage += _ -> jobStart.jobId)
+  }
+
+  override def onTaskStart(taskStart: SparkListenerTaskStart): Unit = synchronized {
+    for {
+      jobId <- jobIdByStage.get(taskStart.stageId)
+      job <- jobs.get(jobId) if job.firstTaskLaunchTime.isEmpty
+    } {
+      val launchTime = taskStart.taskInfo.launchTime
+      jobs += jobId -> job.copy(firstTaskLaunchTime = Some(launchTime))
+      poolSource(job.pool).queueTime.update(launchTime - job.submissionTime, TimeUnit.MILLISECONDS)
+    }
+  }
+
+  override def onJobEnd(jobEnd: SparkListenerJobEnd): Unit = synchronized {
+    jobs.remove(jobEnd.jobId) foreach { job =>
+      jobIdByStage.retain { case (_, jobId) => jobId != jobEnd.jobId }
+      val runStartTime = job.firstTaskLaunchTime.getOrElse(job.submissionTime)
+      poolSource(job.pool).runTime.update(jobEnd.time - runStartTime, TimeUnit.MILLISECONDS)
+      if (releasedPools(job.pool) && !jobs.values.exists(_.pool == job.pool)) {
+        releasedPools -= job.pool
+        removeSource(job.pool)
+      }
+    }
+  }
+
+  private def poolSource(pool: String): SchedulerPoolMetricsSource = sources.getOrElseUpdate(pool, {
+    val source = new SchedulerPoolMetricsSource(pool)
+    sparkContext.env.metricsSystem.registerSource(source)
+    source
+  })
+
+  private def removeSource(pool: String): Unit =
+    sources.remove(pool) foreach (sparkContext.env.metricsSystem.removeSource)
+
+}
@@ -15,18 +15,204 @@
  */
 package org.apache.spark.sql.crossdata.metrics
 
-import com.codahale.metrics.{Gauge, MetricRegistry}
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+
+import com.codahale.metrics.{Counter, Gauge, MetricRegistry, Timer}
+import org.apache.spark.SparkContext
 import org.apache.spark.metrics.source.Source
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+
+/**
+  * Metrics shared by every [[XDMetricsSource]]. Spark's metrics system instantiates the source by reflection,
+  * so the components updating these metrics don't hold a reference to it.
+  */
+object XDMetricsSource {
+
+  val NativeResultCacheHits = new Counter
+  val NativeResultCacheMisses = new Counter
+  val NativeResultCacheEvictions = new Counter
+
+  val NativeExecutionsChosen = new Counter
+  val SparkExecutionsChosen = new Counter
+
+  val JobsQueued = new Counter
+  val JobsActive = new Counter
+  val JobsRejected = new Counter
+  val JobWaitTime = new Timer
+
+  val ResultBytesSpilled = new Counter
+
+  val QueriesCancelled = new Counter
+  val TasksKilled = new Counter
+  val KilledTasksRunTime = new Counter
+
+  val ResultsRejected = new Counter
+  val ResultsStreamed = new Counter
+  val ResultsLimited = new Counter
+
+  val QueriesRunLocally = new Counter
+  val QueriesRoutedToPeers = new Counter
+  val QueriesRoutedFromPeers = new Counter
+
+  val CoalescedQueriesExecuted = new Counter
+  val CoalescedQueriesShared = new Counter
+
+  /**
+    * Phases of the query lifecycle whose latencies are recorded.
+    */
+  object Phase {
+    val Parse = "parse"
+    val Analysis = "analysis"
+    val Optimization = "optimization"
+    val GlobalIndex = "globalIndex"
+    val Execution = "execution"
+    val Serialization = "serialization"
+  }
+
+  /**
+    * Tag value used for the phases which don't depend on the connector or the execution type.
+    */
+  val AnyTag = "all"
+
+  val NativeExecutionTag = "native"
+  val SparkExecutionTag = "spark"
+
+  /**
+    * Lifecycle metrics, one histogram and one failure counter per (phase, execution type, connector). They are created
+    * on demand, so they are kept in their own registry and published through [[XDMetricsSource]] (untagged phases and
+    * execution types) and [[ConnectorMetricsSource]] (executions of a connector).
+    */
+  val LifecycleMetrics = new MetricRegistry
+
+  private[metrics] def lifecycleName(phase: String, executionType: String, connector: String): String =
+    MetricRegistry.name("lifecycle", phase, executionType, connector)
+
+  def lifecycleTimer(phase: String, executionType: String = AnyTag, connector: String = AnyTag): Timer =
+    LifecycleMetrics.timer(MetricRegistry.name(lifecycleName(phase, executionType, connector), "latency"))
+
+  def lifecycleFailures(phase: String, executionType: String = AnyTag, connector: String = AnyTag): Counter =
+    LifecycleMetrics.counter(MetricRegistry.name(lifecycleName(phase, executionType, connector), "failures"))
+
+  /**
+    * Records the latency of `f` in the histogram of the given phase, and in the [[QueryProfile]] of the current query
+    * if any, and counts it as a failure if it throws.
+    */
+  def timePhase[T](phase: String, executionType: String = AnyTag, connector: String = AnyTag)(f: => T): T =
+    timed(Seq(lifecycleName(phase, executionType, connector)), phase)(f)
+
+  /**
+    * Records the latency of an execution both in the histogram of its execution type and in the one of the connector.
+    * The [[ConnectorMetricsSource]] of the connector is registered in the metrics system of `sparkContext` the first
+    * time it is executed.
+    */
+  def timeExecution[T](
+                        sparkContext: SparkContext,
+                        executionType: String,
+                        connector: String,
+                        optimizedPlan: LogicalPlan
+                      )(f: => T): T = {
+    registerConnectorSource(sparkContext, connector)
+    QueryProfile.get foreach (_.recordExecution(executionType, connector, optimizedPlan))
+    timed(
+      Seq(lifecycleName(Phase.Execution, executionType, AnyTag), lifecycleName(Phase.Execution, executionType, connector)),
+      Phase.Execution
+    )(f)
+  }
+
+  private def timed[T](names: Seq[String], phase: String)(f: => T): T = {
+    val profile = QueryProfile.get
+    val start = System.nanoTime()
+    try f catch {
+      case e: Throwable =>
+        names foreach (name => LifecycleMetrics.counter(MetricRegistry.name(name, "failures")).inc())
+        throw e
+    } finally {
+      val elapsed = System.nanoTime() - start
+      names foreach (name => LifecycleMetrics.timer(MetricRegistry.name(name, "latency")).update(elapsed, TimeUnit.NANOSECONDS))
+      profile foreach (_.addPhase(phase, elapsed))
+    }
+  }
+
+  private val connectorSources = new ConcurrentHashMap[String, ConnectorMetricsSource]()
+
+  private def registerConnectorSource(sparkContext: SparkContext, connector: String): Unit =
+    if (!connectorSources.containsKey(connector)) {
+      val source = new ConnectorMetricsSource(connector)
+      if (connectorSources.putIfAbsent(connector, source) == null) {
+        Option(sparkContext.env).foreach(_.metricsSystem.registerSource(source))
+      }
+    }
+
+  private[metrics] def registerLifecycleMetrics(
+                                                 registry: MetricRegistry,
+                                                 phase: String,
+                                                 executionType: String = AnyTag,
+                                                 connector: String = AnyTag): Unit = {
+    val name = lifecycleName(phase, executionType, connector)
+    registry.register(MetricRegistry.name(name, "latency"), lifecycleTimer(phase, executionType, connector))
+    registry.register(MetricRegistry.name(name, "failures"), lifecycleFailures(phase, executionType, connector))
+  }
+
+}
+
+/**
+  * Execution latencies of the queries resolved by a connector, either natively or by Spark.
+  */
+class ConnectorMetricsSource(val connector: String) extends Source {
+
+  import XDMetricsSource._
+
+  override val sourceName = s"XDConnector.$connector"
+  override val metricRegistry = new MetricRegistry()
+
+  Seq(NativeExecutionTag, SparkExecutionTag) foreach { executionType =>
+    registerLifecycleMetrics(metricRegistry, Phase.Execution, executionType, connector)
+  }
+
+}
 
 class XDMetricsSource extends Source{
 
+  import XDMetricsSource._
+
   override val sourceName = "XDMetricsSource"
   override val metricRegistry = new MetricRegistry()
 
-  // Simple metric registered
-  metricRegistry.register(MetricRegistry.name("executionType"), new Gauge[String] {
-    override def getValue: String = "valueOfExecutionType"
-  })
+  metricRegistry.register(MetricRegistry.name("nativeResultCache", "hits"), NativeResultCacheHits)
+  metricRegistry.register(MetricRegistry.name("nativeResultCache", "misses"), NativeResultCacheMisses)
+  metricRegistry.register(MetricRegistry.name("nativeResultCache", "evictions"), NativeResultCacheEvictions)
+
+  metricRegistry.register(MetricRegistry.name("executionCostModel", "native"), NativeExecutionsChosen)
+  metricRegistry.register(MetricRegistry.name("executionCostModel", "spark"), SparkExecutionsChosen)
+
+  metricRegistry.register(MetricRegistry.name("jobs", "queued"), JobsQueued)
+  metricRegistry.register(MetricRegistry.name("jobs", "active"), JobsActive)
+  metricRegistry.register(MetricRegistry.name("jobs", "rejected"), JobsRejected)
+  metricRegistry.register(MetricRegistry.name("jobs", "waitTime"), JobWaitTime)
+
+  metricRegistry.register(MetricRegistry.name("resultBuffer", "spilledBytes"), ResultBytesSpilled)
+
+  metricRegistry.register(MetricRegistry.name("cancellation", "queries"), QueriesCancelled)
+  metricRegistry.register(MetricRegistry.name("cancellation", "killedTasks"), TasksKilled)
+  metricRegistry.register(MetricRegistry.name("cancellation", "killedTasksRunTimeMillis"), KilledTasksRunTime)
+
+  metricRegistry.register(MetricRegistry.name("resultAdmission", "rejected"), ResultsRejected)
+  metricRegistry.register(MetricRegistry.name("resultAdmission", "streamed"), ResultsStreamed)
+  metricRegistry.register(MetricRegistry.name("resultAdmission", "limited"), ResultsLimited)
+
+  metricRegistry.register(MetricRegistry.name("routing", "local"), QueriesRunLocally)
+  metricRegistry.register(MetricRegistry.name("routing", "forwarded"), QueriesRoutedToPeers)
+  metricRegistry.register(MetricRegistry.name("routing", "received"), QueriesRoutedFromPeers)
+
+  metricRegistry.register(MetricRegistry.name("coalescing", "executed"), CoalescedQueriesExecuted)
+  metricRegistry.register(MetricRegistry.name("coalescing", "shared"), CoalescedQueriesShared)
+
+  Seq(Phase.Parse, Phase.Analysis, Phase.Optimization, Phase.GlobalIndex, Phase.Serialization) foreach { phase =>
+    registerLifecycleMetrics(metricRegistry, phase)
+  }
+  Seq(NativeExecutionTag, SparkExecutionTag) foreach { executionType =>
+    registerLifecycleMetrics(metricRegistry, Phase.Execution, executionType)
+  }
 
   def registerGauge(name: String): Unit = {
     metricRegistry.register(MetricRegistry.name("metricName", name), new Gauge[String] {
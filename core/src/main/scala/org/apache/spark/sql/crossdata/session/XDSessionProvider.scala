@@ -24,11 +24,13 @@ import org.apache.log4j.Logger
 import org.apache.spark.SparkContext
 import org.apache.spark.sql.SQLConf
 import org.apache.spark.sql.crossdata.{XDSQLConf, XDSession}
+import org.apache.spark.sql.crossdata.catalog.interfaces.XDCatalogCommon.RichTableIdentifier
 import org.apache.spark.sql.crossdata.catalog.interfaces.{XDPersistentCatalog, XDStreamingCatalog, XDTemporaryCatalog}
 import org.apache.spark.sql.crossdata.catalog.temporary.HashmapCatalog
 import org.apache.spark.sql.crossdata.catalog.utils.CatalogUtils
 import org.apache.spark.sql.crossdata.config.CoreConfig
 import org.apache.spark.sql.crossdata.config.CoreConfig._
+import org.apache.spark.sql.crossdata.execution.NativeResultCache
 
 import scala.collection.mutable
 import scala.util.{Failure, Success, Try}
@@ -63,6 +65,21 @@ abstract class XDSessionProvider(
 
   def closeSession(sessionID: SessionID): Try[Unit]
 
+  protected def sharedState: XDSharedState
+
+  /**
+    * Invalidates the results of the native result cache of this node read from the given tables, e.g: when the tables
+    * are changed through another server of the cluster.
+    *
+    * @param tables unquoted identifiers of the changed tables.
+    */
+  def invalidateNativeResults(tables: Seq[String]): Unit = tables foreach { table =>
+    val tableIdentifier = NativeResultCache.tableIdentifier(table).toTableIdentifier
+    sharedState.nativeResultCache.invalidate(tableIdentifier.normalize(sharedState.sqlConf))
+  }
+
+  def invalidateAllNativeResults(): Unit = sharedState.nativeResultCache.invalidateAll()
+
   /**
     * Close the underlying connections.
     *
@@ -121,7 +138,7 @@ class BasicSessionProvider(
   @transient
   protected lazy val streamingCatalog: Option[XDStreamingCatalog] = CatalogUtils.streamingCatalog(sqlConf, finalCoreConfig)
 
-  private val sharedState = new XDSharedState(sc, sqlConf, externalCatalog, streamingCatalog, securityManager)
+  override protected val sharedState = new XDSharedState(sc, sqlConf, externalCatalog, streamingCatalog, securityManager)
 
   private val sessionIDToSQLProps: mutable.Map[SessionID, SQLConf] = mutable.Map.empty
   private val sessionIDToTempCatalog: mutable.Map[SessionID, XDTemporaryCatalog] = mutable.Map.empty
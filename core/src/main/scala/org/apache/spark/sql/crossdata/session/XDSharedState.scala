@@ -19,6 +19,7 @@ import com.stratio.crossdata.security.CrossdataSecurityManager
 import org.apache.spark.SparkContext
 import org.apache.spark.sql.SQLConf
 import org.apache.spark.sql.crossdata.catalog.interfaces.{XDCatalogCommon, XDStreamingCatalog}
+import org.apache.spark.sql.crossdata.execution.NativeResultCache
 
 
 final class XDSharedState(
@@ -27,4 +28,9 @@ final class XDSharedState(
                            val externalCatalog: XDCatalogCommon,
                            val streamingCatalog: Option[XDStreamingCatalog],
                            @transient val securityManager: Option[CrossdataSecurityManager]
-                         )
+                         ) {
+
+  @transient
+  lazy val nativeResultCache: NativeResultCache = NativeResultCache(sqlConf)
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.connector
+
+import com.stratio.crossdata.connector.NativeScan.ResultIterator
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ResultIteratorSpec extends BaseXDTest {
+
+  "A ResultIterator" should "release its resources once it has been exhausted" in {
+    var released = 0
+    val it = ResultIterator(Iterator(1, 2, 3), () => released += 1)
+
+    it.toList shouldBe List(1, 2, 3)
+    it.hasNext shouldBe false
+
+    released shouldBe 1
+  }
+
+  it should "release its resources just once when it is closed before being exhausted" in {
+    var released = 0
+    val it = ResultIterator(Iterator(1, 2, 3), () => released += 1)
+
+    it.next() shouldBe 1
+    it.close()
+    it.close()
+
+    it.hasNext shouldBe false
+    released shouldBe 1
+  }
+
+  it should "keep releasing the original resources after mapping its results" in {
+    var released = 0
+    val it = ResultIterator(Iterator(1, 2, 3), () => released += 1) mapResults (_ * 2)
+
+    it.toList shouldBe List(2, 4, 6)
+    released shouldBe 1
+  }
+
+}
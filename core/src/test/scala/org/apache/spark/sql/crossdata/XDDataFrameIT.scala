@@ -15,8 +15,11 @@
  */
 package org.apache.spark.sql.crossdata
 
+import java.util.concurrent.atomic.AtomicInteger
+
 import com.stratio.crossdata.connector.NativeScan
 import org.apache.spark.rdd.RDD
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobStart}
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.catalyst.expressions._
 import org.apache.spark.sql.catalyst.plans.logical._
@@ -77,6 +80,32 @@ class XDDataFrameIT extends SharedXDContextTest with Inside {
     XDDataFrame(xdContext, LogicalRelation(mockNativeRelation)).count() should be(2l)
   }
 
+  "A XDDataFrame executed on the Spark cluster" should "compute a partition at a time when iterated locally" in {
+    val startedJobs = new AtomicInteger(0)
+    val jobsListener = new SparkListener {
+      override def onJobStart(jobStart: SparkListenerJobStart): Unit = startedJobs.incrementAndGet()
+    }
+    xdContext.sparkContext.addSparkListener(jobsListener)
+    xdContext.setConf(XDSQLConf.IncrementalLocalIteratorKey, "true")
+
+    try {
+      val rows = (1 to 8) map (Row(_))
+      val sparkDataFrame = xdContext.createDataFrame(
+        xdContext.sparkContext.parallelize(rows, 4), StructType(Array(StructField("id", IntegerType)))
+      )
+
+      val iterator = XDDataFrame(xdContext, sparkDataFrame.logicalPlan).asInstanceOf[XDDataFrame].toLocalIterator()
+      iterator.next() should equal(rows.head)
+      xdContext.sparkContext.listenerBus.waitUntilEmpty(10000)
+      startedJobs.get shouldBe 1
+
+      iterator.toList should equal(rows.tail)
+    } finally {
+      xdContext.setConf(XDSQLConf.IncrementalLocalIteratorKey, XDSQLConf.IncrementalLocalIteratorDefault.toString)
+      xdContext.sparkContext.listenerBus.listeners.remove(jobsListener)
+    }
+  }
+
 
   val mockNonNativeRelation = new MockBaseRelation
 
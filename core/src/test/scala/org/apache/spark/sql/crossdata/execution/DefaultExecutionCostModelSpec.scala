@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.NativeScan
+import com.stratio.crossdata.connector.NativeScan.CostEstimate
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical.{LocalRelation, LogicalPlan}
+import org.apache.spark.sql.crossdata.test.SharedXDContextTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class DefaultExecutionCostModelSpec extends SharedXDContextTest {
+
+  private val plan = LocalRelation()
+
+  private def nativeScanEstimating(estimate: Option[CostEstimate]): NativeScan = new NativeScan {
+    override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = None
+    override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = true
+    override def estimateNativeCost(optimizedLogicalPlan: LogicalPlan): Option[CostEstimate] = estimate
+  }
+
+  "The DefaultExecutionCostModel" should "choose the native execution when the datasource cannot estimate its cost" in {
+    val choice = new DefaultExecutionCostModel(xdContext).chooseExecution(plan, nativeScanEstimating(None))
+
+    choice.native shouldBe true
+    choice.nativeCost shouldBe None
+  }
+
+  it should "choose the native execution when few rows are read" in {
+    val estimate = CostEstimate(rowsRead = 100, rowsReturned = 100, fullScan = false)
+    val choice = new DefaultExecutionCostModel(xdContext).chooseExecution(plan, nativeScanEstimating(Some(estimate)))
+
+    choice.native shouldBe true
+  }
+
+  it should "choose the Spark execution when a big table has to be scanned" in {
+    val estimate = CostEstimate(rowsRead = 100000000L, rowsReturned = 10000, fullScan = true)
+    val choice = new DefaultExecutionCostModel(xdContext).chooseExecution(plan, nativeScanEstimating(Some(estimate)))
+
+    choice.native shouldBe false
+    choice.sparkCost.get should be < choice.nativeCost.get
+  }
+
+}
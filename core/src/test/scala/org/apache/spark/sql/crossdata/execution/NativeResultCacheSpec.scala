@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.NativeScan.ResultIterator
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.AttributeReference
+import org.apache.spark.sql.catalyst.plans.logical.{LocalRelation, LogicalPlan, Subquery}
+import org.apache.spark.sql.crossdata.catalog.TableIdentifierNormalized
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+import org.apache.spark.sql.types.IntegerType
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class NativeResultCacheSpec extends BaseXDTest {
+
+  private def tablePlan(table: String, id: Int): LogicalPlan =
+    Subquery(table, LocalRelation(AttributeReference("id", IntegerType)() :: Nil, InternalRow(id) :: Nil))
+
+  private def countingExecution(rows: Seq[Row]): (() => Int, () => Option[ResultIterator[Row]]) = {
+    var executions = 0
+    (() => executions, () => {
+      executions += 1
+      Some(ResultIterator[Row](rows.iterator))
+    })
+  }
+
+  "A NativeResultCache" should "serve a previously executed plan without executing it again" in {
+    val cache = new NativeResultCache(maxEntries = 10, maxRowsPerEntry = 10, ttlMillis = 60000)
+    val (executions, execute) = countingExecution(Row(1) :: Row(2) :: Nil)
+    val hits = XDMetricsSource.NativeResultCacheHits.getCount
+
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute()).map(_.toList) shouldBe Some(Row(1) :: Row(2) :: Nil)
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute()).map(_.toList) shouldBe Some(Row(1) :: Row(2) :: Nil)
+
+    executions() shouldBe 1
+    XDMetricsSource.NativeResultCacheHits.getCount shouldBe hits + 1
+  }
+
+  it should "return but not cache results bigger than the maximum number of rows per entry" in {
+    val cache = new NativeResultCache(maxEntries = 10, maxRowsPerEntry = 2, ttlMillis = 60000)
+    val (executions, execute) = countingExecution((1 to 5).map(Row(_)))
+
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute()).map(_.size) shouldBe Some(5)
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute()).map(_.size) shouldBe Some(5)
+
+    executions() shouldBe 2
+    cache.size shouldBe 0
+  }
+
+  it should "invalidate the entries reading from a table" in {
+    val cache = new NativeResultCache(maxEntries = 10, maxRowsPerEntry = 10, ttlMillis = 60000)
+    val (_, execute) = countingExecution(Row(1) :: Nil)
+
+    cache.getOrExecute(tablePlan("db.t", 1), tablePlan("db.t", 1))(execute())
+    cache.getOrExecute(tablePlan("other", 2), tablePlan("other", 2))(execute())
+
+    cache.invalidate(TableIdentifierNormalized("t", Some("db")))
+
+    cache.size shouldBe 1
+  }
+
+  it should "tell apart the tables of different databases" in {
+    val cache = new NativeResultCache(maxEntries = 10, maxRowsPerEntry = 10, ttlMillis = 60000)
+    val (_, execute) = countingExecution(Row(1) :: Nil)
+
+    cache.getOrExecute(tablePlan("db1.t", 1), tablePlan("db1.t", 1))(execute())
+    cache.getOrExecute(tablePlan("db2.t", 2), tablePlan("db2.t", 2))(execute())
+    cache.getOrExecute(tablePlan("t", 3), tablePlan("t", 3))(execute())
+
+    cache.invalidate(TableIdentifierNormalized("t", Some("db1")))
+
+    cache.size shouldBe 2
+  }
+
+  it should "evict the least recently used entry when it is full" in {
+    val cache = new NativeResultCache(maxEntries = 2, maxRowsPerEntry = 10, ttlMillis = 60000)
+    val (executions, execute) = countingExecution(Row(1) :: Nil)
+    val evictions = XDMetricsSource.NativeResultCacheEvictions.getCount
+
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute())
+    cache.getOrExecute(tablePlan("t", 2), tablePlan("t", 2))(execute())
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute())
+    cache.getOrExecute(tablePlan("t", 3), tablePlan("t", 3))(execute())
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute())
+
+    executions() shouldBe 3
+    cache.size shouldBe 2
+    XDMetricsSource.NativeResultCacheEvictions.getCount shouldBe evictions + 1
+  }
+
+  it should "expire entries once their time to live has elapsed" in {
+    var now = 0L
+    val cache = new NativeResultCache(maxEntries = 10, maxRowsPerEntry = 10, ttlMillis = 100, clock = () => now)
+    val (executions, execute) = countingExecution(Row(1) :: Nil)
+
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute())
+    now = 100
+    cache.getOrExecute(tablePlan("t", 1), tablePlan("t", 1))(execute())
+
+    executions() shouldBe 2
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.execution
+
+import com.stratio.crossdata.connector.NativeScan
+import com.stratio.crossdata.connector.NativeScan.CostEstimate
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.{Row, SQLContext}
+import org.apache.spark.sql.catalyst.expressions.Literal
+import org.apache.spark.sql.catalyst.plans.Inner
+import org.apache.spark.sql.catalyst.plans.logical.{Join, Limit, LogicalPlan, Project}
+import org.apache.spark.sql.execution.datasources.LogicalRelation
+import org.apache.spark.sql.sources.BaseRelation
+import org.apache.spark.sql.types.{DoubleType, LongType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ResultSizeEstimatorSpec extends BaseXDTest {
+
+  val DefaultSizeInBytes = Long.MaxValue
+
+  val estimator = new ResultSizeEstimator(DefaultSizeInBytes)
+
+  // Rows of 16 bytes
+  class TestRelation(size: Long) extends BaseRelation {
+    override def sqlContext: SQLContext = null
+    override def schema: StructType = StructType(Seq(StructField("id", LongType), StructField("amount", DoubleType)))
+    override def sizeInBytes: Long = size
+  }
+
+  class NativeTestRelation(size: Long, rowsReturned: Long) extends TestRelation(size) with NativeScan {
+    override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = None
+    override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = true
+    override def estimateNativeCost(optimizedLogicalPlan: LogicalPlan): Option[CostEstimate] =
+      Some(CostEstimate(rowsReturned, rowsReturned, fullScan = false))
+  }
+
+  "A ResultSizeEstimator" should "estimate the size of a relation from its statistics" in {
+    val estimate = estimator.estimate(LogicalRelation(new TestRelation(1600)))
+
+    estimate.map(_.bytes) shouldBe Some(BigInt(1600))
+    estimate.map(_.rowWidth) shouldBe Some(16)
+  }
+
+  it should "scale the size of the relations by the width of the projected columns" in {
+    val relation = LogicalRelation(new TestRelation(1600))
+
+    estimator.estimate(Project(relation.output.take(1), relation)).map(_.bytes) shouldBe Some(BigInt(800))
+  }
+
+  it should "bound the size of the result by its LIMIT" in {
+    val estimate = estimator.estimate(Limit(Literal(10), LogicalRelation(new TestRelation(1600))))
+
+    estimate.map(_.bytes) shouldBe Some(BigInt(160))
+    estimate.flatMap(_.rows) shouldBe Some(BigInt(10))
+  }
+
+  it should "prefer the number of rows estimated by the datasource" in {
+    val estimate = estimator.estimate(LogicalRelation(new NativeTestRelation(1600, rowsReturned = 5)))
+
+    estimate.map(_.bytes) shouldBe Some(BigInt(80))
+    estimate.flatMap(_.rows) shouldBe Some(BigInt(5))
+  }
+
+  it should "not estimate the results of joins" in {
+    val join = Join(LogicalRelation(new TestRelation(40000)), LogicalRelation(new TestRelation(40000)), Inner, None)
+
+    estimator.estimate(join) shouldBe None
+  }
+
+  it should "bound the size of the result of a join by its LIMIT" in {
+    val join = Join(LogicalRelation(new TestRelation(40000)), LogicalRelation(new TestRelation(40000)), Inner, None)
+
+    estimator.estimate(Limit(Literal(10), join)).map(_.bytes) shouldBe Some(BigInt(320))
+  }
+
+  it should "not estimate the results of relations whose size is unknown" in {
+    estimator.estimate(LogicalRelation(new TestRelation(DefaultSizeInBytes))) shouldBe None
+  }
+
+}
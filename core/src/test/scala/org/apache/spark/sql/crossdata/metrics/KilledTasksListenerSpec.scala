@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.crossdata.metrics
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.scheduler.{SparkListenerTaskEnd, TaskInfo, TaskLocality}
+import org.apache.spark.{Success, TaskEndReason, TaskKilled}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class KilledTasksListenerSpec extends BaseXDTest {
+
+  private def taskEnd(reason: TaskEndReason, launchTime: Long, finishTime: Long): SparkListenerTaskEnd = {
+    val taskInfo = new TaskInfo(1L, 0, 0, launchTime, "executor", "host", TaskLocality.ANY, speculative = false)
+    reason match {
+      case TaskKilled => taskInfo.markKilled(finishTime)
+      case _ => taskInfo.markSuccessful(finishTime)
+    }
+    SparkListenerTaskEnd(0, 0, "ResultTask", reason, taskInfo, null)
+  }
+
+  "A KilledTasksListener" should "account the killed tasks and the time they had been running" in {
+    val listener = new KilledTasksListener
+    val killedTasks = XDMetricsSource.TasksKilled.getCount
+    val killedTasksRunTime = XDMetricsSource.KilledTasksRunTime.getCount
+
+    listener.onTaskEnd(taskEnd(TaskKilled, 1000L, 4000L))
+    listener.onTaskEnd(taskEnd(Success, 1000L, 9000L))
+
+    XDMetricsSource.TasksKilled.getCount shouldBe killedTasks + 1
+    XDMetricsSource.KilledTasksRunTime.getCount shouldBe killedTasksRunTime + 3000
+  }
+
+}
@@ -34,5 +34,50 @@ class XDMetricsSourceSpec extends BaseXDTest {
     xdms.metricRegistry.getGauges.keySet() should contain ("metricName.testName")
   }
 
+  "XDMetricsSource" should "publish the latency histograms of the query lifecycle phases" in {
+
+    val xdms = new XDMetricsSource()
+    import XDMetricsSource._
+
+    val timersBefore = xdms.metricRegistry.getTimers
+    val parseCount = timersBefore.get("lifecycle.parse.all.all.latency").getCount
+
+    timePhase(Phase.Parse)(())
+
+    xdms.metricRegistry.getTimers.get("lifecycle.parse.all.all.latency").getCount shouldBe parseCount + 1
+    xdms.metricRegistry.getTimers.keySet() should contain allOf (
+      "lifecycle.analysis.all.all.latency",
+      "lifecycle.optimization.all.all.latency",
+      "lifecycle.globalIndex.all.all.latency",
+      "lifecycle.execution.native.all.latency",
+      "lifecycle.execution.spark.all.latency",
+      "lifecycle.serialization.all.all.latency"
+    )
+    xdms.metricRegistry.getGauges.keySet() should not contain "executionType"
+  }
+
+  it should "count the failures of a phase and propagate them" in {
+
+    import XDMetricsSource._
+
+    val failures = lifecycleFailures(Phase.Optimization).getCount
+
+    an [IllegalStateException] should be thrownBy timePhase(Phase.Optimization)(throw new IllegalStateException)
+
+    lifecycleFailures(Phase.Optimization).getCount shouldBe failures + 1
+  }
+
+  "A ConnectorMetricsSource" should "publish the execution latencies of its connector by execution type" in {
+
+    import XDMetricsSource._
+
+    val source = new ConnectorMetricsSource("TestRelation")
+    timePhase(Phase.Execution, NativeExecutionTag, "TestRelation")(())
+
+    source.sourceName shouldBe "XDConnector.TestRelation"
+    source.metricRegistry.getTimers.get("lifecycle.execution.native.TestRelation.latency").getCount shouldBe 1
+    source.metricRegistry.getTimers.get("lifecycle.execution.spark.TestRelation.latency").getCount shouldBe 0
+  }
+
 
 }
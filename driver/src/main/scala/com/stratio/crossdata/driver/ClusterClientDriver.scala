@@ -16,23 +16,27 @@
 package com.stratio.crossdata.driver
 
 import java.util.UUID
+import java.util.concurrent.atomic.AtomicBoolean
 
 import akka.NotUsed
 import akka.actor.{ActorPath, ActorRef}
 import akka.cluster.ClusterEvent.CurrentClusterState
 import akka.cluster.client.{ClusterClient, ClusterClientSettings}
 import akka.stream.scaladsl.Source
+import com.stratio.crossdata.common.QueryPriority.QueryPriority
 import com.stratio.crossdata.common._
 import com.stratio.crossdata.common.result._
 import com.stratio.crossdata.common.security.Session
-import com.stratio.crossdata.driver.actor.{ClusterClientSessionBeaconActor, ProxyActor, ServerClusterClientParameters}
+import com.stratio.crossdata.driver.actor.{ClusterClientSessionBeaconActor, InFlightRequests, ProxyActor, ServerClusterClientParameters}
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.session.{Authentication, SessionManager}
+import org.apache.spark.sql.Row
 import org.slf4j.{Logger, LoggerFactory}
 
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.duration._
-import scala.concurrent.{Await, Future, Promise}
+import scala.collection.mutable
+import scala.concurrent.{Await, Future}
 import scala.language.postfixOps
 import scala.reflect.io.File
 import scala.util.Try
@@ -48,8 +52,57 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
 
   lazy val driverSession: Session = SessionManager.createSession(auth, proxyActor)
 
-  override def sqlStreamedResult(query: String): Future[StreamedSQLResult] =
-    throw new RuntimeException("ClusterClient implementation does not support streams API; use HttpDriver instead")
+  /**
+    * The rows are fetched from a cursor kept by the server, a page of `config.cursor.fetch-size` rows at a time.
+    * Each page is requested while the previous one is being consumed and the cursor gets closed if the stream
+    * is cancelled before reaching its end.
+    */
+  override def sqlStreamedResult(query: String): Future[StreamedSQLResult] = {
+    val fetchSize = driverConf.getCursorFetchSize
+    val sqlCommand = SQLCommand(query, flattenResults = driverConf.getFlattenTables, fetchSize = Some(fetchSize))
+
+    askPage(securitizeCommand(sqlCommand)) map { firstPage =>
+      val exhausted = new AtomicBoolean(firstPage.lastPage)
+
+      val pages = Source.unfoldAsync[Option[Future[RowsPageReply]], Array[Row]](Some(Future.successful(firstPage))) {
+        case Some(pageFuture) => pageFuture map { page =>
+          val nextPage = if (page.lastPage) {
+            exhausted.set(true)
+            None
+          } else Some(askPage(securitizeCommand(FetchRows(sqlCommand.queryId, fetchSize))))
+          Some(nextPage -> page.rows)
+        }
+        case None => Future.successful(None)
+      }
+
+      val rows: Source[Row, NotUsed] = pages.mapConcat(_.toList).watchTermination() { (notUsed, termination) =>
+        termination onComplete { _ =>
+          if (!exhausted.get) tellCommand(securitizeCommand(CloseCursor(sqlCommand.queryId)))
+        }
+        notUsed
+      }
+
+      StreamedSuccessfulSQLResult(rows, firstPage.schema, firstPage.warnings, Some(materializer))
+    } recover {
+      case error => StreamedErrorSQLResult(error.getMessage, Some(error))
+    }
+  }
+
+  private def pagedRows(
+                         queryId: UUID,
+                         page: RowsPageReply,
+                         rows: mutable.ArrayBuffer[Row] = mutable.ArrayBuffer.empty[Row]
+                       ): Future[Array[Row]] = {
+    rows ++= page.rows
+    if (page.lastPage) Future.successful(rows.toArray)
+    else askPage(securitizeCommand(FetchRows(queryId, driverConf.getCursorFetchSize))) flatMap (pagedRows(queryId, _, rows))
+  }
+
+  private def askPage(commandEnvelope: CommandEnvelope): Future[RowsPageReply] = askCommand(commandEnvelope) map {
+    case page: RowsPageReply => page
+    case SQLReply(_, ErrorSQLResult(message, cause)) => throw new RuntimeException(message, cause.orNull)
+    case other => throw new RuntimeException(s"RowsPageReply expected. Received: $other")
+  }
 
   private lazy val clusterClientActor = {
 
@@ -68,9 +121,16 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
     actor
   }
 
+  private val inFlight = new InFlightRequests(system.scheduler)
+
+  private val batching =
+    if (driverConf.getBatchingEnabled)
+      Some(ProxyActor.BatchSettings(driverConf.getBatchingMaxSize, driverConf.getBatchingMaxDelay))
+    else None
+
   private val proxyActor = {
     val proxyActorName = ProxyActor.DefaultName + UUID.randomUUID()
-    system.actorOf(ProxyActor.props(clusterClientActor, this), proxyActorName)
+    system.actorOf(ProxyActor.props(clusterClientActor, driverConf, inFlight, batching, catalogChanged), proxyActorName)
   }
 
   private val sessionBeaconProps = ClusterClientSessionBeaconActor.props(
@@ -85,9 +145,8 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
 
   override protected[driver] def openSession(user:String): Try[Boolean] = {
     val res = Try {
-      val promise = Promise[ServerReply]()
-      proxyActor ! (securitizeCommand(OpenSessionCommand(user)), promise)
-      Await.result(promise.future.mapTo[OpenSessionReply].map(_.isOpen), InitializationTimeout)
+      val reply = askCommand(securitizeCommand(OpenSessionCommand(user)), InitializationTimeout)
+      Await.result(reply.mapTo[OpenSessionReply].map(_.isOpen), InitializationTimeout)
     }
 
     if (res.isSuccess)
@@ -96,7 +155,7 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
     res
   }
 
-  override def sql(query: String): SQLResponse = {
+  override protected def executeSql(query: String, priority: Option[QueryPriority]): SQLResponse = {
     //TODO remove this part when servers broadcast bus was realized
     //Preparse query to know if it is an special command sent from the shell or other driver user that is not a query
     val addJarPattern =
@@ -119,10 +178,15 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
         val hdfspath = res.resultSet(0).getString(0)
         addApp(hdfspath, clss, realPath)
       case _ =>
-        val sqlCommand = new SQLCommand(query, retrieveColNames = driverConf.getFlattenTables)
-        val futureReply = askCommand(securitizeCommand(sqlCommand)).map {
+        val sqlCommand = SQLCommand(query, flattenResults = driverConf.getFlattenTables, priority = priority)
+        val futureReply = askCommand(securitizeCommand(sqlCommand)).flatMap {
           case SQLReply(_, sqlResult) =>
-            sqlResult
+            Future.successful(sqlResult)
+          // Results buffered by the server are paged through a cursor instead of being sent in a single reply
+          case firstPage: RowsPageReply =>
+            pagedRows(sqlCommand.queryId, firstPage) map { rows =>
+              SuccessfulSQLResult(rows, firstPage.schema, firstPage.warnings)
+            }
           case other =>
             throw new RuntimeException(s"SQLReply expected. Received: $other")
         }
@@ -152,12 +216,25 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
     new SQLResponse(addAppCommand.requestId, futureReply)
   }
 
-  private def askCommand(commandEnvelope: CommandEnvelope): Future[ServerReply] = {
-    val promise = Promise[ServerReply]()
-    proxyActor ! (commandEnvelope, promise)
+  private def askCommand(commandEnvelope: CommandEnvelope,
+                         timeout: Duration = driverConf.getRequestTimeout): Future[ServerReply] = {
+    val promise = inFlight.register(commandEnvelope.cmd.requestId, timeout)
+    tellCommand(commandEnvelope)
     promise.future
   }
 
+  /**
+    * Commands bypass the proxy actor, which only receives their replies, unless they have to be shipped
+    * through HTTP or gathered into batches.
+    */
+  private def tellCommand(commandEnvelope: CommandEnvelope): Unit =
+    ProxyActor.localAffinity(commandEnvelope.cmd) match {
+      case Some(localAffinity) if batching.isEmpty || localAffinity =>
+        clusterClientActor.tell(ProxyActor.send(commandEnvelope, localAffinity), proxyActor)
+      case _ =>
+        proxyActor ! commandEnvelope
+    }
+
   override def addJar(path: String, toClassPath: Option[Boolean] = None): SQLResponse = {
     val addJarCommand = AddJARCommand(path, toClassPath = toClassPath)
     if (File(path).exists) {
@@ -178,20 +255,18 @@ class ClusterClientDriver private[driver](driverConf: DriverConf,
   }
 
   override def clusterState(): Future[CurrentClusterState] = {
-    val promise = Promise[ServerReply]()
-    proxyActor ! (securitizeCommand(ClusterStateCommand()), promise)
-    promise.future.mapTo[ClusterStateReply].map(_.clusterState)
+    askCommand(securitizeCommand(ClusterStateCommand())).mapTo[ClusterStateReply].map(_.clusterState)
   }
 
   private[driver] def sessionProviderState(): Future[scala.collection.Set[String]] = {
-    val promise = Promise[ServerReply]()
-    proxyActor ! (securitizeCommand(ClusterStateCommand()), promise)
-    promise.future.mapTo[ClusterStateReply].map(_.sessionCluster)
+    askCommand(securitizeCommand(ClusterStateCommand())).mapTo[ClusterStateReply].map(_.sessionCluster)
   }
 
   override def closeSession(): Unit = {
-    proxyActor ! securitizeCommand(CloseSessionCommand())
+    tellCommand(securitizeCommand(CloseSessionCommand()))
     sessionBeacon.foreach(system.stop)
+    inFlight.failAll(new RuntimeException("The session has been closed before receiving a reply"))
+    stopJmxReporters()
   }
 
 }
@@ -15,14 +15,20 @@
  */
 package com.stratio.crossdata.driver
 
+import java.util.UUID
+
 import akka.NotUsed
 import akka.actor.{ActorSystem, Address}
 import akka.cluster.ClusterEvent.CurrentClusterState
 import akka.cluster.MemberStatus
+import akka.stream.ActorMaterializer
 import akka.stream.scaladsl.Source
+import com.codahale.metrics.{JmxReporter, MetricRegistry}
+import com.stratio.crossdata.common.QueryPriority.QueryPriority
 import com.stratio.crossdata.common._
 import com.stratio.crossdata.common.result._
 import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.driver.ResultCacheMode.ResultCacheMode
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.exceptions.TLSInvalidAuthException
 import com.stratio.crossdata.driver.metadata.FieldMetadata
@@ -95,6 +101,11 @@ object Driver extends DriverFactory {
     */
   private[driver] lazy val system = ActorSystem("CrossdataServerCluster", defaultDriverConf.finalSettings)
 
+  /**
+    * Materializer shared by every driver to run the streams of rows, built on top of the shared actor system.
+    */
+  private[driver] implicit lazy val materializer: ActorMaterializer = ActorMaterializer()(system)
+
   /**
     * Stops the underlying actor system.
     * WARNING! It should be called once all active sessions have been closed. After the shutdown, new session cannot be created.
@@ -161,7 +172,86 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf) {
     * @param query The SQL Command.
     * @return A SQLResponse with the id and the result set.
     */
-  def sql(query: String): SQLResponse
+  def sql(query: String): SQLResponse = sql(query, ResultCacheMode.Default)
+
+  /**
+    * Executes a SQL sentence whose result may be taken from or kept in the result cache of the driver,
+    * see [[ResultCacheMode]]. Without `config.result-cache.enabled` every sentence is sent to the server.
+    * Results are cached along with the session settings sent by the driver, so SET statements don't return
+    * results cached under other settings.
+    *
+    * @param query The SQL Command.
+    * @param cacheMode How the query uses the result cache.
+    * @return A SQLResponse with the id and the result set.
+    */
+  def sql(query: String, cacheMode: ResultCacheMode): SQLResponse = cachedSql(query, cacheMode, None)
+
+  /**
+    * Executes a SQL sentence as `sql(query, cacheMode)` does, running its Spark jobs in the scheduler pool
+    * of the given priority. Queries without priority run in the pool chosen by the server.
+    *
+    * @param query The SQL Command.
+    * @param cacheMode How the query uses the result cache.
+    * @param priority The priority of the query, see [[QueryPriority]].
+    * @return A SQLResponse with the id and the result set.
+    */
+  def sql(query: String, cacheMode: ResultCacheMode, priority: QueryPriority): SQLResponse =
+    cachedSql(query, cacheMode, Some(priority))
+
+  private def cachedSql(query: String, cacheMode: ResultCacheMode, priority: Option[QueryPriority]): SQLResponse =
+    (resultCache, ResultCache.sessionSetting(query)) match {
+      case (Some(_), Some(setting)) =>
+        val response = executeSql(query, priority)
+        response.sqlResult onSuccess {
+          case _: SuccessfulSQLResult => synchronized(sessionSettings += setting)
+        }
+        response
+      case (Some(cache), None) if cacheMode != ResultCacheMode.Bypass =>
+        val key = ResultCache.cacheKey(query, driverConf.getFlattenTables, sessionSettings)
+        val cachedResult = if (cacheMode == ResultCacheMode.Default) cache.get(key) else None
+        cachedResult map { result =>
+          SQLResponse(UUID.randomUUID(), Future.successful(result))
+        } getOrElse {
+          val response = executeSql(query, priority)
+          response.sqlResult onSuccess {
+            case result: SuccessfulSQLResult => cache.put(key, result)
+          }
+          response
+        }
+      case _ =>
+        executeSql(query, priority)
+    }
+
+  protected def executeSql(query: String, priority: Option[QueryPriority]): SQLResponse
+
+  /**
+    * Removes the cached results of the queries reading from a table.
+    *
+    * @param table The table, either `tableName` or `database.tableName`.
+    */
+  def invalidateCachedResults(table: String): Unit =
+    resultCache.foreach(_.invalidate(table))
+
+  /**
+    * Removes every cached result.
+    */
+  def invalidateCachedResults(): Unit =
+    resultCache.foreach(_.invalidateAll())
+
+  // Session settings sent with SET statements, part of the keys of the cached results
+  @volatile private var sessionSettings = Map.empty[String, String]
+
+  private lazy val resultCache: Option[ResultCache] =
+    if (driverConf.getResultCacheEnabled) {
+      val metrics = new MetricRegistry
+      reportToJmx(metrics)
+      Some(new ResultCache(
+        driverConf.getResultCacheMaxEntries,
+        driverConf.getResultCacheMaxBytes,
+        driverConf.getResultCacheTtl,
+        metrics
+      ))
+    } else None
 
   /**
     * Executes a SQL sentence whose result contains a [[Source]] of [[Row]]s'
@@ -183,42 +273,69 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf) {
   def addAppCommand(path: String, clss: String, alias: Option[String] = None): SQLResponse
 
   def importTables(dataSourceProvider: String, options: Map[String, String]): SQLResponse =
-    sql(
-      s"""|IMPORT TABLES
-          |USING $dataSourceProvider
-          |${mkOptionsStatement(options)}
-       """.stripMargin
-    )
+    changingCatalog(CatalogChangedEvent(Seq.empty)) {
+      sql(
+        s"""|IMPORT TABLES
+            |USING $dataSourceProvider
+            |${mkOptionsStatement(options)}
+         """.stripMargin
+      )
+    }
 
 
   // TODO schema -> StructType insteadOf String
   // schema -> e.g "( name STRING, age INT )"
   def createTable(name: String, dataSourceProvider: String, schema: Option[String], options: Map[String, String], isTemporary: Boolean = false): SQLResponse =
-  sql(
-    s"""|CREATE ${if (isTemporary) "TEMPORARY" else ""} TABLE $name
-        |USING $dataSourceProvider
-        |${schema.getOrElse("")}
-        |${mkOptionsStatement(options)}
-       """.stripMargin
-  )
+  changingCatalog(CatalogChangedEvent(Seq.empty)) {
+    sql(
+      s"""|CREATE ${if (isTemporary) "TEMPORARY" else ""} TABLE $name
+          |USING $dataSourceProvider
+          |${schema.getOrElse("")}
+          |${mkOptionsStatement(options)}
+         """.stripMargin
+    )
+  }
 
   def dropTable(name: String, isTemporary: Boolean = false): SQLResponse = {
 
     if (isTemporary) throw new UnsupportedOperationException("Drop temporary table is not supported yet")
 
-    sql(
-      s"""|DROP ${if (isTemporary) "TEMPORARY" else ""}
-          |TABLE $name
-       """.stripMargin
-    )
+    changingCatalog(CatalogChangedEvent(Seq(name))) {
+      sql(
+        s"""|DROP ${if (isTemporary) "TEMPORARY" else ""}
+            |TABLE $name
+         """.stripMargin
+      )
+    }
   }
 
   def dropAllTables(): SQLResponse = {
-    sql(
-      s"""|DROP ALL TABLES""".stripMargin
-    )
+    changingCatalog(CatalogChangedEvent(Seq.empty, allTables = true)) {
+      sql(
+        s"""|DROP ALL TABLES""".stripMargin
+      )
+    }
+  }
+
+  /**
+    * Invalidates the cached metadata and results once the change of the catalog has been done.
+    */
+  private def changingCatalog(event: CatalogChangedEvent)(response: SQLResponse): SQLResponse = {
+    response.sqlResult onComplete (_ => catalogChanged(event))
+    response
+  }
+
+  /**
+    * Invalidates the cached metadata and results affected by a change of the catalog.
+    */
+  protected[driver] def catalogChanged(event: CatalogChangedEvent): Unit = {
+    metadataCache.foreach(_.invalidate(event))
+    if (event.allTables) invalidateCachedResults() else event.tables foreach invalidateCachedResults
   }
 
+  private lazy val metadataCache: Option[MetadataCache] =
+    if (driverConf.getMetadataCacheEnabled) Some(new MetadataCache(driverConf.getMetadataCacheTtl)) else None
+
   private def mkOptionsStatement(options: Map[String, String]): String = {
     val opt = options.map { case (k, v) => s"$k '$v'" } mkString ","
     options.headOption.fold("")(_ => s" OPTIONS ( $opt ) ")
@@ -237,13 +354,16 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf) {
         case table if table.length == 2 => (table(1), Some(table(0)))
       }
     }
-    import SQLResponse._
-    val sqlResult: SQLResult = sql(s"SHOW TABLES ${databaseName.fold("")("IN " + _)}")
-    sqlResult match {
-      case SuccessfulSQLResult(result, _) =>
-        result.map(row => processTableName(row.getString(0)))
-      case other => handleCommandError(other)
+    def loadTables: Seq[TableIdentifier] = {
+      import SQLResponse._
+      val sqlResult: SQLResult = sql(s"SHOW TABLES ${databaseName.fold("")("IN " + _)}", ResultCacheMode.Bypass)
+      sqlResult match {
+        case SuccessfulSQLResult(result, _, _) =>
+          result.map(row => processTableName(row.getString(0)))
+        case other => handleCommandError(other)
+      }
     }
+    metadataCache.fold(loadTables)(_.tables(databaseName)(loadTables))
   }
 
   /**
@@ -257,22 +377,25 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf) {
 
     def extractNameDataType: Row => (String, String) = row => (row.getString(0), row.getString(1))
 
-    import SQLResponse._
-    val sqlResult: SQLResult = sql(s"DESCRIBE ${database.map(_ + ".").getOrElse("")}$tableName")
-
-    sqlResult match {
-      case SuccessfulSQLResult(result, _) =>
-        result.map(extractNameDataType) flatMap { case (name, dataType) =>
-          if (!driverConf.getFlattenTables) {
-            FieldMetadata(name, DataTypesUtils.toDataType(dataType)) :: Nil
-          } else {
-            getFlattenedFields(name, DataTypesUtils.toDataType(dataType))
-          }
-        } toSeq
-
-      case other =>
-        handleCommandError(other)
+    def loadDescription: Seq[FieldMetadata] = {
+      import SQLResponse._
+      val sqlResult: SQLResult = sql(s"DESCRIBE ${database.map(_ + ".").getOrElse("")}$tableName", ResultCacheMode.Bypass)
+
+      sqlResult match {
+        case SuccessfulSQLResult(result, _, _) =>
+          result.map(extractNameDataType) flatMap { case (name, dataType) =>
+            if (!driverConf.getFlattenTables) {
+              FieldMetadata(name, DataTypesUtils.toDataType(dataType)) :: Nil
+            } else {
+              getFlattenedFields(name, DataTypesUtils.toDataType(dataType))
+            }
+          } toSeq
+
+        case other =>
+          handleCommandError(other)
+      }
     }
+    metadataCache.fold(loadDescription)(_.description(database, tableName)(loadDescription))
   }
 
   def show(query: String) = sql(query).waitForResult().prettyResult.foreach(println)
@@ -323,6 +446,25 @@ abstract class Driver(protected[crossdata] val driverConf: DriverConf) {
     */
   def closeSession(): Unit
 
+  private var jmxReporters = List.empty[JmxReporter]
+
+  /**
+    * Exposes the metrics of the registry through JMX, in the domain of the session, until [[stopJmxReporters]].
+    */
+  protected def reportToJmx(registry: MetricRegistry): Unit = synchronized {
+    val reporter = JmxReporter.forRegistry(registry).inDomain(s"crossdata-driver-${driverSession.id}").build()
+    reporter.start()
+    jmxReporters = reporter :: jmxReporters
+  }
+
+  /**
+    * Unregisters the JMX beans of the session. Drivers call it once their session has been closed.
+    */
+  protected def stopJmxReporters(): Unit = synchronized {
+    jmxReporters foreach (_.stop())
+    jmxReporters = Nil
+  }
+
   protected def securitizeCommand(command: Command): CommandEnvelope =
     CommandEnvelope(command, driverSession)
 
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.net.ConnectException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+import akka.http.scaladsl.model.{HttpRequest, HttpResponse}
+import akka.http.scaladsl.settings.ConnectionPoolSettings
+import akka.http.scaladsl.{HttpExt, HttpsConnectionContext}
+import akka.stream.scaladsl.{Keep, Sink, Source, SourceQueueWithComplete}
+import akka.stream.{Materializer, OverflowStrategy, QueueOfferResult, StreamTcpException}
+import com.codahale.metrics.MetricRegistry
+import org.slf4j.{Logger, LoggerFactory}
+
+import scala.concurrent.duration.FiniteDuration
+import scala.concurrent.{ExecutionContext, Future, Promise}
+import scala.util.{Failure, Success, Try}
+
+/**
+  * Sends the requests of an HttpDriver through a dedicated, cached connection pool per server endpoint, so that
+  * connections (and their TLS sessions) are kept alive and reused by the concurrent requests.
+  *
+  * Each request goes to the available endpoint with the fewest requests in flight. An endpoint whose pool fails to
+  * deliver a request is considered down for `failoverBackoff`. The request is only sent to another endpoint when it
+  * cannot have reached the server, i.e. its pool was full or no connection could be established: a request failing
+  * after being written, which may have been executed, is never sent again.
+  *
+  * @param endpoints `host:port` of the servers.
+  * @param queueSize maximum number of requests waiting for each pool, requests beyond it are sent to other endpoints.
+  */
+private[driver] class HttpConnectionPools(
+                                           endpoints: Seq[String],
+                                           settings: ConnectionPoolSettings,
+                                           connectionContext: Option[HttpsConnectionContext],
+                                           queueSize: Int,
+                                           failoverBackoff: FiniteDuration,
+                                           metrics: MetricRegistry
+                                         )(implicit http: HttpExt, materializer: Materializer, executionContext: ExecutionContext) {
+
+  import HttpConnectionPools._
+
+  require(endpoints.nonEmpty, "At least one HTTP server endpoint is required")
+
+  private val pools: IndexedSeq[EndpointPool] = endpoints.map { endpoint =>
+    val (host, port) = hostAndPort(endpoint)
+    new EndpointPool(host, port)
+  }.toIndexedSeq
+
+  private val nextPool = new AtomicInteger()
+
+  private val failovers = metrics.meter(MetricRegistry.name(MetricsPrefix, "failovers"))
+
+  /**
+    * @param request a request whose URI is relative to the server.
+    */
+  def request(request: HttpRequest): Future[HttpResponse] = send(request, candidates())
+
+  def shutdown(): Unit = pools foreach (_.queue.complete())
+
+  /**
+    * @return the pools, by order of preference: the available ones with the fewest requests in flight first.
+    */
+  private def candidates(): Seq[EndpointPool] = {
+    val now = System.currentTimeMillis()
+    // Rotating the pools spreads the requests among equally loaded endpoints
+    val offset = (nextPool.getAndIncrement() & Int.MaxValue) % pools.size
+    val rotated = pools.drop(offset) ++ pools.take(offset)
+    val (available, down) = rotated.partition(_.isAvailable(now))
+    available.sortBy(_.inFlight.get) ++ down.sortBy(_.downUntil.get)
+  }
+
+  private def send(request: HttpRequest, pools: Seq[EndpointPool]): Future[HttpResponse] = {
+    val pool +: others = pools
+    pool.request(request) recoverWith {
+      case failure if others.nonEmpty && notSent(failure) =>
+        failovers.mark()
+        logger.warn(s"Request to ${pool.endpoint} failed, failing over to ${others.head.endpoint}: ${failure.getMessage}")
+        send(request, others)
+    }
+  }
+
+  private class EndpointPool(host: String, port: Int) {
+
+    val endpoint = s"$host:$port"
+
+    val inFlight = new AtomicInteger()
+    val downUntil = new AtomicLong()
+
+    private val waitTimer = metrics.timer(MetricRegistry.name(MetricsPrefix, endpoint, "wait"))
+    private val requestTimer = metrics.timer(MetricRegistry.name(MetricsPrefix, endpoint, "requests"))
+
+    private val poolFlow = connectionContext match {
+      case Some(httpsContext) => http.cachedHostConnectionPoolHttps[Submission](host, port, httpsContext, settings)
+      case None => http.cachedHostConnectionPool[Submission](host, port, settings)
+    }
+
+    val queue: SourceQueueWithComplete[(HttpRequest, Submission)] =
+      Source.queue[(HttpRequest, Submission)](queueSize, OverflowStrategy.dropNew)
+        .map { case element @ (_, submission) =>
+          // Requests are pulled once the pool can take them
+          waitTimer.update(System.nanoTime() - submission.submittedAt, TimeUnit.NANOSECONDS)
+          element
+        }
+        .via(poolFlow)
+        .toMat(Sink.foreach { case (response, submission) => submission.complete(response) })(Keep.left)
+        .run()
+
+    def isAvailable(now: Long): Boolean = downUntil.get <= now
+
+    def request(request: HttpRequest): Future[HttpResponse] = {
+      val submission = Submission(Promise[HttpResponse](), System.nanoTime())
+      inFlight.incrementAndGet()
+
+      val response = queue.offer(request -> submission) flatMap {
+        case QueueOfferResult.Enqueued => submission.response.future
+        case QueueOfferResult.Dropped => Future.failed(new PoolOverflowException(endpoint))
+        case QueueOfferResult.Failure(cause) => Future.failed(cause)
+        case QueueOfferResult.QueueClosed => Future.failed(new PoolClosedException(endpoint))
+      }
+
+      response onComplete { result =>
+        inFlight.decrementAndGet()
+        requestTimer.update(System.nanoTime() - submission.submittedAt, TimeUnit.NANOSECONDS)
+        result match {
+          case Success(_) | Failure(_: PoolOverflowException) | Failure(_: PoolClosedException) =>
+          case Failure(_) => downUntil.set(System.currentTimeMillis() + failoverBackoff.toMillis)
+        }
+      }
+
+      response
+    }
+
+  }
+
+}
+
+private[driver] object HttpConnectionPools {
+
+  lazy val logger: Logger = LoggerFactory.getLogger(classOf[HttpConnectionPools])
+
+  val MetricsPrefix = "http.pool"
+
+  private[driver] case class Submission(response: Promise[HttpResponse], submittedAt: Long) {
+    def complete(result: Try[HttpResponse]): Unit = response.complete(result)
+  }
+
+  class PoolOverflowException(endpoint: String) extends RuntimeException(s"Too many requests waiting for $endpoint")
+
+  class PoolClosedException(endpoint: String) extends IllegalStateException(s"The pool of $endpoint is closed")
+
+  /**
+    * Whether a request failed before being written: it was not accepted by its pool or the connection to the server
+    * could not be established.
+    */
+  private[driver] def notSent(failure: Throwable): Boolean = failure match {
+    case _: PoolOverflowException | _: PoolClosedException => true
+    case _: ConnectException => true
+    case tcpFailure: StreamTcpException if tcpFailure.getMessage startsWith "Tcp command [Connect(" => true
+    case other => Option(other.getCause) exists (cause => (cause ne other) && notSent(cause))
+  }
+
+  private[driver] def hostAndPort(endpoint: String): (String, Int) = endpoint.split(':') match {
+    case Array(host, port) => (host.trim, port.trim.toInt)
+    case _ => throw new IllegalArgumentException(s"Invalid HTTP server endpoint (host:port expected): $endpoint")
+  }
+
+}
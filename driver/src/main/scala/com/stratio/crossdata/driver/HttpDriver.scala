@@ -22,18 +22,22 @@ import javax.net.ssl.{KeyManagerFactory, SSLContext, SSLException, TrustManagerF
 import akka.NotUsed
 import akka.actor.ActorRef
 import akka.cluster.ClusterEvent.CurrentClusterState
+import akka.http.scaladsl.coding.{Deflate, Gzip}
 import akka.http.scaladsl.marshalling.{Marshal, Marshaller}
 import akka.http.scaladsl.model.HttpMethods._
 import akka.http.scaladsl.model._
+import akka.http.scaladsl.model.headers.{Accept, `Accept-Encoding`, HttpEncodingRange, HttpEncodings}
 import akka.http.scaladsl.unmarshalling.{Unmarshaller, _}
 import akka.http.scaladsl.{Http, HttpExt, HttpsConnectionContext}
 import akka.stream.scaladsl.{Keep, Sink, Source}
-import akka.stream.{ActorMaterializer, TLSClientAuth}
+import akka.stream.TLSClientAuth
 import akka.util.ByteString
+import com.codahale.metrics.MetricRegistry
+import com.stratio.crossdata.common.QueryPriority.QueryPriority
 import com.stratio.crossdata.common._
 import com.stratio.crossdata.common.result._
 import com.stratio.crossdata.common.security.{KeyStoreUtils, Session}
-import com.stratio.crossdata.common.serializers.{CrossdataCommonSerializer, StreamedRowSerializer}
+import com.stratio.crossdata.common.serializers.{ColumnarBatchCodec, CrossdataCommonSerializer}
 import com.stratio.crossdata.driver.actor.HttpSessionBeaconActor
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.exceptions.TLSInvalidAuthException
@@ -63,12 +67,47 @@ class HttpDriver private[driver](driverConf: DriverConf,
   private var sessionBeacon: Option[ActorRef] = None
 
   private implicit lazy val _ = system
-  private implicit lazy val materializer: ActorMaterializer = ActorMaterializer()
   private implicit lazy val http = obtainHttpContext
-  private val serverHttp: String = driverConf.getCrossdataServerHttp
-  private def protocol = if(driverConf.httpTlsEnable) "https" else "http"
   private val requestTimeout: Duration = Duration.Inf //TODO
 
+  // Binary columnar and compressed results are requested unless disabled, servers not supporting them ignore the headers
+  private lazy val resultHeaders: List[HttpHeader] = {
+    val accept = if (driverConf.httpColumnarResults) {
+      val Array(mainType, subType) = ColumnarBatchCodec.MediaType.split('/')
+      val columnarMediaType = MediaType.customBinary(mainType, subType, MediaType.Compressible)
+      List(Accept(MediaRange(columnarMediaType), MediaRange(MediaTypes.`application/json`)))
+    } else Nil
+    val acceptEncoding = if (driverConf.httpCompressionEnabled) {
+      List(`Accept-Encoding`(HttpEncodingRange(HttpEncodings.gzip), HttpEncodingRange(HttpEncodings.deflate)))
+    } else Nil
+    accept ++ acceptEncoding
+  }
+
+  /**
+    * Connection pool and request metrics of the HTTP server endpoints.
+    */
+  lazy val httpMetrics: MetricRegistry = {
+    val registry = new MetricRegistry
+    if (driverConf.httpMetricsJmxEnabled) reportToJmx(registry)
+    registry
+  }
+
+  private lazy val pools = new HttpConnectionPools(
+    driverConf.getCrossdataServerHttpEndpoints,
+    driverConf.httpConnectionPoolSettings,
+    if (driverConf.httpTlsEnable) Some(http.defaultClientHttpsContext) else None,
+    driverConf.httpPoolQueueSize,
+    driverConf.httpFailoverBackoff,
+    httpMetrics
+  )
+
+  // Decoding runs apart from the global execution context, where callers may block waiting for the results
+  private lazy val resultDecoder = new ResultDecoder(
+    driverConf.httpDecodingBatchSize,
+    driverConf.httpDecodingBatchInterval,
+    driverConf.httpDecodingParallelism
+  )(Try(system.dispatchers.lookup(DriverConf.Http.DecodingDispatcher)).getOrElse(system.dispatcher))
+
   import de.heikoseeberger.akkahttpjson4s.Json4sSupport._
   implicit val serialization = jackson.Serialization
 
@@ -77,7 +116,8 @@ class HttpDriver private[driver](driverConf: DriverConf,
     driverSession.id,
     5 seconds, /* This ins't configurable since it's simpler for the user
                   to play just with alert period time at server side. */
-    s"$protocol://$serverHttp/sessions"
+    "/sessions",
+    pools.request
   )
 
   private def obtainHttpContext: HttpExt = {
@@ -114,7 +154,7 @@ class HttpDriver private[driver](driverConf: DriverConf,
     val result =
       for {
         requestEntity <- Marshal(toMarshalCommand).to[RequestEntity]
-        httpResponse <- http.singleRequest(HttpRequest(httpMethod, s"$protocol://$serverHttp/$path", entity = requestEntity))
+        httpResponse <- pools.request(HttpRequest(httpMethod, s"/$path", entity = requestEntity))
         reply <- Unmarshal(httpResponse.entity).to[E]
         desiredResult = replyToResult(reply)
       } yield desiredResult
@@ -145,25 +185,27 @@ class HttpDriver private[driver](driverConf: DriverConf,
   }
 
 
-  override def sql(query: String): SQLResponse = {
+  override protected def executeSql(query: String, priority: Option[QueryPriority]): SQLResponse = {
 
-    val sqlCommand = new SQLCommand(query, retrieveColNames = driverConf.getFlattenTables)
+    val sqlCommand = SQLCommand(query, flattenResults = driverConf.getFlattenTables, priority = priority)
 
     // Performs the request to server
     val response = Marshal(securitizeCommand(sqlCommand)).to[RequestEntity] flatMap { requestEntity =>
-      val request = HttpRequest(POST, s"$protocol://$serverHttp/query/${sqlCommand.requestId}", entity = requestEntity)
-       http.singleRequest(request) flatMap { httpResponse =>
+      val request = HttpRequest(
+        POST, s"/query/${sqlCommand.requestId}", resultHeaders, entity = requestEntity
+      )
+       pools.request(request) map decoded flatMap { httpResponse =>
 
          if(httpResponse.status == StatusCodes.OK) { // OK Responses will be served through streaming
 
-           receiveSchemaAndRows(httpResponse.entity.dataBytes).flatMap { case (schema, streamedRowSource) =>
+           receiveSchemaAndRows(httpResponse.entity).flatMap { case (schema, streamedRowSource) =>
              val rows = streamedRowSource.runFold(List.empty[Row]) {
                case (acc: List[Row], StreamedRow(row, None)) => row::acc
                case _ => Nil
              }
              rows.map{ rowList =>
                /* TODO: Performance could be increased if `SuccessfulSQLResult`#resultSet were of type `Seq[Row]`*/
-               SuccessfulSQLResult(rowList.reverse toArray, schema)
+               SuccessfulSQLResult(rowList.reverse toArray, schema, warnings(httpResponse))
              }
            }
          } else {
@@ -201,13 +243,15 @@ class HttpDriver private[driver](driverConf: DriverConf,
     val sqlCommand = new SQLCommand(query, retrieveColNames = driverConf.getFlattenTables)
     Marshal(securitizeCommand(sqlCommand)).to[RequestEntity] flatMap { requestEntity =>
 
-      val request = HttpRequest(POST, s"$protocol://$serverHttp/query/${sqlCommand.requestId}", entity = requestEntity)
-      http.singleRequest(request) flatMap { httpResponse =>
+      val request = HttpRequest(
+        POST, s"/query/${sqlCommand.requestId}", resultHeaders, entity = requestEntity
+      )
+      pools.request(request) map decoded flatMap { httpResponse =>
 
         if (httpResponse.status == StatusCodes.OK) {  // OK Responses will be served through streaming
-          receiveSchemaAndRows(httpResponse.entity.dataBytes).map { case (schema, streamedRowSource) =>
+          receiveSchemaAndRows(httpResponse.entity).map { case (schema, streamedRowSource) =>
             val rows = streamedRowSource.map { case streamedRow: StreamedRow => streamedRow.row }
-            StreamedSuccessfulSQLResult(rows, schema)
+            StreamedSuccessfulSQLResult(rows, schema, warnings(httpResponse), Some(materializer))
           }
         } else {
           Unmarshal(httpResponse.entity).to[SQLReply].map {
@@ -218,8 +262,34 @@ class HttpDriver private[driver](driverConf: DriverConf,
     }
   }
 
-  private def receiveSchemaAndRows(bytesSource: Source[ByteString, Any]): Future[(StructType, Source[InternalStreamedSuccessfulSQLResult, NotUsed])] = {
-    val framesSource = bytesSource.filterNot(bs => bs.isEmpty || bs == ByteString("\n")) //...empty lines get removed...
+  // Decompression is streamed along with the entity
+  private def decoded(httpResponse: HttpResponse): HttpResponse = httpResponse.encoding match {
+    case HttpEncodings.gzip => Gzip.decode(httpResponse)
+    case HttpEncodings.deflate => Deflate.decode(httpResponse)
+    case _ => httpResponse
+  }
+
+  private def warnings(httpResponse: HttpResponse): Seq[String] =
+    httpResponse.headers.filter(_.is(SQLResult.WarningHttpHeader.toLowerCase)).map(_.value)
+
+  private def receiveSchemaAndRows(entity: ResponseEntity): Future[(StructType, Source[InternalStreamedSuccessfulSQLResult, NotUsed])] =
+    if (entity.contentType.mediaType.value == ColumnarBatchCodec.MediaType)
+      receiveColumnarBatches(entity.dataBytes)
+    else
+      receiveJsonDocuments(entity.dataBytes)
+
+  private def receiveColumnarBatches(bytesSource: Source[ByteString, Any]): Future[(StructType, Source[InternalStreamedSuccessfulSQLResult, NotUsed])] = {
+    // The first frame holds the schema, which is needed to decode the record batches following it
+    resultDecoder.columnarFrames(bytesSource).prefixAndTail(1).runWith(Sink.head) map { case (Seq(schemaFrame), batches) =>
+      val schema = ColumnarBatchCodec.decodeSchema(schemaFrame) getOrElse {
+        throw new IllegalStateException("The columnar result doesn't start with its schema")
+      }
+      (schema, batches.via(resultDecoder.columnarRows(schema)).map(row => StreamedRow(row): InternalStreamedSuccessfulSQLResult))
+    }
+  }
+
+  private def receiveJsonDocuments(bytesSource: Source[ByteString, Any]): Future[(StructType, Source[InternalStreamedSuccessfulSQLResult, NotUsed])] = {
+    val framesSource = resultDecoder.jsonDocuments(bytesSource) // Chunks don't necessarily match documents
     val rawSchemaAndRawRowsSource = framesSource.prefixAndTail[ByteString](1) //remaining get transformed to ByteStrings.
 
     // From the raw lines stream, a new stream providing the first one and a stream of the remaining ones is created
@@ -228,21 +298,11 @@ class HttpDriver private[driver](driverConf: DriverConf,
     rawSchemaAndRawRowsSource.toMat(sink)(Keep.right).run.flatMap { case (Seq(rawSchema), rawRows) =>
       Unmarshal(HttpEntity(ContentTypes.`application/json`, rawSchema)).to[InternalStreamedSuccessfulSQLResult].map {
         case StreamedSchema(schema) => // Having de-serialized the schema, it can be used to deserialize each row at the un-marshalling phase
-          (schema, deserializeRows(schema, rawRows))
+          (schema, rawRows.via(resultDecoder.jsonRows(schema)).map(row => StreamedRow(row): InternalStreamedSuccessfulSQLResult))
       }
     }
   }
 
-  private def deserializeRows(schema: StructType, rawRows: Source[ByteString, NotUsed]): Source[InternalStreamedSuccessfulSQLResult, NotUsed] = {
-    implicit val json4sJacksonFormats = this.json4sJacksonFormats + new StreamedRowSerializer(schema)
-    val um: Unmarshaller[ResponseEntity, InternalStreamedSuccessfulSQLResult] = json4sUnmarshaller
-
-    rawRows.mapAsync(1) { bs =>
-      val entity = HttpEntity(ContentTypes.`application/json`, bs)
-      um(entity)
-    }
-  }
-
   override def addJar(path: String, toClassPath: Option[Boolean] = None): SQLResponse =
     apiNotSupported("addJar")
 
@@ -268,13 +328,18 @@ class HttpDriver private[driver](driverConf: DriverConf,
   override def closeSession(): Unit = {
     val command = CloseSessionCommand()
     val response = Marshal(securitizeCommand(command)).to[RequestEntity] flatMap { requestEntity =>
-      http.singleRequest(HttpRequest(POST, s"$protocol://$serverHttp/query/${command.requestId}", entity = requestEntity))
+      pools.request(HttpRequest(POST, s"/query/${command.requestId}", entity = requestEntity))
+    } flatMap (_.entity.dataBytes.runWith(Sink.ignore))
+    try {
+      Try(Await.ready(response, requestTimeout)) recoverWith {
+        case err =>
+          sessionBeacon.foreach(system.stop)
+          Failure(err)
+      } get
+    } finally {
+      pools.shutdown()
+      stopJmxReporters()
     }
-    Try(Await.ready(response, requestTimeout)) recoverWith {
-      case err =>
-        sessionBeacon.foreach(system.stop)
-        Failure(err)
-    } get
   }
 
   private def apiNotSupported(command: String): SQLResponse =
@@ -15,17 +15,27 @@
  */
 package com.stratio.crossdata.driver
 
+import java.util.concurrent.{CompletableFuture, CompletionStage}
+
+import akka.NotUsed
 import akka.actor.Address
-import com.stratio.crossdata.common.result.{SQLResult, StreamedSQLResult}
+import akka.stream.scaladsl.{Sink, Source}
+import com.stratio.crossdata.common.QueryPriority
+import com.stratio.crossdata.common.result.{ErrorSQLResult, SQLResult, StreamedErrorSQLResult, StreamedSQLResult}
+import com.stratio.crossdata.driver.Driver.materializer
 import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.metadata.{FieldMetadata, JavaTableName}
 import com.stratio.crossdata.driver.session.Authentication
+import org.apache.spark.sql.Row
+import org.reactivestreams.Publisher
 import org.slf4j.LoggerFactory
 
 import scala.collection.JavaConversions._
 import scala.collection.JavaConverters._
+import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.{Await, Future}
 import scala.concurrent.duration._
+import scala.util.{Failure, Success}
 
 object JavaDriver {
   def httpDriverFactory: DriverFactory = Driver.http
@@ -100,9 +110,93 @@ class JavaDriver private(driverConf: DriverConf,
   def sql(sqlText: String, timeoutDuration: Duration): SQLResult =
     scalaDriver.sql(sqlText).waitForResult(timeoutDuration)
 
+  /**
+    * Sync execution using the result cache of the driver as specified by `cacheMode`
+    *
+    * @since 1.9
+    */
+  def sql(sqlText: String, cacheMode: ResultCacheMode.ResultCacheMode): SQLResult =
+    scalaDriver.sql(sqlText, cacheMode).waitForResult()
+
+  /**
+    * Sync execution using the result cache as specified by `cacheMode`, running the Spark jobs of the query in the
+    * scheduler pool of the given `priority`
+    *
+    * @since 1.9
+    */
+  def sql(sqlText: String, cacheMode: ResultCacheMode.ResultCacheMode, priority: QueryPriority.QueryPriority): SQLResult =
+    scalaDriver.sql(sqlText, cacheMode, priority).waitForResult()
+
+  /**
+    * @since 1.9
+    */
+  def invalidateCachedResults(table: String): Unit =
+    scalaDriver.invalidateCachedResults(table)
+
+  /**
+    * @since 1.9
+    */
+  def invalidateCachedResults(): Unit =
+    scalaDriver.invalidateCachedResults()
+
   def sqlStreamSource(query: String): StreamedSQLResult =
     Await.result(scalaDriver.sqlStreamedResult(query), Duration.Inf)
 
+  /**
+    * Async execution: the stage completes once the result has been received, failures are
+    * reported as an [[ErrorSQLResult]] like in the sync execution.
+    *
+    * @since 1.9
+    */
+  def sqlAsync(sqlText: String): CompletionStage[SQLResult] =
+    toCompletionStage {
+      scalaDriver.sql(sqlText).sqlResult recover {
+        case cause: Exception => ErrorSQLResult(cause.getLocalizedMessage, Some(cause))
+      }
+    }
+
+  /**
+    * @since 1.9
+    */
+  def sqlStreamedAsync(query: String): CompletionStage[StreamedSQLResult] =
+    toCompletionStage(scalaDriver.sqlStreamedResult(query))
+
+  /**
+    * Publishes the rows of a query honouring the demand of its subscriber, which is notified through `onError`
+    * when the query fails. The query is sent right away while the rows are only fetched once subscribed.
+    *
+    * @since 1.9
+    */
+  def sqlPublisher(query: String): Publisher[Row] =
+    streamedRows(query).runWith(Sink.asPublisher(fanout = false))
+
+  /**
+    * Iterates the rows of a query, buffering up to `fetchSize` rows ahead of the consumer.
+    * Close the iterator to cancel the query when not all its rows are read.
+    *
+    * @since 1.9
+    */
+  def sqlIterator(query: String, fetchSize: Int): RowsIterator =
+    new RowsIterator(streamedRows(query), fetchSize)
+
+  def sqlIterator(query: String): RowsIterator =
+    sqlIterator(query, driverConf.getCursorFetchSize)
+
+  private def streamedRows(query: String): Source[Row, NotUsed] =
+    Source.fromFuture(scalaDriver.sqlStreamedResult(query)) flatMapConcat {
+      case StreamedErrorSQLResult(message, cause) => Source.failed(new RuntimeException(message, cause.orNull))
+      case result => result.rowsSource
+    }
+
+  private def toCompletionStage[T](future: Future[T]): CompletionStage[T] = {
+    val stage = new CompletableFuture[T]()
+    future onComplete {
+      case Success(value) => stage.complete(value)
+      case Failure(cause) => stage.completeExceptionally(cause)
+    }
+    stage
+  }
+
   def importTables(dataSourceProvider: String, options: java.util.Map[String, String]): SQLResult =
     scalaDriver.importTables(dataSourceProvider, options.toMap)
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.concurrent.ConcurrentHashMap
+
+import com.stratio.crossdata.common.CatalogChangedEvent
+import com.stratio.crossdata.driver.Driver.TableIdentifier
+import com.stratio.crossdata.driver.MetadataCache.Entry
+import com.stratio.crossdata.driver.metadata.FieldMetadata
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.FiniteDuration
+
+/**
+  * Lists of tables and descriptions of tables known by a driver. Entries expire `ttl` after being loaded and they are
+  * invalidated by the changes of the catalog, either made through the driver or notified by the servers.
+  * Identifiers are case insensitive.
+  */
+private[driver] class MetadataCache(ttl: FiniteDuration) {
+
+  private val tableLists = new ConcurrentHashMap[Option[String], Entry[Seq[TableIdentifier]]]()
+  private val descriptions = new ConcurrentHashMap[(Option[String], String), Entry[Seq[FieldMetadata]]]()
+
+  def tables(database: Option[String])(load: => Seq[TableIdentifier]): Seq[TableIdentifier] =
+    cached(tableLists, database.map(_.toLowerCase))(load)
+
+  def description(database: Option[String], table: String)(load: => Seq[FieldMetadata]): Seq[FieldMetadata] =
+    cached(descriptions, (database.map(_.toLowerCase), table.toLowerCase))(load)
+
+  /**
+    * Every list of tables is invalidated along with the descriptions of the changed tables.
+    */
+  def invalidate(event: CatalogChangedEvent): Unit =
+    if (event.allTables) {
+      invalidateAll()
+    } else {
+      tableLists.clear()
+      event.tables map (_.toLowerCase.split('.')) foreach {
+        case Array(database, table) => descriptions.keySet.retain { case (db, t) => !(t == table && db.forall(_ == database)) }
+        case Array(table) => descriptions.keySet.retain { case (_, t) => t != table }
+        case _ =>
+      }
+    }
+
+  def invalidateAll(): Unit = {
+    tableLists.clear()
+    descriptions.clear()
+  }
+
+  private def cached[K, V](entries: ConcurrentHashMap[K, Entry[V]], key: K)(load: => V): V =
+    Option(entries.get(key)) filter (_.expiresAt > System.nanoTime()) map (_.value) getOrElse {
+      val value = load
+      entries.put(key, Entry(value, System.nanoTime() + ttl.toNanos))
+      value
+    }
+
+}
+
+private[driver] object MetadataCache {
+
+  private[driver] case class Entry[V](value: V, expiresAt: Long)
+
+}
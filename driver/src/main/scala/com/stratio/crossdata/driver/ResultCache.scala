@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.concurrent.TimeUnit
+
+import com.codahale.metrics.{Gauge, MetricRegistry, RatioGauge}
+import com.stratio.crossdata.common.result.SuccessfulSQLResult
+import org.apache.spark.sql.catalyst.analysis.UnresolvedRelation
+import org.apache.spark.sql.catalyst.plans.logical.InsertIntoTable
+import org.apache.spark.sql.catalyst.{SqlParser, TableIdentifier}
+import org.apache.spark.util.SizeEstimator
+import org.slf4j.{Logger, LoggerFactory}
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.FiniteDuration
+import scala.util.Try
+
+/**
+  * How a query uses the result cache of the driver.
+  *
+  *  - Default: the cached result is returned when available, otherwise the result of the query gets cached.
+  *  - Refresh: the query is always executed and its result replaces the cached one.
+  *  - Bypass: the query is always executed and its result isn't cached.
+  */
+object ResultCacheMode extends Enumeration {
+  type ResultCacheMode = Value
+  val Default, Refresh, Bypass = Value
+}
+
+/**
+  * Least recently used cache of the results of the queries run by a driver.
+  *
+  * Only the queries the SQL parser recognizes as such are cached, along with the tables they read from so that
+  * they can be invalidated by table. Entries expire `ttl` after being cached and the least recently used ones are
+  * evicted to keep at most `maxEntries` results taking up to `maxBytes` (as estimated in memory).
+  */
+private[driver] class ResultCache(maxEntries: Int, maxBytes: Long, ttl: FiniteDuration, metrics: MetricRegistry) {
+
+  import ResultCache._
+
+  private val logger: Logger = LoggerFactory.getLogger(classOf[ResultCache])
+
+  private val entries = new java.util.LinkedHashMap[ResultCacheKey, Entry](16, 0.75f, true)
+  private var bytes = 0L
+
+  private val hits = metrics.meter(MetricRegistry.name(MetricsPrefix, "hits"))
+  private val misses = metrics.meter(MetricRegistry.name(MetricsPrefix, "misses"))
+  private val evictions = metrics.meter(MetricRegistry.name(MetricsPrefix, "evictions"))
+
+  metrics.register(MetricRegistry.name(MetricsPrefix, "hit-ratio"), new RatioGauge {
+    override def getRatio: RatioGauge.Ratio = RatioGauge.Ratio.of(hits.getCount, hits.getCount + misses.getCount)
+  })
+  metrics.register(MetricRegistry.name(MetricsPrefix, "entries"), new Gauge[Int] {
+    override def getValue: Int = size
+  })
+  metrics.register(MetricRegistry.name(MetricsPrefix, "bytes"), new Gauge[Long] {
+    override def getValue: Long = synchronized(bytes)
+  })
+
+  def get(key: ResultCacheKey): Option[SuccessfulSQLResult] = synchronized {
+    val found = Option(entries.get(key)) filter { entry =>
+      val alive = System.nanoTime() < entry.expiresAt
+      if (!alive) remove(key)
+      alive
+    }
+    if (found.isDefined) hits.mark() else misses.mark()
+    found.map(_.result)
+  }
+
+  /**
+    * Caches the result of a query, unless it isn't a query or its result doesn't fit into the cache.
+    */
+  def put(key: ResultCacheKey, result: SuccessfulSQLResult): Unit =
+    for (tables <- readTables(key.sql)) {
+      val size = SizeEstimator.estimate(result.resultSet)
+      if (size <= maxBytes) synchronized {
+        remove(key)
+        entries.put(key, Entry(result, tables, size, System.nanoTime() + ttl.toNanos))
+        bytes += size
+        evict()
+      } else {
+        logger.debug(s"The result of '${key.sql}' takes $size bytes, it's too big to be cached")
+      }
+    }
+
+  /**
+    * Removes the results of the queries reading from a table, `table` or `database.table`.
+    * Unqualified tables match the table in any database.
+    */
+  def invalidate(table: String): Unit = {
+    val invalidated = parseTableIdentifier(table)
+    synchronized {
+      entries.toSeq collect {
+        case (key, entry) if entry.tables.exists(references(_, invalidated)) => key
+      } foreach remove
+    }
+  }
+
+  def invalidateAll(): Unit = synchronized {
+    entries.clear()
+    bytes = 0L
+  }
+
+  def size: Int = synchronized(entries.size)
+
+  private def remove(key: ResultCacheKey): Unit =
+    Option(entries.remove(key)) foreach (bytes -= _.size)
+
+  private def evict(): Unit = {
+    val leastRecentlyUsed = entries.entrySet.iterator
+    while ((entries.size > maxEntries || bytes > maxBytes) && leastRecentlyUsed.hasNext) {
+      bytes -= leastRecentlyUsed.next().getValue.size
+      leastRecentlyUsed.remove()
+      evictions.mark()
+    }
+  }
+
+}
+
+private[driver] object ResultCache {
+
+  val MetricsPrefix = "result-cache"
+
+  /**
+    * @param sql the text of the query, without leading and trailing whitespaces.
+    * @param flattenResults session setting which changes the result of the query.
+    * @param settings session settings sent by the driver with SET statements, which may change the result too.
+    */
+  case class ResultCacheKey(sql: String, flattenResults: Boolean, settings: Map[String, String])
+
+  def cacheKey(sql: String, flattenResults: Boolean, settings: Map[String, String] = Map.empty): ResultCacheKey =
+    ResultCacheKey(sql.trim, flattenResults, settings)
+
+  private val SetStatement = """(?is)\s*SET\s+([^=]+?)\s*=\s*(.*?)\s*;?\s*""".r
+
+  /**
+    * Session setting changed by a `SET key=value` statement, `None` for any other statement.
+    */
+  def sessionSetting(sql: String): Option[(String, String)] = sql match {
+    case SetStatement(key, value) => Some(key -> value)
+    case _ => None
+  }
+
+  private case class Entry(result: SuccessfulSQLResult, tables: Set[TableIdentifier], size: Long, expiresAt: Long)
+
+  /**
+    * Tables read by a query, `None` when the statement isn't a query.
+    */
+  def readTables(sql: String): Option[Set[TableIdentifier]] =
+    Try(SqlParser.parse(sql)).toOption filter { plan =>
+      plan.collect { case insert: InsertIntoTable => insert }.isEmpty
+    } map { plan =>
+      plan.collect { case UnresolvedRelation(tableIdentifier, _) => tableIdentifier }.toSet
+    }
+
+  def parseTableIdentifier(table: String): TableIdentifier =
+    table.split('.') match {
+      case Array(database, tableName) => TableIdentifier(tableName, Some(database))
+      case _ => TableIdentifier(table)
+    }
+
+  private def references(read: TableIdentifier, invalidated: TableIdentifier): Boolean =
+    read.table.equalsIgnoreCase(invalidated.table) && (
+      for (readDatabase <- read.database; invalidatedDatabase <- invalidated.database)
+        yield readDatabase.equalsIgnoreCase(invalidatedDatabase)
+      ).getOrElse(true)
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.nio.ByteOrder
+
+import akka.NotUsed
+import akka.stream.scaladsl.{Flow, Framing, Source}
+import akka.util.ByteString
+import com.stratio.crossdata.common.serializers.{ColumnarBatchCodec, CompiledRowSerializer}
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.StructType
+
+import scala.concurrent.duration.FiniteDuration
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+  * Decodes the rows streamed by the HTTP query endpoint. Rows are decoded in batches, by up to `parallelism` concurrent
+  * tasks, preserving their order.
+  *
+  * @param batchSize number of JSON row documents decoded by each task.
+  * @param batchInterval time after which the JSON row documents received so far are decoded, even if they are less
+  *                      than `batchSize`.
+  */
+private[driver] class ResultDecoder(
+                                    batchSize: Int,
+                                    batchInterval: FiniteDuration,
+                                    parallelism: Int
+                                  )(implicit executionContext: ExecutionContext) {
+
+  import ResultDecoder._
+
+  /**
+    * @return the newline separated JSON documents of `bytes`, regardless of how they were chunked.
+    */
+  def jsonDocuments(bytes: Source[ByteString, Any]): Source[ByteString, Any] =
+    bytes.via(Framing.delimiter(DocumentDelimiter, MaxDocumentLength, allowTruncation = true)).filter(_.nonEmpty)
+
+  /**
+    * Flow of `StreamedRow` JSON documents, as framed by [[jsonDocuments]], into rows.
+    */
+  def jsonRows(schema: StructType): Flow[ByteString, Row, NotUsed] = {
+    val rowSerializer = new CompiledRowSerializer(schema)
+    Flow[ByteString].groupedWithin(batchSize, batchInterval).mapAsync(parallelism) { documents =>
+      Future {
+        val batch = ByteString.newBuilder
+        documents foreach { document =>
+          batch ++= document
+          batch ++= DocumentDelimiter
+        }
+        rowSerializer.deserializeStreamedRows(batch.result().toArray)
+      }
+    } mapConcat (_.toList)
+  }
+
+  /**
+    * @return the length-prefixed frames of a binary columnar result.
+    */
+  def columnarFrames(bytes: Source[ByteString, Any]): Source[ByteString, Any] =
+    bytes.via(Framing.lengthField(ColumnarBatchCodec.FrameLengthFieldSize, 0, ColumnarBatchCodec.MaxFrameLength, ByteOrder.BIG_ENDIAN))
+
+  /**
+    * Flow of binary columnar record batches into rows.
+    */
+  def columnarRows(schema: StructType): Flow[ByteString, Row, NotUsed] = {
+    val codec = new ColumnarBatchCodec(schema)
+    Flow[ByteString].mapAsync(parallelism)(frame => Future(codec.decode(frame))) mapConcat (_.toList)
+  }
+
+}
+
+private[driver] object ResultDecoder {
+  val DocumentDelimiter = ByteString("\n")
+  val MaxDocumentLength: Int = ColumnarBatchCodec.MaxFrameLength
+}
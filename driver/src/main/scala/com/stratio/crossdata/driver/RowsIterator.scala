@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.NoSuchElementException
+
+import akka.NotUsed
+import akka.stream.scaladsl.{Keep, Sink, Source}
+import akka.stream.{KillSwitches, Materializer, OverflowStrategy}
+import org.apache.spark.sql.Row
+
+import scala.concurrent.Await
+import scala.concurrent.duration.Duration
+
+/**
+  * Blocking iterator over the rows of a streamed result. Rows are pulled from the stream as they are consumed,
+  * keeping up to `fetchSize` of them buffered, so that the server doesn't send them faster than they are read.
+  * Closing the iterator before reaching its end cancels the stream.
+  */
+class RowsIterator private[driver](rows: Source[Row, NotUsed], fetchSize: Int)(implicit materializer: Materializer)
+  extends java.util.Iterator[Row] with AutoCloseable {
+
+  require(fetchSize > 0, "The fetch size must be positive")
+
+  private val (killSwitch, queue) = rows
+    .viaMat(KillSwitches.single)(Keep.right)
+    .buffer(fetchSize, OverflowStrategy.backpressure)
+    .toMat(Sink.queue[Row]())(Keep.both)
+    .run()
+
+  private var nextRow: Option[Row] = None
+  private var finished = false
+
+  override def hasNext: Boolean = {
+    if (nextRow.isEmpty && !finished) {
+      nextRow = Await.result(queue.pull(), Duration.Inf)
+      finished = nextRow.isEmpty
+    }
+    nextRow.isDefined
+  }
+
+  override def next(): Row = {
+    if (!hasNext) throw new NoSuchElementException("There are no more rows")
+    val row = nextRow.get
+    nextRow = None
+    row
+  }
+
+  override def remove(): Unit = throw new UnsupportedOperationException("Rows cannot be removed")
+
+  override def close(): Unit = if (!finished) {
+    finished = true
+    nextRow = None
+    killSwitch.shutdown()
+  }
+
+}
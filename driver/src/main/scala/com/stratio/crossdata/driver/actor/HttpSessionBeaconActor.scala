@@ -18,26 +18,31 @@ package com.stratio.crossdata.driver.actor
 import java.util.UUID
 
 import akka.actor.{Actor, ActorRef, Props}
-import akka.http.scaladsl.HttpExt
 import akka.http.scaladsl.marshalling.{Marshal, Marshaller}
 import akka.http.scaladsl.model.HttpMethods._
-import akka.http.scaladsl.model.{HttpRequest, RequestEntity}
+import akka.http.scaladsl.model.{HttpRequest, HttpResponse, RequestEntity}
 import akka.stream.ActorMaterializer
+import akka.stream.scaladsl.Sink
 import com.stratio.crossdata.common.util.akka.keepalive.LiveMan
 import com.stratio.crossdata.common.util.akka.keepalive.LiveMan.HeartBeat
 
+import scala.concurrent.Future
 import scala.concurrent.duration.FiniteDuration
 
 object HttpSessionBeaconActor {
 
+  /**
+    * @param send sends a request, whose URI is relative to the server, to the HTTP server.
+    */
   def props(
              sessionId: UUID,
              period: FiniteDuration,
-             url: String)(
-    implicit httpClient: HttpExt, m: Marshaller[HeartBeat[UUID], RequestEntity]): Props =
-    Props(new HttpSessionBeaconActor(sessionId, period, url, httpClient))
+             path: String,
+             send: HttpRequest => Future[HttpResponse])(
+    implicit m: Marshaller[HeartBeat[UUID], RequestEntity]): Props =
+    Props(new HttpSessionBeaconActor(sessionId, period, path, send))
 
-  class RequesterActor(url: String, httpClient: HttpExt)(
+  class RequesterActor(path: String, send: HttpRequest => Future[HttpResponse])(
     implicit m: Marshaller[HeartBeat[UUID], RequestEntity]
   ) extends Actor {
 
@@ -47,8 +52,8 @@ object HttpSessionBeaconActor {
     override def receive: Receive = {
       case tick: HeartBeat[UUID @unchecked] =>
         Marshal(tick).to[RequestEntity] flatMap { requestEntity =>
-          httpClient.singleRequest(HttpRequest(POST, url, entity = requestEntity))
-        }
+          send(HttpRequest(POST, path, entity = requestEntity))
+        } foreach (_.entity.dataBytes.runWith(Sink.ignore)) // Pooled connections are released once responses are read
     }
 
   }
@@ -58,8 +63,8 @@ object HttpSessionBeaconActor {
 class HttpSessionBeaconActor private(
                                       override val keepAliveId: UUID,
                                       override val period: FiniteDuration,
-                                      url: String,
-                                      client: HttpExt)(implicit
+                                      path: String,
+                                      send: HttpRequest => Future[HttpResponse])(implicit
   m: Marshaller[HeartBeat[UUID], RequestEntity]
 ) extends Actor with LiveMan[UUID] {
 
@@ -67,6 +72,6 @@ class HttpSessionBeaconActor private(
 
   override def receive: Receive = PartialFunction.empty
 
-  override val master: ActorRef = context.actorOf(Props(new RequesterActor(url, client)))
+  override val master: ActorRef = context.actorOf(Props(new RequesterActor(path, send)))
 
 }
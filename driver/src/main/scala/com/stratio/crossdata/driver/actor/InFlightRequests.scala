@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver.actor
+
+import java.util.UUID
+import java.util.concurrent.{ConcurrentHashMap, TimeoutException}
+
+import akka.actor.{Cancellable, Scheduler}
+import com.stratio.crossdata.common.ServerReply
+import com.stratio.crossdata.driver.actor.InFlightRequests.InFlightRequest
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.{Duration, FiniteDuration}
+import scala.concurrent.{ExecutionContext, Promise}
+
+/**
+  * Registry of the requests sent to the Crossdata cluster which are still waiting for their reply.
+  *
+  * It can be shared between the threads sending commands and the actor receiving replies: registering and completing
+  * requests does not need any lock, so concurrent requests don't contend on a single mailbox or map copy.
+  * Requests registered with a finite timeout are failed with a [[TimeoutException]] when no reply arrives in time.
+  */
+private[driver] class InFlightRequests(scheduler: Scheduler)(implicit executor: ExecutionContext) {
+
+  private val requests = new ConcurrentHashMap[UUID, InFlightRequest]()
+
+  def register(requestId: UUID, timeout: Duration): Promise[ServerReply] =
+    register(requestId, Promise[ServerReply](), timeout)
+
+  def register(requestId: UUID, promise: Promise[ServerReply], timeout: Duration): Promise[ServerReply] = {
+    val request = new InFlightRequest(promise)
+    requests.put(requestId, request)
+    timeout match {
+      case finite: FiniteDuration =>
+        request.timer = Some(scheduler.scheduleOnce(finite) {
+          if (requests.remove(requestId, request))
+            promise.tryFailure(new TimeoutException(s"No reply received for request $requestId after $finite"))
+        })
+      case _ =>
+    }
+    promise
+  }
+
+  /**
+    * Removes a request from the registry, returning its promise if it hadn't been completed or timed out before.
+    */
+  def complete(requestId: UUID): Option[Promise[ServerReply]] =
+    Option(requests.remove(requestId)) map { request =>
+      request.timer.foreach(_.cancel())
+      request.promise
+    }
+
+  def failAll(cause: Throwable): Unit =
+    requests.keys.toList.flatMap(complete).foreach(_.tryFailure(cause))
+
+  def size: Int = requests.size
+
+}
+
+private[driver] object InFlightRequests {
+
+  private[actor] class InFlightRequest(val promise: Promise[ServerReply]) {
+    @volatile var timer: Option[Cancellable] = None
+  }
+
+}
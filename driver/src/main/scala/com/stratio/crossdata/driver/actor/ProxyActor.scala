@@ -16,89 +16,151 @@
 package com.stratio.crossdata.driver.actor
 
 
-import java.util.UUID
-
-import akka.actor.{Actor, ActorRef, Props}
+import akka.actor.{Actor, ActorRef, Cancellable, Props}
 import akka.cluster.client.ClusterClient
 import akka.pattern.pipe
 import com.stratio.crossdata.common._
 import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
 import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.driver.ClusterClientDriver
-import com.stratio.crossdata.driver.actor.ProxyActor.PromisesByIds
+import com.stratio.crossdata.driver.config.DriverConf
 import com.stratio.crossdata.driver.util.HttpClient
 import org.apache.log4j.Logger
 import org.apache.spark.sql.Row
 import org.apache.spark.sql.types.{StringType, StructField, StructType}
 
+import scala.concurrent.duration.{Duration, FiniteDuration}
 import scala.concurrent.{Future, Promise}
 import scala.util.matching.Regex
 
 object ProxyActor {
   val DefaultName = "proxy-actor"
 
-  def props(clusterClientActor: ActorRef, driver: ClusterClientDriver): Props =
-    Props(new ProxyActor(clusterClientActor, driver))
+  def props(clusterClientActor: ActorRef,
+            driverConf: DriverConf,
+            inFlight: InFlightRequests,
+            batching: Option[BatchSettings] = None,
+            catalogListener: CatalogChangedEvent => Unit = _ => ()): Props =
+    Props(new ProxyActor(clusterClientActor, driverConf, inFlight, batching, catalogListener))
+
+  /**
+    * Commands are held for up to `maxDelay` and sent together once `maxSize` of them have been gathered.
+    */
+  case class BatchSettings(maxSize: Int, maxDelay: FiniteDuration)
+
+  private case object FlushBatch
+
+  /**
+    * Whether a command has to be delivered by the closest server (`Some(true)`), by any server (`Some(false)`) or
+    * it can't be sent through the cluster client at all (`None`).
+    */
+  def localAffinity(command: Command): Option[Boolean] = command match {
+    case _: AddJARCommand => None
+    case _: OpenSessionCommand | _: CloseSessionCommand => Some(true)
+    case _: SQLCommand | _: ClusterStateCommand | _: AddAppCommand | _: ControlCommand => Some(false)
+    case _ => None
+  }
 
-  case class PromisesByIds(promises: Map[UUID, Promise[ServerReply]])
+  def send(commandEnvelope: CommandEnvelope, localAffinity: Boolean): ClusterClient.Send =
+    ClusterClient.Send(ServerClusterClientParameters.ServerPath, commandEnvelope, localAffinity)
 
 }
 
-class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) extends Actor {
+/**
+  * Sends the commands of a [[ClusterClientDriver]] to the Crossdata cluster and completes the promises
+  * kept by the shared [[InFlightRequests]] registry when the replies arrive. It also receives the changes
+  * of the catalog pushed by the servers.
+  *
+  * Commands which don't need any driver side processing can also be sent straight to the cluster client
+  * using this actor as sender, so that it only takes part in receiving replies.
+  */
+class ProxyActor(clusterClientActor: ActorRef,
+                 driverConf: DriverConf,
+                 inFlight: InFlightRequests,
+                 batching: Option[BatchSettings],
+                 catalogListener: CatalogChangedEvent => Unit) extends Actor {
+
+  import ProxyActor._
 
   lazy val logger = Logger.getLogger(classOf[ProxyActor])
 
   private val catalogOpExp: Regex = """^\s*CREATE\s+TEMPORARY.+$""".r
 
-  private val httpClient = HttpClient(driver.driverConf, context.system)
+  private val httpClient = HttpClient(driverConf, context.system)
 
-  override def receive: Receive = initial
+  private var batch = Vector.empty[CommandEnvelope]
+  private var batchTimer: Option[Cancellable] = None
 
-  private val initial: Receive = {
-    case any =>
-      logger.debug("Initial state. Changing to start state.")
-      context.become(start(PromisesByIds(Map.empty)))
-      self ! any
-  }
+  override def receive: Receive =
+    storePromise orElse
+    sendToServer orElse
+    receiveFromServer orElse {
+      case event: CatalogChangedEvent =>
+        logger.debug(s"Catalog changed: $event")
+        catalogListener(event)
+      case any =>
+        logger.warn(s"Unknown message: $any. Message won't be sent to the Crossdata cluster")
+    }
 
+  override def postStop(): Unit = batchTimer.foreach(_.cancel())
 
-  // Previous step to process the message where promise is stored.
-  def storePromise(promisesByIds: PromisesByIds): Receive = {
+  // Kept for senders which hand over their own promise instead of registering it into the in-flight requests.
+  private val storePromise: Receive = {
     case (message: CommandEnvelope, promise: Promise[ServerReply @unchecked]) =>
       logger.debug("Sending message to the Crossdata cluster")
-      context.become(start(promisesByIds.copy(promisesByIds.promises + (message.cmd.requestId -> promise))))
+      inFlight.register(message.cmd.requestId, promise, Duration.Inf)
       self ! message
   }
 
   // Process messages from the Crossdata Driver.
-  def sendToServer(promisesByIds: PromisesByIds): Receive = {
-
-    case secureSQLCommand @ CommandEnvelope(sqlCommand: SQLCommand, _) =>
-      logger.info(s"Sending query: ${sqlCommand.sql} with requestID=${sqlCommand.requestId} & queryID=${sqlCommand.queryId}")
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = false)
+  private val sendToServer: Receive = {
 
     case secureSQLCommand @ CommandEnvelope(addJARCommand @ AddJARCommand(path, _, _, _), session) =>
       import context.dispatcher
       val shipmentResponse: Future[SQLReply] = sendJarToServers(addJARCommand, path, session)
-      shipmentResponse pipeTo sender
-
-    case secureSQLCommand @ CommandEnvelope(clusterStateCommand: ClusterStateCommand, _) =>
-      logger.debug(s"Send cluster state with requestID=${clusterStateCommand.requestId}")
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = false)
-
-    case secureSQLCommand @ CommandEnvelope(aCmd @ AddAppCommand(path, alias, clss, _), _) =>
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath,secureSQLCommand, localAffinity=false)
-
-    case secureSQLCommand @ CommandEnvelope(_: OpenSessionCommand | _: CloseSessionCommand, _) =>
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = true)
+      shipmentResponse pipeTo self
+
+    case secureSQLCommand @ CommandEnvelope(cmd, _) if localAffinity(cmd).isDefined =>
+      cmd match {
+        case sqlCommand: SQLCommand =>
+          logger.info(s"Sending query: ${sqlCommand.sql} with requestID=${sqlCommand.requestId} & queryID=${sqlCommand.queryId}")
+        case other =>
+          logger.debug(s"Sending ${other.getClass.getSimpleName} with requestID=${other.requestId}")
+      }
+      (localAffinity(cmd), batching) match {
+        case (Some(false), Some(settings)) => enqueue(secureSQLCommand, settings)
+        case (Some(affinity), _) => clusterClientActor ! send(secureSQLCommand, affinity)
+      }
 
-    case secureSQLCommand @ CommandEnvelope(_: ControlCommand, _) =>
-      clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, secureSQLCommand, localAffinity = false)
+    case FlushBatch =>
+      flush()
 
     case sqlCommand: SQLCommand =>
       logger.warn(s"Command message not securitized: ${sqlCommand.sql}. Message won't be sent to the Crossdata cluster")
   }
 
+  private def enqueue(commandEnvelope: CommandEnvelope, settings: BatchSettings): Unit = {
+    batch :+= commandEnvelope
+    if (batch.size >= settings.maxSize) {
+      flush()
+    } else if (batchTimer.isEmpty) {
+      import context.dispatcher
+      batchTimer = Some(context.system.scheduler.scheduleOnce(settings.maxDelay, self, FlushBatch))
+    }
+  }
+
+  private def flush(): Unit = {
+    batchTimer.foreach(_.cancel())
+    batchTimer = None
+    batch match {
+      case Vector() =>
+      case Vector(single) => clusterClientActor ! send(single, localAffinity = false)
+      case envelopes =>
+        logger.debug(s"Sending a batch of ${envelopes.size} commands")
+        clusterClientActor ! ClusterClient.Send(ServerClusterClientParameters.ServerPath, CommandEnvelopeBatch(envelopes), localAffinity = false)
+    }
+    batch = Vector.empty
+  }
 
   def sendJarToServers(command: Command, path: String, session:Session): Future[SQLReply] = {
     import scala.concurrent.ExecutionContext.Implicits.global
@@ -119,40 +181,33 @@ class ProxyActor(clusterClientActor: ActorRef, driver: ClusterClientDriver) exte
   }
 
   // Message received from a Crossdata Server.
-  def receiveFromServer(promisesByIds: PromisesByIds): Receive = {
+  private val receiveFromServer: Receive = {
     case reply: ServerReply =>
-      logger.info(s"Sever reply received from Crossdata Server: $sender with ID=${reply.requestId}")
-      promisesByIds.promises.get(reply.requestId) match {
+      logger.debug(s"Sever reply received from Crossdata Server: $sender with ID=${reply.requestId}")
+      inFlight.complete(reply.requestId) match {
         case Some(p) =>
-          context.become(start(promisesByIds.copy(promisesByIds.promises - reply.requestId)))
           reply match {
             case reply @ SQLReply(_, result) =>
-              logger.info(s"Successful SQL execution: $result")
-              p.success(reply)
+              logger.debug(s"Successful SQL execution: $result")
+              p.trySuccess(reply)
             case reply @ QueryCancelledReply(queryRqId, cancellationRqId) =>
               logger.info(s"Query $queryRqId cancelled")
-              p.success(SQLReply(queryRqId, ErrorSQLResult("Query cancelled")))
-              promisesByIds.promises.get(cancellationRqId).foreach(_.success(reply))
+              p.trySuccess(SQLReply(queryRqId, ErrorSQLResult("Query cancelled")))
+              inFlight.complete(cancellationRqId).foreach(_.trySuccess(reply))
             case reply @ ClusterStateReply(_, clusterState, _) =>
               logger.debug(s"Cluster snapshot received $clusterState")
-              p.success(reply)
+              p.trySuccess(reply)
             case reply @ OpenSessionReply(_, isOpen) =>
               logger.debug(s"Open session reply received: open=$isOpen")
-              p.success(reply)
+              p.trySuccess(reply)
+            case reply @ RowsPageReply(_, rows, _, lastPage, _) =>
+              logger.debug(s"Page of ${rows.length} rows received: last=$lastPage")
+              p.trySuccess(reply)
             case _ =>
-              p.failure(new RuntimeException(s"Unknown message: $reply"))
+              p.tryFailure(new RuntimeException(s"Unknown message: $reply"))
           }
         case None => logger.warn(s"Unexpected response: $reply")
       }
   }
 
-  def start(promisesByIds: PromisesByIds): Receive = {
-    storePromise(promisesByIds) orElse
-    sendToServer(promisesByIds) orElse
-    receiveFromServer(promisesByIds) orElse {
-      case any =>
-        logger.warn(s"Unknown message: $any. Message won't be sent to the Crossdata cluster")
-    }
-  }
 }
-
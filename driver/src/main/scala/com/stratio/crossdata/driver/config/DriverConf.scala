@@ -16,13 +16,15 @@
 package com.stratio.crossdata.driver.config
 
 import java.io.File
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
 
+import akka.http.scaladsl.settings.ConnectionPoolSettings
 import com.typesafe.config.{Config, ConfigFactory, ConfigValue, ConfigValueFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.Logging
 
 import scala.collection.JavaConversions._
+import scala.concurrent.duration._
 import scala.util.Try
 
 class DriverConf extends Logging {
@@ -74,11 +76,29 @@ class DriverConf extends Logging {
     setAll(newSettings)
   }
 
+  /**
+   * @param hostAndPort HTTP servers among which the requests are balanced, e.g 127.0.0.1:13422
+   */
+  def setHttpEndpoints(hostAndPort: String*): DriverConf = {
+    userSettings.put(Http.Endpoints, ConfigValueFactory.fromIterable(hostAndPort))
+    this
+  }
+
+  def setHttpEndpoints(hostAndPort: java.util.List[String]): DriverConf = setHttpEndpoints(hostAndPort:_*)
+
   def setFlattenTables(flatten: Boolean): DriverConf = {
     userSettings.put(DriverFlattenTables, ConfigValueFactory.fromAnyRef(flatten))
     this
   }
 
+  /**
+    * @param rows number of rows of each page fetched from the server-side cursors of the streamed results.
+    */
+  def setCursorFetchSize(rows: Int): DriverConf = {
+    userSettings.put(DriverCursorFetchSize, ConfigValueFactory.fromAnyRef(rows))
+    this
+  }
+
   def setTunnelTimeout(seconds: Int): DriverConf = {
     userSettings.put(AkkaClusterRecepcionistTunnelTimeout, ConfigValueFactory.fromAnyRef(seconds * 1000))
     this
@@ -133,9 +153,57 @@ class DriverConf extends Logging {
     s"$host:$port"
   }
 
+  /**
+   * @return the configured HTTP server endpoints or, if there isn't any, the one set by host and port.
+   */
+  private[crossdata] def getCrossdataServerHttpEndpoints: Seq[String] = {
+    val endpoints = Try(finalSettings.getStringList(Http.Endpoints).toSeq)
+      .orElse(Try(finalSettings.getString(Http.Endpoints).split(",").toSeq))
+      .getOrElse(Seq.empty)
+      .map(_.trim).filter(_.nonEmpty)
+    if (endpoints.isEmpty) Seq(getCrossdataServerHttp) else endpoints
+  }
+
   private[crossdata] def getFlattenTables: Boolean =
     finalSettings.getBoolean(DriverFlattenTables)
 
+  private[crossdata] def getCursorFetchSize: Int =
+    Try(finalSettings.getInt(DriverCursorFetchSize)).getOrElse(DefaultCursorFetchSize)
+
+  private[crossdata] def getRequestTimeout: Duration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverRequestTimeout, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(Duration.Inf)
+
+  private[crossdata] def getResultCacheEnabled: Boolean =
+    Try(finalSettings.getBoolean(DriverResultCacheEnabled)).getOrElse(false)
+
+  private[crossdata] def getResultCacheMaxEntries: Int =
+    Try(finalSettings.getInt(DriverResultCacheMaxEntries)).getOrElse(DefaultResultCacheMaxEntries)
+
+  private[crossdata] def getResultCacheMaxBytes: Long =
+    Try(finalSettings.getBytes(DriverResultCacheMaxBytes).longValue).getOrElse(DefaultResultCacheMaxBytes)
+
+  private[crossdata] def getResultCacheTtl: FiniteDuration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverResultCacheTtl, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(DefaultResultCacheTtl)
+
+  private[crossdata] def getMetadataCacheEnabled: Boolean =
+    Try(finalSettings.getBoolean(DriverMetadataCacheEnabled)).getOrElse(false)
+
+  private[crossdata] def getMetadataCacheTtl: FiniteDuration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverMetadataCacheTtl, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(DefaultMetadataCacheTtl)
+
+  private[crossdata] def getBatchingEnabled: Boolean =
+    Try(finalSettings.getBoolean(DriverBatchingEnabled)).getOrElse(false)
+
+  private[crossdata] def getBatchingMaxSize: Int =
+    Try(finalSettings.getInt(DriverBatchingMaxSize)).getOrElse(DefaultBatchingMaxSize)
+
+  private[crossdata] def getBatchingMaxDelay: FiniteDuration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverBatchingMaxDelay, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(DefaultBatchingMaxDelay)
+
 
   private val typesafeConf: Config = {
 
@@ -213,6 +281,34 @@ class DriverConf extends Logging {
     ConfigFactory.load(finalConfigWithEnvVars)
   }
 
+  def httpColumnarResults: Boolean =
+    Try(finalSettings.getString(DriverConf.Http.ResultFormat)).map(_.equalsIgnoreCase("columnar")).getOrElse(true)
+
+  def httpCompressionEnabled: Boolean =
+    Try(finalSettings.getBoolean(DriverConf.Http.CompressionEnabled)).getOrElse(true)
+
+  def httpDecodingBatchSize: Int =
+    Try(finalSettings.getInt(DriverConf.Http.DecodingBatchSize)).getOrElse(DriverConf.DefaultHttpDecodingBatchSize)
+
+  def httpDecodingBatchInterval: FiniteDuration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverConf.Http.DecodingBatchInterval, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(DriverConf.DefaultHttpDecodingBatchInterval)
+
+  def httpDecodingParallelism: Int =
+    Try(finalSettings.getInt(DriverConf.Http.DecodingParallelism)).filter(_ > 0).getOrElse(Runtime.getRuntime.availableProcessors)
+
+  def httpConnectionPoolSettings: ConnectionPoolSettings = ConnectionPoolSettings(finalSettings)
+
+  def httpPoolQueueSize: Int =
+    Try(finalSettings.getInt(DriverConf.Http.PoolQueueSize)).getOrElse(DriverConf.DefaultHttpPoolQueueSize)
+
+  def httpFailoverBackoff: FiniteDuration =
+    Try(FiniteDuration(finalSettings.getDuration(DriverConf.Http.FailoverBackoff, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+      .getOrElse(DriverConf.DefaultHttpFailoverBackoff)
+
+  def httpMetricsJmxEnabled: Boolean =
+    Try(finalSettings.getBoolean(DriverConf.Http.MetricsJmxEnabled)).getOrElse(false)
+
   def httpTlsEnable =
     finalSettings.getBoolean(DriverConf.Http.TLS.TlsEnable)
 
@@ -239,6 +335,28 @@ object DriverConf {
   val DriverConfigFile = "external.config.filename"
   val DriverConfigHosts = "config.cluster.hosts"
   val DriverFlattenTables = "config.flatten-tables"
+  val DriverCursorFetchSize = "config.cursor.fetch-size"
+  val DefaultCursorFetchSize = 1000
+  val DriverRequestTimeout = "config.request-timeout"
+  val DriverBatchingEnabled = "config.batching.enabled"
+  val DriverBatchingMaxSize = "config.batching.max-size"
+  val DriverBatchingMaxDelay = "config.batching.max-delay"
+  val DefaultBatchingMaxSize = 64
+  val DefaultBatchingMaxDelay = 5 milliseconds
+  val DriverResultCacheEnabled = "config.result-cache.enabled"
+  val DriverResultCacheMaxEntries = "config.result-cache.max-entries"
+  val DriverResultCacheMaxBytes = "config.result-cache.max-bytes"
+  val DriverResultCacheTtl = "config.result-cache.ttl"
+  val DefaultResultCacheMaxEntries = 1000
+  val DefaultResultCacheMaxBytes = 64L * 1024 * 1024
+  val DefaultResultCacheTtl = 1 minute
+  val DriverMetadataCacheEnabled = "config.metadata-cache.enabled"
+  val DriverMetadataCacheTtl = "config.metadata-cache.ttl"
+  val DefaultMetadataCacheTtl = 5 minutes
+  val DefaultHttpDecodingBatchSize = 512
+  val DefaultHttpDecodingBatchInterval = 100 milliseconds
+  val DefaultHttpPoolQueueSize = 1024
+  val DefaultHttpFailoverBackoff = 5 seconds
   val DriverClusterName = "config.cluster.name"
   val SSLEnabled = "akka.remote.netty.ssl.enable-ssl"
   val AkkaClusterRecepcionistTunnelTimeout = "akka.contrib.cluster.receptionist.response-tunnel-receive-timeout"
@@ -248,6 +366,16 @@ object DriverConf {
 
     val Host = "akka-http.host"
     val Port = "akka-http.port"
+    val ResultFormat = "akka-http.result-format"
+    val CompressionEnabled = "akka-http.compression.enabled"
+    val DecodingBatchSize = "akka-http.decoding.batch-size"
+    val DecodingBatchInterval = "akka-http.decoding.batch-interval"
+    val DecodingParallelism = "akka-http.decoding.parallelism"
+    val DecodingDispatcher = "akka-http.decoding.dispatcher"
+    val Endpoints = "akka-http.endpoints"
+    val PoolQueueSize = "akka-http.pool.queue-size"
+    val FailoverBackoff = "akka-http.failover.backoff"
+    val MetricsJmxEnabled = "akka-http.metrics.jmx.enabled"
 
     //TLS akka-http client authentication
     object TLS {
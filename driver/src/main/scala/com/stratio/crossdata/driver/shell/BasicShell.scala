@@ -206,8 +206,9 @@ object BasicShell extends App {
   private def printResult(responseId: UUID, sResult: SQLResult) : Unit = {
     console.println(s"Result for query ID: $responseId")
     sResult match {
-        case result @ SuccessfulSQLResult(sqlResult, _) =>
+        case result @ SuccessfulSQLResult(sqlResult, _, warnings) =>
           console.println("SUCCESS")
+          warnings.foreach(warning => console.println(s"WARNING: $warning"))
           result.prettyResult.foreach(console.println)
           console.flush()
         case ErrorSQLResult(message, _) =>
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import akka.actor.ActorSystem
+import akka.http.scaladsl.Http
+import akka.http.scaladsl.model.{HttpMethods, HttpRequest, HttpResponse, StatusCodes}
+import akka.http.scaladsl.settings.ConnectionPoolSettings
+import akka.stream.{ActorMaterializer, StreamTcpException}
+import akka.stream.scaladsl.{Flow, Sink, Tcp}
+import akka.util.ByteString
+import com.codahale.metrics.MetricRegistry
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+@RunWith(classOf[JUnitRunner])
+class HttpConnectionPoolsSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  implicit lazy val system = ActorSystem("HttpConnectionPoolsSpec")
+  implicit lazy val materializer = ActorMaterializer()
+  implicit lazy val http = Http(system)
+
+  lazy val servers = Seq("server-a", "server-b") map { name =>
+    val binding = http.bindAndHandleSync(_ => HttpResponse(StatusCodes.OK, entity = name), "127.0.0.1", 0)
+    Await.result(binding, 10 seconds)
+  }
+
+  // A port nobody is listening to
+  lazy val deadEndpoint = {
+    val binding = Await.result(http.bindAndHandleSync(_ => HttpResponse(), "127.0.0.1", 0), 10 seconds)
+    Await.ready(binding.unbind(), 10 seconds)
+    s"127.0.0.1:${binding.localAddress.getPort}"
+  }
+
+  // A server closing the connections once it has received the request
+  lazy val abortingServer = {
+    val connections = Tcp().bind("127.0.0.1", 0) to Sink.foreach { connection =>
+      connection.handleWith(Flow[ByteString].take(1).filter(_ => false))
+    }
+    Await.result(connections.run(), 10 seconds)
+  }
+
+  override protected def afterAll(): Unit = {
+    servers foreach (_.unbind())
+    abortingServer.unbind()
+    system.terminate()
+  }
+
+  def endpoint(index: Int): String = s"127.0.0.1:${servers(index).localAddress.getPort}"
+
+  def pools(endpoints: Seq[String], metrics: MetricRegistry = new MetricRegistry): HttpConnectionPools =
+    new HttpConnectionPools(endpoints, ConnectionPoolSettings(system), None, 16, 1 minute, metrics)
+
+  def respondingServers(pools: HttpConnectionPools, requests: Int): Seq[String] = {
+    val responses = (1 to requests) map { _ =>
+      pools.request(HttpRequest(uri = "/")) flatMap { response =>
+        response.entity.dataBytes.runWith(Sink.fold("")(_ + _.utf8String))
+      }
+    }
+    Await.result(Future.sequence(responses), 30 seconds)
+  }
+
+  "HttpConnectionPools" should "balance the requests among the endpoints" in {
+    val balancedPools = pools(Seq(endpoint(0), endpoint(1)))
+    try {
+      respondingServers(balancedPools, 20).toSet shouldBe Set("server-a", "server-b")
+    } finally balancedPools.shutdown()
+  }
+
+  it should "fail over to the available endpoints" in {
+    val metrics = new MetricRegistry
+    val failoverPools = pools(Seq(deadEndpoint, endpoint(1)), metrics)
+    try {
+      respondingServers(failoverPools, 10).toSet shouldBe Set("server-b")
+      metrics.meter(MetricRegistry.name(HttpConnectionPools.MetricsPrefix, "failovers")).getCount should be > 0L
+      metrics.timer(MetricRegistry.name(HttpConnectionPools.MetricsPrefix, endpoint(1), "wait")).getCount shouldBe 10
+    } finally failoverPools.shutdown()
+  }
+
+  it should "not fail over the requests which failed after being sent" in {
+    val metrics = new MetricRegistry
+    val abortingEndpoint = s"127.0.0.1:${abortingServer.localAddress.getPort}"
+    val abortingPools = pools(Seq(abortingEndpoint, endpoint(1)), metrics)
+    try {
+      // The first request goes to the first endpoint since both of them are idle
+      val insert = HttpRequest(HttpMethods.POST, uri = "/", entity = "INSERT INTO t VALUES (1)")
+      an [Exception] should be thrownBy Await.result(abortingPools.request(insert), 30 seconds)
+      metrics.meter(MetricRegistry.name(HttpConnectionPools.MetricsPrefix, "failovers")).getCount shouldBe 0
+      metrics.timer(MetricRegistry.name(HttpConnectionPools.MetricsPrefix, endpoint(1), "requests")).getCount shouldBe 0
+    } finally abortingPools.shutdown()
+  }
+
+  it should "tell apart the failures of requests which were not sent" in {
+    HttpConnectionPools.notSent(new HttpConnectionPools.PoolOverflowException("localhost:13422")) shouldBe true
+    HttpConnectionPools.notSent(new StreamTcpException("Tcp command [Connect(localhost:13422,None,List(),None,true)] failed")) shouldBe true
+    HttpConnectionPools.notSent(new RuntimeException(new java.net.ConnectException("Connection refused"))) shouldBe true
+    HttpConnectionPools.notSent(new StreamTcpException("The connection closed with error: Connection reset by peer")) shouldBe false
+    HttpConnectionPools.notSent(new IllegalStateException("The server closed the connection")) shouldBe false
+  }
+
+  it should "fail when no endpoint is available" in {
+    val deadPools = pools(Seq(deadEndpoint))
+    try {
+      an [Exception] should be thrownBy Await.result(deadPools.request(HttpRequest(uri = "/")), 30 seconds)
+    } finally deadPools.shutdown()
+  }
+
+  it should "parse host and port of the endpoints" in {
+    HttpConnectionPools.hostAndPort("localhost:13422") shouldBe (("localhost", 13422))
+    an [IllegalArgumentException] should be thrownBy HttpConnectionPools.hostAndPort("localhost")
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.stratio.crossdata.common.CatalogChangedEvent
+import com.stratio.crossdata.driver.metadata.FieldMetadata
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.types.StringType
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class MetadataCacheSpec extends BaseXDTest {
+
+  val fields = Seq(FieldMetadata("name", StringType))
+
+  class Loader[V](value: V) {
+    val loads = new AtomicInteger()
+    def load: V = {
+      loads.incrementAndGet()
+      value
+    }
+  }
+
+  "MetadataCache" should "load the tables once until they expire" in {
+    val cache = new MetadataCache(100 milliseconds)
+    val loader = new Loader(Seq("t" -> Some("db")))
+
+    cache.tables(Some("db"))(loader.load) shouldBe Seq("t" -> Some("db"))
+    cache.tables(Some("DB"))(loader.load)
+    loader.loads.get shouldBe 1
+
+    Thread.sleep(200)
+    cache.tables(Some("db"))(loader.load)
+    loader.loads.get shouldBe 2
+  }
+
+  it should "invalidate the lists of tables on every change of the catalog" in {
+    val cache = new MetadataCache(1 minute)
+    val loader = new Loader(Seq("t" -> None))
+
+    cache.tables(None)(loader.load)
+    cache.invalidate(CatalogChangedEvent(Seq.empty))
+    cache.tables(None)(loader.load)
+
+    loader.loads.get shouldBe 2
+  }
+
+  it should "invalidate the descriptions of the changed tables only" in {
+    val cache = new MetadataCache(1 minute)
+    val loaders = Seq((Some("db"), "t"), (None, "t"), (Some("other"), "t"), (None, "s")) map (_ -> new Loader(fields))
+    def describeAll(): Unit = loaders foreach { case ((database, table), loader) => cache.description(database, table)(loader.load) }
+
+    describeAll()
+    cache.invalidate(CatalogChangedEvent(Seq("db.T")))
+    describeAll()
+
+    loaders.map(_._2.loads.get) shouldBe Seq(2, 2, 1, 1)
+  }
+
+  it should "invalidate everything when every table may have changed" in {
+    val cache = new MetadataCache(1 minute)
+    val loader = new Loader(fields)
+
+    cache.description(None, "t")(loader.load)
+    cache.invalidate(CatalogChangedEvent(Seq.empty, allTables = true))
+    cache.description(None, "t")(loader.load)
+
+    loader.loads.get shouldBe 2
+  }
+
+}
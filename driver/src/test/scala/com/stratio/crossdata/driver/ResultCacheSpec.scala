@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import com.codahale.metrics.MetricRegistry
+import com.stratio.crossdata.common.result.SuccessfulSQLResult
+import com.stratio.crossdata.driver.ResultCache.cacheKey
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.TableIdentifier
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class ResultCacheSpec extends BaseXDTest {
+
+  val schema = StructType(Seq(StructField("id", IntegerType)))
+  val result = SuccessfulSQLResult(Array(Row(1)), schema)
+
+  def cache(maxEntries: Int = 10, maxBytes: Long = 1024 * 1024, ttl: FiniteDuration = 1 minute,
+            metrics: MetricRegistry = new MetricRegistry): ResultCache =
+    new ResultCache(maxEntries, maxBytes, ttl, metrics)
+
+  "ResultCache" should "return the cached result of a query" in {
+    val resultCache = cache()
+    resultCache.put(cacheKey("SELECT * FROM t", flattenResults = false), result)
+
+    resultCache.get(cacheKey(" SELECT * FROM t ", flattenResults = false)) shouldBe Some(result)
+    resultCache.get(cacheKey("SELECT * FROM t", flattenResults = true)) shouldBe None
+  }
+
+  it should "not return the results cached under other session settings" in {
+    val resultCache = cache()
+    val settings = Map("spark.sql.caseSensitive" -> "true")
+    resultCache.put(cacheKey("SELECT * FROM t", flattenResults = false), result)
+
+    resultCache.get(cacheKey("SELECT * FROM t", flattenResults = false, settings)) shouldBe None
+  }
+
+  it should "only cache queries" in {
+    val resultCache = cache()
+    Seq("INSERT INTO t SELECT * FROM s", "SHOW TABLES", "DROP TABLE t") foreach { statement =>
+      resultCache.put(cacheKey(statement, flattenResults = false), result)
+    }
+
+    resultCache.size shouldBe 0
+  }
+
+  it should "expire the results after their time to live" in {
+    val resultCache = cache(ttl = 100 milliseconds)
+    resultCache.put(cacheKey("SELECT * FROM t", flattenResults = false), result)
+
+    Thread.sleep(200)
+    resultCache.get(cacheKey("SELECT * FROM t", flattenResults = false)) shouldBe None
+    resultCache.size shouldBe 0
+  }
+
+  it should "evict the least recently used results beyond its maximum number of entries" in {
+    val resultCache = cache(maxEntries = 2)
+    val keys = Seq("a", "b", "c") map (table => cacheKey(s"SELECT * FROM $table", flattenResults = false))
+
+    resultCache.put(keys(0), result)
+    resultCache.put(keys(1), result)
+    resultCache.get(keys(0))
+    resultCache.put(keys(2), result)
+
+    keys map (resultCache.get(_).isDefined) shouldBe Seq(true, false, true)
+  }
+
+  it should "not cache results bigger than its maximum size" in {
+    val resultCache = cache(maxBytes = 1024)
+    val bigResult = SuccessfulSQLResult((1 to 10000).map(Row(_)).toArray, schema)
+
+    resultCache.put(cacheKey("SELECT * FROM t", flattenResults = false), bigResult)
+
+    resultCache.size shouldBe 0
+  }
+
+  it should "invalidate the results of the queries reading from a table" in {
+    val resultCache = cache()
+    val fromT = cacheKey("SELECT * FROM db.t", flattenResults = false)
+    val joiningT = cacheKey("SELECT * FROM s JOIN t ON s.id = t.id", flattenResults = false)
+    val fromS = cacheKey("SELECT * FROM s", flattenResults = false)
+    Seq(fromT, joiningT, fromS) foreach (resultCache.put(_, result))
+
+    resultCache.invalidate("db.t")
+
+    resultCache.get(fromT) shouldBe None
+    resultCache.get(joiningT) shouldBe None
+    resultCache.get(fromS) shouldBe Some(result)
+  }
+
+  it should "publish its hit ratio" in {
+    val metrics = new MetricRegistry
+    val resultCache = cache(metrics = metrics)
+    val key = cacheKey("SELECT * FROM t", flattenResults = false)
+
+    resultCache.get(key)
+    resultCache.put(key, result)
+    resultCache.get(key)
+
+    metrics.getGauges.get(s"${ResultCache.MetricsPrefix}.hit-ratio").getValue shouldBe 0.5
+  }
+
+  "The session setting of a statement" should "be found in SET statements only" in {
+    ResultCache.sessionSetting(" set spark.sql.caseSensitive = true;") shouldBe
+      Some("spark.sql.caseSensitive" -> "true")
+    ResultCache.sessionSetting("SET -v") shouldBe None
+    ResultCache.sessionSetting("SELECT * FROM t") shouldBe None
+  }
+
+  "The tables read by a query" should "be found in every relation" in {
+    ResultCache.readTables("SELECT * FROM db.a JOIN b ON a.id = b.id") shouldBe
+      Some(Set(TableIdentifier("a", Some("db")), TableIdentifier("b")))
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import akka.actor.ActorSystem
+import akka.stream.ActorMaterializer
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+import com.stratio.crossdata.common.result.{InternalStreamedSuccessfulSQLResult, StreamedRow}
+import com.stratio.crossdata.common.serializers.{CompiledRowSerializer, CrossdataCommonSerializer, StreamedRowSerializer}
+import com.stratio.crossdata.driver.config.DriverConf
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types._
+import org.json4s.jackson.JsonMethods.parse
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+/**
+  * Measures the throughput of decoding a streamed JSON result: one json4s extraction per row, as HttpDriver used to
+  * do, versus [[ResultDecoder]] running sequentially and in parallel.
+  *
+  * Usage: ResultDecoderBenchmark [rows] [iterations]
+  */
+object ResultDecoderBenchmark extends CrossdataCommonSerializer {
+
+  val schema = StructType(Seq(
+    StructField("id", LongType),
+    StructField("name", StringType),
+    StructField("age", IntegerType),
+    StructField("score", DoubleType),
+    StructField("active", BooleanType),
+    StructField("tags", ArrayType(StringType))
+  ))
+
+  // Network chunks, which don't match the documents boundaries
+  val ChunkSize = 64 * 1024
+
+  val BatchSize = DriverConf.DefaultHttpDecodingBatchSize
+
+  def main(args: Array[String]): Unit = {
+    val rows = args.headOption.map(_.toInt).getOrElse(200000)
+    val iterations = args.lift(1).map(_.toInt).getOrElse(5)
+
+    implicit val system = ActorSystem("ResultDecoderBenchmark")
+    implicit val materializer = ActorMaterializer()
+
+    try {
+      val serializer = new CompiledRowSerializer(schema)
+      val body = ByteString(
+        (0 until rows).map { i =>
+          val row = new GenericRowWithSchema(
+            Array(i.toLong, s"name-$i", i % 100, i * 0.5, i % 2 == 0, Seq(s"tag-${i % 7}", s"tag-${i % 11}")),
+            schema
+          )
+          new String(serializer.serializeStreamedRow(row))
+        }.mkString("\n")
+      )
+      val chunks = body.grouped(ChunkSize).toList
+
+      val perRowFormats = json4sJacksonFormats + new StreamedRowSerializer(schema)
+      val parallelism = Runtime.getRuntime.availableProcessors
+      val sequential = new ResultDecoder(BatchSize, 1)
+      val parallel = new ResultDecoder(BatchSize, parallelism)
+
+      type Decode = Source[ByteString, Any] => Source[Row, Any]
+
+      val perRow: Decode = _.mapAsync(1) { document =>
+        Future(parse(document.utf8String, false).extract[InternalStreamedSuccessfulSQLResult](
+          perRowFormats, implicitly[Manifest[InternalStreamedSuccessfulSQLResult]]
+        ))
+      } collect { case StreamedRow(row, _) => row }
+
+      def batched(decoder: ResultDecoder): Decode = _ via decoder.jsonRows(schema)
+
+      // Every strategy decodes the same framed documents
+      val strategies = Seq(
+        "json4s per row" -> perRow,
+        "batched x1" -> batched(sequential),
+        s"batched x$parallelism" -> batched(parallel)
+      )
+
+      println(s"$rows rows (${body.length} bytes), $iterations iterations after warming up")
+      strategies foreach { case (name, decode) =>
+        def run(): Int = Await.result(
+          decode(sequential.jsonDocuments(Source(chunks))).runFold(0)((count, _) => count + 1),
+          10 minutes
+        )
+
+        // Warm up
+        (1 to iterations) foreach (_ => run())
+
+        val start = System.nanoTime()
+        (1 to iterations) foreach { _ => require(run() == rows) }
+        val seconds = (System.nanoTime() - start) / 1e9 / iterations
+        println(f"$name%-16s ${rows / seconds}%14.0f rows/s")
+      }
+    } finally system.terminate()
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import akka.actor.ActorSystem
+import akka.stream.ActorMaterializer
+import akka.stream.scaladsl.{Sink, Source}
+import akka.util.ByteString
+import com.stratio.crossdata.common.serializers.CompiledRowSerializer
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.{IntegerType, StringType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class ResultDecoderSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  implicit lazy val system = ActorSystem("ResultDecoderSpec")
+  implicit lazy val materializer = ActorMaterializer()
+
+  override protected def afterAll(): Unit = system.terminate()
+
+  val schema = StructType(StructField("id", IntegerType) :: StructField("name", StringType) :: Nil)
+  val rows = (1 to 1000).map(i => Row(i, s"name-$i"))
+
+  val body = ByteString(rows.map(row => new String(new CompiledRowSerializer(schema).serializeStreamedRow(row))).mkString("\n"))
+
+  "A ResultDecoder" should "decode, in order, JSON rows whose documents are split across chunks" in {
+    val decoder = new ResultDecoder(batchSize = 64, batchInterval = 100 milliseconds, parallelism = 4)
+    val chunks = body.grouped(37).toList
+
+    val decoded = decoder.jsonDocuments(Source(chunks)).via(decoder.jsonRows(schema)).runFold(Vector.empty[Row])(_ :+ _)
+
+    Await.result(decoded, 10 seconds) shouldBe rows
+  }
+
+  it should "decode the rows of a slow stream without waiting for a whole batch" in {
+    val decoder = new ResultDecoder(batchSize = 512, batchInterval = 50 milliseconds, parallelism = 2)
+    val documents = decoder.jsonDocuments(Source.single(body.take(body.indexOf('\n'.toByte) + 1)) ++ Source.maybe[ByteString])
+
+    val firstRow = documents.via(decoder.jsonRows(schema)).runWith(Sink.head)
+
+    Await.result(firstRow, 10 seconds) shouldBe rows.head
+  }
+
+  it should "ignore empty lines" in {
+    val decoder = new ResultDecoder(batchSize = 10, batchInterval = 100 milliseconds, parallelism = 2)
+    val chunks = List(ByteString("\n"), body, ByteString("\n\n"))
+
+    val documents = decoder.jsonDocuments(Source(chunks)).runFold(0)((count, _) => count + 1)
+
+    Await.result(documents, 10 seconds) shouldBe rows.size
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver
+
+import java.util.NoSuchElementException
+import java.util.concurrent.atomic.AtomicInteger
+
+import akka.Done
+import akka.actor.ActorSystem
+import akka.stream.ActorMaterializer
+import akka.stream.scaladsl.Source
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConversions._
+import scala.concurrent.{Await, Promise}
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class RowsIteratorSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  implicit lazy val system = ActorSystem("RowsIteratorSpec")
+  implicit lazy val materializer = ActorMaterializer()
+
+  override protected def afterAll(): Unit = system.terminate()
+
+  val rows = (1 to 1000) map (Row(_))
+
+  "RowsIterator" should "iterate every row of the stream in order" in {
+    new RowsIterator(Source(rows), 10).toList shouldBe rows
+  }
+
+  it should "not pull more rows than the fetch size ahead of the consumer" in {
+    val emitted = new AtomicInteger()
+    val iterator = new RowsIterator(Source(rows) map { row => emitted.incrementAndGet(); row }, 10)
+
+    iterator.next() shouldBe Row(1)
+    Thread.sleep(200)
+    emitted.get should be < 100
+    iterator.close()
+  }
+
+  it should "cancel the stream when it is closed" in {
+    val termination = Promise[Done]()
+    val source = Source(rows).watchTermination() { (notUsed, done) =>
+      termination.completeWith(done)
+      notUsed
+    }
+    val iterator = new RowsIterator(source, 10)
+
+    iterator.next()
+    iterator.close()
+
+    Await.result(termination.future, 5 seconds) shouldBe Done
+    iterator.hasNext shouldBe false
+    a[NoSuchElementException] shouldBe thrownBy(iterator.next())
+  }
+
+  it should "rethrow the failures of the stream" in {
+    val iterator = new RowsIterator(Source(rows.take(1)) ++ Source.failed(new RuntimeException("Query failed")), 10)
+
+    iterator.next() shouldBe Row(1)
+    the[RuntimeException] thrownBy iterator.hasNext should have message "Query failed"
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver.actor
+
+import java.util.UUID
+import java.util.concurrent.TimeoutException
+
+import akka.actor.ActorSystem
+import com.stratio.crossdata.common.SQLReply
+import com.stratio.crossdata.common.result.ErrorSQLResult
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class InFlightRequestsSpec extends BaseXDTest with BeforeAndAfterAll {
+
+  lazy val system = ActorSystem("InFlightRequestsSpec")
+
+  override protected def afterAll(): Unit = system.terminate()
+
+  "InFlightRequests" should "hand over the promise of a pending request only once" in {
+    val inFlight = new InFlightRequests(system.scheduler)
+    val requestId = UUID.randomUUID()
+    val promise = inFlight.register(requestId, Duration.Inf)
+
+    inFlight.size shouldBe 1
+    inFlight.complete(requestId) shouldBe Some(promise)
+    inFlight.complete(requestId) shouldBe None
+    inFlight.size shouldBe 0
+  }
+
+  it should "fail the requests which are not replied in time" in {
+    val inFlight = new InFlightRequests(system.scheduler)
+    val requestId = UUID.randomUUID()
+    val promise = inFlight.register(requestId, 100 milliseconds)
+
+    a[TimeoutException] shouldBe thrownBy(Await.result(promise.future, 5 seconds))
+    inFlight.complete(requestId) shouldBe None
+  }
+
+  it should "not time out the requests which have already been completed" in {
+    val inFlight = new InFlightRequests(system.scheduler)
+    val requestId = UUID.randomUUID()
+    val reply = SQLReply(requestId, ErrorSQLResult("error"))
+
+    inFlight.register(requestId, 100 milliseconds)
+    val promise = inFlight.complete(requestId).get
+    promise.success(reply)
+
+    Thread.sleep(300)
+    Await.result(promise.future, 1 second) shouldBe reply
+  }
+
+  it should "fail every pending request at once" in {
+    val inFlight = new InFlightRequests(system.scheduler)
+    val promises = (1 to 100) map (_ => inFlight.register(UUID.randomUUID(), Duration.Inf))
+
+    inFlight.failAll(new RuntimeException("Driver closed"))
+
+    inFlight.size shouldBe 0
+    all(promises map (_.future.value.get.isFailure)) shouldBe true
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.driver.actor
+
+import java.util.UUID
+
+import akka.actor.{Actor, ActorRef, ActorSystem, Props}
+import akka.cluster.client.ClusterClient
+import com.stratio.crossdata.common._
+import com.stratio.crossdata.common.result.SuccessfulSQLResult
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.driver.config.DriverConf
+import org.apache.spark.sql.types.StructType
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future, Promise}
+
+/**
+  * Measures the throughput of the driver request pipeline at 1, 100 and 10000 concurrent requests against a
+  * cluster client stub replying immediately: the former single actor keeping an immutable map of promises versus
+  * [[InFlightRequests]] with commands sent straight to the cluster client, with and without batching.
+  *
+  * Usage: ProxyActorBenchmark [requests]
+  */
+object ProxyActorBenchmark {
+
+  // Stands for the cluster client and the servers behind it.
+  class EchoClusterClient extends Actor {
+    private val emptySchema = StructType(Nil)
+
+    override def receive: Receive = {
+      case ClusterClient.Send(_, CommandEnvelope(cmd, _), _) =>
+        sender ! SQLReply(cmd.requestId, SuccessfulSQLResult(Array.empty, emptySchema))
+      case ClusterClient.Send(_, CommandEnvelopeBatch(envelopes), _) =>
+        envelopes foreach (envelope => sender ! SQLReply(envelope.cmd.requestId, SuccessfulSQLResult(Array.empty, emptySchema)))
+    }
+  }
+
+  // How ProxyActor used to track the requests: a single actor copying a map of promises on every send and reply.
+  class MapOfPromisesProxy(clusterClient: ActorRef) extends Actor {
+    override def receive: Receive = start(Map.empty)
+
+    def start(promises: Map[UUID, Promise[ServerReply]]): Receive = {
+      case (envelope: CommandEnvelope, promise: Promise[ServerReply @unchecked]) =>
+        context.become(start(promises + (envelope.cmd.requestId -> promise)))
+        clusterClient ! ProxyActor.send(envelope, localAffinity = false)
+      case reply: ServerReply =>
+        promises.get(reply.requestId) foreach { promise =>
+          context.become(start(promises - reply.requestId))
+          promise.success(reply)
+        }
+    }
+  }
+
+  type Ask = CommandEnvelope => Future[ServerReply]
+
+  def main(args: Array[String]): Unit = {
+    val requests = args.headOption.map(_.toInt).getOrElse(100000)
+    val concurrencyLevels = Seq(1, 100, 10000)
+
+    val system = ActorSystem("ProxyActorBenchmark")
+    val driverConf = new DriverConf
+    val session = Session(UUID.randomUUID(), None)
+    val clusterClient = system.actorOf(Props[EchoClusterClient])
+
+    val mapOfPromises: Ask = {
+      val proxy = system.actorOf(Props(new MapOfPromisesProxy(clusterClient)))
+      envelope => {
+        val promise = Promise[ServerReply]()
+        proxy ! (envelope, promise)
+        promise.future
+      }
+    }
+
+    def registry(batching: Option[ProxyActor.BatchSettings]): Ask = {
+      val inFlight = new InFlightRequests(system.scheduler)
+      val proxy = system.actorOf(ProxyActor.props(clusterClient, driverConf, inFlight, batching))
+      envelope => {
+        val promise = inFlight.register(envelope.cmd.requestId, 1 minute)
+        if (batching.isDefined) proxy ! envelope
+        else clusterClient.tell(ProxyActor.send(envelope, localAffinity = false), proxy)
+        promise.future
+      }
+    }
+
+    val pipelines = Seq(
+      "map of promises" -> mapOfPromises,
+      "in-flight registry" -> registry(None),
+      "in-flight registry, batching" -> registry(Some(ProxyActor.BatchSettings(64, 1 millisecond)))
+    )
+
+    def run(ask: Ask, concurrency: Int): Unit = {
+      def worker(pending: Int): Future[Unit] =
+        if (pending == 0) Future.successful(())
+        else ask(CommandEnvelope(SQLCommand("SELECT 1"), session)) flatMap (_ => worker(pending - 1))
+
+      val perWorker = math.max(1, requests / concurrency)
+      Await.result(Future.sequence(Seq.fill(concurrency)(worker(perWorker))), 5 minutes)
+    }
+
+    try {
+      for ((name, ask) <- pipelines; concurrency <- concurrencyLevels) {
+        run(ask, concurrency) // warm-up
+        val start = System.nanoTime()
+        run(ask, concurrency)
+        val elapsed = (System.nanoTime() - start).nanos
+        val sent = math.max(1, requests / concurrency) * concurrency
+        println(f"$name%-30s concurrency=$concurrency%-6d ${sent * 1000.0 / elapsed.toMillis}%12.0f requests/s")
+      }
+    } finally {
+      system.terminate()
+    }
+  }
+
+}
@@ -18,6 +18,7 @@ package com.stratio.crossdata.connector.elasticsearch
 import com.sksamuel.elastic4s.ElasticDsl._
 import com.sksamuel.elastic4s._
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.connector.NativeScan
 import com.stratio.crossdata.connector.elasticsearch.ElasticSearchConnectionUtils._
 import org.apache.spark.sql.catalyst.expressions.{Attribute, Literal}
 import org.apache.spark.sql.catalyst.planning.PhysicalOperation
@@ -53,22 +54,30 @@ class ElasticSearchQueryProcessor(val logicalPlan: LogicalPlan, val parameters:
     *
     * @return the query result
    */
-  def execute(): Option[Array[Row]] = {
+  def execute(): Option[Array[Row]] = executeIterator().map(_.toArray)
 
-    def tryRows(requiredColumns: Seq[Attribute], finalQuery: SearchDefinition, esClient: ElasticClient): Try[Array[Row]] = {
-      val rows: Try[Array[Row]] = Try {
+  /**
+   * Executes the [[LogicalPlan]]] and query the ElasticSearch database. The search hits are converted
+   * into rows as the returned iterator gets consumed.
+   *
+   * @return the query result
+   */
+  def executeIterator(): Option[NativeScan.RowIterator] = {
+
+    def tryRows(requiredColumns: Seq[Attribute], finalQuery: SearchDefinition, esClient: ElasticClient): Try[Iterator[Row]] = {
+      val rows: Try[Iterator[Row]] = Try {
         val resp: SearchResponse = esClient.execute(finalQuery).await.original
         if (resp.getShardFailures.length > 0) {
           val errors = resp.getShardFailures map { failure => failure.reason() }
           throw new RuntimeException(errors mkString("Errors from ES:", ";\n", ""))
         } else {
-          ElasticSearchRowConverter.asRows(schemaProvided.get, resp.getHits.getHits, requiredColumns)
+          ElasticSearchRowConverter.asRowsIterator(schemaProvided.get, resp.getHits.getHits.iterator, requiredColumns)
         }
       }
       rows
     }
 
-    val result: Try[Array[Row]] = validatedNativePlan.map {
+    val result: Try[Iterator[Row]] = validatedNativePlan.map {
       case (baseLogicalPlan, limit) =>
         val requiredColumns = baseLogicalPlan match {
           case SimpleLogicalPlan(projects, _, _, _) =>
@@ -85,7 +94,7 @@ class ElasticSearchQueryProcessor(val logicalPlan: LogicalPlan, val parameters:
         }
     }.getOrElse(Failure(new RuntimeException("Invalid native plan")))
 
-    result.toOption
+    result.toOption.map(NativeScan.ResultIterator(_))
   }
 
 
@@ -33,14 +33,17 @@ import scala.collection.JavaConverters._
 object ElasticSearchRowConverter {
 
 
-  def asRows(schema: StructType, array: Array[SearchHit], requiredFields: Seq[Attribute]): Array[Row] = {
+  def asRows(schema: StructType, array: Array[SearchHit], requiredFields: Seq[Attribute]): Array[Row] =
+    asRowsIterator(schema, array.iterator, requiredFields).toArray
 
-    array map { hit =>
+  def asRowsIterator(schema: StructType, hits: Iterator[SearchHit], requiredFields: Seq[Attribute]): Iterator[Row] = {
+    val requiredNames = requiredFields.map(_.name)
+    hits map { hit =>
       hitAsRow(
         hit.fields().asScala.toMap,
         Option(hit.getSource).map(_.asScala.toMap).getOrElse(Map.empty),
         schema,
-        requiredFields.map(_.name)
+        requiredNames
       )
     }
   }
@@ -116,10 +116,13 @@ class ElasticsearchXDRelation(parameters: Map[String, String], sqlContext: SQLCo
     * @param optimizedLogicalPlan the [[LogicalPlan]] to be executed
    * @return a list of Spark [[Row]] with the [[LogicalPlan]] execution result.
    */
-  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = {
+  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] =
+    buildIteratorScan(optimizedLogicalPlan).map(_.toArray)
+
+  override def buildIteratorScan(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.RowIterator] = {
     logDebug(s"Processing ${optimizedLogicalPlan.toString()}")
     val queryExecutor = ElasticSearchQueryProcessor(optimizedLogicalPlan, parameters, userSchema)
-    queryExecutor.execute()
+    queryExecutor.executeIterator()
   }
 
 
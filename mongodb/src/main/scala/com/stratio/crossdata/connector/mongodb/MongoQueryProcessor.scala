@@ -15,14 +15,16 @@
  */
 package com.stratio.crossdata.connector.mongodb
 
+import java.util.concurrent.ConcurrentHashMap
 import java.util.regex.Pattern
 
 import com.mongodb.{DBObject, QueryBuilder}
 import com.mongodb.casbah.Imports._
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.connector.NativeScan
 import com.stratio.datasource.mongodb.MongodbConnection
 import com.stratio.datasource.mongodb.MongodbRelation._
-import com.stratio.datasource.mongodb.config.MongodbConfig
+import com.stratio.datasource.mongodb.config.{MongodbConfig, MongodbConfigReader}
 import com.stratio.datasource.mongodb.schema.MongodbRowConverter._
 import com.stratio.datasource.util.Config
 import org.apache.spark.sql.catalyst.expressions._
@@ -36,6 +38,7 @@ import org.apache.spark.sql.types.StructType
 object MongoQueryProcessor {
 
   val DefaultLimit = 10000
+  val ConversionBatchSize = 1000
   type ColumnName = String
   type Limit = Option[Int]
 
@@ -46,6 +49,45 @@ object MongoQueryProcessor {
 
   def apply(logicalPlan: LogicalPlan, config: Config, schemaProvided: Option[StructType] = None) = new MongoQueryProcessor(logicalPlan, config, schemaProvided)
 
+  /**
+   * Time during which the statistics of a collection are reused by the cost estimations.
+   */
+  val CollectionStatsTtl: Long = 60 * 1000
+
+  /**
+   * Number of documents of a collection and leading fields of its indexes.
+   */
+  case class CollectionStats(documents: Long, indexPrefixes: Set[String], readAt: Long)
+
+  private val statsByCollection = new ConcurrentHashMap[(String, String, String), CollectionStats]()
+
+  /**
+   * Statistics of the configured collection. They are read from MongoDB, using a single client, at most once
+   * every `CollectionStatsTtl` since queries are planned far more often than collections change significantly.
+   */
+  def collectionStats(config: Config): CollectionStats = {
+    import MongodbConfigReader._
+    val key = (
+      config.hosts.mkString(","),
+      config[String](MongodbConfig.Database),
+      config[String](MongodbConfig.Collection)
+    )
+    val now = System.currentTimeMillis()
+
+    Option(statsByCollection.get(key)) filter (now - _.readAt < CollectionStatsTtl) getOrElse {
+      import scala.collection.JavaConversions._
+
+      val stats = MongodbConnection.withCollectionDo(config) { collection =>
+        val prefixes = collection.getIndexInfo flatMap { index =>
+          index.getAs[DBObject]("key").flatMap(_.keySet.headOption)
+        }
+        CollectionStats(collection.count().toLong, prefixes.toSet, now)
+      }
+      statsByCollection.put(key, stats)
+      stats
+    }
+  }
+
   def buildNativeQuery(
                         requiredColums: Seq[ColumnName],
                         filters: Array[SourceFilter],
@@ -153,16 +195,22 @@ class MongoQueryProcessor(logicalPlan: LogicalPlan, config: Config, schemaProvid
 
   import MongoQueryProcessor._
 
-  def execute(): Option[Array[Row]] = {
+  def execute(): Option[Array[Row]] = executeIterator().map(_.toArray)
+
+  /**
+   * Executes the native query returning an iterator backed by the MongoDB cursor. Documents are converted
+   * to rows in batches of `ConversionBatchSize` as the iterator gets consumed and the cursor is closed
+   * once the iterator is exhausted or closed.
+   */
+  def executeIterator(): Option[NativeScan.RowIterator] = {
 
-    // TODO convert to Spark result using an iterator with batches instead of an array
     if (schemaProvided.isEmpty) {
       None
     } else {
       try {
         validatedNativePlan.map { case MongoPlan(bs: SimpleLogicalPlan, limit) =>
           if (limit.exists(_ == 0)) {
-            Array.empty[Row]
+            NativeScan.ResultIterator[Row](Iterator.empty)
           } else {
             val name2randomAccess = bs.collectionRandomAccesses.map {
               case (k, v) => s"${k.name}[${v.right}]" -> v
@@ -172,14 +220,20 @@ class MongoQueryProcessor(logicalPlan: LogicalPlan, config: Config, schemaProvid
               config,
               name2randomAccess
             )
-            val resultSet = MongodbConnection.withCollectionDo(config) { collection =>
+            // The client backs the cursor so it must stay open until the iterator is exhausted or closed
+            val (client, collection) = MongodbConnection.openCollection(config)
+            val cursor = try {
               logDebug(s"Executing native query: filters => $mongoFilters projects => $mongoRequiredColumns")
-              val cursor = collection.find(mongoFilters, mongoRequiredColumns)
-              val result = cursor.limit(limit.getOrElse(DefaultLimit)).toArray[DBObject]
-              cursor.close()
-              result
+              collection.find(mongoFilters, mongoRequiredColumns).limit(limit.getOrElse(DefaultLimit))
+            } catch {
+              case exc: Exception =>
+                client.close()
+                throw exc
+            }
+            val rows = cursor.grouped(ConversionBatchSize) flatMap { documents =>
+              sparkResultFromMongodb(bs.projects, bs.collectionRandomAccesses, schemaProvided.get, documents.toArray)
             }
-            sparkResultFromMongodb(bs.projects, bs.collectionRandomAccesses, schemaProvided.get, resultSet)
+            NativeScan.ResultIterator(rows, () => try cursor.close() finally client.close())
           }
         }
       } catch {
@@ -191,6 +245,34 @@ class MongoQueryProcessor(logicalPlan: LogicalPlan, config: Config, schemaProvid
   }
 
 
+  /**
+   * Estimates the cost of the native query. Queries without filters or filtering by the leading field of an index
+   * only read the requested documents whereas the rest of filtered queries may scan the whole collection. The
+   * statistics of the collection are cached, see `collectionStats`.
+   */
+  def estimateCost(): Option[NativeScan.CostEstimate] =
+    if (schemaProvided.isEmpty) {
+      None
+    } else {
+      validatedNativePlan.map { case MongoPlan(bs: SimpleLogicalPlan, limit) =>
+        val CollectionStats(documents, indexPrefixes, _) = collectionStats(config)
+        val rowsReturned = math.min(limit.getOrElse(DefaultLimit).toLong, documents)
+
+        val filtersByIndex = bs.filters exists {
+          case sources.EqualTo(attribute, _) => indexPrefixes contains attribute
+          case sources.In(attribute, _) => indexPrefixes contains attribute
+          case sources.LessThan(attribute, _) => indexPrefixes contains attribute
+          case sources.GreaterThan(attribute, _) => indexPrefixes contains attribute
+          case sources.LessThanOrEqual(attribute, _) => indexPrefixes contains attribute
+          case sources.GreaterThanOrEqual(attribute, _) => indexPrefixes contains attribute
+          case _ => false
+        }
+
+        val fullScan = bs.filters.nonEmpty && !filtersByIndex
+        NativeScan.CostEstimate(if (fullScan) documents else rowsReturned, rowsReturned, fullScan)
+      }
+    }
+
   def validatedNativePlan: Option[_] = {// TODO
     lazy val limit: Option[Int] = logicalPlan.collectFirst { case LogicalLimit(Literal(num: Int, _), _) => num }
 
@@ -40,12 +40,24 @@ case class MongodbXDRelation(config: Config,
   extends MongodbRelation(config, schemaProvided)(sqlContext) with NativeScan with SparkLoggerComponent{
 
 
-  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] = {
+  override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] =
+    buildIteratorScan(optimizedLogicalPlan).map(_.toArray)
+
+  override def buildIteratorScan(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.RowIterator] = {
     logDebug(s"Processing ${optimizedLogicalPlan.toString()}")
     val queryExecutor = MongoQueryProcessor(optimizedLogicalPlan, config, schemaProvided)
-    queryExecutor.execute()
+    queryExecutor.executeIterator()
   }
 
+  override def estimateNativeCost(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.CostEstimate] =
+    try {
+      MongoQueryProcessor(optimizedLogicalPlan, config, schemaProvided).estimateCost()
+    } catch {
+      case exc: Exception =>
+        logWarning(s"Cannot estimate the cost of the native query $optimizedLogicalPlan: ${exc.getMessage}")
+        None
+    }
+
   override def isSupported(logicalStep: LogicalPlan, wholeLogicalPlan: LogicalPlan): Boolean = logicalStep match {
     case ln: LeafNode => true // TODO leafNode == LogicalRelation(xdSourceRelation)
     case un: UnaryNode => un match {
@@ -39,6 +39,18 @@ object MongodbConnection {
     }
   }
 
+  /**
+   * Opens a client and returns it along with the configured collection. Unlike `withCollectionDo`, the client
+   * is kept open so it can back cursors consumed later on: the caller is responsible for closing it.
+   */
+  def openCollection(config: Config): (MongoClient, MongoCollection) = {
+    val databaseName: String = config(MongodbConfig.Database)
+    val collectionName: String = config(MongodbConfig.Collection)
+
+    val mClient = openClient(config)
+    (mClient, mClient(databaseName)(collectionName))
+  }
+
   private def openClient(config: Config): MongoClient =
     MongodbClientFactory.getClient(config.hosts, config.credentials, config.sslOptions, config.clientOptions)
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.connector.mongodb
+
+import com.mongodb.casbah.commons.MongoDBObject
+import com.stratio.datasource.mongodb.config.{MongodbConfig, MongodbConfigBuilder}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class MongoCollectionStatsIT extends MongoWithSharedContext {
+
+  val StatsCollection = "statsStudents"
+
+  "The Mongo connector" should "reuse the statistics of a collection while estimating query costs" in {
+    assumeEnvironmentIsUpAndRunning
+
+    val collection = client.get(Database)(StatsCollection)
+    (1 to 10) foreach { id => collection.insert(MongoDBObject("id" -> id)) }
+
+    val config = MongodbConfigBuilder()
+      .set(MongodbConfig.Host, List(s"$MongoHost:$MongoPort"))
+      .set(MongodbConfig.Database, Database)
+      .set(MongodbConfig.Collection, StatsCollection)
+      .build()
+
+    val stats = MongoQueryProcessor.collectionStats(config)
+    stats.documents shouldBe 10
+    stats.indexPrefixes should contain ("_id")
+
+    collection.insert(MongoDBObject("id" -> 11))
+    MongoQueryProcessor.collectionStats(config) shouldBe stats
+  }
+
+}
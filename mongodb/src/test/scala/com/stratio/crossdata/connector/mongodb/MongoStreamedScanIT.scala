@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.connector.mongodb
+
+import com.mongodb.casbah.commons.MongoDBObject
+import org.apache.spark.sql.crossdata.XDDataFrame
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class MongoStreamedScanIT extends MongoWithSharedContext {
+
+  val StreamedCollection = "streamedStudents"
+  val StreamedDocuments = MongoQueryProcessor.ConversionBatchSize * 2 + 500
+
+  "The Mongo connector" should "stream a native result spanning several cursor and conversion batches" in {
+    assumeEnvironmentIsUpAndRunning
+
+    val collection = client.get(Database)(StreamedCollection)
+    (1 to StreamedDocuments) foreach { id => collection.insert(MongoDBObject("id" -> id, "name" -> s"Name $id")) }
+
+    sql(
+      s"""|CREATE TEMPORARY TABLE $StreamedCollection (id INT, name STRING)
+          |USING $SourceProvider
+          |OPTIONS (
+          |host '$MongoHost:$MongoPort',
+          |database '$Database',
+          |collection '$StreamedCollection'
+          |)
+      """.stripMargin)
+
+    val optimizedPlan = sql(s"SELECT id, name FROM $StreamedCollection").queryExecution.optimizedPlan
+    val nativeScan = XDDataFrame.findNativeQueryExecutor(optimizedPlan)
+    nativeScan shouldBe defined
+
+    val rows = nativeScan.get.buildIteratorScan(optimizedPlan)
+    rows shouldBe defined
+
+    val ids = rows.get.map(_.getInt(0)).toList
+    ids should have length StreamedDocuments
+    ids.toSet shouldBe (1 to StreamedDocuments).toSet
+    rows.get.hasNext shouldBe false
+  }
+
+}
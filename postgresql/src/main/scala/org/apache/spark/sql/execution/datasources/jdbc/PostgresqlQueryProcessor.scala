@@ -19,6 +19,7 @@ import java.sql.ResultSet
 import java.util.Properties
 
 import com.stratio.common.utils.components.logger.impl.SparkLoggerComponent
+import com.stratio.crossdata.connector.NativeScan.ResultIterator
 import org.apache.spark.sql.catalyst.expressions.{GenericInternalRowWithSchema, Literal}
 import org.apache.spark.sql.catalyst.plans.logical.{Limit, LogicalPlan}
 import org.apache.spark.sql.catalyst.util.{DateTimeUtils, GenericArrayData}
@@ -33,6 +34,7 @@ object PostgresqlQueryProcessor {
   type PostgresQuery = String
   type ColumnName = String
   val DefaultLimit = 10000
+  val FetchSize = 1000
 
   def apply(postgresRelation: PostgresqlXDRelation, logicalPlan: LogicalPlan, props: Properties, sqlText: String): PostgresqlQueryProcessor =
     new PostgresqlQueryProcessor(postgresRelation, logicalPlan, props, sqlText)
@@ -48,22 +50,37 @@ class PostgresqlQueryProcessor(postgresRelation: PostgresqlXDRelation,
 
   import PostgresqlQueryProcessor._
 
-  def execute(): Option[Array[InternalRow]] = {
+  def execute(): Option[Array[InternalRow]] = executeIterator().map(_.toArray)
 
-    def executeQuery(sql: String): Array[InternalRow] = {
+  /**
+   * Executes the native query returning an iterator backed by a cursor fetching `FetchSize` rows per round trip.
+   * The connection is closed once the iterator is exhausted or closed.
+   */
+  def executeIterator(): Option[ResultIterator[InternalRow]] = {
+
+    def executeQuery(sql: String): ResultIterator[InternalRow] = {
       logInfo(s"QUERY: $sql")
 
       import scala.collection.JavaConversions._
-      PostgresqlUtils.withClientDo(props.toMap) { (_, stm) =>
+      val (connection, stm) = PostgresqlUtils.openStreamingClient(props.toMap, FetchSize)
+      val release = () => {
+        stm.close()
+        connection.close()
+      }
+      try {
         val resultSet = stm.executeQuery(sql)
-        sparkResultFromPostgresql(resultSet, logicalPlan.schema)
+        ResultIterator(sparkResultFromPostgresql(resultSet, logicalPlan.schema), release)
+      } catch {
+        case exc: Exception =>
+          release()
+          throw exc
       }
     }
 
     val limit: Option[Int] = logicalPlan.collectFirst { case Limit(Literal(num: Int, _), _) => num }
 
     try {
-      if (limit.exists(_ == 0)) Some(Array.empty[InternalRow])
+      if (limit.exists(_ == 0)) Some(ResultIterator[InternalRow](Iterator.empty))
       else {
         lazy val sqlWithLimit = s"$sqlText LIMIT ${limit.getOrElse(DefaultLimit)}"
         lazy val executeDirectQuery = Some(executeQuery(sqlWithLimit))
@@ -167,9 +184,9 @@ class PostgresqlQueryProcessor(postgresRelation: PostgresqlXDRelation,
     new GenericInternalRowWithSchema(values, schema)
   }
 
-  //to convert ResultSet to Array[Row]
+  //to convert ResultSet to Iterator[Row]
 
-  private[this] def sparkResultFromPostgresql(resultSet: ResultSet, schema: StructType): Array[InternalRow] = {
+  private[this] def sparkResultFromPostgresql(resultSet: ResultSet, schema: StructType): Iterator[InternalRow] = {
     val nCols = resultSet.getMetaData.getColumnCount
 
     new Iterator[InternalRow] {
@@ -180,7 +197,7 @@ class PostgresqlQueryProcessor(postgresRelation: PostgresqlXDRelation,
         hasnext = resultSet.next
         rs
       }
-    } toArray
+    }
   }
 
 }
\ No newline at end of file
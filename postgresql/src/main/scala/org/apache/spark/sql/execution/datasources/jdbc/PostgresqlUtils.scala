@@ -49,6 +49,24 @@ object PostgresqlUtils {
     }
   }
 
+  /**
+   * Opens a connection whose statement fetches the rows lazily, `fetchSize` rows at a time. Both of them must be
+   * closed by the caller once the results have been consumed.
+   */
+  def openStreamingClient(parameters: Map[String, String], fetchSize: Int): (Connection, Statement) = {
+    val connection = buildConnection(parameters)
+    try {
+      connection.setAutoCommit(false) // PostgreSQL only honours the fetch size outside the auto-commit mode
+      val statement = connection.createStatement()
+      statement.setFetchSize(fetchSize)
+      (connection, statement)
+    } catch {
+      case exc: SQLException =>
+        connection.close()
+        throw exc
+    }
+  }
+
   def resolveSchema(url: String, table: String, properties: Properties): StructType =
     JDBCRDD.resolveTable(url, table, properties)
 
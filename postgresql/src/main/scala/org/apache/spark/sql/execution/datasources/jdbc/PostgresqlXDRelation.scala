@@ -60,14 +60,20 @@ class PostgresqlXDRelation( url: String,
   override def buildScan(optimizedLogicalPlan: LogicalPlan): Option[Array[Row]] =
     throw new RuntimeException("This method should not be called. Sql needed")
 
-  override def buildScan(optimizedLogicalPlan: LogicalPlan, sqlText: String): Option[Array[Row]] = {
+  override def buildScan(optimizedLogicalPlan: LogicalPlan, sqlText: String): Option[Array[Row]] =
+    buildIteratorScan(optimizedLogicalPlan, sqlText).map(_.toArray)
+
+  override def buildIteratorScan(optimizedLogicalPlan: LogicalPlan): Option[NativeScan.RowIterator] =
+    throw new RuntimeException("This method should not be called. Sql needed")
+
+  override def buildIteratorScan(optimizedLogicalPlan: LogicalPlan, sqlText: String): Option[NativeScan.RowIterator] = {
     logDebug(s"Processing ${optimizedLogicalPlan.toString()}")
     val queryExecutor = PostgresqlQueryProcessor(this, optimizedLogicalPlan, this.properties, sqlText)
 
     val toScala = CatalystTypeConverters.createToScalaConverter(optimizedLogicalPlan.schema)
 
-    queryExecutor.execute() map { rows =>
-      rows map { iRow =>
+    queryExecutor.executeIterator() map { rows =>
+      rows mapResults { iRow =>
         toScala(iRow).asInstanceOf[GenericRowWithSchema]
       }
     }
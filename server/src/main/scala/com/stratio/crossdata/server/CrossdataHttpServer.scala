@@ -24,24 +24,29 @@ import akka.actor.{ActorRef, ActorSystem}
 import akka.pattern.ask
 import akka.cluster.pubsub.DistributedPubSub
 import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, SendToAll}
-import akka.http.scaladsl.common.EntityStreamingSupport
 import akka.http.scaladsl.model._
+import akka.http.scaladsl.model.headers.{Accept, RawHeader}
 import akka.http.scaladsl.model.Multipart.BodyPart
-import akka.http.scaladsl.server.Directive
+import akka.http.scaladsl.server.{Directive, Route}
 import akka.http.scaladsl.server.Directives._
 import akka.stream.ActorMaterializer
-import akka.stream.scaladsl.{FileIO, Flow, Source}
+import akka.stream.scaladsl.{FileIO, Source}
 import akka.util.{ByteString, Timeout}
 import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.common.util.akka.keepalive.LiveMan.HeartBeat
 import com.stratio.crossdata.common._
 import com.stratio.crossdata.common.result._
+import com.stratio.crossdata.common.serializers.{ColumnarBatchCodec, CompiledRowSerializer}
 import com.stratio.crossdata.server.actors.ResourceManagerActor
 import com.stratio.crossdata.server.config.ServerConfig
+import com.stratio.crossdata.server.log.SlowQueryLog
+import com.stratio.crossdata.server.results.ResultCompression
 import com.stratio.crossdata.util.HdfsUtils
 import com.typesafe.config.{Config, ConfigException}
 import org.apache.log4j.Logger
+import org.apache.spark.sql.Row
 import org.apache.spark.sql.crossdata.XDContext
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
 import org.apache.spark.sql.crossdata.serializers.CrossdataSerializer
 import org.apache.spark.sql.types.StructType
 import org.json4s.jackson
@@ -51,7 +56,12 @@ import scala.concurrent.duration._
 import scala.util.{Success, Try}
 
 
-class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val system: ActorSystem) extends CrossdataSerializer {
+class CrossdataHttpServer(
+                           config: Config,
+                           serverActor: ActorRef,
+                           implicit val system: ActorSystem,
+                           slowQueryLog: Option[SlowQueryLog] = None
+                         ) extends CrossdataSerializer {
 
   import de.heikoseeberger.akkahttpjson4s.Json4sSupport._
   implicit val serialization = jackson.Serialization
@@ -71,6 +81,26 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
       ServerConfig.DefaultHTTPRequestExecutionTimeout
   } get
 
+  private val columnarBatchSize: Int =
+    Try(config.getInt(ServerConfig.Http.ColumnarBatchSize)).getOrElse(ColumnarBatchCodec.DefaultBatchSize)
+
+  private val columnarBatchInterval: FiniteDuration = Try(
+    FiniteDuration(config.getDuration(ServerConfig.Http.ColumnarBatchInterval).toMillis, TimeUnit.MILLISECONDS)
+  ).getOrElse(ServerConfig.DefaultHttpColumnarBatchInterval)
+
+  private val compressionEnabled: Boolean =
+    Try(config.getBoolean(ServerConfig.Http.CompressionEnabled)).getOrElse(true)
+
+  private val compressionMinSize: Long =
+    Try(config.getBytes(ServerConfig.Http.CompressionMinSize).toLong).getOrElse(ServerConfig.DefaultHttpCompressionMinSize)
+
+  private val resultCompression = new ResultCompression(compressionEnabled, compressionMinSize)
+
+  private val ColumnarMediaType: MediaType.Binary = {
+    val Array(mainType, subType) = ColumnarBatchCodec.MediaType.split('/')
+    MediaType.customBinary(mainType, subType, MediaType.Compressible)
+  }
+
   type SessionDirective[Session] = Directive[Tuple1[Session]]
 
   lazy val routeAPI = 
@@ -148,26 +178,19 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
                 case Success(reply: ServerReply) =>
                   reply match {
 
-                    case SQLReply(_, SuccessfulSQLResult(resultSet, schema)) =>
-
-                      implicit val jsonStreamingSupport = EntityStreamingSupport.json()
-                        .withFramingRenderer(
-                          Flow[ByteString].intersperse(ByteString("\n"))
-                        )
-
-                      implicit val _: StructType = schema
-                      import InternalStreamedSuccessfulSQLResult._
-                      val responseStream: Source[InternalStreamedSuccessfulSQLResult, NotUsed] =
-                        Source.fromIterator(() => resultSet.toIterator).map(row =>
-                          row: InternalStreamedSuccessfulSQLResult
-                        ) prepend Source.single(schema)
+                    case SQLReply(_, SuccessfulSQLResult(resultSet, schema, warnings)) =>
+                      completeWithRows(Source.fromIterator(() => resultSet.toIterator), schema, requestId, warnings)
 
-                      complete(responseStream)
+                    case SQLReply(_, StreamedSuccessfulSQLResult(rowsSource, schema, warnings, _)) =>
+                      completeWithRows(rowsSource, schema, requestId, warnings)
 
-                    case _ => complete(StatusCodes.InternalServerError -> reply)
+                    case _ =>
+                      slowQueryLog foreach (_.streamCompleted(requestId))
+                      complete(StatusCodes.InternalServerError -> reply)
 
                   }
                 case other =>
+                  slowQueryLog foreach (_.streamCompleted(requestId))
                   completeWithErrorResult(s"Internal XD server error: $other")
               }
           }
@@ -199,6 +222,59 @@ class CrossdataHttpServer(config: Config, serverActor: ActorRef, implicit val sy
 
   lazy val route = withRequestTimeout(requestExecutionTimeout)(routeAPI)
 
+  /**
+    * Streams the schema followed by the rows, either as newline separated JSON documents or, for the clients
+    * accepting it, as binary columnar record batches. Elements are serialized here, instead of by the entity streaming
+    * marshaller, so that the serialization latency gets recorded. The slow query log entry of a streamed result is
+    * written once the response is complete. Warnings are sent as headers.
+    */
+  private def completeWithRows(
+                                rows: Source[Row, NotUsed],
+                                schema: StructType,
+                                requestId: UUID,
+                                warnings: Seq[String]
+                              ): Route = optionalHeaderValueByType[Accept]() { accept =>
+
+    val columnar = accept exists (_.mediaRanges exists (_ matches ColumnarMediaType))
+
+    val profile = slowQueryLog.flatMap(_.streamedProfile(requestId))
+
+    def serialized(serialize: => ByteString): ByteString = {
+      val bytes = XDMetricsSource.timePhase(XDMetricsSource.Phase.Serialization)(serialize)
+      profile foreach (_.addSerializedBytes(bytes.length))
+      bytes
+    }
+
+    val (contentType, serializedStream) = if (columnar) {
+      val codec = new ColumnarBatchCodec(schema)
+      // Slow streams don't hold back their first rows until a whole batch is available
+      val batches = rows.groupedWithin(columnarBatchSize, columnarBatchInterval) map { batch =>
+        serialized(codec.encode(batch))
+      }
+      (ContentType(ColumnarMediaType), batches prepend Source.single(ColumnarBatchCodec.encodeSchema(schema)))
+    } else {
+      val rowSerializer = new CompiledRowSerializer(schema)
+      val rowDocuments = rows.map(row => serialized(ByteString(rowSerializer.serializeStreamedRow(row))))
+      val schemaDocument = serialized {
+        ByteString(serialization.write(StreamedSchema(schema): InternalStreamedSuccessfulSQLResult))
+      }
+
+      val documents = rowDocuments prepend Source.single(schemaDocument)
+      (ContentTypes.`application/json`, documents.intersperse(ByteString("\n")))
+    }
+
+    val responseBytes = serializedStream.watchTermination() { (notUsed, done) =>
+      slowQueryLog foreach { log =>
+        done.onComplete(_ => log.streamCompleted(requestId))(system.dispatcher)
+      }
+      notUsed
+    }
+
+    respondWithHeaders(warnings.map(RawHeader(SQLResult.WarningHttpHeader, _)).toList) {
+      resultCompression.completeResult(contentType, responseBytes)
+    }
+  }
+
   //TODO: Remove this debugging tool when a minimal stable API has been reached
   /*val getRqEnt = extract[HttpRequest] { rqCtx =>
     rqCtx.request
@@ -24,18 +24,21 @@ import akka.cluster.Cluster
 import akka.cluster.client.ClusterClientReceptionist
 import akka.http.scaladsl.Http.ServerBinding
 import akka.http.scaladsl.{Http, HttpsConnectionContext}
-import akka.routing.{DefaultResizer, RoundRobinPool}
+import akka.routing.ConsistentHashingPool
 import akka.stream.{ActorMaterializer, TLSClientAuth}
 import akka.cluster.pubsub.DistributedPubSub
 import akka.cluster.pubsub.DistributedPubSubMediator.Put
 import com.stratio.crossdata.common.security.KeyStoreUtils
 import com.stratio.crossdata.common.util.akka.keepalive.KeepAliveMaster
-import com.stratio.crossdata.server.actors.{ResourceManagerActor, ServerActor}
-import com.stratio.crossdata.server.config.ServerConfig
+import com.stratio.crossdata.server.actors.{JobExecutor, LoadReporterActor, QueryCoalescer, ResourceManagerActor, ServerActor}
+import com.stratio.crossdata.server.config.{SchedulerPools, ServerConfig}
 import com.stratio.crossdata.server.discovery.{ServiceDiscoveryConfigHelper => SDCH, ServiceDiscoveryHelper => SDH}
+import com.stratio.crossdata.server.log.SlowQueryLog
+import com.stratio.crossdata.server.routing.ClusterLoad
 import com.typesafe.config.{Config, ConfigFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.sql.crossdata
+import org.apache.spark.sql.crossdata.metrics.{KilledTasksListener, SchedulerPoolsListener}
 import org.apache.spark.sql.crossdata.session.{BasicSessionProvider, HazelcastSessionProvider}
 import org.apache.spark.{SparkConf, SparkContext}
 
@@ -49,6 +52,9 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
   override lazy val logger = Logger.getLogger(classOf[CrossdataServer])
 
   private var system: Option[ActorSystem] = None
+  private var jobExecutor: Option[JobExecutor] = None
+  private var slowQueryLog: Option[SlowQueryLog] = None
+  private var schedulerPoolsListener: Option[SchedulerPoolsListener] = None
   private var bindingFuture: Option[Future[ServerBinding]] = None
 
   override protected lazy val serverConfig = sConfig.config
@@ -63,7 +69,12 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
     val metricsPath = Option(sparkParams.get("spark.metrics.conf"))
     val filteredSparkParams = metricsPath.fold(sparkParams)(m => checkMetricsFile(sparkParams, m.get))
 
-    new SparkContext(new SparkConf().setAll(filteredSparkParams))
+    val sc = new SparkContext(new SparkConf().setAll(withSchedulerPools(filteredSparkParams)))
+    val poolsListener = new SchedulerPoolsListener(sc)
+    schedulerPoolsListener = Some(poolsListener)
+    sc.addSparkListener(poolsListener)
+    sc.addSparkListener(new KilledTasksListener)
+    sc
   }
 
 
@@ -125,14 +136,34 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
         }
       }
 
-      val resizer = DefaultResizer(lowerBound = sConfig.minServerActorInstances, upperBound = sConfig.maxServerActorInstances)
+      val executor = new JobExecutor(sConfig.maxConcurrentJobs, sConfig.jobQueueSize)
+      jobExecutor = Some(executor)
+
+      slowQueryLog = sConfig.slowQueryLogSettings map (new SlowQueryLog(_))
+
+      // Queries can only be routed to other servers when sessions are shared by the whole cluster
+      val clusterLoad = sConfig.loadRoutingSettings collect {
+        case settings if sessionProvider.isInstanceOf[HazelcastSessionProvider] => new ClusterLoad(settings)
+      }
+      clusterLoad foreach { load =>
+        actorSystem.actorOf(LoadReporterActor.props(xdCluster, executor, load), "load-reporter")
+      }
+
+      val coalescer = if (sConfig.queryCoalescingEnabled) Some(new QueryCoalescer) else None
+
+      // Resizing would remap sessions to other instances, so the router keeps the maximum number of instances
       val serverActor = actorSystem.actorOf(
-        RoundRobinPool(sConfig.minServerActorInstances, Some(resizer)).props(
+        ConsistentHashingPool(sConfig.maxServerActorInstances, hashMapping = ServerActor.SessionHashMapping).props(
           Props(
             classOf[ServerActor],
             xdCluster,
             sessionProvider,
-            sConfig)),
+            sConfig,
+            executor,
+            slowQueryLog,
+            clusterLoad,
+            coalescer,
+            schedulerPoolsListener)),
         sConfig.actorName)
 
       val clientMonitor = actorSystem.actorOf(KeepAliveMaster.props(serverActor), "client-monitor")
@@ -149,7 +180,7 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
 
       implicit val httpSystem = actorSystem
       implicit val materializer = ActorMaterializer()
-      val httpServerActor = new CrossdataHttpServer(finalConfig, serverActor, actorSystem)
+      val httpServerActor = new CrossdataHttpServer(finalConfig, serverActor, actorSystem, slowQueryLog)
 
       bindingFuture = Some {
 
@@ -175,6 +206,8 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
     */
   def stop(): Unit = {
 
+    jobExecutor.foreach(_.shutdown())
+    slowQueryLog.foreach(_.close())
     sessionProviderOpt.foreach(_.close())
     sessionProviderOpt.foreach(_.sc.stop())
 
@@ -203,6 +236,18 @@ class CrossdataServer(sConfig: ServerConfig) extends ServiceDiscoveryProvider {
     new HttpsConnectionContext(sslContext, clientAuth = Some(TLSClientAuth.Need))
   }
 
+  /**
+    * Declares the configured scheduler pools in a FAIR scheduler allocation file unless one is explicitly provided.
+    */
+  private def withSchedulerPools(params: Map[String, String]): Map[String, String] =
+    if (sConfig.schedulerPools.isEmpty || params.contains(SchedulerPools.AllocationFileProperty)) {
+      params
+    } else {
+      val allocationFile = SchedulerPools.writeAllocationFile(sConfig.schedulerPools)
+      logger.info(s"Scheduler pools ${sConfig.schedulerPools.map(_.name).mkString(", ")} declared at ${allocationFile.getPath}")
+      params + (SchedulerPools.AllocationFileProperty -> allocationFile.getPath)
+    }
+
   def checkMetricsFile(params: Map[String, String], metricsPath: String): Map[String, String] = {
     val metricsFile = new File(metricsPath)
     if (!metricsFile.exists) {
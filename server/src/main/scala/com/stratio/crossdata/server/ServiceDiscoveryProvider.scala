@@ -16,7 +16,7 @@
 package com.stratio.crossdata.server
 
 import java.util.UUID
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{Executor, TimeUnit}
 
 import akka.actor.{ActorSystem, Address}
 import akka.cluster.Cluster
@@ -125,8 +125,10 @@ trait ServiceDiscoveryProvider {
 
     cLeader.start
 
-    import com.stratio.crossdata.server.actors.JobActor.ProlificExecutor
-    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(new ProlificExecutor)
+    // The leadership is awaited in a dedicated thread as it may be blocked until the server stops
+    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(new Executor {
+      override def execute(command: Runnable): Unit = new Thread(command, "crossdata-cluster-leadership").start()
+    })
 
     val leadershipFuture = Future {
       cLeader.await
@@ -15,21 +15,32 @@
  */
 package com.stratio.crossdata.server.actors
 
+import java.io.Closeable
 import java.util.UUID
-import java.util.concurrent.{CancellationException, Executor}
+import java.util.concurrent.{CancellationException, RejectedExecutionException}
 
+import akka.NotUsed
 import akka.actor.{Actor, ActorRef, Props}
+import akka.stream.scaladsl.Source
 import com.stratio.common.utils.concurrent.Cancellable
-import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
-import com.stratio.crossdata.common.{QueryCancelledReply, SQLCommand, SQLReply}
-import com.stratio.crossdata.server.actors.JobActor.Commands.{CancelJob, GetJobStatus, StartJob}
-import com.stratio.crossdata.server.actors.JobActor.Events.{JobCompleted, JobFailed}
-import com.stratio.crossdata.server.actors.JobActor.{ProlificExecutor, Task}
+import com.stratio.crossdata.common.result.{ErrorSQLResult, StreamedSuccessfulSQLResult, SuccessfulSQLResult}
+import com.stratio.crossdata.common.{CatalogChangedEvent, QueryCancelledReply, RowsPageReply, SQLCommand, SQLReply}
+import com.stratio.crossdata.server.actors.JobActor.Commands._
+import com.stratio.crossdata.server.actors.JobActor.Events.{CatalogModified, JobCompleted, JobFailed}
+import com.stratio.crossdata.server.log.SlowQueryLog.TrackedQuery
+import com.stratio.crossdata.server.results.{ResultAdmission, ResultBuffer, ResultSettings, RowsHandoff}
 import org.apache.log4j.Logger
+import org.apache.spark.sql.{DataFrame, Row}
+import org.apache.spark.sql.crossdata.catalyst.execution.CatalogChange
+import org.apache.spark.sql.crossdata.catalyst.execution.CatalogChange.{AllTablesChanged, TablesChanged}
+import org.apache.spark.sql.crossdata.execution.ResultSizeEstimator
+import org.apache.spark.sql.crossdata.metrics.{QueryProfile, SchedulerPoolsListener, XDMetricsSource}
 import org.apache.spark.sql.crossdata.{XDContext, XDDataFrame, XDSession}
+import org.apache.spark.sql.types.StructType
 
-import scala.concurrent.duration.FiniteDuration
-import scala.concurrent.{ExecutionContext, ExecutionException}
+import scala.collection.mutable
+import scala.concurrent.duration.{Deadline, Duration, FiniteDuration}
+import scala.concurrent.{ExecutionContext, ExecutionException, Promise}
 import scala.util.{Failure, Success}
 
 
@@ -49,6 +60,7 @@ object JobActor {
   object Events {
     case object JobCompleted extends JobEvent
     case class JobFailed(err: Throwable) extends JobEvent
+    case class CatalogModified(event: CatalogChangedEvent) extends JobEvent
   }
 
   object Commands {
@@ -60,17 +72,65 @@ object JobActor {
     case class CancelJob(cancellationRequester: ActorRef, cancellationRequestId: Option[UUID])
 
     case object StartJob
+
+    case class FetchPage(requestId: UUID, maxRows: Int, pageRequester: ActorRef)
+
+    case object ReleaseCursor
+  }
+
+  private case class CursorOpened(cursor: Cursor)
+
+  private case object CursorExpired
+
+  /**
+    * Rows of a query sent with a fetch size, kept by its job until they are fetched, the cursor is closed
+    * or it expires.
+    */
+  case class Cursor(rows: Iterator[Row], schema: StructType, warnings: Seq[String] = Seq.empty) {
+
+    def nextPage(maxRows: Int): Array[Row] = {
+      val page = mutable.ArrayBuffer.empty[Row]
+      while (page.size < maxRows && rows.hasNext) page += rows.next()
+      page.toArray
+    }
+
+    def close(): Unit = rows match {
+      case closeable: Closeable => closeable.close()
+      case _ =>
+    }
   }
 
-  case class Task(command: SQLCommand, requester: ActorRef, timeout: Option[FiniteDuration])
+  case class OpenCursor(cursor: Cursor, expiration: Deadline)
+
+  case class Task(
+                   command: SQLCommand,
+                   requester: ActorRef,
+                   timeout: Option[FiniteDuration],
+                   schedulerPool: Option[String] = None,
+                   results: ResultSettings = ResultSettings(),
+                   trackedQuery: Option[TrackedQuery] = None,
+                   coalescer: Option[QueryCoalescer] = None
+                 )
+
+  /**
+    * @param xdDataFrame data frame to execute, with the LIMIT added by the admission, if any.
+    * @param warnings notices about the admission decision sent to the requester.
+    * @param forceStreaming whether the result must be streamed to the requester as it is computed.
+    */
+  case class Admission(xdDataFrame: XDDataFrame, warnings: Seq[String] = Seq.empty, forceStreaming: Boolean = false)
+
+  class ResultRejectedException(reason: String) extends RuntimeException(reason)
+
+  val ServerBusyMessage = "The server is busy, too many queries are being executed. Please, try again later"
 
 
   /**
     * The [[JobActor]] state is directly given by the running task which can be: None (Idle st) or a Running, Completed,
     * Cancelled or Failed task.
     * @param runningTask [[Cancellable]] wrapping a [[scala.concurrent.Future]] which acts as a Spark driver.
+    * @param cursor cursor holding the result of the task, if it was sent with a fetch size, until it is closed.
     */
-  case class State(runningTask: Option[Cancellable[SQLReply]]) {
+  case class State(runningTask: Option[Cancellable[_]], cursor: Option[OpenCursor] = None) {
     import JobStatus._
     def getStatus: JobStatus = runningTask map { task =>
       task.future.value map {
@@ -81,29 +141,58 @@ object JobActor {
     } getOrElse Idle
   }
 
-  def props(xdSession: XDSession, command: SQLCommand, requester: ActorRef, timeout: Option[FiniteDuration]): Props =
-    Props(new JobActor(xdSession, Task(command, requester, timeout)))
+  def props(
+             xdSession: XDSession,
+             command: SQLCommand,
+             requester: ActorRef,
+             timeout: Option[FiniteDuration],
+             jobExecutor: JobExecutor,
+             schedulerPool: Option[String] = None,
+             results: ResultSettings = ResultSettings(),
+             trackedQuery: Option[TrackedQuery] = None,
+             coalescer: Option[QueryCoalescer] = None
+           ): Props =
+    Props(
+      new JobActor(
+        xdSession,
+        Task(command, requester, timeout, schedulerPool, results, trackedQuery, coalescer),
+        jobExecutor
+      )
+    )
 
   /**
-    * Executor class which runs each command in a brand new thread each time
+    * Wraps an iterator of rows into a [[Source]] which pulls them as the stream demands, from the blocking IO
+    * dispatcher, and closes the iterator when the stream completes or gets cancelled.
     */
-  class ProlificExecutor extends Executor { override def execute(command: Runnable): Unit = new Thread(command) start }
+  def rowsSource(rows: => Iterator[Row]): Source[Row, NotUsed] =
+    Source.unfoldResource[Row, Iterator[Row]](
+      () => rows,
+      it => if (it.hasNext) Some(it.next()) else None,
+      {
+        case closeable: Closeable => closeable.close()
+        case _ =>
+      }
+    )
 
 }
 
 class JobActor(
                 val xdContext: XDContext,
-                val task: Task
+                val task: Task,
+                val jobExecutor: JobExecutor
               ) extends Actor {
 
 
   import JobActor.JobStatus._
-  import JobActor.State
+  import JobActor._
 
   import task._
 
   lazy val logger = Logger.getLogger(classOf[ServerActor])
 
+  // Completed on cancellation to stop waiting for the rows of an identical query
+  private val coalescingCancelled = Promise[Unit]()
+
   override def receive: Receive = receive(State(None))
 
 
@@ -116,26 +205,40 @@ class JobActor(
 
       import context.dispatcher
 
-      val runningTask = launchTask
-      runningTask.future onComplete {
-        case Success(queryRes) =>
-          requester ! queryRes
-          self ! JobCompleted
-        case Failure(_: CancellationException) => // Job cancellation
-          requester ! SQLReply(command.requestId, ErrorSQLResult("Query cancelled"))
-          self ! JobCompleted
-        case Failure(e: ExecutionException) => self ! JobFailed(e.getCause) // Spark exception
-        case Failure(reason) => self ! JobFailed(reason) // Job failure
-      }
+      try {
+        val runningTask: Cancellable[_] = if (pagedReply) {
+          val cursorTask = launchCursorTask
+          cursorTask.future onComplete {
+            case Success(cursor) => self ! CursorOpened(cursor)
+            case Failure(reason) =>
+              trackedQuery foreach (_.completed())
+              onTaskFailure(reason)
+          }
+          cursorTask
+        } else {
+          val queryTask = launchTask
+          queryTask.future onComplete {
+            case Success(queryRes) =>
+              queryRes foreach (requester ! _)
+              self ! JobCompleted
+            case Failure(reason) =>
+              trackedQuery foreach (_.completed())
+              onTaskFailure(reason)
+          }
+          queryTask
+        }
 
 
-      val isRunning = runningTask.future.value.isEmpty
+        val isRunning = runningTask.future.value.isEmpty
 
-      timeout.filter(_ => isRunning).foreach {
-        context.system.scheduler.scheduleOnce(_, self, CancelJob)
-      }
+        timeout.filter(_ => isRunning).foreach {
+          context.system.scheduler.scheduleOnce(_, self, CancelJob(self, None))
+        }
 
-      context.become(receive(st.copy(runningTask = Some(runningTask))))
+        context.become(receive(st.copy(runningTask = Some(runningTask))))
+      } catch {
+        case _: RejectedExecutionException => replyServerBusy()
+      }
 
     case CancelJob(cancellationRequester, cancelRequestId) =>
       st.runningTask.foreach{ tsk =>
@@ -148,34 +251,318 @@ class JobActor(
         }
         tsk.cancel()
       }
+      coalescingCancelled.trySuccess(())
+      if (st.getStatus == Running) XDMetricsSource.QueriesCancelled.inc()
+      cancelSparkJobs()
+      st.cursor foreach (closeCursor(st, _))
+
+    case FetchPage(requestId, maxRows, pageRequester) =>
+      st.cursor map { openCursor =>
+        if (sendPage(openCursor.cursor, requestId, maxRows, pageRequester))
+          closeCursor(st, openCursor)
+        else
+          context.become(receive(st.copy(cursor = Some(openCursor.copy(expiration = scheduleCursorExpiration())))))
+      } getOrElse {
+        pageRequester ! SQLReply(requestId, ErrorSQLResult(s"The cursor of the query ${command.queryId} is closed"))
+      }
+
+    case ReleaseCursor =>
+      st.cursor foreach (closeCursor(st, _))
 
     case GetJobStatus =>
       sender ! st.getStatus
 
     // Events
 
+    case CursorOpened(cursor) if sender == self =>
+      if (sendPage(cursor, command.requestId, command.fetchSize getOrElse results.pageSize, requester)) {
+        cursor.close()
+        trackedQuery foreach (_.completed())
+        self ! JobCompleted
+      } else {
+        logger.debug(s"Cursor of the query ${command.queryId} opened at ${self.path}")
+        context.become(receive(st.copy(cursor = Some(OpenCursor(cursor, scheduleCursorExpiration())))))
+      }
+
+    case CursorExpired if sender == self =>
+      st.cursor filter (_.expiration.isOverdue) foreach { openCursor =>
+        logger.debug(s"Cursor of the query ${command.queryId} expired")
+        closeCursor(st, openCursor)
+      }
+
     case event @ JobFailed(e) if sender == self =>
       logger.debug(s"Task failed at ${self.path}")
       context.parent ! event
       requester ! SQLReply(command.requestId, ErrorSQLResult(e.getMessage, Some(new Exception(e.getMessage))))
       throw e //Let It Crash: It'll be managed by its supervisor
 
+    case event @ CatalogModified(_) if sender == self =>
+      context.parent ! event
+
     case msg @ JobCompleted if sender == self =>
       logger.debug(s"Completed or cancelled ${self.path} task")
       context.parent ! msg
   }
 
-  private def launchTask: Cancellable[SQLReply] = {
+  // Commands are run as soon as their DataFrame is created, so the catalog has already been changed.
+  private def notifyCatalogChange(df: DataFrame): Unit =
+    CatalogChange.of(df.queryExecution.logical) foreach {
+      case TablesChanged(tables) => self ! CatalogModified(CatalogChangedEvent(tables.map(_.unquotedString)))
+      case AllTablesChanged => self ! CatalogModified(CatalogChangedEvent(Seq.empty, allTables = true))
+    }
+
+  private def onTaskFailure(reason: Throwable): Unit = reason match {
+    case _: CancellationException => // Job cancellation
+      requester ! SQLReply(command.requestId, ErrorSQLResult("Query cancelled"))
+      self ! JobCompleted
+    case e: ExecutionException if e.getCause.isInstanceOf[CancellationException] =>
+      requester ! SQLReply(command.requestId, ErrorSQLResult("Query cancelled"))
+      self ! JobCompleted
+    case rejection: ResultRejectedException => replyRejected(rejection) // Result too large
+    case e: ExecutionException if e.getCause.isInstanceOf[ResultRejectedException] =>
+      replyRejected(e.getCause)
+    case _: RejectedExecutionException => replyServerBusy() // Job executor saturated
+    case e: ExecutionException => self ! JobFailed(e.getCause) // Spark exception
+    case _ => self ! JobFailed(reason) // Job failure
+  }
+
+  /**
+    * @return whether the sent page is the last one.
+    */
+  private def sendPage(cursor: Cursor, requestId: UUID, maxRows: Int, pageRequester: ActorRef): Boolean = {
+    val page = cursor.nextPage(maxRows)
+    profile foreach (_.addRows(page.length))
+    val lastPage = !cursor.rows.hasNext
+    pageRequester ! RowsPageReply(requestId, page, cursor.schema, lastPage, cursor.warnings)
+    lastPage
+  }
+
+  private def scheduleCursorExpiration(): Deadline = {
+    context.system.scheduler.scheduleOnce(results.cursorTTL, self, CursorExpired)(context.dispatcher)
+    results.cursorTTL.fromNow
+  }
+
+  private def closeCursor(st: State, openCursor: OpenCursor): Unit = {
+    openCursor.cursor.close()
+    trackedQuery foreach (_.completed())
+    context.become(receive(st.copy(cursor = None)))
+    self ! JobCompleted
+  }
+
+  private def replyRejected(rejection: Throwable): Unit = {
+    requester ! SQLReply(command.requestId, ErrorSQLResult(rejection.getMessage))
+    self ! JobCompleted
+  }
+
+  private def replyServerBusy(): Unit = {
+    logger.warn(s"Query ${command.queryId} rejected: the job executor queue is full")
+    requester ! SQLReply(command.requestId, ErrorSQLResult(ServerBusyMessage))
+    self ! JobCompleted
+  }
+
+  /**
+    * @return a task whose result is the reply to the query, unless the task has already sent it because the rows are
+    *         streamed lazily: the task then keeps pulling them from Spark until the stream has consumed them.
+    */
+  private def launchTask: Cancellable[Option[SQLReply]] = {
 
-    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(new ProlificExecutor)
+    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(jobExecutor)
+
+    // Local requesters (e.g: the HTTP server) can consume the result as a stream so rows don't need to be collected
+    val streamedReply = requester.path.address.hasLocalScope && !command.flattenResults
+
+    Cancellable {
+      profiledInJobGroup {
+        val df = xdContext.sql(command.sql)
+        notifyCatalogChange(df)
+        //TODO: Replace this cast by an implicit conversion
+        val Admission(xdDataFrame, warnings, forceStreaming) = admit(df.asInstanceOf[XDDataFrame], streamedReply)
+
+        val shared = if (forceStreaming) None else sharedRows(xdDataFrame)
+
+        var lazyRows: Option[RowsHandoff] = None
+
+        val reply: SQLReply = shared match {
+          case Some(coalescedRows) =>
+            val rows = collected(coalescedRows)
+            if (streamedReply)
+              SQLReply(command.requestId, StreamedSuccessfulSQLResult(rowsSource(rows.iterator), df.schema, warnings))
+            else
+              SQLReply(command.requestId, SuccessfulSQLResult(rows, df.schema, warnings))
+          case None if command.flattenResults =>
+            SQLReply(command.requestId, SuccessfulSQLResult(collected(xdDataFrame.flattenedCollect()), df.schema, warnings))
+          case None if streamedReply && (forceStreaming || results.lazyStreaming || results.buffer.isEmpty) =>
+            // A stream cancelled or failed before taking every row cancels the job group so its Spark jobs stop too
+            val handoff = new RowsHandoff(results.cursorTTL, () => self ! CancelJob(self, None))
+            lazyRows = Some(handoff)
+            SQLReply(command.requestId, StreamedSuccessfulSQLResult(rowsSource(handoff.rows), df.schema, warnings))
+          // Remote requesters page through the buffered results instead, see `pagedReply`
+          case None => results.buffer filter (_ => streamedReply) map { bufferSettings =>
+            // The job releases its executor slot once the result is buffered, regardless of how fast it is consumed
+            val buffer = bufferRows(xdDataFrame, bufferSettings)
+            SQLReply(command.requestId, StreamedSuccessfulSQLResult(rowsSource(buffer.iterator), df.schema, warnings))
+          } getOrElse {
+            SQLReply(command.requestId, SuccessfulSQLResult(collected(xdDataFrame.collect()), df.schema, warnings))
+          }
+        }
+
+        // Streamed results are completed by their consumer, once they have been serialized
+        trackedQuery foreach { query =>
+          if (reply.sqlResult.isInstanceOf[StreamedSuccessfulSQLResult]) query.streamed() else query.completed()
+        }
+
+        // The job keeps its executor thread and its Spark job group, so it can be cancelled, until the stream finishes
+        lazyRows map { handoff =>
+          requester ! reply
+          handoff.produce(counted(xdDataFrame.toLocalIterator()))
+          None
+        } getOrElse Some(reply)
+      }
+    }
+  }
+
+  private def launchCursorTask: Cancellable[Cursor] = {
+
+    implicit val _: ExecutionContext = ExecutionContext.fromExecutor(jobExecutor)
 
     Cancellable {
-      val df = xdContext.sql(command.sql)
-      val rows = if (command.flattenResults)
-        df.asInstanceOf[XDDataFrame].flattenedCollect() //TODO: Replace this cast by an implicit conversion
-      else df.collect()
+      profiledInJobGroup {
+        val df = xdContext.sql(command.sql)
+        notifyCatalogChange(df)
+        //TODO: Replace this cast by an implicit conversion
+        val Admission(xdDataFrame, warnings, forceStreaming) =
+          admit(df.asInstanceOf[XDDataFrame], streamable = results.buffer.isDefined && !command.flattenResults)
+
+        val shared = if (forceStreaming) None else sharedRows(xdDataFrame)
+
+        // Pages are read from the actor so the rows must be available without running Spark jobs
+        val rows = shared.map(_.iterator) getOrElse {
+          if (command.flattenResults)
+            xdDataFrame.flattenedCollect().iterator
+          else
+            results.buffer map (bufferRows(xdDataFrame, _).iterator) getOrElse xdDataFrame.collect().iterator
+        }
+
+        Cursor(rows, df.schema, warnings)
+      }
+    }
+  }
+
+  /**
+    * Estimates the size of the result before executing the query and applies the admission decision.
+    *
+    * @param streamable whether the result would be delivered without collecting it into the heap.
+    * @throws ResultRejectedException if the result is rejected.
+    */
+  private def admit(xdDataFrame: XDDataFrame, streamable: Boolean): Admission = results.admission map { settings =>
+    val estimate = ResultSizeEstimator(xdContext).estimate(xdDataFrame.queryExecution.optimizedPlan)
+    ResultAdmission.decide(estimate, settings, streamable) match {
+      case ResultAdmission.Admitted =>
+        Admission(xdDataFrame)
+      case ResultAdmission.Streamed(reason) =>
+        logger.info(s"Query ${command.queryId}: $reason")
+        XDMetricsSource.ResultsStreamed.inc()
+        Admission(xdDataFrame, Seq(reason), forceStreaming = true)
+      case ResultAdmission.Limited(rows, reason) =>
+        logger.info(s"Query ${command.queryId}: $reason")
+        XDMetricsSource.ResultsLimited.inc()
+        Admission(xdDataFrame.limit(rows).asInstanceOf[XDDataFrame], Seq(reason))
+      case ResultAdmission.Rejected(reason) =>
+        logger.warn(s"Query ${command.queryId} rejected: $reason")
+        XDMetricsSource.ResultsRejected.inc()
+        throw new ResultRejectedException(reason)
+    }
+  } getOrElse Admission(xdDataFrame)
+
+  /**
+    * Collects the rows of the query sharing them with the identical queries running meanwhile, if coalescing is
+    * enabled. Results forced to be streamed by the admission aren't coalesced since they are too large to be collected.
+    */
+  private def sharedRows(xdDataFrame: XDDataFrame): Option[Array[Row]] = coalescer map { queryCoalescer =>
+    val key = QueryCoalescer.key(
+      command.sql, xdDataFrame.queryExecution.analyzed, command.flattenResults, xdContext.getAllConfs
+    )
+    queryCoalescer.execute(key, timeout getOrElse Duration.Inf, coalescingCancelled.future) {
+      if (command.flattenResults) xdDataFrame.flattenedCollect() else xdDataFrame.collect()
+    }
+  }
+
+  private def collected(rows: Array[Row]): Array[Row] = {
+    profile foreach (_.addRows(rows.length))
+    rows
+  }
+
+  private def bufferRows(xdDataFrame: XDDataFrame, bufferSettings: ResultBuffer.Settings): ResultBuffer = {
+    val buffer = new ResultBuffer(xdDataFrame.schema, bufferSettings)
+    val rows = xdDataFrame.toLocalIterator()
+    try {
+      buffer.appendAll(rows)
+      profile foreach { queryProfile =>
+        queryProfile.addSerializedBytes(buffer.bytesInMemory + buffer.bytesSpilled)
+        if (!pagedReply) queryProfile.addRows(buffer.size)
+      }
+      buffer
+    } catch {
+      case e: Throwable =>
+        buffer.close()
+        throw e
+    } finally {
+      rows match {
+        case closeable: Closeable => closeable.close()
+        case _ =>
+      }
+    }
+  }
+
+  private def jobGroup: String = command.queryId.toString
+
+  /**
+    * Whether the result is sent a page at a time through a cursor: when the query is sent with a fetch size and when a
+    * buffered result goes to a remote requester, which would otherwise get the whole result, read back from the
+    * buffer into the heap, in a single reply.
+    */
+  private def pagedReply: Boolean = command.fetchSize.isDefined ||
+    (results.buffer.isDefined && !command.flattenResults && !requester.path.address.hasLocalScope)
+
+  private def profile: Option[QueryProfile] = trackedQuery.map(_.profile)
+
+  /**
+    * Spark jobs are assigned to a scheduler pool and to the job group of the query through thread local properties
+    * so they have to be set by the thread submitting them. They are cleared afterwards since the threads are pooled:
+    * otherwise, unrelated jobs submitted later on by the same thread would be cancelled along with the query.
+    */
+  private def inJobGroup[T](body: => T): T = {
+    val sparkContext = xdContext.sparkContext
+    schedulerPool foreach (sparkContext.setLocalProperty(SchedulerPoolsListener.SchedulerPoolProperty, _))
+    sparkContext.setJobGroup(jobGroup, command.sql, interruptOnCancel = true)
+    try body finally {
+      sparkContext.clearJobGroup()
+      schedulerPool foreach (_ => sparkContext.setLocalProperty(SchedulerPoolsListener.SchedulerPoolProperty, null))
+    }
+  }
+
+  private def profiledInJobGroup[T](body: => T): T = QueryProfile.withProfile(profile)(inJobGroup(body))
+
+  /**
+    * Cancels the running and pending Spark jobs of the query, interrupting their tasks, so that a cancelled or
+    * timed out query doesn't keep holding executors.
+    */
+  private def cancelSparkJobs(): Unit = {
+    logger.debug(s"Cancelling the Spark job group $jobGroup")
+    xdContext.sparkContext.cancelJobGroup(jobGroup)
+  }
+
+  private def counted(rows: Iterator[Row]): Iterator[Row] = new Iterator[Row] with Closeable {
+    override def hasNext: Boolean = rows.hasNext
+
+    override def next(): Row = {
+      profile foreach (_.addRows(1))
+      rows.next()
+    }
 
-      SQLReply(command.requestId, SuccessfulSQLResult(rows, df.schema))
+    override def close(): Unit = rows match {
+      case closeable: Closeable => closeable.close()
+      case _ =>
     }
   }
 
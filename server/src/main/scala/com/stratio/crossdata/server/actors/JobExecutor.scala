@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent._
+
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+
+import scala.concurrent.duration._
+
+object JobExecutor {
+
+  val DefaultKeepAlive: FiniteDuration = 1 minute
+
+}
+
+/**
+  * Executor which runs the jobs launched by the [[JobActor]]s of a server. Up to `maxConcurrentJobs` jobs are run
+  * at once while up to `queueSize` jobs wait for a thread; any other job is rejected with a
+  * [[RejectedExecutionException]].
+  *
+  * Queue depth, active jobs, rejections and queue wait time are published in [[XDMetricsSource]].
+  */
+class JobExecutor(val maxConcurrentJobs: Int, val queueSize: Int, keepAlive: FiniteDuration = JobExecutor.DefaultKeepAlive)
+  extends Executor {
+
+  require(maxConcurrentJobs > 0, "At least one concurrent job must be allowed")
+  require(queueSize >= 0, "The job queue size cannot be negative")
+
+  private val queue: BlockingQueue[Runnable] =
+    if (queueSize == 0) new SynchronousQueue[Runnable]() else new ArrayBlockingQueue[Runnable](queueSize)
+
+  private val threadFactory = new ThreadFactory {
+    private val threadCount = new AtomicInteger(0)
+    override def newThread(r: Runnable): Thread = new Thread(r, s"crossdata-job-${threadCount.incrementAndGet()}")
+  }
+
+  private val threadPool = new ThreadPoolExecutor(
+    maxConcurrentJobs, maxConcurrentJobs, keepAlive.toMillis, TimeUnit.MILLISECONDS, queue, threadFactory
+  )
+  threadPool.allowCoreThreadTimeOut(true)
+
+  override def execute(command: Runnable): Unit = {
+    val enqueuedAt = System.nanoTime()
+    XDMetricsSource.JobsQueued.inc()
+    try {
+      threadPool.execute(new Runnable {
+        override def run(): Unit = {
+          XDMetricsSource.JobsQueued.dec()
+          XDMetricsSource.JobWaitTime.update(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS)
+          XDMetricsSource.JobsActive.inc()
+          try command.run() finally XDMetricsSource.JobsActive.dec()
+        }
+      })
+    } catch {
+      case rejected: RejectedExecutionException =>
+        XDMetricsSource.JobsQueued.dec()
+        XDMetricsSource.JobsRejected.inc()
+        throw rejected
+    }
+  }
+
+  def queueDepth: Int = queue.size
+
+  def activeJobs: Int = threadPool.getActiveCount
+
+  def shutdown(): Unit = threadPool.shutdownNow()
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import akka.actor.{Actor, Cancellable, Props}
+import akka.cluster.Cluster
+import akka.cluster.ClusterEvent.{MemberRemoved, UnreachableMember}
+import akka.cluster.pubsub.DistributedPubSub
+import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, Subscribe}
+import com.stratio.crossdata.server.routing.ClusterLoad
+import com.stratio.crossdata.server.routing.ClusterLoad.ServerLoad
+import org.apache.log4j.Logger
+
+object LoadReporterActor {
+  val LoadTopic: String = "serverLoad"
+
+  def props(cluster: Cluster, jobExecutor: JobExecutor, clusterLoad: ClusterLoad): Props =
+    Props(new LoadReporterActor(cluster, jobExecutor, clusterLoad))
+
+  def localLoad(cluster: Cluster, jobExecutor: JobExecutor): ServerLoad = {
+    val (heapUsed, heapMax) = ClusterLoad.localHeap
+    ServerLoad(
+      cluster.selfAddress,
+      jobExecutor.activeJobs,
+      jobExecutor.queueDepth,
+      jobExecutor.maxConcurrentJobs,
+      heapUsed,
+      heapMax
+    )
+  }
+
+  private case object PublishLoad
+
+}
+
+/**
+  * Periodically publishes the load of this server to the other servers of the cluster and keeps their loads
+  * in `clusterLoad`.
+  */
+class LoadReporterActor(cluster: Cluster, jobExecutor: JobExecutor, clusterLoad: ClusterLoad) extends Actor {
+
+  import LoadReporterActor._
+
+  lazy val logger = Logger.getLogger(classOf[LoadReporterActor])
+
+  lazy val mediator = DistributedPubSub(context.system).mediator
+
+  private var publication: Option[Cancellable] = None
+
+  override def preStart(): Unit = {
+    super.preStart()
+    mediator ! Subscribe(LoadTopic, self)
+    cluster.subscribe(self, classOf[MemberRemoved], classOf[UnreachableMember])
+    val interval = clusterLoad.settings.publishInterval
+    publication = Some(context.system.scheduler.schedule(interval, interval, self, PublishLoad)(context.dispatcher))
+  }
+
+  override def postStop(): Unit = {
+    publication.foreach(_.cancel())
+    cluster.unsubscribe(self)
+    super.postStop()
+  }
+
+  override def receive: Receive = {
+    case PublishLoad =>
+      mediator ! Publish(LoadTopic, localLoad(cluster, jobExecutor))
+
+    case load: ServerLoad if load.address != cluster.selfAddress =>
+      clusterLoad.update(load)
+
+    case MemberRemoved(member, _) =>
+      clusterLoad.remove(member.address)
+
+    case UnreachableMember(member) =>
+      logger.debug(s"Server ${member.address} is unreachable, no query will be routed to it")
+      clusterLoad.remove(member.address)
+
+    case _ => // Own loads, subscription acks and cluster state snapshots
+  }
+
+}
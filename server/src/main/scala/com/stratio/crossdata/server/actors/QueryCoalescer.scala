@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.concurrent.{CancellationException, ConcurrentHashMap, TimeoutException}
+
+import org.apache.log4j.Logger
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan
+import org.apache.spark.sql.crossdata.XDSQLConf
+import org.apache.spark.sql.crossdata.metrics.{QueryProfile, XDMetricsSource}
+
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, ExecutionContext, Future, Promise}
+import scala.util.{Failure, Success, Try}
+
+object QueryCoalescer {
+
+  /**
+    * Identifies the queries sharing an execution.
+    *
+    * @param sql query text with its whitespace normalized.
+    * @param plan analyzed plan, without attribute ids, which identifies the relations resolved by the query.
+    * @param flattened whether nested fields are flattened.
+    * @param conf session configuration the result depends on.
+    */
+  case class Key(sql: String, plan: String, flattened: Boolean, conf: Map[String, String])
+
+  // Settings which don't change the result of a query
+  val IgnoredConf: Set[String] = Set(XDSQLConf.SlowQueryThresholdKey)
+
+  def key(sql: String, analyzedPlan: LogicalPlan, flattened: Boolean, conf: Map[String, String]): Key =
+    Key(
+      sql.trim.replaceAll("\\s+", " "),
+      QueryProfile.canonicalTree(analyzedPlan),
+      flattened,
+      conf -- IgnoredConf
+    )
+
+  // Completes the outcome of a wait from the thread completing the shared execution or cancelling the wait
+  private val callingThread = new ExecutionContext {
+    override def execute(runnable: Runnable): Unit = runnable.run()
+    override def reportFailure(cause: Throwable): Unit = Logger.getLogger(classOf[QueryCoalescer]).error(cause)
+  }
+
+}
+
+/**
+  * Single-flight execution of identical concurrent queries: the first query of a [[QueryCoalescer.Key]] runs while
+  * the identical queries received meanwhile wait for its rows, which are shared by all of them.
+  *
+  * The counts of executed and shared queries are published in [[XDMetricsSource]].
+  */
+class QueryCoalescer {
+
+  import QueryCoalescer._
+
+  lazy val logger = Logger.getLogger(classOf[QueryCoalescer])
+
+  private val inFlight = new ConcurrentHashMap[Key, Promise[Array[Row]]]()
+
+  /**
+    * Runs `execution` unless an identical query is already running, waiting for its result otherwise.
+    * If the shared execution fails (e.g. because the query running it got cancelled), the waiting queries
+    * try again, electing a new query to run it.
+    *
+    * @param timeout maximum time to wait for the shared execution, after which a [[TimeoutException]] is thrown.
+    * @param cancelled completed when the waiting query is cancelled, which stops its wait with a
+    *                  [[CancellationException]].
+    */
+  def execute(
+               key: Key,
+               timeout: Duration = Duration.Inf,
+               cancelled: Future[Unit] = Promise[Unit]().future,
+               retries: Int = 1
+             )(execution: => Array[Row]): Array[Row] = {
+    val promise = Promise[Array[Row]]()
+    Option(inFlight.putIfAbsent(key, promise)) map { running =>
+      val outcome = Promise[Array[Row]]()
+      val cancellation = new CancellationException("Cancelled while waiting for the shared execution")
+      running.future.onComplete(outcome.tryComplete)(callingThread)
+      cancelled.onComplete(_ => outcome.tryFailure(cancellation))(callingThread)
+
+      try Await.ready(outcome.future, timeout) catch {
+        case _: TimeoutException => throw new TimeoutException(s"The shared execution didn't finish within $timeout")
+      }
+      outcome.future.value.get match {
+        case Success(result) =>
+          XDMetricsSource.CoalescedQueriesShared.inc()
+          result
+        case Failure(`cancellation`) => throw cancellation
+        case Failure(reason) if retries > 0 =>
+          logger.debug(s"Shared execution failed, running the query again: ${reason.getMessage}")
+          execute(key, timeout, cancelled, retries - 1)(execution)
+        case Failure(reason) => throw reason
+      }
+    } getOrElse {
+      XDMetricsSource.CoalescedQueriesExecuted.inc()
+      try {
+        promise.complete(Try(execution)).future.value.get.get
+      } finally {
+        inFlight.remove(key, promise)
+      }
+    }
+  }
+
+  def inFlightQueries: Int = inFlight.size
+
+}
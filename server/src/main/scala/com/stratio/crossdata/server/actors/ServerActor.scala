@@ -22,30 +22,63 @@ import akka.actor._
 import akka.cluster.Cluster
 import akka.cluster.pubsub.DistributedPubSub
 import akka.cluster.pubsub.DistributedPubSubMediator.{Publish, Subscribe, SubscribeAck}
+import akka.routing.ConsistentHashingRouter.ConsistentHashMapping
 import com.stratio.crossdata.common.result.{ErrorSQLResult, SuccessfulSQLResult}
 import com.stratio.crossdata.common.security.Session
 import com.stratio.crossdata.common.util.akka.keepalive.KeepAliveMaster.{DoCheck, HeartbeatLost}
 import com.stratio.crossdata.common.{CommandEnvelope, SQLCommand, _}
-import com.stratio.crossdata.server.actors.JobActor.Commands.{CancelJob, StartJob}
-import com.stratio.crossdata.server.actors.JobActor.Events.{JobCompleted, JobFailed}
-import com.stratio.crossdata.server.config.ServerConfig
+import com.stratio.crossdata.server.actors.JobActor.Commands.{CancelJob, FetchPage, ReleaseCursor, StartJob}
+import com.stratio.crossdata.server.actors.JobActor.Events.{CatalogModified, JobCompleted, JobFailed}
+import com.stratio.crossdata.server.config.{SchedulerPools, ServerConfig}
+import com.stratio.crossdata.server.log.SlowQueryLog
+import com.stratio.crossdata.server.routing.ClusterLoad
 import org.apache.log4j.Logger
+import org.apache.spark.sql.crossdata.{XDSQLConf, XDSession}
+import org.apache.spark.sql.crossdata.metrics.{SchedulerPoolsListener, XDMetricsSource}
 import org.apache.spark.sql.crossdata.session.{HazelcastSessionProvider, XDSessionProvider}
 import org.apache.spark.sql.types.StructType
 
 import scala.collection.JavaConversions._
 import scala.concurrent.duration._
-import scala.util.{Failure, Success}
+import scala.util.{Failure, Success, Try}
 
 
 object ServerActor {
   val ManagementTopic: String = "jobsManagement"
 
-  def props(cluster: Cluster, sessionProvider: XDSessionProvider, serverConfig: ServerConfig): Props =
-    Props(new ServerActor(cluster, sessionProvider, serverConfig))
+  def props(
+             cluster: Cluster,
+             sessionProvider: XDSessionProvider,
+             serverConfig: ServerConfig,
+             jobExecutor: JobExecutor,
+             slowQueryLog: Option[SlowQueryLog] = None,
+             clusterLoad: Option[ClusterLoad] = None,
+             coalescer: Option[QueryCoalescer] = None,
+             schedulerPoolsListener: Option[SchedulerPoolsListener] = None
+           ): Props =
+    Props(new ServerActor(
+      cluster, sessionProvider, serverConfig, jobExecutor, slowQueryLog, clusterLoad, coalescer, schedulerPoolsListener
+    ))
 
   case class JobId(sessionId: UUID, queryId: UUID)
 
+  /**
+    * Routes the messages of a session to the same [[ServerActor]] instance, which keeps the jobs of that session.
+    * Thus, unrelated sessions are served in parallel by different instances.
+    */
+  val SessionHashMapping: ConsistentHashMapping = {
+    case CommandEnvelope(_, session) => session.id
+    case HeartbeatLost(sessionId) => sessionId
+    case RoutedCommand(CommandEnvelope(_, session), _) => session.id
+    case CommandEnvelopeBatch(envelopes) if envelopes.nonEmpty => envelopes.head.session.id
+  }
+
+  /**
+    * Query routed by the server which received it to a less loaded server. It is run by the receiving server
+    * regardless of its load so that a query is never routed twice.
+    */
+  case class RoutedCommand(command: CommandEnvelope, requester: ActorRef)
+
   private case class ManagementEnvelope(command: ControlCommand, source: ActorRef)
 
   private object ManagementMessages {
@@ -54,15 +87,43 @@ object ServerActor {
 
     case class FinishJob(jobActor: ActorRef)
 
+    // Sent to the broadcaster of a delegated page request by the server which holds the cursor
+    case class FetchAccepted(requestId: UUID)
+
+    case class FetchUnanswered(requestId: UUID)
+
   }
 
-  private case class State(jobsById: Map[JobId, ActorRef])
+  /**
+    * Time given to the servers of the cluster to claim a page request of a cursor unknown by the receiving server.
+    */
+  private val DelegatedFetchTimeout: FiniteDuration = 5 seconds
+
+  private val UnknownCursorMessage = "Unknown or expired cursor"
+
+  /**
+    * @param clients drivers of the sessions opened through this instance, notified about the changes of the catalog.
+    * @param pendingFetches requesters of the delegated page requests not claimed by any server yet, by request id.
+    */
+  private case class State(
+                            jobsById: Map[JobId, ActorRef],
+                            clients: Map[UUID, ActorRef] = Map.empty,
+                            pendingFetches: Map[UUID, ActorRef] = Map.empty
+                          )
 
 }
 
 // TODO it should only accept messages from known sessions
-class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverConfig: ServerConfig)
-  extends Actor {
+class ServerActor(
+                   cluster: Cluster,
+                   sessionProvider: XDSessionProvider,
+                   serverConfig: ServerConfig,
+                   jobExecutor: JobExecutor,
+                   slowQueryLog: Option[SlowQueryLog],
+                   clusterLoad: Option[ClusterLoad],
+                   coalescer: Option[QueryCoalescer],
+                   schedulerPoolsListener: Option[SchedulerPoolsListener]
+                 ) extends Actor {
 
   import ServerActor.ManagementMessages._
   import ServerActor._
@@ -95,8 +156,20 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
     else
       context.become(initial(pendingTopics))
 
+  private def slowQueryThreshold(xdSession: XDSession): Long =
+    xdSession.getConf(XDSQLConf.SlowQueryThresholdKey, XDSQLConf.SlowQueryThresholdDefault.toString).toLong
+
   def actualRequester(rqActor: Option[ActorRef]): ActorRef = rqActor.getOrElse(sender)
 
+  /**
+    * Chooses a less loaded server to run a query, if any. Only the queries of remote clients are routed: their
+    * sessions are shared by every server and their replies don't depend on the server which received them.
+    */
+  private def routingTarget(requester: ActorRef): Option[Address] =
+    if (requester.path.address.hasGlobalScope) {
+      clusterLoad flatMap (_.route(LoadReporterActor.localLoad(cluster, jobExecutor)))
+    } else None
+
   /**
     * If a `cmd` is passed to this method is because it has already been checked that this server can run it.
     *
@@ -105,12 +178,27 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
     */
 
   private def executeAccepted(cmd: CommandEnvelope, requester: ActorRef)(st: State): Unit = cmd match {
-    case CommandEnvelope(sqlCommand@SQLCommand(query, queryId, withColnames, timeout), session@Session(id, _)) =>
+    case CommandEnvelope(sqlCommand@SQLCommand(query, queryId, withColnames, timeout, _, _), session@Session(id, _)) =>
       logger.debug(s"Query received $queryId: $query. Actor ${self.path.toStringWithoutAddress}")
       logger.debug(s"Session identifier $session")
       sessionProvider.session(id) match {
         case Success(xdSession) =>
-          val jobActor = context.actorOf(JobActor.props(xdSession, sqlCommand, requester, timeout))
+          val user = Try(xdSession.getConf(XDSQLConf.UserIdPropertyKey)).toOption
+          val schedulerPool = serverConfig.schedulerPoolSelector.poolFor(sqlCommand, id, user)
+          logger.debug(s"Query $queryId assigned to the scheduler pool $schedulerPool")
+          val jobActor = context.actorOf(
+            JobActor.props(
+              xdSession,
+              sqlCommand,
+              requester,
+              timeout,
+              jobExecutor,
+              Some(schedulerPool),
+              serverConfig.resultSettings,
+              slowQueryLog map (_.track(sqlCommand, id, user, slowQueryThreshold(xdSession))),
+              coalescer
+            )
+          )
           jobActor ! StartJob
           context.become(
             ready(st.copy(jobsById = st.jobsById + (JobId(id, sqlCommand.queryId) -> jobActor)))
@@ -132,7 +220,17 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
         sender ! SQLReply(addAppCommand.requestId, ErrorSQLResult("App can't be stored in the catalog"))
 
     case CommandEnvelope(cc@CancelQueryExecution(queryId), session@Session(id, Some(cancellationRequester))) =>
-      st.jobsById(JobId(id, queryId)) ! CancelJob(cancellationRequester, Some(cc.requestId))
+      st.jobsById.get(JobId(id, queryId)) foreach (_ ! CancelJob(cancellationRequester, Some(cc.requestId)))
+
+    case CommandEnvelope(fetch@FetchRows(queryId, maxRows), Session(id, _)) =>
+      st.jobsById.get(JobId(id, queryId)) map {
+        _ ! FetchPage(fetch.requestId, maxRows, requester)
+      } getOrElse {
+        requester ! SQLReply(fetch.requestId, ErrorSQLResult(UnknownCursorMessage))
+      }
+
+    case CommandEnvelope(CloseCursor(queryId), Session(id, _)) =>
+      st.jobsById.get(JobId(id, queryId)) foreach (_ ! ReleaseCursor)
   }
 
 
@@ -148,6 +246,12 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
         case sc@CommandEnvelope(CancelQueryExecution(queryId), Session(sid, requesterOpt)) =>
           val requester = actualRequester(requesterOpt)
           st.jobsById.get(JobId(sid, queryId)) foreach (_ => executeAccepted(sc, requester)(st))
+        case sc@CommandEnvelope(cursorCommand: CursorCommand, Session(sid, requesterOpt)) =>
+          val requester = actualRequester(requesterOpt)
+          st.jobsById.get(JobId(sid, cursorCommand.queryId)) foreach { _ =>
+            executeAccepted(sc, requester)(st)
+            if (cursorCommand.isInstanceOf[FetchRows]) broadcaster ! FetchAccepted(cursorCommand.requestId)
+          }
         /* If it doesn't validate it won't be re-broadcast since the source server already distributed it to all
             servers through the topic. */
       }
@@ -156,8 +260,24 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
   // Commands reception: Checks whether the command can be run at this Server passing it to the execution method if so
   def commandMessagesRec(st: State): Receive = {
 
-    case sc@CommandEnvelope(_: SQLCommand, session) =>
-      executeAccepted(sc, actualRequester(session.clientRef))(st)
+    // Batched commands are handled one by one, keeping their requester
+    case CommandEnvelopeBatch(envelopes) =>
+      envelopes foreach (self forward _)
+
+    case sc@CommandEnvelope(sqlCommand: SQLCommand, session) =>
+      val requester = actualRequester(session.clientRef)
+      routingTarget(requester) map { address =>
+        logger.debug(s"Query ${sqlCommand.queryId} routed to the less loaded server $address")
+        XDMetricsSource.QueriesRoutedToPeers.inc()
+        context.actorSelection(RootActorPath(address) / "user" / serverConfig.actorName) ! RoutedCommand(sc, requester)
+      } getOrElse {
+        XDMetricsSource.QueriesRunLocally.inc()
+        executeAccepted(sc, requester)(st)
+      }
+
+    case RoutedCommand(sc, requester) =>
+      XDMetricsSource.QueriesRoutedFromPeers.inc()
+      executeAccepted(sc, requester)(st)
 
     /*case sc@CommandEnvelope(_: AddJARCommand, _, _) => //TODO Adapt Requester
       executeAccepted(sc)(st)
@@ -166,6 +286,30 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
       executeAccepted(sc)(st)*/
 
 
+    case sc@CommandEnvelope(cursorCommand: CursorCommand, Session(id, requesterOpt)) =>
+      val requester = actualRequester(requesterOpt)
+      if (st.jobsById.contains(JobId(id, cursorCommand.queryId))) {
+        executeAccepted(sc, requester)(st) // The cursor is held by a job of this server
+      } else {
+        mediator ! Publish(ManagementTopic, DelegateCommand(sc.copy(session = Session(id, Some(requester))), self))
+        // Page requests are answered with an error unless a server claims the cursor in time
+        if (cursorCommand.isInstanceOf[FetchRows]) {
+          context.system.scheduler.scheduleOnce(
+            DelegatedFetchTimeout, self, FetchUnanswered(cursorCommand.requestId))(context.dispatcher)
+          context.become(ready(st.copy(pendingFetches = st.pendingFetches + (cursorCommand.requestId -> requester))))
+        }
+      }
+
+    case FetchAccepted(requestId) =>
+      context.become(ready(st.copy(pendingFetches = st.pendingFetches - requestId)))
+
+    case FetchUnanswered(requestId) =>
+      st.pendingFetches.get(requestId) foreach { requester =>
+        logger.warn(s"No server holds the cursor of the page request $requestId")
+        requester ! SQLReply(requestId, ErrorSQLResult(UnknownCursorMessage))
+        context.become(ready(st.copy(pendingFetches = st.pendingFetches - requestId)))
+      }
+
     case sc@CommandEnvelope(cc: ControlCommand, session@Session(id, requesterOpt)) =>
         val requester = actualRequester(requesterOpt)
       st.jobsById.get(JobId(id, cc.requestId)) map { _ =>
@@ -187,10 +331,13 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
       sender ! ClusterStateReply(sc.cmd.requestId, cluster.state, members)
     }
 
-    case sc@CommandEnvelope(OpenSessionCommand(user), Session(sid,_)) =>
+    case sc@CommandEnvelope(OpenSessionCommand(user), Session(sid, clientRef)) =>
       val open = sessionProvider.newSession(sid, user) match {
         case Success(_) =>
           logger.info(s"new session with sessionID=${sid} has been created")
+          // The pool of the user is shared by all the user sessions, it is released along with the last one
+          schedulerPoolsListener foreach (_.retainPool(SchedulerPools.userPool(user)))
+          clientRef foreach (client => context.become(ready(st.copy(clients = st.clients + (sid -> client)))))
           true
         case Failure(error) =>
           logger.error(s"failure while creating the session with sessionID=${sid}")
@@ -218,6 +365,16 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
     case JobCompleted =>
       sentenceToDeath(sender())
 
+    // Every server notifies the drivers of the sessions it has opened
+    case CatalogModified(event) =>
+      mediator ! Publish(ManagementTopic, event)
+
+    case event: CatalogChangedEvent =>
+      // The native result cache is local to each server, so the changes made through any of them invalidate all
+      if (event.allTables) sessionProvider.invalidateAllNativeResults()
+      else sessionProvider.invalidateNativeResults(event.tables)
+      st.clients.values foreach (_ ! event)
+
     case FinishJob(who) =>
       context.become(ready(st.copy(jobsById = st.jobsById.filterNot(_._2 == who))))
       context.children.find(_ == who).foreach(gracefullyKill)
@@ -245,10 +402,21 @@ class ServerActor(cluster: Cluster, sessionProvider: XDSessionProvider, serverCo
         false
       case _ => true
     }
-    context.become(ready(st.copy(jobsById = newjobsmap)))
+    context.become(ready(st.copy(jobsById = newjobsmap, clients = st.clients - sessionId)))
+    releaseSessionPools(sessionId)
     sessionProvider.closeSession(sessionId)
   }
 
+  // Session and user pools are created on demand, so their metrics are dropped along with the session (the user pool
+  // only when no other session of the user remains open, as it is retained by each one of them)
+  private def releaseSessionPools(sessionId: UUID): Unit = schedulerPoolsListener foreach { listener =>
+    val user = sessionProvider.session(sessionId).toOption flatMap { xdSession =>
+      Try(xdSession.getConf(XDSQLConf.UserIdPropertyKey)).toOption
+    }
+    listener.releasePool(SchedulerPools.sessionPool(sessionId))
+    user foreach (u => listener.releasePool(SchedulerPools.userPool(u)))
+  }
+
   private def sentenceToDeath(victim: ActorRef): Unit = serverConfig.completedJobTTL match {
     case finite: FiniteDuration =>
       context.system.scheduler.scheduleOnce(finite, self, FinishJob(victim))(context.dispatcher)
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.config
+
+import java.io.{File, PrintWriter}
+import java.util.UUID
+
+import com.stratio.crossdata.common.QueryPriority.QueryPriority
+import com.stratio.crossdata.common.SQLCommand
+import com.typesafe.config.Config
+
+import scala.collection.JavaConversions._
+import scala.util.Try
+
+object SchedulerPools {
+
+  val AllocationFileProperty = "spark.scheduler.allocation.file"
+
+  case class PoolConfig(name: String, schedulingMode: String, weight: Int, minShare: Int)
+
+  /**
+    * Strategies used to choose the pool of the queries submitted without a priority hint.
+    */
+  object PoolSelection extends Enumeration {
+    type PoolSelection = Value
+    val Priority = Value("priority")
+    val Session = Value("session")
+    val User = Value("user")
+  }
+
+  def priorityPool(priority: QueryPriority): String = priority.toString.toLowerCase
+
+  def sessionPool(sessionId: UUID): String = s"session-$sessionId"
+
+  def userPool(user: String): String = s"user-$user"
+
+  /**
+    * Reads the pools declared as `<pool-name> { scheduling-mode = ..., weight = ..., min-share = ... }`.
+    */
+  def poolsFrom(poolsConfig: Config): Seq[PoolConfig] =
+    poolsConfig.root.keySet.toSeq.sorted map { name =>
+      val poolConfig = poolsConfig.getConfig(name)
+      PoolConfig(
+        name,
+        Try(poolConfig.getString("scheduling-mode")).getOrElse("FIFO").toUpperCase,
+        Try(poolConfig.getInt("weight")).getOrElse(1),
+        Try(poolConfig.getInt("min-share")).getOrElse(0)
+      )
+    }
+
+  /**
+    * Spark FAIR scheduler allocation file describing the given pools.
+    */
+  def allocationFileContent(pools: Seq[PoolConfig]): String = {
+    val poolElements = pools map { pool =>
+      s"""  <pool name="${pool.name}">
+         |    <schedulingMode>${pool.schedulingMode}</schedulingMode>
+         |    <weight>${pool.weight}</weight>
+         |    <minShare>${pool.minShare}</minShare>
+         |  </pool>""".stripMargin
+    }
+    ("<?xml version=\"1.0\"?>" +: "<allocations>" +: poolElements :+ "</allocations>").mkString("\n")
+  }
+
+  def writeAllocationFile(pools: Seq[PoolConfig]): File = {
+    val file = File.createTempFile("crossdata-fairscheduler", ".xml")
+    file.deleteOnExit()
+    val writer = new PrintWriter(file, "UTF-8")
+    try writer.write(allocationFileContent(pools)) finally writer.close()
+    file
+  }
+
+}
+
+/**
+  * Chooses the FAIR scheduler pool of each query: queries carrying a priority hint run in the pool of that priority,
+  * the rest of them run in the pool given by the selection strategy. Pools which are not declared in the allocation
+  * file (e.g: session and user pools) are created by Spark with the default pool settings.
+  */
+class SchedulerPoolSelector(selection: SchedulerPools.PoolSelection.PoolSelection, defaultPriority: QueryPriority) {
+
+  import SchedulerPools._
+
+  def poolFor(command: SQLCommand, sessionId: UUID, user: => Option[String]): String =
+    command.priority map priorityPool getOrElse {
+      selection match {
+        case PoolSelection.Session => sessionPool(sessionId)
+        case PoolSelection.User => user map userPool getOrElse priorityPool(defaultPriority)
+        case PoolSelection.Priority => priorityPool(defaultPriority)
+      }
+    }
+
+}
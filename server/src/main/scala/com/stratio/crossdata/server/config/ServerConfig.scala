@@ -18,6 +18,11 @@ package com.stratio.crossdata.server.config
 import java.io.File
 import java.util.concurrent.TimeUnit
 
+import com.stratio.crossdata.common.QueryPriority
+import com.stratio.crossdata.server.config.SchedulerPools.PoolConfig
+import com.stratio.crossdata.server.log.SlowQueryLog
+import com.stratio.crossdata.server.results.{ResultAdmission, ResultBuffer, ResultSettings}
+import com.stratio.crossdata.server.routing.ClusterLoad
 import com.typesafe.config.{Config, ConfigFactory, ConfigValueFactory}
 import org.apache.log4j.Logger
 import org.apache.spark.sql.crossdata.config.CoreConfig
@@ -51,6 +56,43 @@ object ServerConfig {
 
   // Job management settings
   val FinishedJobTTL = "config.jobs.finished.ttl_ms"
+  val MaxConcurrentJobs = "config.jobs.executor.max-concurrent-jobs"
+  val JobQueueSize = "config.jobs.executor.queue-size"
+
+  // Scheduler pools settings
+  val SchedulerPoolsConfig = "config.scheduler.pools"
+  val SchedulerPoolSelection = "config.scheduler.pool-selection"
+  val SchedulerDefaultPriority = "config.scheduler.default-priority"
+
+  // Result buffer settings
+  val ResultBufferEnabled = "config.results.buffer.enabled"
+  val ResultBufferMemoryThreshold = "config.results.buffer.memory-threshold"
+  val ResultBufferChunkSize = "config.results.buffer.chunk-size"
+  val ResultBufferSpillDirectory = "config.results.buffer.spill-directory"
+  val ResultStreamingMode = "config.results.streaming-mode"
+  val CursorTTL = "config.results.cursors.ttl"
+  val CursorPageSize = "config.results.cursors.page-size"
+  val ResultAdmissionEnabled = "config.results.admission.enabled"
+  val ResultAdmissionMaxCollectedSize = "config.results.admission.max-collected-size"
+  val ResultAdmissionMaxSize = "config.results.admission.max-size"
+  val ResultAdmissionAction = "config.results.admission.action"
+
+  // Slow query log settings
+  val SlowQueryLogEnabled = "config.slow-query-log.enabled"
+  val SlowQueryLogFile = "config.slow-query-log.file"
+  val SlowQueryLogMaxFileSize = "config.slow-query-log.max-file-size"
+  val SlowQueryLogMaxBackups = "config.slow-query-log.max-backups"
+  val SlowQueryLogBufferSize = "config.slow-query-log.buffer-size"
+  val SlowQueryLogMaxStreamedQueries = "config.slow-query-log.max-streamed-queries"
+
+  // Load-aware routing settings
+  val LoadRoutingEnabled = "config.routing.load-aware.enabled"
+  val LoadRoutingPublishInterval = "config.routing.load-aware.publish-interval"
+  val LoadRoutingMinLoadDifference = "config.routing.load-aware.min-load-difference"
+  val LoadRoutingMaxHeapUsage = "config.routing.load-aware.max-heap-usage"
+
+  // Execution sharing of identical concurrent queries
+  val QueryCoalescingEnabled = "config.coalescing.enabled"
 
   // Host
   val Host = "akka.remote.netty.tcp.hostname"
@@ -68,6 +110,15 @@ object ServerConfig {
 
     val RequestExecutionTimeout = "akka.http.server.request-timeout"
 
+    // Rows per record batch of the results encoded in the binary columnar format
+    val ColumnarBatchSize = "akka-http.columnar.batch-size"
+    // Maximum time the rows of a record batch are held back waiting for the batch to be full
+    val ColumnarBatchInterval = "akka-http.columnar.batch-interval"
+
+    // Compression of the query results, negotiated through the Accept-Encoding header
+    val CompressionEnabled = "akka-http.compression.enabled"
+    val CompressionMinSize = "akka-http.compression.min-size"
+
     //TLS akka-http client authentication
     object TLS {
       val TlsEnable = "akka-http.ssl.enable"
@@ -81,6 +132,28 @@ object ServerConfig {
 
 
   val DefaultHTTPRequestExecutionTimeout = 4 hour
+
+  val DefaultMaxConcurrentJobs = 50
+  val DefaultJobQueueSize = 200
+  val DefaultSchedulerPoolSelection = "priority"
+  val DefaultSchedulerPriority = "interactive"
+  val DefaultResultBufferMemoryThreshold = 64L * 1024 * 1024
+  val DefaultResultBufferChunkSize = 1024 * 1024
+  val LazyResultStreamingMode = "lazy"
+  val DefaultCursorTTL = 5 minutes
+  val DefaultCursorPageSize = 1000
+  val DefaultResultAdmissionMaxCollectedSize = 1024L * 1024 * 1024
+  val DefaultResultAdmissionAction = "stream"
+  val DefaultSlowQueryLogFileName = "crossdata-slow-queries.log"
+  val DefaultSlowQueryLogMaxFileSize = "100MB"
+  val DefaultSlowQueryLogMaxBackups = 10
+  val DefaultSlowQueryLogBufferSize = 512
+  val DefaultSlowQueryLogMaxStreamedQueries = 1024
+  val DefaultLoadRoutingPublishInterval = 2 seconds
+  val DefaultLoadRoutingMinLoadDifference = 0.25
+  val DefaultLoadRoutingMaxHeapUsage = 0.9
+  val DefaultHttpCompressionMinSize = 1024L
+  val DefaultHttpColumnarBatchInterval = 100 milliseconds
 }
 
 class ServerConfig(userConfig: Option[Config] = None) extends NumberActorConfig {
@@ -99,6 +172,87 @@ class ServerConfig(userConfig: Option[Config] = None) extends NumberActorConfig
 
   lazy val completedJobTTL: Duration = extractDurationField(ServerConfig.FinishedJobTTL)
 
+  lazy val maxConcurrentJobs: Int = Try(config.getInt(ServerConfig.MaxConcurrentJobs)).getOrElse(ServerConfig.DefaultMaxConcurrentJobs)
+  lazy val jobQueueSize: Int = Try(config.getInt(ServerConfig.JobQueueSize)).getOrElse(ServerConfig.DefaultJobQueueSize)
+
+  lazy val schedulerPools: Seq[PoolConfig] =
+    Try(config.getConfig(ServerConfig.SchedulerPoolsConfig)).map(SchedulerPools.poolsFrom).getOrElse(Seq.empty)
+
+  lazy val schedulerPoolSelector: SchedulerPoolSelector = {
+    val selection = Try(config.getString(ServerConfig.SchedulerPoolSelection))
+      .getOrElse(ServerConfig.DefaultSchedulerPoolSelection)
+    val defaultPriority = Try(config.getString(ServerConfig.SchedulerDefaultPriority))
+      .getOrElse(ServerConfig.DefaultSchedulerPriority)
+    new SchedulerPoolSelector(
+      SchedulerPools.PoolSelection.withName(selection.toLowerCase),
+      QueryPriority.withName(defaultPriority.toLowerCase.capitalize)
+    )
+  }
+
+  lazy val resultBufferSettings: Option[ResultBuffer.Settings] =
+    if (Try(config.getBoolean(ServerConfig.ResultBufferEnabled)).getOrElse(false)) Some {
+      ResultBuffer.Settings(
+        Try(config.getBytes(ServerConfig.ResultBufferMemoryThreshold).toLong)
+          .getOrElse(ServerConfig.DefaultResultBufferMemoryThreshold),
+        Try(config.getBytes(ServerConfig.ResultBufferChunkSize).toInt).getOrElse(ServerConfig.DefaultResultBufferChunkSize),
+        new File(Try(config.getString(ServerConfig.ResultBufferSpillDirectory)).getOrElse(System.getProperty("java.io.tmpdir")))
+      )
+    } else None
+
+  lazy val lazyResultStreaming: Boolean =
+    Try(config.getString(ServerConfig.ResultStreamingMode)).toOption.forall(_.equalsIgnoreCase(ServerConfig.LazyResultStreamingMode))
+
+  lazy val cursorTTL: FiniteDuration = extractDurationField(ServerConfig.CursorTTL) match {
+    case d: FiniteDuration => d
+    case _ => ServerConfig.DefaultCursorTTL
+  }
+
+  lazy val cursorPageSize: Int = Try(config.getInt(ServerConfig.CursorPageSize)).getOrElse(ServerConfig.DefaultCursorPageSize)
+
+  lazy val resultAdmissionSettings: Option[ResultAdmission.Settings] =
+    if (Try(config.getBoolean(ServerConfig.ResultAdmissionEnabled)).getOrElse(false)) Some {
+      ResultAdmission.Settings(
+        Try(config.getBytes(ServerConfig.ResultAdmissionMaxCollectedSize).toLong)
+          .getOrElse(ServerConfig.DefaultResultAdmissionMaxCollectedSize),
+        ResultAdmission.Action.withName(
+          Try(config.getString(ServerConfig.ResultAdmissionAction)).getOrElse(ServerConfig.DefaultResultAdmissionAction).toLowerCase
+        ),
+        Try(config.getBytes(ServerConfig.ResultAdmissionMaxSize).toLong).toOption
+      )
+    } else None
+
+  lazy val resultSettings: ResultSettings =
+    ResultSettings(resultBufferSettings, lazyResultStreaming, cursorTTL, resultAdmissionSettings, cursorPageSize)
+
+  lazy val slowQueryLogSettings: Option[SlowQueryLog.Settings] =
+    if (Try(config.getBoolean(ServerConfig.SlowQueryLogEnabled)).getOrElse(true)) Some {
+      SlowQueryLog.Settings(
+        Try(new File(config.getString(ServerConfig.SlowQueryLogFile))).getOrElse(
+          new File(System.getProperty("java.io.tmpdir"), ServerConfig.DefaultSlowQueryLogFileName)
+        ),
+        Try(config.getString(ServerConfig.SlowQueryLogMaxFileSize)).getOrElse(ServerConfig.DefaultSlowQueryLogMaxFileSize),
+        Try(config.getInt(ServerConfig.SlowQueryLogMaxBackups)).getOrElse(ServerConfig.DefaultSlowQueryLogMaxBackups),
+        Try(config.getInt(ServerConfig.SlowQueryLogBufferSize)).getOrElse(ServerConfig.DefaultSlowQueryLogBufferSize),
+        Try(config.getInt(ServerConfig.SlowQueryLogMaxStreamedQueries))
+          .getOrElse(ServerConfig.DefaultSlowQueryLogMaxStreamedQueries)
+      )
+    } else None
+
+  lazy val loadRoutingSettings: Option[ClusterLoad.Settings] =
+    if (Try(config.getBoolean(ServerConfig.LoadRoutingEnabled)).getOrElse(true)) Some {
+      ClusterLoad.Settings(
+        extractDurationField(ServerConfig.LoadRoutingPublishInterval) match {
+          case d: FiniteDuration => d
+          case _ => ServerConfig.DefaultLoadRoutingPublishInterval
+        },
+        Try(config.getDouble(ServerConfig.LoadRoutingMinLoadDifference))
+          .getOrElse(ServerConfig.DefaultLoadRoutingMinLoadDifference),
+        Try(config.getDouble(ServerConfig.LoadRoutingMaxHeapUsage)).getOrElse(ServerConfig.DefaultLoadRoutingMaxHeapUsage)
+      )
+    } else None
+
+  lazy val queryCoalescingEnabled: Boolean = Try(config.getBoolean(ServerConfig.QueryCoalescingEnabled)).getOrElse(false)
+
   lazy val expectedClientHeartbeatPeriod: FiniteDuration =
     extractDurationField(ServerConfig.ClientExpectedHeartbeatPeriod) match {
       case d: FiniteDuration =>
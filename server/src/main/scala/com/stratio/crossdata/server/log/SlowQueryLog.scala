@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.log
+
+import java.io.File
+import java.util.UUID
+
+import com.stratio.crossdata.common.SQLCommand
+import org.apache.log4j._
+import org.apache.spark.sql.crossdata.metrics.QueryProfile
+import org.json4s.JsonAST._
+import org.json4s.jackson.JsonMethods._
+
+import scala.collection.mutable
+
+object SlowQueryLog {
+
+  val LoggerName = "com.stratio.crossdata.SlowQueryLog"
+
+  /**
+    * @param file file the entries are written to. It is rolled over once it reaches `maxFileSize`.
+    * @param maxFileSize max size of the file, e.g: 100MB.
+    * @param maxBackups number of rolled over files which are kept.
+    * @param bufferSize number of entries waiting to be written. Entries are discarded when the buffer is full so
+    *                   query execution never waits for the file.
+    * @param maxStreamedQueries number of streamed results whose profile is kept until their stream is completed. The
+    *                           oldest profiles are dropped beyond it, e.g: those of streams never consumed.
+    */
+  case class Settings(file: File, maxFileSize: String, maxBackups: Int, bufferSize: Int, maxStreamedQueries: Int = 1024)
+
+  /**
+    * Query being profiled by a job until its result has been completely produced, or serialized if it is streamed.
+    */
+  case class TrackedQuery(profile: QueryProfile, requestId: UUID, log: SlowQueryLog) {
+
+    def completed(): Unit = log.completed(profile)
+
+    /**
+      * The query will be completed by the consumer of its streamed result (see [[SlowQueryLog.streamCompleted]]).
+      */
+    def streamed(): Unit = log.streamed(requestId, profile)
+
+  }
+
+  def entry(profile: QueryProfile): JObject = JObject(
+    "timestamp" -> JInt(System.currentTimeMillis()),
+    "queryId" -> JString(profile.queryId.toString),
+    "sessionId" -> JString(profile.sessionId.toString),
+    "user" -> profile.user.map(JString).getOrElse(JNull),
+    "sql" -> JString(profile.sql),
+    "planFingerprint" -> profile.planFingerprint.map(JString).getOrElse(JNull),
+    "execution" -> profile.executionType.map(JString).getOrElse(JNull),
+    "connector" -> profile.connector.map(JString).getOrElse(JNull),
+    "elapsedMillis" -> JInt(profile.elapsed.toMillis),
+    "phasesMillis" -> JObject(profile.phaseTimings.toList map { case (phase, time) => phase -> JInt(time.toMillis) }),
+    "rows" -> JInt(profile.rowCount),
+    "serializedBytes" -> JInt(profile.serializedByteCount)
+  )
+
+}
+
+/**
+  * Writes the queries taking longer than the threshold of their session (see
+  * [[org.apache.spark.sql.crossdata.XDSQLConf.SlowQueryThresholdKey]]) to a rolling file, one JSON document per line.
+  * Entries are written asynchronously by a dedicated logger so they don't slow down the queries.
+  *
+  * The profiles of streamed results are kept by request id until the stream has been completely serialized, up to
+  * `maxStreamedQueries` profiles.
+  */
+class SlowQueryLog(settings: SlowQueryLog.Settings) {
+
+  import SlowQueryLog._
+
+  private val appender: Appender = {
+    val fileAppender = new RollingFileAppender(new PatternLayout("%m%n"), settings.file.getAbsolutePath)
+    fileAppender.setMaxFileSize(settings.maxFileSize)
+    fileAppender.setMaxBackupIndex(settings.maxBackups)
+
+    val asyncAppender = new AsyncAppender
+    asyncAppender.setBufferSize(settings.bufferSize)
+    asyncAppender.setBlocking(false)
+    asyncAppender.addAppender(fileAppender)
+    asyncAppender
+  }
+
+  private val logger: Logger = {
+    val slowQueryLogger = Logger.getLogger(LoggerName)
+    slowQueryLogger.removeAllAppenders()
+    slowQueryLogger.addAppender(appender)
+    slowQueryLogger.setAdditivity(false)
+    slowQueryLogger.setLevel(Level.INFO)
+    slowQueryLogger
+  }
+
+  // Insertion ordered so that the oldest profiles are dropped first
+  private val streamedProfiles = mutable.LinkedHashMap.empty[UUID, QueryProfile]
+
+  def track(command: SQLCommand, sessionId: UUID, user: Option[String], thresholdMillis: Long): TrackedQuery =
+    TrackedQuery(new QueryProfile(command.queryId, command.sql, sessionId, user, thresholdMillis), command.requestId, this)
+
+  def completed(profile: QueryProfile): Unit =
+    if (profile.isSlow) logger.info(compact(render(entry(profile))))
+
+  /**
+    * Keeps the profile of a streamed result until [[streamCompleted]] is called with its request id.
+    */
+  private def streamed(requestId: UUID, profile: QueryProfile): Unit = streamedProfiles.synchronized {
+    streamedProfiles += requestId -> profile
+    if (streamedProfiles.size > settings.maxStreamedQueries) streamedProfiles -= streamedProfiles.head._1
+  }
+
+  def streamedProfile(requestId: UUID): Option[QueryProfile] = streamedProfiles.synchronized {
+    streamedProfiles.get(requestId)
+  }
+
+  def streamCompleted(requestId: UUID): Unit =
+    streamedProfiles.synchronized(streamedProfiles.remove(requestId)) foreach completed
+
+  /**
+    * Flushes the pending entries and closes the file.
+    */
+  def close(): Unit = {
+    logger.removeAppender(appender)
+    appender.close()
+  }
+
+}
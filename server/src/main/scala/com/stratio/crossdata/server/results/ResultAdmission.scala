@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import org.apache.spark.sql.crossdata.execution.ResultSizeEstimate
+
+object ResultAdmission {
+
+  /**
+    * What happens to a query whose result is estimated to be too large to be collected by the server.
+    */
+  object Action extends Enumeration {
+    type Action = Value
+    val Reject = Value("reject")
+    val Stream = Value("stream")
+    val Limit = Value("limit")
+  }
+
+  /**
+    * @param maxCollectedSize results estimated to be larger are not collected into the server heap, `action`
+    *                         is applied instead.
+    * @param action one of [[Action]].
+    * @param maxSize results estimated to be larger are rejected, regardless of how they are delivered.
+    */
+  case class Settings(maxCollectedSize: Long, action: Action.Action, maxSize: Option[Long] = None)
+
+  sealed trait Decision
+
+  case object Admitted extends Decision
+
+  case class Rejected(reason: String) extends Decision
+
+  case class Streamed(reason: String) extends Decision
+
+  case class Limited(rows: Int, reason: String) extends Decision
+
+  /**
+    * Decides how a result can be delivered before executing its query.
+    *
+    * @param estimate estimated size of the result. Results whose size is unknown are admitted.
+    * @param streamable whether the result can be delivered without being collected into the server heap, i.e:
+    *                   streamed to a local requester or paged from a buffered cursor.
+    */
+  def decide(estimate: Option[ResultSizeEstimate], settings: Settings, streamable: Boolean): Decision =
+    estimate map { estimated =>
+      val description = s"The estimated result size, ${estimated.bytes} bytes from ${estimated.source},"
+
+      if (settings.maxSize.exists(estimated.bytes > _)) {
+        Rejected(s"$description exceeds the maximum result size of ${settings.maxSize.get} bytes. Add a LIMIT")
+      } else if (estimated.bytes <= settings.maxCollectedSize) {
+        Admitted
+      } else {
+        val exceeded = s"$description exceeds the ${settings.maxCollectedSize} bytes a server can collect"
+        settings.action match {
+          case Action.Stream if streamable =>
+            Streamed(s"$exceeded so it is streamed")
+          case Action.Limit =>
+            val rows = (BigInt(settings.maxCollectedSize) / estimated.rowWidth) min Int.MaxValue
+            Limited(rows.toInt, s"$exceeded so it has been limited to $rows rows")
+          case _ =>
+            Rejected(s"$exceeded. Add a LIMIT or set a fetch size to page it from a server-side cursor")
+        }
+      }
+    } getOrElse Admitted
+
+}
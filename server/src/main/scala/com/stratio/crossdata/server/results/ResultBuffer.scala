@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.io.{ByteArrayOutputStream, Closeable, DataOutputStream, File, RandomAccessFile}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.FileChannel.MapMode
+import java.util.concurrent.atomic.AtomicLong
+
+import org.apache.log4j.Logger
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+import org.apache.spark.sql.types.StructType
+import sun.nio.ch.DirectBuffer
+
+import scala.collection.mutable
+
+object ResultBuffer {
+
+  /**
+    * @param memoryThreshold off-heap bytes all the buffers sharing these settings can allocate before spilling to
+    *                        memory-mapped files.
+    * @param chunkSize size of the blocks the rows are written to. Rows larger than it get a block of their own.
+    * @param spillDirectory directory where the spill files are created.
+    */
+  case class Settings(memoryThreshold: Long, chunkSize: Int, spillDirectory: File) {
+    private[results] lazy val memoryBudget = new MemoryBudget(memoryThreshold)
+  }
+
+  /**
+    * Off-heap bytes available to the buffers. Buffers reserve their blocks from it and release them once closed.
+    */
+  private[results] class MemoryBudget(limit: Long) {
+
+    private val reserved = new AtomicLong()
+
+    def used: Long = reserved.get
+
+    def tryReserve(bytes: Long): Boolean = {
+      var current = reserved.get
+      while (current + bytes <= limit && !reserved.compareAndSet(current, current + bytes))
+        current = reserved.get
+      current + bytes <= limit
+    }
+
+    def release(bytes: Long): Unit = reserved.addAndGet(-bytes)
+
+  }
+
+  private class EncodingBuffer extends ByteArrayOutputStream {
+    def bytes: Array[Byte] = buf
+  }
+
+  /**
+    * Frees the memory of a direct block, or unmaps a mapped one, right away instead of when the block gets garbage
+    * collected: the heap footprint of the blocks is tiny so they could otherwise outlive their buffers for long,
+    * holding off-heap memory and mapped files (which cannot be deleted on some platforms while they are mapped).
+    */
+  private def dispose(block: ByteBuffer): Unit = block match {
+    case direct: DirectBuffer => Option(direct.cleaner()) foreach (_.clean())
+    case _ =>
+  }
+
+}
+
+/**
+  * Holds the rows of a query result in their [[RowCodec]] encoding. The rows are written to direct (off-heap) blocks
+  * while the memory threshold, shared by all the buffers of the same settings, is not reached; the following blocks
+  * are mapped from a spill file in the spill directory.
+  *
+  * The buffer is filled by a single thread and read once it has been filled. Closing it frees its blocks, returning
+  * their memory to the budget, and deletes its spill file: its rows cannot be read afterwards.
+  */
+class ResultBuffer(val schema: StructType, settings: ResultBuffer.Settings) extends Closeable {
+
+  import ResultBuffer._
+
+  private lazy val logger = Logger.getLogger(classOf[ResultBuffer])
+
+  private val codec = new RowCodec(schema)
+  private val encodingBuffer = new EncodingBuffer
+  private val encodingOutput = new DataOutputStream(encodingBuffer)
+
+  private val blocks = mutable.ArrayBuffer.empty[ByteBuffer]
+  private var spillFile: Option[(File, FileChannel)] = None
+
+  private var rowCount = 0L
+  private var offHeapBytes = 0L
+  private var spilledBytes = 0L
+  @volatile private var closed = false
+
+  def size: Long = rowCount
+
+  def bytesInMemory: Long = offHeapBytes
+
+  def bytesSpilled: Long = spilledBytes
+
+  def append(row: Row): Unit = {
+    require(!closed, "The result buffer has been closed")
+
+    encodingBuffer.reset()
+    codec.encode(row, encodingOutput)
+    encodingOutput.flush()
+
+    val length = encodingBuffer.size
+    val block = blocks.lastOption.filter(_.remaining >= length + 4) getOrElse newBlock(length + 4)
+    block.putInt(length)
+    block.put(encodingBuffer.bytes, 0, length)
+    rowCount += 1
+  }
+
+  def appendAll(rows: Iterator[Row]): this.type = {
+    rows foreach append
+    this
+  }
+
+  /**
+    * Iterator over the buffered rows. Closing it closes the buffer.
+    */
+  def iterator: Iterator[Row] with Closeable = new Iterator[Row] with Closeable {
+
+    private val readBlocks = blocks.iterator map { block =>
+      val readView = block.duplicate()
+      readView.flip()
+      readView
+    }
+    private var currentBlock: Option[ByteBuffer] = None
+
+    override def hasNext: Boolean = !closed && {
+      while (currentBlock.forall(!_.hasRemaining) && readBlocks.hasNext)
+        currentBlock = Some(readBlocks.next())
+      currentBlock.exists(_.hasRemaining)
+    }
+
+    // Rows are read under the lock of the buffer so that its blocks cannot be freed while they are being decoded
+    override def next(): Row = ResultBuffer.this.synchronized {
+      if (!hasNext) throw new NoSuchElementException("No more rows in the result buffer")
+      val block = currentBlock.get
+      val length = block.getInt
+      val rowView = block.slice()
+      rowView.limit(length)
+      block.position(block.position + length)
+      codec.decode(rowView)
+    }
+
+    override def close(): Unit = ResultBuffer.this.close()
+  }
+
+  def toArray: Array[Row] = {
+    val rows = new Array[Row](rowCount.toInt)
+    val it = iterator
+    var i = 0
+    while (it.hasNext) {
+      rows(i) = it.next()
+      i += 1
+    }
+    rows
+  }
+
+  override def close(): Unit = synchronized {
+    if (!closed) {
+      closed = true
+      blocks foreach dispose
+      blocks.clear()
+      settings.memoryBudget.release(offHeapBytes)
+      spillFile foreach { case (file, channel) =>
+        channel.close()
+        if (!file.delete()) logger.warn(s"Unable to delete the result spill file ${file.getPath}")
+      }
+      spillFile = None
+    }
+  }
+
+  private def newBlock(minSize: Int): ByteBuffer = {
+    val blockSize = math.max(settings.chunkSize, minSize)
+    val block = if (settings.memoryBudget.tryReserve(blockSize)) {
+      offHeapBytes += blockSize
+      ByteBuffer.allocateDirect(blockSize)
+    } else {
+      val (_, channel) = spillFile getOrElse {
+        val file = File.createTempFile("crossdata-result", ".spill", settings.spillDirectory)
+        logger.debug(s"Result buffers exceeded ${settings.memoryThreshold} bytes, spilling to ${file.getPath}")
+        val fileAndChannel = (file, new RandomAccessFile(file, "rw").getChannel)
+        spillFile = Some(fileAndChannel)
+        fileAndChannel
+      }
+      val mappedBlock = channel.map(MapMode.READ_WRITE, spilledBytes, blockSize)
+      spilledBytes += blockSize
+      XDMetricsSource.ResultBytesSpilled.inc(blockSize)
+      mappedBlock
+    }
+    blocks += block
+    block
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import akka.NotUsed
+import akka.http.scaladsl.coding.{Deflate, Encoder, Gzip}
+import akka.http.scaladsl.model.{ContentType, HttpEntity}
+import akka.http.scaladsl.model.headers.`Accept-Encoding`
+import akka.http.scaladsl.server.Directives._
+import akka.http.scaladsl.server.Route
+import akka.stream.Materializer
+import akka.stream.scaladsl.{Sink, Source}
+import akka.util.ByteString
+
+import scala.collection.immutable
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+  * Gzip/deflate compression of the results streamed to HTTP clients.
+  *
+  * Results are only buffered and encoded when the client accepts one of these encodings: their beginning is buffered
+  * until it reaches `minSize`, and shorter results are sent unencoded. Each element of the results (a JSON document,
+  * its separator or a record batch) is sent in its own chunk, so clients reading a document per chunk keep working
+  * with the unencoded responses.
+  *
+  * LZ4 isn't negotiated: it isn't a registered HTTP content coding, so neither akka-http nor the proxies between
+  * the clients and the server know how to handle it, and the block format of the lz4-java streams shipped with Spark
+  * is specific to that library.
+  *
+  * @param enabled whether the results may be compressed at all.
+  * @param minSize size the results must reach to be compressed.
+  */
+class ResultCompression(enabled: Boolean, minSize: Long)(implicit materializer: Materializer, ec: ExecutionContext) {
+
+  def completeResult(contentType: ContentType, bytes: Source[ByteString, NotUsed]): Route =
+    optionalHeaderValueByType[`Accept-Encoding`]() { acceptEncoding =>
+      negotiatedEncoder(acceptEncoding) map { encoder =>
+        onSuccess(sized(bytes)) { (chunks, compressible) =>
+          if (compressible)
+            encodeResponseWith(encoder)(complete(HttpEntity(contentType, chunks)))
+          else
+            complete(HttpEntity(contentType, chunks))
+        }
+      } getOrElse complete(HttpEntity(contentType, bytes))
+    }
+
+  private[results] def negotiatedEncoder(acceptEncoding: Option[`Accept-Encoding`]): Option[Encoder] =
+    if (!enabled) None else acceptEncoding flatMap { header =>
+      Seq[Encoder](Gzip, Deflate) find { encoder =>
+        header.encodings exists (range => range.qValue > 0 && range.matches(encoder.encoding))
+      }
+    }
+
+  /**
+    * Buffers the chunks at the beginning of the stream until they reach the minimum size.
+    *
+    * @return the chunks of the stream, unchanged, and whether they reach the minimum size.
+    */
+  private def sized(bytes: Source[ByteString, NotUsed]): Future[(Source[ByteString, NotUsed], Boolean)] = {
+
+    // The end of the stream is signaled with None. The buffered chunks are emitted as a group, the remaining ones alone
+    val groups = (bytes.map(Option(_)) concat Source.single(Option.empty[ByteString])).statefulMapConcat { () =>
+      var buffered = Vector.empty[ByteString]
+      var bufferedSize = 0L
+      var thresholdReached = false
+
+      (element: Option[ByteString]) => element match {
+        case Some(chunk) if thresholdReached =>
+          immutable.Seq(Vector(chunk))
+        case Some(chunk) =>
+          buffered :+= chunk
+          bufferedSize += chunk.length
+          if (bufferedSize >= minSize) {
+            thresholdReached = true
+            val head = buffered
+            buffered = Vector.empty
+            immutable.Seq(head)
+          } else Nil
+        case None =>
+          if (thresholdReached) Nil else immutable.Seq(buffered) // The whole stream is below the threshold
+      }
+    }
+
+    groups.prefixAndTail(1).runWith(Sink.head) map { case (head, tail) =>
+      val buffered = head.flatten
+      (Source(buffered.toList) concat tail.mapConcat(group => group), buffered.map(_.length.toLong).sum >= minSize)
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import com.stratio.crossdata.server.config.ServerConfig
+
+import scala.concurrent.duration.FiniteDuration
+
+/**
+  * How the jobs hold and deliver their results.
+  *
+  * @param buffer settings of the [[ResultBuffer]] the results are drained into. Results aren't buffered if missing.
+  * @param lazyStreaming whether the results streamed to local requesters are pulled from Spark, by their job thread,
+  *                      as they are consumed.
+  * @param cursorTTL time a server-side cursor is kept open since its last fetch. Lazily streamed results are
+  *                  abandoned as well if their stream doesn't consume them during this time.
+  * @param admission limits on the estimated size of the results. Every result is admitted if missing.
+  * @param pageSize rows of the pages of the buffered results sent to remote requesters which didn't set a fetch size.
+  */
+case class ResultSettings(
+                           buffer: Option[ResultBuffer.Settings] = None,
+                           lazyStreaming: Boolean = true,
+                           cursorTTL: FiniteDuration = ServerConfig.DefaultCursorTTL,
+                           admission: Option[ResultAdmission.Settings] = None,
+                           pageSize: Int = ServerConfig.DefaultCursorPageSize
+                         )
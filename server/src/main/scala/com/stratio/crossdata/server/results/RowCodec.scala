@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.sql.{Date, Timestamp}
+
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.expressions.GenericRowWithSchema
+import org.apache.spark.sql.types._
+
+/**
+  * Compact binary encoding of the rows of a given schema: a null bitmap followed by the non null values. Atomic values
+  * are written in their binary form, complex ones (arrays, maps, structs and UDTs) fall back to Java serialization.
+  * Atomic values are read back with the type of their column: those of other types are converted to it when possible
+  * (e.g. numbers) and rejected with an IllegalArgumentException otherwise.
+  */
+class RowCodec(schema: StructType) {
+
+  private val fieldTypes: Array[DataType] = schema.fields.map(_.dataType)
+  private val nullBitsLength = (fieldTypes.length + 7) / 8
+
+  def encode(row: Row, out: DataOutputStream): Unit = {
+    val nullBits = new Array[Byte](nullBitsLength)
+    for (i <- fieldTypes.indices if row.isNullAt(i))
+      nullBits(i / 8) = (nullBits(i / 8) | (1 << (i % 8))).toByte
+    out.write(nullBits)
+
+    for (i <- fieldTypes.indices if !row.isNullAt(i))
+      writeValue(fieldTypes(i), row.get(i), out)
+  }
+
+  def decode(in: ByteBuffer): Row = {
+    val nullBits = new Array[Byte](nullBitsLength)
+    in.get(nullBits)
+
+    val values = Array.tabulate[Any](fieldTypes.length) { i =>
+      if ((nullBits(i / 8) & (1 << (i % 8))) != 0) null else readValue(fieldTypes(i), in)
+    }
+    new GenericRowWithSchema(values, schema)
+  }
+
+  private def writeValue(dataType: DataType, value: Any, out: DataOutputStream): Unit = dataType match {
+    case StringType => writeBytes(value.toString.getBytes(StandardCharsets.UTF_8), out)
+    case IntegerType => out.writeInt(number(dataType, value).intValue)
+    case LongType => out.writeLong(number(dataType, value).longValue)
+    case DoubleType => out.writeDouble(number(dataType, value).doubleValue)
+    case FloatType => out.writeFloat(number(dataType, value).floatValue)
+    case ShortType => out.writeShort(number(dataType, value).shortValue)
+    case ByteType => out.writeByte(number(dataType, value).byteValue)
+    case BooleanType => value match {
+      case b: Boolean => out.writeBoolean(b)
+      case other => mismatch(dataType, other)
+    }
+    case BinaryType => value match {
+      case bytes: Array[Byte] => writeBytes(bytes, out)
+      case other => mismatch(dataType, other)
+    }
+    case DateType => value match {
+      case date: java.util.Date => out.writeLong(date.getTime)
+      case other => mismatch(dataType, other)
+    }
+    case TimestampType =>
+      val ts = value match {
+        case ts: Timestamp => ts
+        case date: java.util.Date => new Timestamp(date.getTime)
+        case other => mismatch(dataType, other)
+      }
+      out.writeLong(ts.getTime)
+      out.writeInt(ts.getNanos)
+    case _: DecimalType => value match {
+      case decimal: java.math.BigDecimal => writeDecimal(decimal, out)
+      case decimal: BigDecimal => writeDecimal(decimal.bigDecimal, out)
+      case decimal: Decimal => writeDecimal(decimal.toJavaBigDecimal, out)
+      case number: Number => writeDecimal(new java.math.BigDecimal(number.toString), out)
+      case other => mismatch(dataType, other)
+    }
+    case _ => writeBytes(javaSerialize(value), out)
+  }
+
+  /**
+    * Numeric values of a different type than their column (e.g. a Long in an integer column) are converted to it.
+    */
+  private def number(dataType: DataType, value: Any): Number = value match {
+    case number: Number => number
+    case other => mismatch(dataType, other)
+  }
+
+  private def mismatch(dataType: DataType, value: Any): Nothing = throw new IllegalArgumentException(
+    s"Value $value of type ${value.getClass.getName} cannot be encoded as ${dataType.simpleString}"
+  )
+
+  private def readValue(dataType: DataType, in: ByteBuffer): Any = dataType match {
+    case StringType => new String(readBytes(in), StandardCharsets.UTF_8)
+    case IntegerType => in.getInt
+    case LongType => in.getLong
+    case DoubleType => in.getDouble
+    case FloatType => in.getFloat
+    case ShortType => in.getShort
+    case ByteType => in.get
+    case BooleanType => in.get != 0
+    case BinaryType => readBytes(in)
+    case DateType => new Date(in.getLong)
+    case TimestampType =>
+      val ts = new Timestamp(in.getLong)
+      ts.setNanos(in.getInt)
+      ts
+    case _: DecimalType =>
+      val scale = in.getInt
+      new java.math.BigDecimal(new java.math.BigInteger(readBytes(in)), scale)
+    case _ => javaDeserialize(readBytes(in))
+  }
+
+  private def writeDecimal(decimal: java.math.BigDecimal, out: DataOutputStream): Unit = {
+    out.writeInt(decimal.scale)
+    writeBytes(decimal.unscaledValue.toByteArray, out)
+  }
+
+  private def writeBytes(bytes: Array[Byte], out: DataOutputStream): Unit = {
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+
+  private def readBytes(in: ByteBuffer): Array[Byte] = {
+    val bytes = new Array[Byte](in.getInt)
+    in.get(bytes)
+    bytes
+  }
+
+  private def javaSerialize(value: Any): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    val out = new ObjectOutputStream(bytes)
+    try out.writeObject(value) finally out.close()
+    bytes.toByteArray
+  }
+
+  private def javaDeserialize(bytes: Array[Byte]): Any = {
+    val in = new ObjectInputStream(new ByteArrayInputStream(bytes))
+    try in.readObject() finally in.close()
+  }
+
+}
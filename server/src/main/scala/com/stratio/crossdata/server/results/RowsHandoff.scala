@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.io.Closeable
+import java.util.concurrent.{CancellationException, LinkedBlockingQueue, Semaphore, TimeUnit}
+
+import org.apache.spark.sql.Row
+
+import scala.concurrent.duration.FiniteDuration
+import scala.util.{Failure, Success, Try}
+
+object RowsHandoff {
+  val DefaultBatchSize = 1024
+  val DefaultCapacity = 2
+}
+
+/**
+  * Hands the rows of a query over, a batch at a time, from the job thread pulling them from Spark to the stream
+  * serving them. The job thread waits while `capacity` batches are pending so that it keeps its executor thread,
+  * and its Spark jobs stay bounded by the job executor, until the stream has consumed the whole result.
+  *
+  * @param consumerTimeout time the job thread waits for the stream to take a batch before abandoning the result,
+  *                        e.g: when the stream is never run.
+  * @param onAbandoned called, from the stream, when the stream finishes before consuming the whole result.
+  */
+class RowsHandoff(
+                   consumerTimeout: FiniteDuration,
+                   onAbandoned: () => Unit,
+                   batchSize: Int = RowsHandoff.DefaultBatchSize,
+                   capacity: Int = RowsHandoff.DefaultCapacity
+                 ) {
+
+  // None marks the end of the rows
+  private val batches = new LinkedBlockingQueue[Try[Option[Array[Row]]]]()
+  private val freeSlots = new Semaphore(capacity)
+  @volatile private var abandoned = false
+
+  /**
+    * Pushes the rows to the stream, blocking until it has taken all of them.
+    *
+    * @throws CancellationException if the stream finishes before taking every row or it doesn't take them in time.
+    */
+  def produce(rows: Iterator[Row]): Unit =
+    try {
+      rows.grouped(batchSize) foreach { batch =>
+        waitForSlot()
+        batches.put(Success(Some(batch.toArray)))
+      }
+      batches.put(Success(None))
+    } catch {
+      case e: Throwable =>
+        // The stream must not wait for rows which won't come, whatever stopped the job thread
+        val cause = e match {
+          case _: InterruptedException => new CancellationException("The query has been cancelled")
+          case other => other
+        }
+        batches.offer(Failure(cause))
+        throw e
+    } finally {
+      rows match {
+        case closeable: Closeable => closeable.close()
+        case _ =>
+      }
+    }
+
+  /**
+    * Rows taken by the stream. Closing them before they are exhausted abandons the result.
+    */
+  val rows: Iterator[Row] with Closeable = new Iterator[Row] with Closeable {
+
+    private var current: Iterator[Row] = Iterator.empty
+    private var exhausted = false
+
+    override def hasNext: Boolean = {
+      while (!current.hasNext && !exhausted) {
+        batches.take() match {
+          case Success(Some(batch)) =>
+            freeSlots.release()
+            current = batch.iterator
+          case Success(None) => exhausted = true
+          case Failure(e) =>
+            exhausted = true
+            throw e
+        }
+      }
+      current.hasNext
+    }
+
+    override def next(): Row = if (hasNext) current.next() else Iterator.empty.next()
+
+    override def close(): Unit = if (!exhausted) {
+      exhausted = true
+      abandoned = true
+      freeSlots.release() // Wakes up the job thread
+      onAbandoned()
+    }
+  }
+
+  private def waitForSlot(): Unit = {
+    val acquired = freeSlots.tryAcquire(consumerTimeout.toMillis, TimeUnit.MILLISECONDS)
+    if (abandoned) throw new CancellationException("The stream of the result has been cancelled")
+    if (!acquired) throw new CancellationException(s"The result hasn't been consumed for $consumerTimeout")
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.routing
+
+import java.util.concurrent.ConcurrentHashMap
+
+import akka.actor.Address
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration._
+
+object ClusterLoad {
+
+  /**
+    * Load of a server as published to the other members of the cluster.
+    *
+    * @param address Akka address of the server.
+    * @param runningJobs Jobs being executed by the server.
+    * @param queuedJobs Jobs waiting for a thread of the server's job executor.
+    * @param maxConcurrentJobs Jobs the server is able to run at once.
+    * @param heapUsed Heap used by the server's JVM, in bytes.
+    * @param heapMax Maximum heap of the server's JVM, in bytes.
+    * @param timestamp Publication time, in milliseconds since the epoch.
+    */
+  case class ServerLoad(
+                         address: Address,
+                         runningJobs: Int,
+                         queuedJobs: Int,
+                         maxConcurrentJobs: Int,
+                         heapUsed: Long,
+                         heapMax: Long,
+                         timestamp: Long = System.currentTimeMillis()
+                       ) {
+
+    /**
+      * Pending work relative to the capacity of the server: 1.0 means that every job thread is busy.
+      */
+    def jobsLoad: Double = (runningJobs + queuedJobs).toDouble / (maxConcurrentJobs max 1)
+
+    def heapUsage: Double = if (heapMax > 0) heapUsed.toDouble / heapMax else 0.0
+
+    def withAssignedJob: ServerLoad = copy(queuedJobs = queuedJobs + 1)
+
+  }
+
+  /**
+    * @param publishInterval How often each server publishes its load.
+    * @param minLoadDifference Minimum difference of jobs load between this server and a peer to route a query to
+    *                          the peer.
+    * @param maxHeapUsage Servers whose heap usage exceeds this fraction don't receive routed queries and route
+    *                     their own queries to any less loaded peer.
+    */
+  case class Settings(publishInterval: FiniteDuration, minLoadDifference: Double, maxHeapUsage: Double) {
+    // Loads which haven't been refreshed in this time are ignored (e.g. the server left the cluster)
+    val expiration: FiniteDuration = publishInterval * 3
+  }
+
+  def localHeap: (Long, Long) = {
+    val runtime = Runtime.getRuntime
+    (runtime.totalMemory - runtime.freeMemory, runtime.maxMemory)
+  }
+
+  /**
+    * Chooses the peer which should run a query received by the server whose load is `local`, if any.
+    */
+  def target(local: ServerLoad, peers: Iterable[ServerLoad], settings: Settings): Option[ServerLoad] = {
+    val candidates = peers.filter(peer => peer.address != local.address && peer.heapUsage < settings.maxHeapUsage)
+    if (candidates.isEmpty) None
+    else {
+      val best = candidates.minBy(peer => (peer.jobsLoad, peer.heapUsage))
+      val busier = local.jobsLoad - best.jobsLoad >= settings.minLoadDifference
+      val exhausted = local.heapUsage >= settings.maxHeapUsage && best.jobsLoad <= local.jobsLoad
+      if (busier || exhausted) Some(best) else None
+    }
+  }
+
+}
+
+/**
+  * Last known load of every server of the cluster. It is updated by the [[LoadReporterActor]] of the server and
+  * read by its [[com.stratio.crossdata.server.actors.ServerActor]] instances to route new queries.
+  */
+class ClusterLoad(val settings: ClusterLoad.Settings) {
+
+  import ClusterLoad._
+
+  private val loads = new ConcurrentHashMap[Address, ServerLoad]()
+
+  def update(load: ServerLoad): Unit = loads.put(load.address, load)
+
+  def remove(address: Address): Unit = loads.remove(address)
+
+  def peers(now: Long = System.currentTimeMillis()): Seq[ServerLoad] =
+    loads.values.filter(now - _.timestamp <= settings.expiration.toMillis).toList
+
+  /**
+    * Chooses the peer which should run a new query. The chosen peer is accounted one more queued job so that
+    * the queries received before its next publication are not all routed to it.
+    */
+  def route(local: ServerLoad): Option[Address] =
+    target(local, peers(), settings) map { peer =>
+      loads.replace(peer.address, peer, peer.withAssignedJob)
+      peer.address
+    }
+
+}
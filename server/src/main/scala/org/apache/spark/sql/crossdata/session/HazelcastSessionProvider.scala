@@ -72,7 +72,7 @@ class HazelcastSessionProvider(sc: SparkContext,
   @transient
   protected lazy val streamingCatalog: Option[XDStreamingCatalog] = CatalogUtils.streamingCatalog(sqlConf, finalCoreConfig)
 
-  private val sharedState = new XDSharedState(sc, sqlConf, externalCatalog, streamingCatalog, securityManager)
+  override protected val sharedState = new XDSharedState(sc, sqlConf, externalCatalog, streamingCatalog, securityManager)
 
   protected val hInstance = Hazelcast.newHazelcastInstance(hzConfig)
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.io.Closeable
+
+import com.stratio.crossdata.server.actors.JobActor.Cursor
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types.{IntegerType, StructField, StructType}
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class JobCursorSpec extends BaseXDTest {
+
+  val schema = StructType(Seq(StructField("id", IntegerType)))
+
+  "A job Cursor" should "return pages of at most the requested number of rows" in {
+    val cursor = Cursor(((1 to 5) map (Row(_))).iterator, schema)
+
+    cursor.nextPage(2) shouldBe Array(Row(1), Row(2))
+    cursor.nextPage(2) shouldBe Array(Row(3), Row(4))
+    cursor.rows.hasNext shouldBe true
+    cursor.nextPage(2) shouldBe Array(Row(5))
+    cursor.rows.hasNext shouldBe false
+  }
+
+  it should "close the rows it holds" in {
+    var closed = false
+    val rows = new Iterator[Row] with Closeable {
+      override def hasNext: Boolean = true
+      override def next(): Row = Row(1)
+      override def close(): Unit = closed = true
+    }
+
+    Cursor(rows, schema).close()
+
+    closed shouldBe true
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.concurrent.{CountDownLatch, RejectedExecutionException, TimeUnit}
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class JobExecutorSpec extends BaseXDTest {
+
+  private def blockingJob(started: CountDownLatch, release: CountDownLatch): Runnable = new Runnable {
+    override def run(): Unit = {
+      started.countDown()
+      release.await(10, TimeUnit.SECONDS)
+    }
+  }
+
+  "A JobExecutor" should "queue the jobs exceeding the concurrency limit and reject those exceeding the queue" in {
+    val executor = new JobExecutor(maxConcurrentJobs = 1, queueSize = 1)
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    val rejected = XDMetricsSource.JobsRejected.getCount
+
+    try {
+      executor.execute(blockingJob(started, release))
+      started.await(10, TimeUnit.SECONDS) shouldBe true
+
+      executor.execute(blockingJob(new CountDownLatch(1), release))
+      executor.queueDepth shouldBe 1
+      executor.activeJobs shouldBe 1
+
+      a[RejectedExecutionException] should be thrownBy executor.execute(blockingJob(new CountDownLatch(1), release))
+      XDMetricsSource.JobsRejected.getCount shouldBe rejected + 1
+    } finally {
+      release.countDown()
+      executor.shutdown()
+    }
+  }
+
+  it should "run the queued jobs once the running ones finish" in {
+    val executor = new JobExecutor(maxConcurrentJobs = 1, queueSize = 10)
+    val finished = new CountDownLatch(5)
+
+    try {
+      (1 to 5) foreach { _ =>
+        executor.execute(new Runnable {
+          override def run(): Unit = finished.countDown()
+        })
+      }
+      finished.await(10, TimeUnit.SECONDS) shouldBe true
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+}
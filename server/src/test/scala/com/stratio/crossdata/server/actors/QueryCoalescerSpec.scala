@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.concurrent.{CancellationException, CountDownLatch, TimeUnit, TimeoutException}
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.catalyst.plans.logical.OneRowRelation
+import org.apache.spark.sql.crossdata.XDSQLConf
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+import scala.concurrent.{Await, ExecutionContext, Future, Promise}
+
+@RunWith(classOf[JUnitRunner])
+class QueryCoalescerSpec extends BaseXDTest {
+
+  implicit val ec = ExecutionContext.fromExecutor(java.util.concurrent.Executors.newCachedThreadPool())
+
+  val rows = Array(Row(1, "a"), Row(2, "b"))
+
+  def key(sql: String, conf: Map[String, String] = Map.empty): QueryCoalescer.Key =
+    QueryCoalescer.key(sql, OneRowRelation, flattened = false, conf)
+
+  "QueryCoalescer" should "normalize the text of the queries and ignore the settings not affecting their results" in {
+    key("SELECT *  FROM t\n WHERE a = 1 ") shouldBe key("SELECT * FROM t WHERE a = 1")
+    key("SELECT * FROM t", Map(XDSQLConf.SlowQueryThresholdKey -> "10")) shouldBe key("SELECT * FROM t")
+    key("SELECT * FROM t", Map("spark.sql.caseSensitive" -> "true")) should not be key("SELECT * FROM t")
+  }
+
+  it should "share the execution of identical concurrent queries" in {
+    val coalescer = new QueryCoalescer
+    val executions = new AtomicInteger(0)
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    val leader = Future {
+      coalescer.execute(key("SELECT * FROM t")) {
+        executions.incrementAndGet()
+        started.countDown()
+        release.await(10, TimeUnit.SECONDS)
+        rows
+      }
+    }
+    started.await(10, TimeUnit.SECONDS) shouldBe true
+
+    val followers = (1 to 5) map { _ =>
+      Future(coalescer.execute(key("SELECT  *  FROM t")) { executions.incrementAndGet(); Array.empty[Row] })
+    }
+    // Followers are waiting for the leader
+    Thread.sleep(500)
+    release.countDown()
+
+    Await.result(Future.sequence(leader +: followers), 10 seconds) foreach (_ shouldBe rows)
+    executions.get shouldBe 1
+    coalescer.inFlightQueries shouldBe 0
+  }
+
+  it should "not share the execution of different queries" in {
+    val coalescer = new QueryCoalescer
+    coalescer.execute(key("SELECT * FROM t"))(rows) shouldBe rows
+    coalescer.execute(key("SELECT * FROM t"))(Array.empty[Row]) shouldBe empty
+    coalescer.execute(key("SELECT a FROM t"))(Array.empty[Row]) shouldBe empty
+  }
+
+  it should "run the query again when the shared execution fails" in {
+    val coalescer = new QueryCoalescer
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    val leader = Future {
+      coalescer.execute(key("SELECT * FROM t")) {
+        started.countDown()
+        release.await(10, TimeUnit.SECONDS)
+        throw new RuntimeException("Query cancelled")
+      }
+    }
+    started.await(10, TimeUnit.SECONDS) shouldBe true
+
+    val follower = Future(coalescer.execute(key("SELECT * FROM t"))(rows))
+    Thread.sleep(500)
+    release.countDown()
+
+    an[RuntimeException] shouldBe thrownBy Await.result(leader, 10 seconds)
+    Await.result(follower, 10 seconds) shouldBe rows
+  }
+
+  it should "stop waiting for the shared execution when the waiting query is cancelled" in {
+    val coalescer = new QueryCoalescer
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    val leader = Future {
+      coalescer.execute(key("SELECT * FROM t")) {
+        started.countDown()
+        release.await(10, TimeUnit.SECONDS)
+        rows
+      }
+    }
+    started.await(10, TimeUnit.SECONDS) shouldBe true
+
+    val cancelled = Promise[Unit]()
+    val follower = Future(coalescer.execute(key("SELECT * FROM t"), cancelled = cancelled.future)(rows))
+    Thread.sleep(500)
+    cancelled.success(())
+
+    a[CancellationException] shouldBe thrownBy Await.result(follower, 10 seconds)
+    release.countDown()
+    Await.result(leader, 10 seconds) shouldBe rows
+  }
+
+  it should "stop waiting for the shared execution after the timeout of the waiting query" in {
+    val coalescer = new QueryCoalescer
+    val started = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    val leader = Future {
+      coalescer.execute(key("SELECT * FROM t")) {
+        started.countDown()
+        release.await(10, TimeUnit.SECONDS)
+        rows
+      }
+    }
+    started.await(10, TimeUnit.SECONDS) shouldBe true
+
+    a[TimeoutException] shouldBe thrownBy coalescer.execute(key("SELECT * FROM t"), 200 millis)(rows)
+    release.countDown()
+    Await.result(leader, 10 seconds) shouldBe rows
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.actors
+
+import java.util.UUID
+
+import com.stratio.crossdata.common.security.Session
+import com.stratio.crossdata.common.util.akka.keepalive.KeepAliveMaster.HeartbeatLost
+import com.stratio.crossdata.common.{CancelQueryExecution, CommandEnvelope, SQLCommand}
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ServerActorRoutingSpec extends BaseXDTest {
+
+  val sessionId = UUID.randomUUID()
+
+  "The ServerActor session hash mapping" should "route every message of a session by the session id" in {
+    val session = Session(sessionId, None)
+    val mapping = ServerActor.SessionHashMapping
+
+    mapping(CommandEnvelope(SQLCommand("select * from t"), session)) shouldBe sessionId
+    mapping(CommandEnvelope(CancelQueryExecution(UUID.randomUUID()), session)) shouldBe sessionId
+    mapping(HeartbeatLost(sessionId)) shouldBe sessionId
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.config
+
+import java.util.UUID
+
+import com.stratio.crossdata.common.{QueryPriority, SQLCommand}
+import com.stratio.crossdata.server.config.SchedulerPools.{PoolConfig, PoolSelection}
+import com.stratio.crossdata.test.BaseXDTest
+import com.typesafe.config.ConfigFactory
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class SchedulerPoolsSpec extends BaseXDTest {
+
+  val sessionId = UUID.randomUUID()
+
+  "SchedulerPools" should "read the pools declared in the server config" in {
+    val poolsConfig = ConfigFactory.parseString(
+      """
+        |interactive { scheduling-mode = fifo, weight = 3, min-share = 2 }
+        |batch { weight = 1 }
+      """.stripMargin)
+
+    SchedulerPools.poolsFrom(poolsConfig) shouldBe Seq(
+      PoolConfig("batch", "FIFO", 1, 0),
+      PoolConfig("interactive", "FIFO", 3, 2)
+    )
+  }
+
+  it should "describe the pools in a FAIR scheduler allocation file" in {
+    val content = SchedulerPools.allocationFileContent(Seq(PoolConfig("batch", "FAIR", 1, 0)))
+
+    content should include ("""<pool name="batch">""")
+    content should include ("<schedulingMode>FAIR</schedulingMode>")
+    content should include ("<weight>1</weight>")
+    content should include ("<minShare>0</minShare>")
+  }
+
+  "A SchedulerPoolSelector" should "choose the pool of the priority hint" in {
+    val selector = new SchedulerPoolSelector(PoolSelection.Session, QueryPriority.Interactive)
+    val command = SQLCommand("select * from t", priority = Some(QueryPriority.Batch))
+
+    selector.poolFor(command, sessionId, Some("alice")) shouldBe "batch"
+  }
+
+  it should "choose the pool of the session, the user or the default priority when there is no hint" in {
+    val command = SQLCommand("select * from t")
+
+    new SchedulerPoolSelector(PoolSelection.Session, QueryPriority.Interactive)
+      .poolFor(command, sessionId, None) shouldBe s"session-$sessionId"
+
+    new SchedulerPoolSelector(PoolSelection.User, QueryPriority.Interactive)
+      .poolFor(command, sessionId, Some("alice")) shouldBe "user-alice"
+
+    new SchedulerPoolSelector(PoolSelection.User, QueryPriority.Batch)
+      .poolFor(command, sessionId, None) shouldBe "batch"
+
+    new SchedulerPoolSelector(PoolSelection.Priority, QueryPriority.Interactive)
+      .poolFor(command, sessionId, Some("alice")) shouldBe "interactive"
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.log
+
+import java.io.File
+import java.nio.file.Files
+import java.util.UUID
+
+import com.stratio.crossdata.common.SQLCommand
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.crossdata.metrics.XDMetricsSource
+import org.json4s.JsonAST.{JInt, JNull, JString}
+import org.json4s.jackson.JsonMethods._
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.io.Source
+
+@RunWith(classOf[JUnitRunner])
+class SlowQueryLogSpec extends BaseXDTest {
+
+  def withSlowQueryLog(test: (SlowQueryLog, File) => Unit): Unit = {
+    val file = Files.createTempFile("slow-queries", ".log").toFile
+    val slowQueryLog = new SlowQueryLog(SlowQueryLog.Settings(file, "1MB", 1, 16))
+    try test(slowQueryLog, file) finally {
+      slowQueryLog.close()
+      file.delete()
+    }
+  }
+
+  def entries(slowQueryLog: SlowQueryLog, file: File) = {
+    slowQueryLog.close()
+    Source.fromFile(file).getLines().toList.map(parse(_))
+  }
+
+  val sessionId = UUID.randomUUID()
+
+  "A SlowQueryLog" should "write the queries exceeding the threshold of their session" in withSlowQueryLog { (log, file) =>
+
+    val command = SQLCommand("SELECT * FROM t")
+    val query = log.track(command, sessionId, Some("alice"), thresholdMillis = 0)
+    query.profile.addPhase(XDMetricsSource.Phase.Parse, 2000000L)
+    query.profile.addRows(3)
+    query.profile.addSerializedBytes(42)
+    query.completed()
+
+    val Seq(entry) = entries(log, file)
+    entry \ "queryId" shouldBe JString(command.queryId.toString)
+    entry \ "sessionId" shouldBe JString(sessionId.toString)
+    entry \ "user" shouldBe JString("alice")
+    entry \ "sql" shouldBe JString("SELECT * FROM t")
+    entry \ "execution" shouldBe JNull
+    entry \ "phasesMillis" \ "parse" shouldBe JInt(2)
+    entry \ "rows" shouldBe JInt(3)
+    entry \ "serializedBytes" shouldBe JInt(42)
+  }
+
+  it should "skip the queries under the threshold and those of sessions which disabled it" in withSlowQueryLog { (log, file) =>
+
+    log.track(SQLCommand("SELECT 1"), sessionId, None, thresholdMillis = 60000).completed()
+    log.track(SQLCommand("SELECT 2"), sessionId, None, thresholdMillis = -1).completed()
+
+    entries(log, file) shouldBe empty
+  }
+
+  it should "write the streamed queries once their stream has been completed" in withSlowQueryLog { (log, file) =>
+
+    val command = SQLCommand("SELECT * FROM t")
+    val query = log.track(command, sessionId, None, thresholdMillis = 0)
+    query.streamed()
+
+    log.streamedProfile(command.requestId) foreach (_.addSerializedBytes(10))
+    Files.readAllLines(file.toPath) shouldBe empty
+
+    log.streamCompleted(command.requestId)
+    log.streamedProfile(command.requestId) shouldBe None
+
+    val Seq(entry) = entries(log, file)
+    entry \ "serializedBytes" shouldBe JInt(10)
+  }
+
+  it should "drop the oldest profiles of streams which are never completed" in {
+    val file = Files.createTempFile("slow-queries", ".log").toFile
+    val log = new SlowQueryLog(SlowQueryLog.Settings(file, "1MB", 1, 16, maxStreamedQueries = 2))
+    try {
+      val commands = Seq("SELECT 1", "SELECT 2", "SELECT 3") map (SQLCommand(_))
+      commands foreach (command => log.track(command, sessionId, None, thresholdMillis = 0).streamed())
+
+      log.streamedProfile(commands.head.requestId) shouldBe None
+      commands.tail foreach (command => log.streamedProfile(command.requestId) shouldBe defined)
+    } finally {
+      log.close()
+      file.delete()
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import com.stratio.crossdata.server.results.ResultAdmission._
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.crossdata.execution.ResultSizeEstimate
+import org.junit.runner.RunWith
+import org.scalatest.Inside
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ResultAdmissionSpec extends BaseXDTest with Inside {
+
+  def estimate(bytes: Long) = Some(ResultSizeEstimate(bytes, None, rowWidth = 100, "test"))
+
+  def settings(action: Action.Action) = Settings(maxCollectedSize = 1000, action, maxSize = Some(100000))
+
+  "The ResultAdmission" should "admit the results which can be collected and those whose size is unknown" in {
+    decide(estimate(1000), settings(Action.Reject), streamable = false) shouldBe Admitted
+    decide(None, settings(Action.Reject), streamable = false) shouldBe Admitted
+  }
+
+  it should "stream the large results which can be streamed" in {
+    decide(estimate(5000), settings(Action.Stream), streamable = true) shouldBe a [Streamed]
+  }
+
+  it should "reject the large results which cannot be streamed" in {
+    decide(estimate(5000), settings(Action.Stream), streamable = false) shouldBe a [Rejected]
+    decide(estimate(5000), settings(Action.Reject), streamable = true) shouldBe a [Rejected]
+  }
+
+  it should "limit the large results to the rows which can be collected" in {
+    inside(decide(estimate(5000), settings(Action.Limit), streamable = false)) {
+      case Limited(rows, _) => rows shouldBe 10
+    }
+  }
+
+  it should "reject the results exceeding the maximum size regardless of the action" in {
+    decide(estimate(200000), settings(Action.Stream), streamable = true) shouldBe a [Rejected]
+    decide(estimate(200000), settings(Action.Limit), streamable = true) shouldBe a [Rejected]
+  }
+
+}
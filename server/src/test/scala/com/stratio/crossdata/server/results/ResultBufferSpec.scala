@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.io.File
+import java.nio.file.Files
+import java.sql.{Date, Timestamp}
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.apache.spark.sql.types._
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ResultBufferSpec extends BaseXDTest {
+
+  val schema = StructType(Seq(
+    StructField("id", IntegerType),
+    StructField("name", StringType),
+    StructField("amount", DecimalType(10, 2)),
+    StructField("ts", TimestampType),
+    StructField("day", DateType),
+    StructField("tags", ArrayType(StringType)),
+    StructField("ratio", DoubleType)
+  ))
+
+  def row(i: Int): Row = Row(
+    i,
+    s"name-$i",
+    new java.math.BigDecimal(s"$i.25"),
+    new Timestamp(1000L * i),
+    new Date(86400000L * i),
+    Seq(s"tag-$i", null),
+    if (i % 2 == 0) null else i / 3.0
+  )
+
+  def withSpillDirectory[T](f: File => T): T = {
+    val directory = Files.createTempDirectory("result-buffer").toFile
+    try f(directory) finally {
+      directory.listFiles.foreach(_.delete())
+      directory.delete()
+    }
+  }
+
+  "A ResultBuffer" should "return the appended rows in order" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(1024 * 1024, 4096, directory))
+    val rows = (1 to 100) map row
+
+    buffer.appendAll(rows.iterator)
+
+    buffer.size shouldBe 100
+    buffer.bytesSpilled shouldBe 0
+    buffer.toArray.toSeq shouldBe rows
+    buffer.close()
+  }
+
+  it should "spill to memory-mapped files past the memory threshold" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(8192, 4096, directory))
+    val rows = (1 to 1000) map row
+
+    buffer.appendAll(rows.iterator)
+
+    buffer.bytesInMemory shouldBe 8192
+    buffer.bytesSpilled should be > 0L
+    directory.listFiles should have length 1
+    buffer.iterator.toSeq shouldBe rows
+
+    buffer.close()
+    directory.listFiles shouldBe empty
+  }
+
+  it should "share the memory threshold with the buffers of the same settings" in withSpillDirectory { directory =>
+    val settings = ResultBuffer.Settings(8192, 4096, directory)
+    val first = new ResultBuffer(schema, settings).appendAll(((1 to 1000) map row).iterator)
+    val second = new ResultBuffer(schema, settings).appendAll(((1 to 1000) map row).iterator)
+
+    first.bytesInMemory + second.bytesInMemory shouldBe 8192
+    second.bytesInMemory shouldBe 0
+
+    first.close()
+    val third = new ResultBuffer(schema, settings).appendAll(((1 to 10) map row).iterator)
+    third.bytesInMemory shouldBe 4096
+
+    second.close()
+    third.close()
+    settings.memoryBudget.used shouldBe 0
+    directory.listFiles shouldBe empty
+  }
+
+  it should "convert the numbers of other types to the type of their column" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(1024 * 1024, 4096, directory))
+
+    buffer.append(Row(7L, "name", 3, null, null, null, 2.5f))
+
+    buffer.toArray.toSeq shouldBe Seq(Row(7, "name", new java.math.BigDecimal(3), null, null, null, 2.5))
+    buffer.close()
+  }
+
+  it should "reject the values which cannot be converted to the type of their column" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(1024 * 1024, 4096, directory))
+
+    an [IllegalArgumentException] should be thrownBy buffer.append(Row("seven", "name", null, null, null, null, null))
+    buffer.close()
+  }
+
+  it should "store rows larger than its blocks" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(1024 * 1024, 64, directory))
+    val largeRow = Row(1, "x" * 1000, null, null, null, null, null)
+
+    buffer.append(largeRow)
+
+    buffer.toArray.toSeq shouldBe Seq(largeRow)
+    buffer.close()
+  }
+
+  it should "be closed by closing its iterator" in withSpillDirectory { directory =>
+    val buffer = new ResultBuffer(schema, ResultBuffer.Settings(1024, 1024, directory))
+    buffer.appendAll(((1 to 100) map row).iterator)
+
+    val it = buffer.iterator
+    it.next()
+    it.close()
+
+    it.hasNext shouldBe false
+    a [NoSuchElementException] should be thrownBy it.next()
+    directory.listFiles shouldBe empty
+  }
+
+}
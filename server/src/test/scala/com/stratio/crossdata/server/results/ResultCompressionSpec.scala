@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import akka.http.scaladsl.coding.{Deflate, Gzip}
+import akka.http.scaladsl.model.ContentTypes
+import akka.http.scaladsl.model.headers.{HttpEncodings, `Accept-Encoding`, `Content-Encoding`}
+import akka.http.scaladsl.testkit.ScalatestRouteTest
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.Await
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class ResultCompressionSpec extends BaseXDTest with ScalatestRouteTest {
+
+  val documents = Seq("""{"schema":[]}""", "\n", """{"row":1}""", "\n", """{"row":2}""")
+  val body = documents.mkString
+
+  def route(enabled: Boolean = true, minSize: Long = 16) =
+    new ResultCompression(enabled, minSize).completeResult(
+      ContentTypes.`application/json`, Source(documents.toList).map(ByteString(_))
+    )
+
+  def bodyBytes: ByteString = Await.result(response.entity.toStrict(5 seconds), 5 seconds).data
+
+  "A ResultCompression" should "send the documents unencoded, one per chunk, to clients not accepting any encoding" in {
+    Get() ~> route() ~> check {
+      header[`Content-Encoding`] shouldBe None
+      chunks.map(_.data.utf8String) shouldBe documents
+    }
+  }
+
+  it should "gzip the results when the client accepts it" in {
+    Get() ~> `Accept-Encoding`(HttpEncodings.gzip, HttpEncodings.deflate) ~> route() ~> check {
+      header[`Content-Encoding`] shouldBe Some(`Content-Encoding`(HttpEncodings.gzip))
+      Await.result(Gzip.decode(bodyBytes), 5 seconds).utf8String shouldBe body
+    }
+  }
+
+  it should "deflate the results when the client only accepts deflate" in {
+    Get() ~> `Accept-Encoding`(HttpEncodings.deflate) ~> route() ~> check {
+      header[`Content-Encoding`] shouldBe Some(`Content-Encoding`(HttpEncodings.deflate))
+      Await.result(Deflate.decode(bodyBytes), 5 seconds).utf8String shouldBe body
+    }
+  }
+
+  it should "send the results unencoded when the client only accepts the identity encoding" in {
+    Get() ~> `Accept-Encoding`(HttpEncodings.identity) ~> route() ~> check {
+      header[`Content-Encoding`] shouldBe None
+      chunks.map(_.data.utf8String) shouldBe documents
+    }
+  }
+
+  it should "send the results below the minimum size unencoded, one document per chunk" in {
+    Get() ~> `Accept-Encoding`(HttpEncodings.gzip) ~> route(minSize = 1024) ~> check {
+      header[`Content-Encoding`] shouldBe None
+      chunks.map(_.data.utf8String) shouldBe documents
+    }
+  }
+
+  it should "not encode the results when compression is disabled" in {
+    Get() ~> `Accept-Encoding`(HttpEncodings.gzip) ~> route(enabled = false) ~> check {
+      header[`Content-Encoding`] shouldBe None
+      chunks.map(_.data.utf8String) shouldBe documents
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.results
+
+import java.util.concurrent.CancellationException
+
+import com.stratio.crossdata.test.BaseXDTest
+import org.apache.spark.sql.Row
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+@RunWith(classOf[JUnitRunner])
+class RowsHandoffSpec extends BaseXDTest {
+
+  val rows = (1 to 100).map(Row(_))
+
+  val NoCallback = () => ()
+
+  "A RowsHandoff" should "hand every row over to the stream and finish the job thread once they are taken" in {
+    val handoff = new RowsHandoff(10 seconds, NoCallback, batchSize = 7, capacity = 2)
+    val producer = Future(handoff.produce(rows.iterator))
+
+    handoff.rows.toList shouldBe rows
+    Await.result(producer, 10 seconds)
+  }
+
+  it should "keep the job thread waiting while the pending batches aren't taken" in {
+    val handoff = new RowsHandoff(10 seconds, NoCallback, batchSize = 10, capacity = 1)
+    val producer = Future(handoff.produce(rows.iterator))
+
+    Thread.sleep(200)
+    producer.isCompleted shouldBe false
+
+    handoff.rows.size shouldBe rows.size
+    Await.result(producer, 10 seconds)
+  }
+
+  it should "stop the job thread when the stream is closed before taking every row" in {
+    val handoff = new RowsHandoff(10 seconds, NoCallback, batchSize = 10, capacity = 1)
+    val producer = Future(handoff.produce(rows.iterator))
+
+    handoff.rows.next() shouldBe rows.head
+    handoff.rows.close()
+
+    a [CancellationException] should be thrownBy Await.result(producer, 10 seconds)
+  }
+
+  it should "notify when the stream finishes before taking every row" in {
+    var abandoned = 0
+    val handoff = new RowsHandoff(10 seconds, () => abandoned += 1, batchSize = 10, capacity = 1)
+    val producer = Future(handoff.produce(rows.iterator))
+
+    handoff.rows.next() shouldBe rows.head
+    handoff.rows.close()
+    handoff.rows.close()
+
+    abandoned shouldBe 1
+    a [CancellationException] should be thrownBy Await.result(producer, 10 seconds)
+  }
+
+  it should "not notify when the stream takes every row" in {
+    var abandoned = 0
+    val handoff = new RowsHandoff(10 seconds, () => abandoned += 1)
+    val producer = Future(handoff.produce(rows.iterator))
+
+    handoff.rows.size shouldBe rows.size
+    handoff.rows.close()
+
+    abandoned shouldBe 0
+    Await.result(producer, 10 seconds)
+  }
+
+  it should "abandon the result when the stream doesn't take it in time" in {
+    val handoff = new RowsHandoff(100 milliseconds, NoCallback, batchSize = 10, capacity = 1)
+
+    a [CancellationException] should be thrownBy handoff.produce(rows.iterator)
+  }
+
+  it should "fail the stream when pulling the rows fails" in {
+    val handoff = new RowsHandoff(10 seconds, NoCallback)
+    val failing = Iterator(Row(1)) ++ Iterator.continually[Row](throw new IllegalStateException("Spark failure"))
+
+    an [IllegalStateException] should be thrownBy handoff.produce(failing)
+    an [IllegalStateException] should be thrownBy handoff.rows.toList
+  }
+
+}
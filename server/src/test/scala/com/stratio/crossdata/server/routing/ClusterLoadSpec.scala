@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Stratio (http://stratio.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.stratio.crossdata.server.routing
+
+import akka.actor.Address
+import com.stratio.crossdata.server.routing.ClusterLoad.{ServerLoad, Settings}
+import com.stratio.crossdata.test.BaseXDTest
+import org.junit.runner.RunWith
+import org.scalatest.junit.JUnitRunner
+
+import scala.concurrent.duration._
+
+@RunWith(classOf[JUnitRunner])
+class ClusterLoadSpec extends BaseXDTest {
+
+  val settings = Settings(2 seconds, minLoadDifference = 0.25, maxHeapUsage = 0.9)
+
+  def server(port: Int): Address = Address("akka.tcp", "CrossdataServerCluster", "127.0.0.1", port)
+
+  def load(port: Int, running: Int, queued: Int = 0, heapUsage: Double = 0.5): ServerLoad =
+    ServerLoad(server(port), running, queued, maxConcurrentJobs = 10, (heapUsage * 1000).toLong, 1000)
+
+  "ClusterLoad" should "keep queries at the local server when no peer is significantly less loaded" in {
+    ClusterLoad.target(load(1, 4), Seq(load(2, 3), load(3, 2, 1)), settings) shouldBe None
+  }
+
+  it should "route queries to the least loaded peer" in {
+    ClusterLoad.target(load(1, 10, 5), Seq(load(2, 8), load(3, 2, 1), load(1, 0)), settings) shouldBe Some(load(3, 2, 1))
+  }
+
+  it should "not route queries to peers short of heap" in {
+    ClusterLoad.target(load(1, 10), Seq(load(2, 0, heapUsage = 0.95)), settings) shouldBe None
+  }
+
+  it should "route queries away from a server short of heap" in {
+    ClusterLoad.target(load(1, 2, heapUsage = 0.95), Seq(load(2, 2)), settings) shouldBe Some(load(2, 2))
+  }
+
+  it should "account the routed queries until the next publication of the peer" in {
+    val clusterLoad = new ClusterLoad(settings)
+    clusterLoad.update(load(2, 5))
+    clusterLoad.update(load(3, 5))
+
+    val targets = (1 to 6) flatMap (_ => clusterLoad.route(load(1, 10)))
+    targets.count(_ == server(2)) shouldBe 3
+    targets.count(_ == server(3)) shouldBe 3
+    clusterLoad.route(load(1, 10)) shouldBe None
+  }
+
+  it should "ignore expired loads" in {
+    val clusterLoad = new ClusterLoad(settings)
+    clusterLoad.update(load(2, 0).copy(timestamp = System.currentTimeMillis() - settings.expiration.toMillis - 1))
+    clusterLoad.peers() shouldBe empty
+  }
+
+}